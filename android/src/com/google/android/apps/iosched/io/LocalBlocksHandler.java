@@ -26,6 +26,7 @@ import org.xmlpull.v1.XmlPullParserException;
 
 import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
+import android.content.ContentValues;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -58,18 +59,17 @@ public class LocalBlocksHandler extends XmlHandler {
         int type;
         while ((type = parser.next()) != END_DOCUMENT) {
             if (type == START_TAG && Tags.BLOCK.equals(parser.getName())) {
-                batch.add(parseBlock(parser));
+                addInsert(Blocks.CONTENT_URI, parseBlock(parser));
             }
         }
 
         return batch;
     }
 
-    private static ContentProviderOperation parseBlock(XmlPullParser parser)
+    private static ContentValues parseBlock(XmlPullParser parser)
             throws XmlPullParserException, IOException {
         final int depth = parser.getDepth();
-        final ContentProviderOperation.Builder builder = ContentProviderOperation
-                .newInsert(Blocks.CONTENT_URI);
+        final ContentValues values = new ContentValues();
 
         String title = null;
         long startTime = -1;
@@ -100,13 +100,13 @@ public class LocalBlocksHandler extends XmlHandler {
 
         final String blockId = Blocks.generateBlockId(startTime, endTime);
 
-        builder.withValue(Blocks.BLOCK_ID, blockId);
-        builder.withValue(Blocks.BLOCK_TITLE, title);
-        builder.withValue(Blocks.BLOCK_START, startTime);
-        builder.withValue(Blocks.BLOCK_END, endTime);
-        builder.withValue(Blocks.BLOCK_TYPE, blockType);
+        values.put(Blocks.BLOCK_ID, blockId);
+        values.put(Blocks.BLOCK_TITLE, title);
+        values.put(Blocks.BLOCK_START, startTime);
+        values.put(Blocks.BLOCK_END, endTime);
+        values.put(Blocks.BLOCK_TYPE, blockType);
 
-        return builder.build();
+        return values;
     }
 
     interface Tags {
@@ -45,9 +45,11 @@ public class LocalExecutor {
 
     public void execute(Context context, String assetName, XmlHandler handler)
             throws HandlerException {
+        InputStream input = null;
+        XmlPullParser parser = null;
         try {
-            final InputStream input = context.getAssets().open(assetName);
-            final XmlPullParser parser = ParserUtils.newPullParser(input);
+            input = context.getAssets().open(assetName);
+            parser = ParserUtils.obtainPullParser(input, ParserUtils.BUFFER_SIZE_LOCAL);
             handler.parseAndApply(parser, mResolver);
         } catch (HandlerException e) {
             throw e;
@@ -55,6 +57,9 @@ public class LocalExecutor {
             throw new HandlerException("Problem parsing local asset: " + assetName, e);
         } catch (IOException e) {
             throw new HandlerException("Problem parsing local asset: " + assetName, e);
+        } finally {
+            if (parser != null) ParserUtils.recyclePullParser(parser);
+            closeQuietly(input);
         }
     }
 
@@ -66,4 +71,13 @@ public class LocalExecutor {
             parser.close();
         }
     }
+
+    private static void closeQuietly(InputStream input) {
+        if (input == null) return;
+        try {
+            input.close();
+        } catch (IOException e) {
+            // Nothing left to read, so failing to close is harmless
+        }
+    }
 }
@@ -26,6 +26,7 @@ import org.xmlpull.v1.XmlPullParserException;
 
 import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
+import android.content.ContentValues;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -54,7 +55,7 @@ public class LocalRoomsHandler extends XmlHandler {
         int type;
         while ((type = parser.next()) != END_DOCUMENT) {
             if (type == START_TAG && Tags.ROOM.equals(parser.getName())) {
-                parseRoom(parser, batch, resolver);
+                addInsert(Rooms.CONTENT_URI, parseRoom(parser));
             }
         }
 
@@ -62,15 +63,13 @@ public class LocalRoomsHandler extends XmlHandler {
     }
 
     /**
-     * Parse a given {@link Rooms} entry, building
-     * {@link ContentProviderOperation} to define it locally.
+     * Parse a given {@link Rooms} entry, building {@link ContentValues} to
+     * define it locally.
      */
-    private static void parseRoom(XmlPullParser parser,
-            ArrayList<ContentProviderOperation> batch, ContentResolver resolver)
+    private static ContentValues parseRoom(XmlPullParser parser)
             throws XmlPullParserException, IOException {
         final int depth = parser.getDepth();
-        ContentProviderOperation.Builder builder = ContentProviderOperation
-                .newInsert(Rooms.CONTENT_URI);
+        final ContentValues values = new ContentValues();
 
         String tag = null;
         int type;
@@ -83,16 +82,16 @@ public class LocalRoomsHandler extends XmlHandler {
             } else if (type == TEXT) {
                 final String text = parser.getText();
                 if (Tags.ID.equals(tag)) {
-                    builder.withValue(Rooms.ROOM_ID, text);
+                    values.put(Rooms.ROOM_ID, text);
                 } else if (Tags.NAME.equals(tag)) {
-                    builder.withValue(Rooms.ROOM_NAME, text);
+                    values.put(Rooms.ROOM_NAME, text);
                 } else if (Tags.FLOOR.equals(tag)) {
-                    builder.withValue(Rooms.ROOM_FLOOR, text);
+                    values.put(Rooms.ROOM_FLOOR, text);
                 }
             }
         }
 
-        batch.add(builder.build());
+        return values;
     }
 
     /** XML tags expected from local source. */
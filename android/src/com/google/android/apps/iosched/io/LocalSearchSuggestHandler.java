@@ -26,6 +26,7 @@ import org.xmlpull.v1.XmlPullParserException;
 import android.app.SearchManager;
 import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
+import android.content.ContentValues;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -60,8 +61,9 @@ public class LocalSearchSuggestHandler extends XmlHandler {
                 final String text = parser.getText();
                 if (Tags.WORD.equals(tag)) {
                     // Insert word as search suggestion
-                    batch.add(ContentProviderOperation.newInsert(SearchSuggest.CONTENT_URI)
-                            .withValue(SearchManager.SUGGEST_COLUMN_TEXT_1, text).build());
+                    final ContentValues values = new ContentValues();
+                    values.put(SearchManager.SUGGEST_COLUMN_TEXT_1, text);
+                    addInsert(SearchSuggest.CONTENT_URI, values);
                 }
             }
         }
@@ -29,6 +29,7 @@ import org.xmlpull.v1.XmlPullParserException;
 
 import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
+import android.content.ContentValues;
 import android.database.Cursor;
 import android.net.Uri;
 
@@ -54,20 +55,18 @@ public class LocalSessionsHandler extends XmlHandler {
         int type;
         while ((type = parser.next()) != END_DOCUMENT) {
             if (type == START_TAG && Tags.SESSION.equals(parser.getName())) {
-                parseSession(parser, batch, resolver);
+                parseSession(parser, resolver);
             }
         }
 
         return batch;
     }
 
-    private static void parseSession(XmlPullParser parser,
-            ArrayList<ContentProviderOperation> batch, ContentResolver resolver)
+    private void parseSession(XmlPullParser parser, ContentResolver resolver)
             throws XmlPullParserException, IOException {
         final int depth = parser.getDepth();
-        ContentProviderOperation.Builder builder = ContentProviderOperation
-                .newInsert(Sessions.CONTENT_URI);
-        builder.withValue(Sessions.UPDATED, 0);
+        final ContentValues values = new ContentValues();
+        values.put(Sessions.UPDATED, 0);
 
         long startTime = -1;
         long endTime = -1;
@@ -91,7 +90,7 @@ public class LocalSessionsHandler extends XmlHandler {
                     endTime = ParserUtils.parseTime(text);
                 } else if (Tags.ROOM.equals(tag)) {
                     final String roomId = Rooms.generateRoomId(text);
-                    builder.withValue(Sessions.ROOM_ID, roomId);
+                    values.put(Sessions.ROOM_ID, roomId);
                 } else if (Tags.TRACK.equals(tag)) {
                     trackId = Tracks.generateTrackId(text);
                 } else if (Tags.ID.equals(tag)) {
@@ -99,7 +98,7 @@ public class LocalSessionsHandler extends XmlHandler {
                 } else if (Tags.TITLE.equals(tag)) {
                     title = text;
                 } else if (Tags.ABSTRACT.equals(tag)) {
-                    builder.withValue(Sessions.SESSION_ABSTRACT, text);
+                    values.put(Sessions.SESSION_ABSTRACT, text);
                 }
             }
         }
@@ -108,33 +107,34 @@ public class LocalSessionsHandler extends XmlHandler {
             sessionId = Sessions.generateSessionId(title);
         }
 
-        builder.withValue(Sessions.SESSION_ID, sessionId);
-        builder.withValue(Sessions.SESSION_TITLE, title);
+        values.put(Sessions.SESSION_ID, sessionId);
+        values.put(Sessions.SESSION_TITLE, title);
 
         // Use empty strings to make sure SQLite search trigger has valid data
         // for updating search index.
-        builder.withValue(Sessions.SESSION_ABSTRACT, "");
-        builder.withValue(Sessions.SESSION_REQUIREMENTS, "");
-        builder.withValue(Sessions.SESSION_KEYWORDS, "");
+        values.put(Sessions.SESSION_ABSTRACT, "");
+        values.put(Sessions.SESSION_REQUIREMENTS, "");
+        values.put(Sessions.SESSION_KEYWORDS, "");
 
         final String blockId = ParserUtils.findBlock(title, startTime, endTime);
-        builder.withValue(Sessions.BLOCK_ID, blockId);
+        values.put(Sessions.BLOCK_ID, blockId);
 
         // Propagate any existing starred value
         final Uri sessionUri = Sessions.buildSessionUri(sessionId);
         final int starred = querySessionStarred(sessionUri, resolver);
         if (starred != -1) {
-            builder.withValue(Sessions.SESSION_STARRED, starred);
+            values.put(Sessions.SESSION_STARRED, starred);
         }
 
-        batch.add(builder.build());
+        addInsert(Sessions.CONTENT_URI, values);
 
         if (trackId != null) {
             // TODO: support parsing multiple tracks per session
             final Uri sessionTracks = Sessions.buildTracksDirUri(sessionId);
-            batch.add(ContentProviderOperation.newInsert(sessionTracks)
-                    .withValue(SessionsTracks.SESSION_ID, sessionId)
-                    .withValue(SessionsTracks.TRACK_ID, trackId).build());
+            final ContentValues trackValues = new ContentValues();
+            trackValues.put(SessionsTracks.SESSION_ID, sessionId);
+            trackValues.put(SessionsTracks.TRACK_ID, trackId);
+            addInsert(sessionTracks, trackValues);
         }
     }
 
@@ -25,6 +25,7 @@ import org.xmlpull.v1.XmlPullParserException;
 
 import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
+import android.content.ContentValues;
 import android.graphics.Color;
 
 import java.io.IOException;
@@ -51,18 +52,17 @@ public class LocalTracksHandler extends XmlHandler {
         int type;
         while ((type = parser.next()) != END_DOCUMENT) {
             if (type == START_TAG && Tags.TRACK.equals(parser.getName())) {
-                batch.add(parseTrack(parser));
+                addInsert(Tracks.CONTENT_URI, parseTrack(parser));
             }
         }
 
         return batch;
     }
 
-    private static ContentProviderOperation parseTrack(XmlPullParser parser)
+    private static ContentValues parseTrack(XmlPullParser parser)
             throws XmlPullParserException, IOException {
         final int depth = parser.getDepth();
-        final ContentProviderOperation.Builder builder = ContentProviderOperation
-                .newInsert(Tracks.CONTENT_URI);
+        final ContentValues values = new ContentValues();
 
         String tag = null;
         int type;
@@ -76,18 +76,18 @@ public class LocalTracksHandler extends XmlHandler {
                 final String text = parser.getText();
                 if (Tags.NAME.equals(tag)) {
                     final String trackId = sanitizeId(text);
-                    builder.withValue(Tracks.TRACK_ID, trackId);
-                    builder.withValue(Tracks.TRACK_NAME, text);
+                    values.put(Tracks.TRACK_ID, trackId);
+                    values.put(Tracks.TRACK_NAME, text);
                 } else if (Tags.COLOR.equals(tag)) {
                     final int color = Color.parseColor(text);
-                    builder.withValue(Tracks.TRACK_COLOR, color);
+                    values.put(Tracks.TRACK_COLOR, color);
                 } else if (Tags.ABSTRACT.equals(tag)) {
-                    builder.withValue(Tracks.TRACK_ABSTRACT, text);
+                    values.put(Tracks.TRACK_ABSTRACT, text);
                 }
             }
         }
 
-        return builder.build();
+        return values;
     }
 
     interface Tags {
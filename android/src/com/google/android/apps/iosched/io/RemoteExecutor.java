@@ -68,12 +68,14 @@ public class RemoteExecutor {
             }
 
             final InputStream input = resp.getEntity().getContent();
+            XmlPullParser parser = null;
             try {
-                final XmlPullParser parser = ParserUtils.newPullParser(input);
+                parser = ParserUtils.obtainPullParser(input, ParserUtils.BUFFER_SIZE_REMOTE);
                 handler.parseAndApply(parser, mResolver);
             } catch (XmlPullParserException e) {
                 throw new HandlerException("Malformed response for " + request.getRequestLine(), e);
             } finally {
+                if (parser != null) ParserUtils.recyclePullParser(parser);
                 if (input != null) input.close();
             }
         } catch (HandlerException e) {
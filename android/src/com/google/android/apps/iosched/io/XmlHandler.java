@@ -19,10 +19,14 @@ package com.google.android.apps.iosched.io;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
+import com.google.android.apps.iosched.util.Lists;
+
 import android.content.ContentProvider;
 import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
+import android.content.ContentValues;
 import android.content.OperationApplicationException;
+import android.net.Uri;
 import android.os.RemoteException;
 
 import java.io.IOException;
@@ -39,6 +43,9 @@ import java.util.ArrayList;
 public abstract class XmlHandler {
     private final String mAuthority;
 
+    /** Inserts queued by {@link #addInsert}, in order. */
+    private final ArrayList<ContentProviderOperation> mInserts = Lists.newArrayList();
+
     public XmlHandler(String authority) {
         mAuthority = authority;
     }
@@ -46,12 +53,15 @@ public abstract class XmlHandler {
     /**
      * Parse the given {@link XmlPullParser}, turning into a series of
      * {@link ContentProviderOperation} that are immediately applied using the
-     * given {@link ContentResolver}.
+     * given {@link ContentResolver}. Any rows queued through
+     * {@link #addInsert} are inserted at the end of the same batch, so the
+     * whole import is applied in a single transaction.
      */
     public void parseAndApply(XmlPullParser parser, ContentResolver resolver)
             throws HandlerException {
         try {
             final ArrayList<ContentProviderOperation> batch = parse(parser, resolver);
+            batch.addAll(mInserts);
             resolver.applyBatch(mAuthority, batch);
 
         } catch (HandlerException e) {
@@ -69,6 +79,8 @@ public abstract class XmlHandler {
             // TODO: consider catching version checking asserts here, and then
             // wrapping around to retry parsing again.
             throw new RuntimeException("Problem applying batch operation", e);
+        } finally {
+            mInserts.clear();
         }
     }
 
@@ -80,6 +92,16 @@ public abstract class XmlHandler {
     public abstract ArrayList<ContentProviderOperation> parse(XmlPullParser parser,
             ContentResolver resolver) throws XmlPullParserException, IOException;
 
+    /**
+     * Queue the given row to be inserted into the given {@link Uri} after any
+     * operations returned from {@link #parse}, such as deletes clearing out
+     * old rows. Rows are inserted in the order they were queued, so rows
+     * referring to another row should be queued after it.
+     */
+    protected void addInsert(Uri uri, ContentValues values) {
+        mInserts.add(ContentProviderOperation.newInsert(uri).withValues(values).build());
+    }
+
     /**
      * General {@link IOException} that indicates a problem occured while
      * parsing or applying an {@link XmlPullParser}.
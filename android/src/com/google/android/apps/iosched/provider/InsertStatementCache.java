@@ -0,0 +1,128 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.iosched.provider;
+
+import com.google.android.apps.iosched.util.Maps;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Holds compiled {@code INSERT} statements so that many rows can be inserted
+ * into the same table by binding values positionally, instead of building and
+ * compiling new SQL from each {@link ContentValues}. Statements are keyed by
+ * table and the set of columns present, since incoming rows don't always carry
+ * the same columns and missing columns must keep their defaults.
+ * <p>
+ * This class is <em>not</em> thread safe, and should only live as long as the
+ * surrounding transaction. Call {@link #close()} when finished.
+ */
+class InsertStatementCache {
+    private final SQLiteDatabase mDb;
+    private final HashMap<String, SQLiteStatement> mStatements = Maps.newHashMap();
+
+    /** Reused while building each lookup key. */
+    private final StringBuilder mKeyBuilder = new StringBuilder();
+
+    public InsertStatementCache(SQLiteDatabase db) {
+        mDb = db;
+    }
+
+    /**
+     * Insert the given {@link ContentValues} into the requested table, using
+     * a compiled statement when one already exists for the same columns.
+     *
+     * @return row ID of the newly inserted row.
+     * @throws SQLException when the row could not be inserted.
+     */
+    public long insert(String table, ContentValues values) {
+        final String[] columns = getSortedColumns(values);
+        final SQLiteStatement statement = getStatement(table, columns);
+
+        statement.clearBindings();
+        for (int i = 0; i < columns.length; i++) {
+            DatabaseUtils.bindObjectToProgram(statement, i + 1, values.get(columns[i]));
+        }
+
+        final long rowId = statement.executeInsert();
+        if (rowId == -1) {
+            throw new SQLException("Failed to insert row into " + table);
+        }
+        return rowId;
+    }
+
+    /**
+     * Close all compiled statements held by this cache.
+     */
+    public void close() {
+        for (SQLiteStatement statement : mStatements.values()) {
+            statement.close();
+        }
+        mStatements.clear();
+    }
+
+    private SQLiteStatement getStatement(String table, String[] columns) {
+        final StringBuilder key = mKeyBuilder;
+        key.setLength(0);
+        key.append(table);
+        for (String column : columns) {
+            key.append(',').append(column);
+        }
+
+        final String cacheKey = key.toString();
+        SQLiteStatement statement = mStatements.get(cacheKey);
+        if (statement == null) {
+            statement = mDb.compileStatement(buildInsertSql(table, columns));
+            mStatements.put(cacheKey, statement);
+        }
+        return statement;
+    }
+
+    private static String[] getSortedColumns(ContentValues values) {
+        final Set<Map.Entry<String, Object>> entries = values.valueSet();
+        final String[] columns = new String[entries.size()];
+        int i = 0;
+        for (Map.Entry<String, Object> entry : entries) {
+            columns[i++] = entry.getKey();
+        }
+        Arrays.sort(columns);
+        return columns;
+    }
+
+    private static String buildInsertSql(String table, String[] columns) {
+        final StringBuilder sql = new StringBuilder(128);
+        sql.append("INSERT INTO ").append(table).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) sql.append(',');
+            sql.append(columns[i]);
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i > 0 ? ",?" : "?");
+        }
+        sql.append(')');
+        return sql.toString();
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.iosched.provider;
+
+import com.google.android.apps.iosched.util.Maps;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.database.CursorIndexOutOfBoundsException;
+import android.net.Uri;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Cache of materialized {@link Cursor} results for read-mostly queries handled
+ * by {@link ScheduleProvider}. Each entry remembers the tables it was read
+ * from, and is dropped as soon as any of those tables are written, so repeated
+ * queries are served as memory copies without touching SQLite. Calling
+ * {@link Cursor#requery()} on a copy runs its query again, as it would for a
+ * database cursor, so managed cursors don't keep showing dropped results.
+ * <p>
+ * Values are held as strings, which is enough for the {@code TEXT} and
+ * {@code INTEGER} columns cached here; blob columns aren't supported. Memory
+ * is bounded by an estimate of the bytes held by all entries: least recently
+ * used entries are dropped to stay under it, and results larger than a
+ * fraction of it are never cached. This class is thread safe.
+ */
+class QueryCache {
+    private static final String TAG = "QueryCache";
+    private static final boolean LOGV = Log.isLoggable(TAG, Log.VERBOSE);
+
+    /** Fraction of the budget that a single result may take, as a divisor. */
+    private static final int MAX_ENTRY_FRACTION = 8;
+
+    /** Estimated bytes for each row array, and for each string held. */
+    private static final int ROW_OVERHEAD_BYTES = 16;
+    private static final int STRING_OVERHEAD_BYTES = 40;
+
+    /** Access ordered, so iteration starts from the least recently used entry. */
+    private final LinkedHashMap<String, Entry> mEntries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final int mMaxBytes;
+    private int mBytes = 0;
+
+    /** Value of {@link #mVersion} when each table was last written. */
+    private final HashMap<String, Integer> mTableVersions = Maps.newHashMap();
+    private int mVersion = 0;
+
+    /**
+     * Runs the query behind a cached result again, when a copy of that result
+     * is requeried.
+     */
+    public interface Requery {
+        Cursor query();
+    }
+
+    /**
+     * Create a cache holding results estimated at no more than the given
+     * number of bytes in total.
+     */
+    public QueryCache(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Build a key that uniquely identifies a query against the given
+     * {@link Uri}. Must be called before the projection is mapped.
+     */
+    public static String buildKey(Uri uri, String[] projection, String selection,
+            String[] selectionArgs, String sortOrder) {
+        return uri + "|" + Arrays.toString(projection) + "|" + selection + "|"
+                + Arrays.toString(selectionArgs) + "|" + sortOrder;
+    }
+
+    /**
+     * Return a copy of the cached result for the given key, or {@code null}
+     * when nothing valid is cached. The copy uses the given {@link Requery}
+     * to refresh itself.
+     */
+    public Cursor get(String key, Requery requery) {
+        final Entry entry;
+        synchronized (this) {
+            entry = mEntries.get(key);
+        }
+        if (entry == null) return null;
+        if (LOGV) Log.v(TAG, "hit for " + key);
+        return new EntryCursor(entry, requery);
+    }
+
+    /**
+     * Return the current write version, which should be captured before
+     * running a query and then passed to {@link #put}.
+     */
+    public synchronized int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Materialize the given {@link Cursor} and cache it under the given key,
+     * unless any of its source tables were written after {@code version} was
+     * captured. Always closes the source and returns an equivalent copy, which
+     * uses the given {@link Requery} to refresh itself.
+     */
+    public Cursor put(String key, String[] tables, int version, Cursor cursor,
+            Requery requery) {
+        if (cursor == null) return null;
+
+        final Entry entry;
+        try {
+            entry = new Entry(cursor, tables);
+        } finally {
+            cursor.close();
+        }
+
+        synchronized (this) {
+            if (entry.mBytes <= mMaxBytes / MAX_ENTRY_FRACTION
+                    && !isModifiedSince(tables, version)) {
+                final Entry previous = mEntries.put(key, entry);
+                if (previous != null) {
+                    mBytes -= previous.mBytes;
+                }
+                mBytes += entry.mBytes;
+                trimToSize();
+            } else if (LOGV) {
+                Log.v(TAG, "not caching " + key + ", " + entry.mBytes + " bytes");
+            }
+        }
+        return new EntryCursor(entry, requery);
+    }
+
+    /**
+     * Drop any cached results that were read from the given table.
+     */
+    public synchronized void invalidate(String table) {
+        mTableVersions.put(table, ++mVersion);
+
+        final Iterator<Entry> iter = mEntries.values().iterator();
+        while (iter.hasNext()) {
+            final Entry entry = iter.next();
+            if (entry.dependsOn(table)) {
+                iter.remove();
+                mBytes -= entry.mBytes;
+            }
+        }
+    }
+
+    /** Drop least recently used entries until under the byte budget. */
+    private void trimToSize() {
+        final Iterator<Entry> iter = mEntries.values().iterator();
+        while (mBytes > mMaxBytes && iter.hasNext()) {
+            mBytes -= iter.next().mBytes;
+            iter.remove();
+        }
+    }
+
+    /**
+     * Return whether any of the given tables were written after
+     * {@code version} was captured from {@link #getVersion()}.
+     */
+    public synchronized boolean isModifiedSince(String[] tables, int version) {
+        for (String table : tables) {
+            final Integer modified = mTableVersions.get(table);
+            if (modified != null && modified > version) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Immutable copy of a query result, along with the tables it depends on.
+     */
+    private static class Entry {
+        private final String[] mColumns;
+        private final String[][] mRows;
+        private final String[] mTables;
+
+        /** Estimated memory held by {@link #mRows}. */
+        private final int mBytes;
+
+        public Entry(Cursor cursor, String[] tables) {
+            mColumns = cursor.getColumnNames();
+            mRows = new String[cursor.getCount()][];
+            mTables = tables;
+
+            final int columnCount = mColumns.length;
+            int bytes = 0;
+            int i = 0;
+            while (cursor.moveToNext()) {
+                final String[] row = new String[columnCount];
+                bytes += ROW_OVERHEAD_BYTES + 4 * columnCount;
+                for (int j = 0; j < columnCount; j++) {
+                    row[j] = cursor.getString(j);
+                    if (row[j] != null) {
+                        bytes += STRING_OVERHEAD_BYTES + 2 * row[j].length();
+                    }
+                }
+                mRows[i++] = row;
+            }
+            mBytes = bytes;
+        }
+
+        public boolean dependsOn(String table) {
+            for (String dependency : mTables) {
+                if (dependency.equals(table)) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Read-only {@link Cursor} over the rows of an {@link Entry}, which swaps
+     * in the rows of a fresh query when requeried.
+     */
+    private static class EntryCursor extends AbstractCursor {
+        private final Requery mRequery;
+        private Entry mEntry;
+
+        public EntryCursor(Entry entry, Requery requery) {
+            mEntry = entry;
+            mRequery = requery;
+        }
+
+        @Override
+        public boolean requery() {
+            if (isClosed()) return false;
+
+            final Cursor cursor = mRequery.query();
+            if (cursor == null) return false;
+            try {
+                mEntry = (cursor instanceof EntryCursor) ? ((EntryCursor) cursor).mEntry
+                        : new Entry(cursor, mEntry.mTables);
+            } finally {
+                cursor.close();
+            }
+
+            mPos = -1;
+            return super.requery();
+        }
+
+        @Override
+        public int getCount() {
+            return mEntry.mRows.length;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mEntry.mColumns;
+        }
+
+        private String get(int column) {
+            if (column < 0 || column >= mEntry.mColumns.length) {
+                throw new CursorIndexOutOfBoundsException("Requested column: " + column
+                        + ", # of columns: " + mEntry.mColumns.length);
+            }
+            if (mPos < 0) {
+                throw new CursorIndexOutOfBoundsException("Before first row.");
+            }
+            if (mPos >= mEntry.mRows.length) {
+                throw new CursorIndexOutOfBoundsException("After last row.");
+            }
+            return mEntry.mRows[mPos][column];
+        }
+
+        @Override
+        public String getString(int column) {
+            return get(column);
+        }
+
+        @Override
+        public short getShort(int column) {
+            final String value = get(column);
+            return value != null ? Short.parseShort(value) : 0;
+        }
+
+        @Override
+        public int getInt(int column) {
+            final String value = get(column);
+            return value != null ? Integer.parseInt(value) : 0;
+        }
+
+        @Override
+        public long getLong(int column) {
+            final String value = get(column);
+            return value != null ? Long.parseLong(value) : 0;
+        }
+
+        @Override
+        public float getFloat(int column) {
+            final String value = get(column);
+            return value != null ? Float.parseFloat(value) : 0;
+        }
+
+        @Override
+        public double getDouble(int column) {
+            final String value = get(column);
+            return value != null ? Double.parseDouble(value) : 0;
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return get(column) == null;
+        }
+    }
+}
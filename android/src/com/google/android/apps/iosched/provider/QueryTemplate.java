@@ -0,0 +1,199 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.iosched.provider;
+
+import com.google.android.apps.iosched.util.Lists;
+import com.google.android.apps.iosched.util.Maps;
+import com.google.android.apps.iosched.util.SelectionBuilder;
+
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Precomputed description of the query behind a single {@link UriMatcher}
+ * code, covering the table, projection map and fixed {@code WHERE} clauses.
+ * Arguments are read from {@link Uri} path segments when the query runs, so
+ * each query only binds values instead of rebuilding a
+ * {@link SelectionBuilder}. Instances are immutable and shared across threads.
+ */
+class QueryTemplate {
+    private final String mTable;
+    private final HashMap<String, String> mProjectionMap;
+    private final String mSelection;
+    private final int[] mArgSegments;
+
+    private QueryTemplate(Builder builder) {
+        mTable = builder.mTable;
+        mProjectionMap = builder.mProjectionMap;
+        mSelection = builder.mSelection.toString();
+        final ArrayList<Integer> argSegments = Lists.newArrayList();
+        argSegments.addAll(builder.mTableArgSegments);
+        argSegments.addAll(builder.mArgSegments);
+        mArgSegments = new int[argSegments.size()];
+        for (int i = 0; i < mArgSegments.length; i++) {
+            mArgSegments[i] = argSegments.get(i);
+        }
+    }
+
+    public String getTable() {
+        return mTable;
+    }
+
+    /**
+     * Return the complete selection, combining the fixed clauses of this
+     * template with the given caller selection using {@code AND}.
+     */
+    public String getSelection(String selection) {
+        if (TextUtils.isEmpty(selection)) {
+            return mSelection;
+        } else if (mSelection.length() == 0) {
+            return "(" + selection + ")";
+        } else {
+            return mSelection + " AND (" + selection + ")";
+        }
+    }
+
+    /**
+     * Return the complete selection arguments, reading template arguments from
+     * the path of the given {@link Uri} followed by any caller arguments.
+     * Returns {@code null} when there are no arguments.
+     */
+    public String[] getSelectionArgs(Uri uri, String selection, String[] selectionArgs) {
+        final int callerCount = selectionArgs != null ? selectionArgs.length : 0;
+        if (callerCount > 0 && TextUtils.isEmpty(selection)) {
+            throw new IllegalArgumentException(
+                    "Valid selection required when including arguments");
+        }
+
+        final int templateCount = mArgSegments.length;
+        if (templateCount == 0) {
+            return callerCount > 0 ? selectionArgs : null;
+        }
+
+        final List<String> segments = uri.getPathSegments();
+        final String[] args = new String[templateCount + callerCount];
+        for (int i = 0; i < templateCount; i++) {
+            args[i] = segments.get(mArgSegments[i]);
+        }
+        if (callerCount > 0) {
+            System.arraycopy(selectionArgs, 0, args, templateCount, callerCount);
+        }
+        return args;
+    }
+
+    /**
+     * Map the requested columns through the projection map of this template,
+     * replacing values in place.
+     */
+    public void mapColumns(String[] columns) {
+        if (columns == null || mProjectionMap.isEmpty()) return;
+        for (int i = 0; i < columns.length; i++) {
+            final String target = mProjectionMap.get(columns[i]);
+            if (target != null) {
+                columns[i] = target;
+            }
+        }
+    }
+
+    /**
+     * Execute a query described by this template against the given
+     * {@link Uri}, combined with any caller selection.
+     */
+    public Cursor query(SQLiteDatabase db, Uri uri, String[] projection, String selection,
+            String[] selectionArgs, String sortOrder) {
+        final String[] args = getSelectionArgs(uri, selection, selectionArgs);
+        mapColumns(projection);
+        return db.query(mTable, projection, getSelection(selection), args, null, null,
+                sortOrder);
+    }
+
+    @Override
+    public String toString() {
+        return "QueryTemplate[table=" + mTable + ", selection=" + mSelection + "]";
+    }
+
+    /**
+     * Builder for {@link QueryTemplate}, following the same conventions as
+     * {@link SelectionBuilder}. Each clause is surrounded with parenthesis and
+     * combined using {@code AND}.
+     */
+    public static class Builder {
+        private String mTable;
+        private final HashMap<String, String> mProjectionMap = Maps.newHashMap();
+        private final StringBuilder mSelection = new StringBuilder();
+        private final ArrayList<Integer> mTableArgSegments = Lists.newArrayList();
+        private final ArrayList<Integer> mArgSegments = Lists.newArrayList();
+
+        public Builder table(String table) {
+            mTable = table;
+            return this;
+        }
+
+        /**
+         * Set a table clause that contains its own {@code ?} placeholders,
+         * such as a subquery, binding each to the {@link Uri} path segment at
+         * the matching index. These arguments come before any selection.
+         */
+        public Builder table(String table, int... argSegments) {
+            mTable = table;
+            mTableArgSegments.clear();
+            for (int segment : argSegments) {
+                mTableArgSegments.add(segment);
+            }
+            return this;
+        }
+
+        public Builder mapToTable(String column, String table) {
+            mProjectionMap.put(column, table + "." + column);
+            return this;
+        }
+
+        public Builder map(String fromColumn, String toClause) {
+            mProjectionMap.put(fromColumn, toClause + " AS " + fromColumn);
+            return this;
+        }
+
+        /**
+         * Append the given selection clause, binding each {@code ?} to the
+         * {@link Uri} path segment at the matching index.
+         */
+        public Builder where(String selection, int... argSegments) {
+            if (mSelection.length() > 0) {
+                mSelection.append(" AND ");
+            }
+            mSelection.append("(").append(selection).append(")");
+            for (int segment : argSegments) {
+                mArgSegments.add(segment);
+            }
+            return this;
+        }
+
+        public QueryTemplate build() {
+            if (mTable == null) {
+                throw new IllegalStateException("Table not specified");
+            }
+            return new QueryTemplate(this);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.iosched.provider;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * {@link CursorWrapper} that presents full-text search results in order of
+ * relevance, scored from a {@code matchinfo(table, 'pcx')} column. Rows are
+ * reordered by position only, without copying, and equal scores keep the
+ * order of the wrapped {@link Cursor}. An optional limit exposes only the
+ * highest ranked rows.
+ */
+class RankedSearchCursor extends CursorWrapper {
+    private final int mMatchInfoColumn;
+    private final float[] mWeights;
+    private final int mLimit;
+
+    /** Maps each ranked position to a position in the wrapped cursor. */
+    private int[] mOrder;
+    private int mPosition = -1;
+
+    public RankedSearchCursor(Cursor cursor, int matchInfoColumn, float[] weights) {
+        this(cursor, matchInfoColumn, weights, Integer.MAX_VALUE);
+    }
+
+    public RankedSearchCursor(Cursor cursor, int matchInfoColumn, float[] weights, int limit) {
+        super(cursor);
+        mMatchInfoColumn = matchInfoColumn;
+        mWeights = weights;
+        mLimit = limit;
+        rank();
+    }
+
+    private void rank() {
+        final int count = super.getCount();
+        final float[] scores = new float[count];
+        final Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            super.moveToPosition(i);
+            scores[i] = score(super.getBlob(mMatchInfoColumn), mWeights);
+            order[i] = i;
+        }
+
+        // Arrays.sort() on objects is stable, preserving the SQL order for ties
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer lhs, Integer rhs) {
+                return Float.compare(scores[rhs], scores[lhs]);
+            }
+        });
+
+        mOrder = new int[Math.min(count, mLimit)];
+        for (int i = 0; i < mOrder.length; i++) {
+            mOrder[i] = order[i];
+        }
+        mPosition = -1;
+    }
+
+    /**
+     * Score a {@code matchinfo()} blob using the {@code 'pcx'} format, adding
+     * up the weighted share of each phrase's hits found in each column.
+     */
+    static float score(byte[] matchInfo, float[] weights) {
+        if (matchInfo == null) return 0f;
+        final IntBuffer info = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder())
+                .asIntBuffer();
+        final int phrases = info.get(0);
+        final int columns = info.get(1);
+
+        float score = 0f;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columns; column++) {
+                final int index = 2 + 3 * (phrase * columns + column);
+                final int hits = info.get(index);
+                final int globalHits = info.get(index + 1);
+                if (hits > 0 && globalHits > 0) {
+                    final float weight = column < weights.length ? weights[column] : 1f;
+                    score += weight * hits / globalHits;
+                }
+            }
+        }
+        return score;
+    }
+
+    @Override
+    public boolean requery() {
+        final boolean result = super.requery();
+        if (result) rank();
+        return result;
+    }
+
+    @Override
+    public int getCount() {
+        return mOrder.length;
+    }
+
+    @Override
+    public int getPosition() {
+        return mPosition;
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        final int count = getCount();
+        if (position >= count) {
+            mPosition = count;
+            return false;
+        }
+        if (position < 0) {
+            mPosition = -1;
+            return false;
+        }
+        mPosition = position;
+        return super.moveToPosition(mOrder[position]);
+    }
+
+    @Override
+    public boolean move(int offset) {
+        return moveToPosition(mPosition + offset);
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    @Override
+    public boolean moveToLast() {
+        return moveToPosition(getCount() - 1);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return moveToPosition(mPosition + 1);
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        return moveToPosition(mPosition - 1);
+    }
+
+    @Override
+    public boolean isFirst() {
+        return mPosition == 0 && getCount() != 0;
+    }
+
+    @Override
+    public boolean isLast() {
+        final int count = getCount();
+        return mPosition == count - 1 && count != 0;
+    }
+
+    @Override
+    public boolean isBeforeFirst() {
+        return getCount() == 0 || mPosition == -1;
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        return getCount() == 0 || mPosition == getCount();
+    }
+}
@@ -154,18 +154,32 @@ public class ScheduleContract {
         String VENDOR_STARRED = "vendor_starred";
     }
 
+    interface SearchColumns {
+        /** Kind of entity a search result refers to, such as {@link Search#TYPE_SESSION}. */
+        String SEARCH_TYPE = "search_type";
+        /** Unique string identifying the entity, such as its {@link Sessions#SESSION_ID}. */
+        String SEARCH_ENTITY_ID = "search_entity_id";
+        /** Display title of the entity. */
+        String SEARCH_TITLE = "search_title";
+        /** Excerpt of matching text, with matches wrapped in braces. */
+        String SEARCH_SNIPPET = "search_snippet";
+    }
+
     public static final String CONTENT_AUTHORITY = "com.google.android.apps.iosched";
 
     private static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
 
     private static final String PATH_BLOCKS = "blocks";
     private static final String PATH_AT = "at";
+    private static final String PATH_TRANSITION = "transition";
     private static final String PATH_BETWEEN = "between";
+    private static final String PATH_RANGE = "range";
     private static final String PATH_TRACKS = "tracks";
     private static final String PATH_ROOMS = "rooms";
     private static final String PATH_SESSIONS = "sessions";
     private static final String PATH_STARRED = "starred";
     private static final String PATH_SPEAKERS = "speakers";
+    private static final String PATH_DETAIL = "detail";
     private static final String PATH_VENDORS = "vendors";
     private static final String PATH_EXPORT = "export";
     private static final String PATH_SEARCH = "search";
@@ -193,6 +207,12 @@ public class ScheduleContract {
          */
         public static final String CONTAINS_STARRED = "contains_starred";
 
+        /**
+         * Time in milliseconds when the {@link Sessions} happening at a given
+         * time next change, or {@code null} if they never do.
+         */
+        public static final String TRANSITION_TIME = "transition_time";
+
         /** Default "ORDER BY" clause. */
         public static final String DEFAULT_SORT = BlocksColumns.BLOCK_START + " ASC, "
                 + BlocksColumns.BLOCK_END + " ASC";
@@ -219,6 +239,26 @@ public class ScheduleContract {
                     String.valueOf(startTime)).appendPath(String.valueOf(endTime)).build();
         }
 
+        /**
+         * Build {@link Uri} that returns a single row holding the earliest
+         * {@link #BLOCK_START} and latest {@link #BLOCK_END} of all
+         * {@link Blocks}.
+         */
+        public static Uri buildBlocksRangeUri() {
+            return CONTENT_URI.buildUpon().appendPath(PATH_RANGE).build();
+        }
+
+        /**
+         * Build {@link Uri} that returns a single row holding the
+         * {@link #TRANSITION_TIME} after the requested time, which is when a
+         * block next starts or ends, changing the results of
+         * {@link Sessions#buildSessionsAtDirUri(long)}.
+         */
+        public static Uri buildNextTransitionUri(long time) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_TRANSITION)
+                    .appendPath(String.valueOf(time)).build();
+        }
+
         /** Read {@link #BLOCK_ID} from {@link Blocks} {@link Uri}. */
         public static String getBlockId(Uri uri) {
             return uri.getPathSegments().get(1);
@@ -358,6 +398,12 @@ public class ScheduleContract {
 
         public static final String SEARCH_SNIPPET = "search_snippet";
 
+        /**
+         * "ORDER BY" clause for {@link #buildSearchUri(String)} results, which
+         * orders by relevance when supported, otherwise {@link #DEFAULT_SORT}.
+         */
+        public static final String SEARCH_SORT = "search_relevance";
+
         // TODO: shortcut primary track to offer sub-sorting here
         /** Default "ORDER BY" clause. */
         public static final String DEFAULT_SORT = BlocksColumns.BLOCK_START + " ASC,"
@@ -384,6 +430,24 @@ public class ScheduleContract {
             return CONTENT_URI.buildUpon().appendPath(sessionId).appendPath(PATH_TRACKS).build();
         }
 
+        /**
+         * Build {@link Uri} that references everything shown for the
+         * requested {@link #SESSION_ID} in a single query: one row for each
+         * of its {@link Speakers}, or a single row without any, each also
+         * holding session, block, room and {@link Tracks} columns. The track
+         * is the given {@link Tracks#TRACK_ID} when the session belongs to
+         * it, otherwise its first track, such as when passing
+         * {@link Tracks#ALL_TRACK_ID}.
+         */
+        public static Uri buildSessionDetailUri(String sessionId, String trackId) {
+            return CONTENT_URI.buildUpon().appendPath(sessionId).appendPath(PATH_DETAIL)
+                    .appendPath(trackId).build();
+        }
+
+        /**
+         * Build {@link Uri} that references any {@link Sessions} whose block
+         * contains the requested time, with both ends inclusive.
+         */
         public static Uri buildSessionsAtDirUri(long time) {
             return CONTENT_URI.buildUpon().appendPath(PATH_AT).appendPath(String.valueOf(time))
                     .build();
@@ -398,6 +462,12 @@ public class ScheduleContract {
             return pathSegments.size() >= 2 && PATH_SEARCH.equals(pathSegments.get(1));
         }
 
+        /** Whether the given {@link Uri} was built by {@link #buildSessionsAtDirUri(long)}. */
+        public static boolean isSessionsAtUri(Uri uri) {
+            List<String> pathSegments = uri.getPathSegments();
+            return pathSegments.size() >= 2 && PATH_AT.equals(pathSegments.get(1));
+        }
+
         /** Read {@link #SESSION_ID} from {@link Sessions} {@link Uri}. */
         public static String getSessionId(Uri uri) {
             return uri.getPathSegments().get(1);
@@ -479,6 +549,12 @@ public class ScheduleContract {
 
         public static final String SEARCH_SNIPPET = "search_snippet";
 
+        /**
+         * "ORDER BY" clause for {@link #buildSearchUri(String)} results, which
+         * orders by relevance when supported, otherwise {@link #DEFAULT_SORT}.
+         */
+        public static final String SEARCH_SORT = "search_relevance";
+
         /** Default "ORDER BY" clause. */
         public static final String DEFAULT_SORT = VendorsColumns.VENDOR_NAME
                 + " COLLATE NOCASE ASC";
@@ -515,6 +591,62 @@ public class ScheduleContract {
         }
     }
 
+    /**
+     * Combined search results across {@link Sessions}, {@link Vendors} and
+     * {@link Speakers}, returned from a single query in order of relevance.
+     */
+    public static class Search implements SearchColumns, BaseColumns {
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_SEARCH).build();
+
+        public static final String CONTENT_TYPE =
+                "vnd.android.cursor.dir/vnd.iosched.search";
+
+        public static final String TYPE_SESSION = "session";
+        public static final String TYPE_VENDOR = "vendor";
+        public static final String TYPE_SPEAKER = "speaker";
+
+        /**
+         * "ORDER BY" clause used when results can't be ranked by relevance,
+         * or when requested explicitly. Results are otherwise ranked when no
+         * sort order is given.
+         */
+        public static final String DEFAULT_SORT = SearchColumns.SEARCH_TYPE + " ASC,"
+                + SearchColumns.SEARCH_TITLE + " COLLATE NOCASE ASC";
+
+        /** Query parameter holding the maximum number of results to return. */
+        public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+        public static Uri buildSearchUri(String query) {
+            return CONTENT_URI.buildUpon().appendPath(query).build();
+        }
+
+        public static Uri buildSearchUri(String query, int limit) {
+            return CONTENT_URI.buildUpon().appendPath(query)
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit)).build();
+        }
+
+        public static String getSearchQuery(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        /**
+         * Build {@link Uri} that displays the entity behind a search result,
+         * given its {@link #SEARCH_TYPE} and {@link #SEARCH_ENTITY_ID}.
+         */
+        public static Uri buildEntityUri(String type, String entityId) {
+            if (TYPE_SESSION.equals(type)) {
+                return Sessions.buildSessionUri(entityId);
+            } else if (TYPE_VENDOR.equals(type)) {
+                return Vendors.buildVendorUri(entityId);
+            } else if (TYPE_SPEAKER.equals(type)) {
+                return Speakers.buildSessionsDirUri(entityId);
+            } else {
+                throw new IllegalArgumentException("Unknown search type: " + type);
+            }
+        }
+    }
+
     public static class SearchSuggest {
         public static final Uri CONTENT_URI =
                 BASE_CONTENT_URI.buildUpon().appendPath(PATH_SEARCH_SUGGEST).build();
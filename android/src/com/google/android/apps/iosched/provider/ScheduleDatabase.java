@@ -33,8 +33,11 @@ import com.google.android.apps.iosched.provider.ScheduleContract.VendorsColumns;
 import android.app.SearchManager;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.provider.BaseColumns;
+import android.text.TextUtils;
 import android.util.Log;
 
 /**
@@ -52,8 +55,22 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
     private static final int VER_LAUNCH = 21;
     private static final int VER_SESSION_FEEDBACK_URL = 22;
     private static final int VER_SESSION_NOTES_URL_SLUG = 23;
+    private static final int VER_SEARCH_FTS4 = 24;
+    private static final int VER_SPEAKERS_SEARCH = 25;
+    private static final int VER_BLOCK_TIME_INDEXES = 26;
 
-    private static final int DATABASE_VERSION = VER_SESSION_NOTES_URL_SLUG;
+    private static final int DATABASE_VERSION = VER_BLOCK_TIME_INDEXES;
+
+    /**
+     * Minimum SQLite version that supports FTS4 with {@code content=} and
+     * {@code prefix=} options. Older platforms keep the original FTS3 tables.
+     */
+    private static final int[] MIN_CONTENT_SEARCH_VERSION = { 3, 7, 9 };
+
+    /** Prefix lengths indexed by FTS4 search tables for type-ahead queries. */
+    private static final String SEARCH_PREFIX_LENGTHS = "2,3";
+
+    private volatile boolean mContentSearch = false;
 
     interface Tables {
         String BLOCKS = "blocks";
@@ -67,6 +84,7 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
 
         String SESSIONS_SEARCH = "sessions_search";
         String VENDORS_SEARCH = "vendors_search";
+        String SPEAKERS_SEARCH = "speakers_search";
 
         String SEARCH_SUGGEST = "search_suggest";
 
@@ -74,6 +92,14 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
                 + "LEFT OUTER JOIN blocks ON sessions.block_id=blocks.block_id "
                 + "LEFT OUTER JOIN rooms ON sessions.room_id=rooms.room_id";
 
+        /**
+         * Same rows as {@link #SESSIONS_JOIN_BLOCKS_ROOMS} for sessions with a
+         * block, but led by blocks so that block time indexes drive the join.
+         */
+        String BLOCKS_JOIN_SESSIONS_ROOMS = "blocks "
+                + "INNER JOIN sessions ON sessions.block_id=blocks.block_id "
+                + "LEFT OUTER JOIN rooms ON sessions.room_id=rooms.room_id";
+
         String VENDORS_JOIN_TRACKS = "vendors "
                 + "LEFT OUTER JOIN tracks ON vendors.track_id=tracks.track_id";
 
@@ -104,13 +130,27 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
 
     }
 
+    interface Indexes {
+        String BLOCKS_START_END = "blocks_start_end_index";
+        String BLOCKS_END = "blocks_end_index";
+        String SESSIONS_BLOCK_ID = "sessions_block_id_index";
+    }
+
     private interface Triggers {
         String SESSIONS_SEARCH_INSERT = "sessions_search_insert";
         String SESSIONS_SEARCH_DELETE = "sessions_search_delete";
         String SESSIONS_SEARCH_UPDATE = "sessions_search_update";
+        String SESSIONS_SEARCH_BEFORE_UPDATE = "sessions_search_before_update";
 
         String VENDORS_SEARCH_INSERT = "vendors_search_insert";
         String VENDORS_SEARCH_DELETE = "vendors_search_delete";
+        String VENDORS_SEARCH_UPDATE = "vendors_search_update";
+        String VENDORS_SEARCH_BEFORE_UPDATE = "vendors_search_before_update";
+
+        String SPEAKERS_SEARCH_INSERT = "speakers_search_insert";
+        String SPEAKERS_SEARCH_DELETE = "speakers_search_delete";
+        String SPEAKERS_SEARCH_UPDATE = "speakers_search_update";
+        String SPEAKERS_SEARCH_BEFORE_UPDATE = "speakers_search_before_update";
     }
 
     public interface SessionsSpeakers {
@@ -133,17 +173,51 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
         String BODY = "body";
     }
 
+    interface SpeakersSearchColumns {
+        String SPEAKER_ID = "speaker_id";
+        String BODY = "body";
+    }
+
+    /**
+     * Columns indexed by FTS4 search tables, which read their content directly
+     * from the source table. Order matches the columns reported by
+     * {@code matchinfo()}.
+     */
+    interface SearchContent {
+        String[] SESSIONS = {
+                SessionsColumns.SESSION_TITLE,
+                SessionsColumns.SESSION_ABSTRACT,
+                SessionsColumns.SESSION_KEYWORDS,
+        };
+
+        String[] VENDORS = {
+                VendorsColumns.VENDOR_NAME,
+                VendorsColumns.VENDOR_DESC,
+                VendorsColumns.VENDOR_PRODUCT_DESC,
+        };
+
+        String[] SPEAKERS = {
+                SpeakersColumns.SPEAKER_NAME,
+                SpeakersColumns.SPEAKER_ABSTRACT,
+                SpeakersColumns.SPEAKER_COMPANY,
+        };
+    }
+
     /** Fully-qualified field names. */
     private interface Qualified {
         String SESSIONS_SEARCH_SESSION_ID = Tables.SESSIONS_SEARCH + "."
                 + SessionsSearchColumns.SESSION_ID;
         String VENDORS_SEARCH_VENDOR_ID = Tables.VENDORS_SEARCH + "."
                 + VendorsSearchColumns.VENDOR_ID;
+        String SPEAKERS_SEARCH_SPEAKER_ID = Tables.SPEAKERS_SEARCH + "."
+                + SpeakersSearchColumns.SPEAKER_ID;
 
         String SESSIONS_SEARCH = Tables.SESSIONS_SEARCH + "(" + SessionsSearchColumns.SESSION_ID
                 + "," + SessionsSearchColumns.BODY + ")";
         String VENDORS_SEARCH = Tables.VENDORS_SEARCH + "(" + VendorsSearchColumns.VENDOR_ID + ","
                 + VendorsSearchColumns.BODY + ")";
+        String SPEAKERS_SEARCH = Tables.SPEAKERS_SEARCH + "("
+                + SpeakersSearchColumns.SPEAKER_ID + "," + SpeakersSearchColumns.BODY + ")";
     }
 
     /** {@code REFERENCES} clauses. */
@@ -173,6 +247,12 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
         String VENDORS_BODY = "(new." + Vendors.VENDOR_NAME
                 + "||'; '||new." + Vendors.VENDOR_DESC
                 + "||'; '||new." + Vendors.VENDOR_PRODUCT_DESC + ")";
+
+        /**
+         * Subquery used to build the {@link SpeakersSearchColumns#BODY} string
+         * used for indexing {@link Speakers} content. Every field is optional.
+         */
+        String SPEAKERS_BODY = buildSpeakersBody("new.");
     }
 
     public ScheduleDatabase(Context context) {
@@ -266,8 +346,8 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
                 + VendorsColumns.VENDOR_STARRED + " INTEGER,"
                 + "UNIQUE (" + VendorsColumns.VENDOR_ID + ") ON CONFLICT REPLACE)");
 
-        createSessionsSearch(db);
-        createVendorsSearch(db);
+        createBlockTimeIndexes(db);
+        createSearchTables(db, supportsContentSearch(db));
 
         db.execSQL("CREATE TABLE " + Tables.SEARCH_SUGGEST + " ("
                 + BaseColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
@@ -275,6 +355,168 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
 
     }
 
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+
+        // Rows removed by "ON CONFLICT REPLACE" only fire delete triggers when
+        // recursive triggers are enabled, otherwise search indexes keep stale
+        // entries. Older SQLite versions silently ignore this pragma.
+        db.execSQL("PRAGMA recursive_triggers = ON");
+
+        mContentSearch = isContentSearchTable(db, Tables.SESSIONS_SEARCH);
+    }
+
+    /**
+     * Return if search tables use the FTS4 layout, which reads content from
+     * {@link Tables#SESSIONS} and {@link Tables#VENDORS} and supports ranking
+     * with {@code matchinfo()}. Only valid once the database has been opened.
+     */
+    public boolean hasContentSearch() {
+        return mContentSearch;
+    }
+
+    /**
+     * Create search tables and triggers for {@link Tables#SESSIONS_SEARCH},
+     * {@link Tables#VENDORS_SEARCH} and {@link Tables#SPEAKERS_SEARCH}, using
+     * either the FTS4 layout or the original FTS3 layout.
+     */
+    static void createSearchTables(SQLiteDatabase db, boolean contentSearch) {
+        createSessionsAndVendorsSearch(db, contentSearch);
+        createSpeakersSearch(db, contentSearch);
+    }
+
+    /**
+     * Create only {@link Tables#SESSIONS_SEARCH} and {@link Tables#VENDORS_SEARCH}
+     * with their triggers, as they existed before {@link Tables#SPEAKERS_SEARCH}.
+     */
+    static void createSessionsAndVendorsSearch(SQLiteDatabase db, boolean contentSearch) {
+        if (contentSearch) {
+            createContentSearch(db, Tables.SESSIONS_SEARCH, Tables.SESSIONS,
+                    SearchContent.SESSIONS, Triggers.SESSIONS_SEARCH_INSERT,
+                    Triggers.SESSIONS_SEARCH_DELETE, Triggers.SESSIONS_SEARCH_BEFORE_UPDATE,
+                    Triggers.SESSIONS_SEARCH_UPDATE);
+            createContentSearch(db, Tables.VENDORS_SEARCH, Tables.VENDORS,
+                    SearchContent.VENDORS, Triggers.VENDORS_SEARCH_INSERT,
+                    Triggers.VENDORS_SEARCH_DELETE, Triggers.VENDORS_SEARCH_BEFORE_UPDATE,
+                    Triggers.VENDORS_SEARCH_UPDATE);
+        } else {
+            createSessionsSearch(db);
+            createVendorsSearch(db);
+        }
+    }
+
+    /**
+     * Drop all search tables and triggers, regardless of layout.
+     */
+    static void dropSearchTables(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SESSIONS_SEARCH_INSERT);
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SESSIONS_SEARCH_DELETE);
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SESSIONS_SEARCH_UPDATE);
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SESSIONS_SEARCH_BEFORE_UPDATE);
+        db.execSQL("DROP TABLE IF EXISTS " + Tables.SESSIONS_SEARCH);
+
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.VENDORS_SEARCH_INSERT);
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.VENDORS_SEARCH_DELETE);
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.VENDORS_SEARCH_UPDATE);
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.VENDORS_SEARCH_BEFORE_UPDATE);
+        db.execSQL("DROP TABLE IF EXISTS " + Tables.VENDORS_SEARCH);
+
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SPEAKERS_SEARCH_INSERT);
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SPEAKERS_SEARCH_DELETE);
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SPEAKERS_SEARCH_UPDATE);
+        db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SPEAKERS_SEARCH_BEFORE_UPDATE);
+        db.execSQL("DROP TABLE IF EXISTS " + Tables.SPEAKERS_SEARCH);
+    }
+
+    /**
+     * Create an FTS4 table that indexes the given columns of a source table
+     * without storing another copy of their text, along with the triggers
+     * that keep it in sync. Index rows share the {@link BaseColumns#_ID} of
+     * their source row as {@code docid}.
+     */
+    private static void createContentSearch(SQLiteDatabase db, String searchTable,
+            String contentTable, String[] columns, String insertTrigger, String deleteTrigger,
+            String beforeUpdateTrigger, String updateTrigger) {
+        final String columnList = TextUtils.join(",", columns);
+        final StringBuilder newValues = new StringBuilder("new." + BaseColumns._ID);
+        for (String column : columns) {
+            newValues.append(",new.").append(column);
+        }
+
+        // Using the "porter" tokenizer for simple stemming, so that
+        // "frustration" matches "frustrated."
+        db.execSQL("CREATE VIRTUAL TABLE " + searchTable + " USING fts4("
+                + columnList + ","
+                + "content=\"" + contentTable + "\","
+                + "prefix=\"" + SEARCH_PREFIX_LENGTHS + "\","
+                + "tokenize=porter)");
+
+        final String deleteOld = "DELETE FROM " + searchTable + " WHERE docid=old."
+                + BaseColumns._ID + ";";
+        final String insertNew = "INSERT INTO " + searchTable + "(docid," + columnList
+                + ") VALUES(" + newValues + ");";
+
+        // External content must be removed while the old values are still
+        // readable, and only indexed columns need to trigger updates.
+        db.execSQL("CREATE TRIGGER " + insertTrigger + " AFTER INSERT ON " + contentTable
+                + " BEGIN " + insertNew + " END;");
+        db.execSQL("CREATE TRIGGER " + deleteTrigger + " BEFORE DELETE ON " + contentTable
+                + " BEGIN " + deleteOld + " END;");
+        db.execSQL("CREATE TRIGGER " + beforeUpdateTrigger + " BEFORE UPDATE OF " + columnList
+                + " ON " + contentTable + " BEGIN " + deleteOld + " END;");
+        db.execSQL("CREATE TRIGGER " + updateTrigger + " AFTER UPDATE OF " + columnList
+                + " ON " + contentTable + " BEGIN " + insertNew + " END;");
+    }
+
+    /**
+     * Rebuild the FTS4 session and vendor search indexes from their content
+     * tables. Speaker search is rebuilt by the upgrade step that adds it.
+     */
+    private static void rebuildContentSearch(SQLiteDatabase db) {
+        db.execSQL("INSERT INTO " + Tables.SESSIONS_SEARCH + "(" + Tables.SESSIONS_SEARCH
+                + ") VALUES('rebuild')");
+        db.execSQL("INSERT INTO " + Tables.VENDORS_SEARCH + "(" + Tables.VENDORS_SEARCH
+                + ") VALUES('rebuild')");
+    }
+
+    /**
+     * Return if the platform SQLite supports the FTS4 layout used by
+     * {@link #createContentSearch}.
+     */
+    static boolean supportsContentSearch(SQLiteDatabase db) {
+        final SQLiteStatement statement = db.compileStatement("SELECT sqlite_version()");
+        try {
+            final String[] parts = statement.simpleQueryForString().split("\\.");
+            for (int i = 0; i < MIN_CONTENT_SEARCH_VERSION.length; i++) {
+                final int part = i < parts.length ? Integer.parseInt(parts[i]) : 0;
+                if (part != MIN_CONTENT_SEARCH_VERSION[i]) {
+                    return part > MIN_CONTENT_SEARCH_VERSION[i];
+                }
+            }
+            return true;
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Unable to parse SQLite version", e);
+            return false;
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static boolean isContentSearchTable(SQLiteDatabase db, String table) {
+        final SQLiteStatement statement = db.compileStatement(
+                "SELECT sql FROM sqlite_master WHERE type='table' AND name=?");
+        try {
+            statement.bindString(1, table);
+            final String sql = statement.simpleQueryForString();
+            return sql != null && sql.toLowerCase().contains("using fts4");
+        } catch (SQLiteDoneException e) {
+            return false;
+        } finally {
+            statement.close();
+        }
+    }
+
     /**
      * Create triggers that automatically build {@link Tables#SESSIONS_SEARCH}
      * as values are changed in {@link Tables#SESSIONS}.
@@ -343,6 +585,65 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
 
     }
 
+    /**
+     * Create {@link Tables#SPEAKERS_SEARCH} using the requested layout. The
+     * FTS3 layout mirrors {@link #createVendorsSearch}, with a {@code BODY}
+     * that tolerates missing fields.
+     */
+    private static void createSpeakersSearch(SQLiteDatabase db, boolean contentSearch) {
+        if (contentSearch) {
+            createContentSearch(db, Tables.SPEAKERS_SEARCH, Tables.SPEAKERS,
+                    SearchContent.SPEAKERS, Triggers.SPEAKERS_SEARCH_INSERT,
+                    Triggers.SPEAKERS_SEARCH_DELETE, Triggers.SPEAKERS_SEARCH_BEFORE_UPDATE,
+                    Triggers.SPEAKERS_SEARCH_UPDATE);
+            return;
+        }
+
+        db.execSQL("CREATE VIRTUAL TABLE " + Tables.SPEAKERS_SEARCH + " USING fts3("
+                + BaseColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + SpeakersSearchColumns.BODY + " TEXT NOT NULL,"
+                + SpeakersSearchColumns.SPEAKER_ID
+                        + " TEXT NOT NULL " + References.SPEAKER_ID + ","
+                + "UNIQUE (" + SpeakersSearchColumns.SPEAKER_ID + ") ON CONFLICT REPLACE,"
+                + "tokenize=porter)");
+
+        db.execSQL("CREATE TRIGGER " + Triggers.SPEAKERS_SEARCH_INSERT + " AFTER INSERT ON "
+                + Tables.SPEAKERS + " BEGIN INSERT INTO " + Qualified.SPEAKERS_SEARCH + " "
+                + " VALUES(new." + Speakers.SPEAKER_ID + ", " + Subquery.SPEAKERS_BODY + ");"
+                + " END;");
+
+        db.execSQL("CREATE TRIGGER " + Triggers.SPEAKERS_SEARCH_DELETE + " AFTER DELETE ON "
+                + Tables.SPEAKERS + " BEGIN DELETE FROM " + Tables.SPEAKERS_SEARCH + " "
+                + " WHERE " + Qualified.SPEAKERS_SEARCH_SPEAKER_ID + "=old." + Speakers.SPEAKER_ID
+                + ";" + " END;");
+    }
+
+    /**
+     * Build the expression indexed as {@link SpeakersSearchColumns#BODY},
+     * reading columns with the given prefix, such as {@code "new."} inside a
+     * trigger.
+     */
+    private static String buildSpeakersBody(String prefix) {
+        return "(coalesce(" + prefix + Speakers.SPEAKER_NAME + ",'')"
+                + "||'; '||coalesce(" + prefix + Speakers.SPEAKER_ABSTRACT + ",'')"
+                + "||'; '||coalesce(" + prefix + Speakers.SPEAKER_COMPANY + ",'')" + ")";
+    }
+
+    /**
+     * Create indexes for finding {@link Blocks} by time and their
+     * {@link Sessions}. Blocks containing a time are found with a range scan
+     * over {@link Blocks#BLOCK_START}, bounded by the longest block, and the
+     * next block to start or end is a single index lookup.
+     */
+    private static void createBlockTimeIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + Indexes.BLOCKS_START_END + " ON " + Tables.BLOCKS + "("
+                + BlocksColumns.BLOCK_START + "," + BlocksColumns.BLOCK_END + ")");
+        db.execSQL("CREATE INDEX " + Indexes.BLOCKS_END + " ON " + Tables.BLOCKS + "("
+                + BlocksColumns.BLOCK_END + ")");
+        db.execSQL("CREATE INDEX " + Indexes.SESSIONS_BLOCK_ID + " ON " + Tables.SESSIONS + "("
+                + Sessions.BLOCK_ID + ")");
+    }
+
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         Log.d(TAG, "onUpgrade() from " + oldVersion + " to " + newVersion);
@@ -367,6 +668,38 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
                 db.execSQL("ALTER TABLE " + Tables.SESSIONS + " ADD COLUMN "
                         + SessionsColumns.SESSION_SLUG + " TEXT");
                 version = VER_SESSION_NOTES_URL_SLUG;
+
+            case VER_SESSION_NOTES_URL_SLUG:
+                // Version 24 moved search to FTS4 with prefix indexes, reading
+                // content from source tables, when the platform supports it.
+                if (supportsContentSearch(db)) {
+                    // Speaker search is left to the next step, which creates
+                    // it with whichever layout this step chose.
+                    dropSearchTables(db);
+                    createSessionsAndVendorsSearch(db, true);
+                    rebuildContentSearch(db);
+                }
+                version = VER_SEARCH_FTS4;
+
+            case VER_SEARCH_FTS4:
+                // Version 25 added speaker search, using the same layout as
+                // the existing search tables and indexing existing speakers.
+                final boolean contentSearch = isContentSearchTable(db, Tables.SESSIONS_SEARCH);
+                createSpeakersSearch(db, contentSearch);
+                if (contentSearch) {
+                    db.execSQL("INSERT INTO " + Tables.SPEAKERS_SEARCH + "("
+                            + Tables.SPEAKERS_SEARCH + ") VALUES('rebuild')");
+                } else {
+                    db.execSQL("INSERT INTO " + Qualified.SPEAKERS_SEARCH + " SELECT "
+                            + Speakers.SPEAKER_ID + "," + buildSpeakersBody("") + " FROM "
+                            + Tables.SPEAKERS);
+                }
+                version = VER_SPEAKERS_SEARCH;
+
+            case VER_SPEAKERS_SEARCH:
+                // Version 26 added indexes for looking up sessions by time.
+                createBlockTimeIndexes(db);
+                version = VER_BLOCK_TIME_INDEXES;
         }
 
         Log.d(TAG, "after upgrade logic, at version " + version);
@@ -382,13 +715,7 @@ public class ScheduleDatabase extends SQLiteOpenHelper {
             db.execSQL("DROP TABLE IF EXISTS " + Tables.SESSIONS_TRACKS);
             db.execSQL("DROP TABLE IF EXISTS " + Tables.VENDORS);
 
-            db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SESSIONS_SEARCH_INSERT);
-            db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.SESSIONS_SEARCH_DELETE);
-            db.execSQL("DROP TABLE IF EXISTS " + Tables.SESSIONS_SEARCH);
-
-            db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.VENDORS_SEARCH_INSERT);
-            db.execSQL("DROP TRIGGER IF EXISTS " + Triggers.VENDORS_SEARCH_DELETE);
-            db.execSQL("DROP TABLE IF EXISTS " + Tables.VENDORS_SEARCH);
+            dropSearchTables(db);
 
             db.execSQL("DROP TABLE IF EXISTS " + Tables.SEARCH_SUGGEST);
 
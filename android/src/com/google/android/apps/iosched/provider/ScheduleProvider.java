@@ -18,6 +18,7 @@ package com.google.android.apps.iosched.provider;
 
 import com.google.android.apps.iosched.provider.ScheduleContract.Blocks;
 import com.google.android.apps.iosched.provider.ScheduleContract.Rooms;
+import com.google.android.apps.iosched.provider.ScheduleContract.Search;
 import com.google.android.apps.iosched.provider.ScheduleContract.SearchSuggest;
 import com.google.android.apps.iosched.provider.ScheduleContract.Sessions;
 import com.google.android.apps.iosched.provider.ScheduleContract.Speakers;
@@ -26,6 +27,7 @@ import com.google.android.apps.iosched.provider.ScheduleContract.Vendors;
 import com.google.android.apps.iosched.provider.ScheduleDatabase.SessionsSearchColumns;
 import com.google.android.apps.iosched.provider.ScheduleDatabase.SessionsSpeakers;
 import com.google.android.apps.iosched.provider.ScheduleDatabase.SessionsTracks;
+import com.google.android.apps.iosched.provider.ScheduleDatabase.SpeakersSearchColumns;
 import com.google.android.apps.iosched.provider.ScheduleDatabase.Tables;
 import com.google.android.apps.iosched.provider.ScheduleDatabase.VendorsSearchColumns;
 import com.google.android.apps.iosched.service.SyncService;
@@ -36,21 +38,25 @@ import android.app.SearchManager;
 import android.content.ContentProvider;
 import android.content.ContentProviderOperation;
 import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.ParcelFileDescriptor;
 import android.provider.BaseColumns;
+import android.text.TextUtils;
 import android.util.Log;
+import android.util.SparseArray;
 
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
+import java.util.LinkedHashSet;
 
 /**
  * Provider that stores {@link ScheduleContract} data. Data is usually inserted
@@ -60,14 +66,64 @@ public class ScheduleProvider extends ContentProvider {
     private static final String TAG = "ScheduleProvider";
     private static final boolean LOGV = Log.isLoggable(TAG, Log.VERBOSE);
 
+    /**
+     * Estimated bytes of query results held by {@link #mQueryCache}, which
+     * fits the block, track and room lists along with a few dozen prefetched
+     * session details.
+     */
+    private static final int QUERY_CACHE_BYTES = 256 * 1024;
+
     private ScheduleDatabase mOpenHelper;
+    private final QueryCache mQueryCache = new QueryCache(QUERY_CACHE_BYTES);
+
+    /** Suggestions for {@link #SEARCH_SUGGEST}, loaded on first use. */
+    private volatile SuggestionIndex mSuggestionIndex;
+
+    /**
+     * Longest block duration, and the {@link #mQueryCache} version it was
+     * read at, which is {@code -1} until it is first read.
+     */
+    private long mMaxBlockDuration;
+    private int mMaxBlockDurationVersion = -1;
+
+    /** Compiled inserts for the batch being applied on the current thread. */
+    private final ThreadLocal<InsertStatementCache> mBatchInserts =
+            new ThreadLocal<InsertStatementCache>();
+
+    /** Changed {@link Uri} to notify once the batch on the current thread is applied. */
+    private final ThreadLocal<LinkedHashSet<Uri>> mBatchChangedUris =
+            new ThreadLocal<LinkedHashSet<Uri>>();
 
     private static final UriMatcher sUriMatcher = buildUriMatcher();
+    private static final SparseArray<QueryTemplate> sQueryTemplates = buildQueryTemplates();
+    private static final SparseArray<QueryTemplate> sContentSearchTemplates =
+            buildContentSearchTemplates();
+
+    /**
+     * Relative weight of each {@link ScheduleDatabase.SearchContent#SESSIONS}
+     * column when ranking search results.
+     */
+    private static final float[] SESSIONS_SEARCH_WEIGHTS = { 4f, 1f, 2f };
+
+    /**
+     * Relative weight of each {@link ScheduleDatabase.SearchContent#VENDORS}
+     * column when ranking search results.
+     */
+    private static final float[] VENDORS_SEARCH_WEIGHTS = { 4f, 1f, 1f };
+
+    /**
+     * Relative weight of each column when ranking combined {@link Search}
+     * results. Every search table lists its title column first, followed by
+     * longer descriptive text.
+     */
+    private static final float[] COMBINED_SEARCH_WEIGHTS = { 4f, 1f, 1f };
 
     private static final int BLOCKS = 100;
     private static final int BLOCKS_BETWEEN = 101;
     private static final int BLOCKS_ID = 102;
     private static final int BLOCKS_ID_SESSIONS = 103;
+    private static final int BLOCKS_RANGE = 104;
+    private static final int BLOCKS_TRANSITION = 105;
 
     private static final int TRACKS = 200;
     private static final int TRACKS_ID = 201;
@@ -85,6 +141,7 @@ public class ScheduleProvider extends ContentProvider {
     private static final int SESSIONS_ID = 404;
     private static final int SESSIONS_ID_SPEAKERS = 405;
     private static final int SESSIONS_ID_TRACKS = 406;
+    private static final int SESSIONS_ID_DETAIL = 407;
 
     private static final int SPEAKERS = 500;
     private static final int SPEAKERS_ID = 501;
@@ -97,6 +154,8 @@ public class ScheduleProvider extends ContentProvider {
 
     private static final int SEARCH_SUGGEST = 800;
 
+    private static final int SEARCH = 900;
+
     private static final String MIME_XML = "text/xml";
 
     /**
@@ -109,6 +168,8 @@ public class ScheduleProvider extends ContentProvider {
 
         matcher.addURI(authority, "blocks", BLOCKS);
         matcher.addURI(authority, "blocks/between/*/*", BLOCKS_BETWEEN);
+        matcher.addURI(authority, "blocks/range", BLOCKS_RANGE);
+        matcher.addURI(authority, "blocks/transition/*", BLOCKS_TRANSITION);
         matcher.addURI(authority, "blocks/*", BLOCKS_ID);
         matcher.addURI(authority, "blocks/*/sessions", BLOCKS_ID_SESSIONS);
 
@@ -128,6 +189,7 @@ public class ScheduleProvider extends ContentProvider {
         matcher.addURI(authority, "sessions/*", SESSIONS_ID);
         matcher.addURI(authority, "sessions/*/speakers", SESSIONS_ID_SPEAKERS);
         matcher.addURI(authority, "sessions/*/tracks", SESSIONS_ID_TRACKS);
+        matcher.addURI(authority, "sessions/*/detail/*", SESSIONS_ID_DETAIL);
 
         matcher.addURI(authority, "speakers", SPEAKERS);
         matcher.addURI(authority, "speakers/*", SPEAKERS_ID);
@@ -140,6 +202,8 @@ public class ScheduleProvider extends ContentProvider {
 
         matcher.addURI(authority, "search_suggest_query", SEARCH_SUGGEST);
 
+        matcher.addURI(authority, "search/*", SEARCH);
+
         return matcher;
     }
 
@@ -163,6 +227,10 @@ public class ScheduleProvider extends ContentProvider {
                 return Blocks.CONTENT_ITEM_TYPE;
             case BLOCKS_ID_SESSIONS:
                 return Sessions.CONTENT_TYPE;
+            case BLOCKS_RANGE:
+                return Blocks.CONTENT_ITEM_TYPE;
+            case BLOCKS_TRANSITION:
+                return Blocks.CONTENT_ITEM_TYPE;
             case TRACKS:
                 return Tracks.CONTENT_TYPE;
             case TRACKS_ID:
@@ -191,6 +259,8 @@ public class ScheduleProvider extends ContentProvider {
                 return Speakers.CONTENT_TYPE;
             case SESSIONS_ID_TRACKS:
                 return Tracks.CONTENT_TYPE;
+            case SESSIONS_ID_DETAIL:
+                return Sessions.CONTENT_ITEM_TYPE;
             case SPEAKERS:
                 return Speakers.CONTENT_TYPE;
             case SPEAKERS_ID:
@@ -205,6 +275,8 @@ public class ScheduleProvider extends ContentProvider {
                 return Vendors.CONTENT_TYPE;
             case VENDORS_ID:
                 return Vendors.CONTENT_ITEM_TYPE;
+            case SEARCH:
+                return Search.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -220,27 +292,127 @@ public class ScheduleProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             default: {
-                // Most cases are handled with simple SelectionBuilder
-                final SelectionBuilder builder = buildExpandedSelection(uri, match);
-                return builder.where(selection, selectionArgs).query(db, projection, sortOrder);
+                // Read-mostly results are served from memory when possible
+                final String[] cacheTables = getCacheableTables(match);
+                String cacheKey = null;
+                int cacheVersion = 0;
+                QueryCache.Requery requery = null;
+                if (cacheTables != null) {
+                    cacheKey = QueryCache.buildKey(uri, projection, selection, selectionArgs,
+                            sortOrder);
+                    requery = newRequery(uri, projection, selection, selectionArgs, sortOrder);
+                    final Cursor cached = mQueryCache.get(cacheKey, requery);
+                    if (cached != null) {
+                        return cached;
+                    }
+                    cacheVersion = mQueryCache.getVersion();
+                }
+
+                // Most cases are handled with a precomputed QueryTemplate
+                final QueryTemplate template = getQueryTemplate(uri, match);
+                final Cursor cursor = template.query(db, uri, projection, selection,
+                        selectionArgs, sortOrder);
+                if (cacheTables != null) {
+                    return mQueryCache.put(cacheKey, cacheTables, cacheVersion, cursor,
+                            requery);
+                }
+                return cursor;
+            }
+            case SESSIONS_AT: {
+                return querySessionsAt(db, uri, projection, selection, selectionArgs,
+                        sortOrder);
+            }
+            case SESSIONS_SEARCH:
+            case VENDORS_SEARCH: {
+                return querySearch(db, mOpenHelper.hasContentSearch(), uri, projection,
+                        selection, selectionArgs, sortOrder);
+            }
+            case SEARCH: {
+                return queryCombinedSearch(db, mOpenHelper.hasContentSearch(), uri, projection,
+                        selection, selectionArgs, sortOrder);
             }
             case SEARCH_SUGGEST: {
-                final SelectionBuilder builder = new SelectionBuilder();
+                // Selection is always a prefix match on the typed text
+                final String prefix = (selectionArgs != null && selectionArgs.length > 0)
+                        ? selectionArgs[0] : "";
+                final String limit = uri.getQueryParameter(SearchManager.SUGGEST_PARAMETER_LIMIT);
+                return getSuggestionIndex(db).query(prefix, parseLimit(limit));
+            }
+        }
+    }
 
-                // Adjust incoming query to become SQL text match
-                selectionArgs[0] = selectionArgs[0] + "%";
-                builder.table(Tables.SEARCH_SUGGEST);
-                builder.where(selection, selectionArgs);
-                builder.map(SearchManager.SUGGEST_COLUMN_QUERY,
-                        SearchManager.SUGGEST_COLUMN_TEXT_1);
+    /**
+     * Return the current {@link SuggestionIndex}, reloading it when any of
+     * its source tables have been written since it was loaded.
+     */
+    private SuggestionIndex getSuggestionIndex(SQLiteDatabase db) {
+        SuggestionIndex index = mSuggestionIndex;
+        if (index == null
+                || mQueryCache.isModifiedSince(SuggestionIndex.SOURCE_TABLES, index.getVersion())) {
+            index = SuggestionIndex.build(db, mQueryCache.getVersion());
+            mSuggestionIndex = index;
+        }
+        return index;
+    }
 
-                projection = new String[] { BaseColumns._ID, SearchManager.SUGGEST_COLUMN_TEXT_1,
-                        SearchManager.SUGGEST_COLUMN_QUERY };
+    /**
+     * Return the longest block duration, reading it again only when blocks
+     * have been written since it was last read.
+     */
+    private synchronized long getMaxBlockDuration(SQLiteDatabase db) {
+        if (mMaxBlockDurationVersion == -1
+                || mQueryCache.isModifiedSince(CacheTables.BLOCKS, mMaxBlockDurationVersion)) {
+            final int version = mQueryCache.getVersion();
+            mMaxBlockDuration = DatabaseUtils.longForQuery(db, "SELECT MAX("
+                    + Blocks.BLOCK_END + "-" + Blocks.BLOCK_START + ") FROM " + Tables.BLOCKS,
+                    null);
+            mMaxBlockDurationVersion = version;
+        }
+        return mMaxBlockDuration;
+    }
 
-                final String limit = uri.getQueryParameter(SearchManager.SUGGEST_PARAMETER_LIMIT);
-                return builder.query(db, projection, null, null, SearchSuggest.DEFAULT_SORT, limit);
+    /**
+     * Query sessions whose block contains the time in the given {@link Uri}.
+     * A block containing that time can't start more than the longest block
+     * duration before it, which bounds the range scan on block start times.
+     */
+    private Cursor querySessionsAt(SQLiteDatabase db, Uri uri, String[] projection,
+            String selection, String[] selectionArgs, String sortOrder) {
+        final QueryTemplate template = getQueryTemplate(uri, SESSIONS_AT);
+        final long time;
+        try {
+            time = Long.parseLong(uri.getPathSegments().get(2));
+        } catch (NumberFormatException e) {
+            return template.query(db, uri, projection, selection, selectionArgs, sortOrder);
+        }
+
+        final String earliestStart = String.valueOf(time - getMaxBlockDuration(db));
+        final String boundedSelection;
+        final String[] boundedArgs;
+        if (TextUtils.isEmpty(selection)) {
+            boundedSelection = Qualified.BLOCKS_BLOCK_START + ">=?";
+            boundedArgs = new String[] { earliestStart };
+        } else {
+            boundedSelection = Qualified.BLOCKS_BLOCK_START + ">=? AND (" + selection + ")";
+            final int count = (selectionArgs != null) ? selectionArgs.length : 0;
+            boundedArgs = new String[count + 1];
+            boundedArgs[0] = earliestStart;
+            if (count > 0) {
+                System.arraycopy(selectionArgs, 0, boundedArgs, 1, count);
+            }
+        }
+        return template.query(db, uri, projection, boundedSelection, boundedArgs, sortOrder);
+    }
+
+    private static int parseLimit(String limit) {
+        if (limit != null) {
+            try {
+                return Integer.parseInt(limit);
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Ignoring invalid limit: " + limit);
             }
         }
+        return Integer.MAX_VALUE;
     }
 
     /** {@inheritDoc} */
@@ -251,48 +423,57 @@ public class ScheduleProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case BLOCKS: {
-                db.insertOrThrow(Tables.BLOCKS, null, values);
-                getContext().getContentResolver().notifyChange(uri, null);
+                insertRow(db, Tables.BLOCKS, values);
+                mQueryCache.invalidate(Tables.BLOCKS);
+                notifyChange(uri);
                 return Blocks.buildBlockUri(values.getAsString(Blocks.BLOCK_ID));
             }
             case TRACKS: {
-                db.insertOrThrow(Tables.TRACKS, null, values);
-                getContext().getContentResolver().notifyChange(uri, null);
+                insertRow(db, Tables.TRACKS, values);
+                mQueryCache.invalidate(Tables.TRACKS);
+                notifyChange(uri);
                 return Tracks.buildTrackUri(values.getAsString(Tracks.TRACK_ID));
             }
             case ROOMS: {
-                db.insertOrThrow(Tables.ROOMS, null, values);
-                getContext().getContentResolver().notifyChange(uri, null);
+                insertRow(db, Tables.ROOMS, values);
+                mQueryCache.invalidate(Tables.ROOMS);
+                notifyChange(uri);
                 return Rooms.buildRoomUri(values.getAsString(Rooms.ROOM_ID));
             }
             case SESSIONS: {
-                db.insertOrThrow(Tables.SESSIONS, null, values);
-                getContext().getContentResolver().notifyChange(uri, null);
+                insertRow(db, Tables.SESSIONS, values);
+                mQueryCache.invalidate(Tables.SESSIONS);
+                notifyChange(uri);
                 return Sessions.buildSessionUri(values.getAsString(Sessions.SESSION_ID));
             }
             case SESSIONS_ID_SPEAKERS: {
-                db.insertOrThrow(Tables.SESSIONS_SPEAKERS, null, values);
-                getContext().getContentResolver().notifyChange(uri, null);
+                insertRow(db, Tables.SESSIONS_SPEAKERS, values);
+                mQueryCache.invalidate(Tables.SESSIONS_SPEAKERS);
+                notifyChange(uri);
                 return Speakers.buildSpeakerUri(values.getAsString(SessionsSpeakers.SPEAKER_ID));
             }
             case SESSIONS_ID_TRACKS: {
-                db.insertOrThrow(Tables.SESSIONS_TRACKS, null, values);
-                getContext().getContentResolver().notifyChange(uri, null);
+                insertRow(db, Tables.SESSIONS_TRACKS, values);
+                mQueryCache.invalidate(Tables.SESSIONS_TRACKS);
+                notifyChange(uri);
                 return Tracks.buildTrackUri(values.getAsString(SessionsTracks.TRACK_ID));
             }
             case SPEAKERS: {
-                db.insertOrThrow(Tables.SPEAKERS, null, values);
-                getContext().getContentResolver().notifyChange(uri, null);
+                insertRow(db, Tables.SPEAKERS, values);
+                mQueryCache.invalidate(Tables.SPEAKERS);
+                notifyChange(uri);
                 return Speakers.buildSpeakerUri(values.getAsString(Speakers.SPEAKER_ID));
             }
             case VENDORS: {
-                db.insertOrThrow(Tables.VENDORS, null, values);
-                getContext().getContentResolver().notifyChange(uri, null);
+                insertRow(db, Tables.VENDORS, values);
+                mQueryCache.invalidate(Tables.VENDORS);
+                notifyChange(uri);
                 return Vendors.buildVendorUri(values.getAsString(Vendors.VENDOR_ID));
             }
             case SEARCH_SUGGEST: {
-                db.insertOrThrow(Tables.SEARCH_SUGGEST, null, values);
-                getContext().getContentResolver().notifyChange(uri, null);
+                insertRow(db, Tables.SEARCH_SUGGEST, values);
+                mQueryCache.invalidate(Tables.SEARCH_SUGGEST);
+                notifyChange(uri);
                 return SearchSuggest.CONTENT_URI;
             }
             default: {
@@ -308,7 +489,8 @@ public class ScheduleProvider extends ContentProvider {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final SelectionBuilder builder = buildSimpleSelection(uri);
         int retVal = builder.where(selection, selectionArgs).update(db, values);
-        getContext().getContentResolver().notifyChange(uri, null);
+        mQueryCache.invalidate(builder.getTable());
+        notifyChange(uri);
         return retVal;
     }
 
@@ -319,31 +501,73 @@ public class ScheduleProvider extends ContentProvider {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final SelectionBuilder builder = buildSimpleSelection(uri);
         int retVal = builder.where(selection, selectionArgs).delete(db);
-        getContext().getContentResolver().notifyChange(uri, null);
+        mQueryCache.invalidate(builder.getTable());
+        notifyChange(uri);
         return retVal;
     }
 
     /**
      * Apply the given set of {@link ContentProviderOperation}, executing inside
      * a {@link SQLiteDatabase} transaction. All changes will be rolled back if
-     * any single one fails.
+     * any single one fails. Inserts made while the batch is applied reuse
+     * compiled statements through {@link InsertStatementCache}. Observers are
+     * notified once for each changed {@link Uri}, after the batch is applied.
      */
     @Override
     public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
             throws OperationApplicationException {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final InsertStatementCache inserts = new InsertStatementCache(db);
+        final LinkedHashSet<Uri> changedUris = new LinkedHashSet<Uri>();
+        mBatchInserts.set(inserts);
+        mBatchChangedUris.set(changedUris);
+        final ContentProviderResult[] results;
         db.beginTransaction();
         try {
             final int numOperations = operations.size();
-            final ContentProviderResult[] results = new ContentProviderResult[numOperations];
+            results = new ContentProviderResult[numOperations];
             for (int i = 0; i < numOperations; i++) {
                 results[i] = operations.get(i).apply(this, results, i);
             }
             db.setTransactionSuccessful();
-            return results;
         } finally {
+            mBatchInserts.remove();
+            mBatchChangedUris.remove();
+            inserts.close();
             db.endTransaction();
         }
+
+        final ContentResolver resolver = getContext().getContentResolver();
+        for (Uri uri : changedUris) {
+            resolver.notifyChange(uri, null);
+        }
+        return results;
+    }
+
+    /**
+     * Notify observers of a change to the given {@link Uri}, right away or,
+     * while a batch is applied, once the whole batch is applied.
+     */
+    private void notifyChange(Uri uri) {
+        final LinkedHashSet<Uri> changedUris = mBatchChangedUris.get();
+        if (changedUris != null) {
+            changedUris.add(uri);
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    /**
+     * Insert a row into the given table, using a compiled statement when
+     * called from inside {@link #applyBatch}.
+     */
+    private void insertRow(SQLiteDatabase db, String table, ContentValues values) {
+        final InsertStatementCache inserts = mBatchInserts.get();
+        if (inserts != null) {
+            inserts.insert(table, values);
+        } else {
+            db.insertOrThrow(table, null, values);
+        }
     }
 
     /**
@@ -423,191 +647,424 @@ public class ScheduleProvider extends ContentProvider {
     }
 
     /**
-     * Build an advanced {@link SelectionBuilder} to match the requested
-     * {@link Uri}. This is usually only used by {@link #query}, since it
-     * performs table joins useful for {@link Cursor} data.
+     * Build the {@link QueryTemplate} for each {@link UriMatcher} code that
+     * {@link #query} handles. Expands to the requested {@link Uri} using
+     * table joins and projection mapping, and is only run once.
      */
-    private SelectionBuilder buildExpandedSelection(Uri uri, int match) {
-        final SelectionBuilder builder = new SelectionBuilder();
+    private static SparseArray<QueryTemplate> buildQueryTemplates() {
+        final SparseArray<QueryTemplate> templates = new SparseArray<QueryTemplate>();
+
+        templates.put(BLOCKS, new QueryTemplate.Builder()
+                .table(Tables.BLOCKS)
+                .build());
+        templates.put(BLOCKS_BETWEEN, new QueryTemplate.Builder()
+                .table(Tables.BLOCKS)
+                .map(Blocks.SESSIONS_COUNT, Subquery.BLOCK_SESSIONS_COUNT)
+                .map(Blocks.CONTAINS_STARRED, Subquery.BLOCK_CONTAINS_STARRED)
+                .where(Blocks.BLOCK_START + ">=?", 2)
+                .where(Blocks.BLOCK_START + "<=?", 3)
+                .build());
+        templates.put(BLOCKS_ID, new QueryTemplate.Builder()
+                .table(Tables.BLOCKS)
+                .map(Blocks.SESSIONS_COUNT, Subquery.BLOCK_SESSIONS_COUNT)
+                .map(Blocks.CONTAINS_STARRED, Subquery.BLOCK_CONTAINS_STARRED)
+                .where(Blocks.BLOCK_ID + "=?", 1)
+                .build());
+        templates.put(BLOCKS_ID_SESSIONS, new QueryTemplate.Builder()
+                .table(Tables.SESSIONS_JOIN_BLOCKS_ROOMS)
+                .map(Blocks.SESSIONS_COUNT, Subquery.BLOCK_SESSIONS_COUNT)
+                .map(Blocks.CONTAINS_STARRED, Subquery.BLOCK_CONTAINS_STARRED)
+                .mapToTable(Sessions._ID, Tables.SESSIONS)
+                .mapToTable(Sessions.SESSION_ID, Tables.SESSIONS)
+                .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
+                .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
+                .where(Qualified.SESSIONS_BLOCK_ID + "=?", 1)
+                .build());
+        templates.put(BLOCKS_RANGE, new QueryTemplate.Builder()
+                .table(Tables.BLOCKS)
+                .map(Blocks.BLOCK_START, "MIN(" + Blocks.BLOCK_START + ")")
+                .map(Blocks.BLOCK_END, "MAX(" + Blocks.BLOCK_END + ")")
+                .build());
+        templates.put(BLOCKS_TRANSITION, new QueryTemplate.Builder()
+                .table(BlockTransition.NEXT_START_END, 2, 2)
+                .map(Blocks.TRANSITION_TIME, BlockTransition.TIME)
+                .build());
+
+        templates.put(TRACKS, new QueryTemplate.Builder()
+                .table(Tables.TRACKS)
+                .map(Tracks.SESSIONS_COUNT, Subquery.TRACK_SESSIONS_COUNT)
+                .map(Tracks.VENDORS_COUNT, Subquery.TRACK_VENDORS_COUNT)
+                .build());
+        templates.put(TRACKS_ID, new QueryTemplate.Builder()
+                .table(Tables.TRACKS)
+                .where(Tracks.TRACK_ID + "=?", 1)
+                .build());
+        templates.put(TRACKS_ID_SESSIONS, new QueryTemplate.Builder()
+                .table(Tables.SESSIONS_TRACKS_JOIN_SESSIONS_BLOCKS_ROOMS)
+                .mapToTable(Sessions._ID, Tables.SESSIONS)
+                .mapToTable(Sessions.SESSION_ID, Tables.SESSIONS)
+                .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
+                .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
+                .where(Qualified.SESSIONS_TRACKS_TRACK_ID + "=?", 1)
+                .build());
+        templates.put(TRACKS_ID_VENDORS, new QueryTemplate.Builder()
+                .table(Tables.VENDORS_JOIN_TRACKS)
+                .mapToTable(Vendors._ID, Tables.VENDORS)
+                .mapToTable(Vendors.TRACK_ID, Tables.VENDORS)
+                .where(Qualified.VENDORS_TRACK_ID + "=?", 1)
+                .build());
+
+        templates.put(ROOMS, new QueryTemplate.Builder()
+                .table(Tables.ROOMS)
+                .build());
+        templates.put(ROOMS_ID, new QueryTemplate.Builder()
+                .table(Tables.ROOMS)
+                .where(Rooms.ROOM_ID + "=?", 1)
+                .build());
+        templates.put(ROOMS_ID_SESSIONS, new QueryTemplate.Builder()
+                .table(Tables.SESSIONS_JOIN_BLOCKS_ROOMS)
+                .mapToTable(Sessions._ID, Tables.SESSIONS)
+                .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
+                .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
+                .where(Qualified.SESSIONS_ROOM_ID + "=?", 1)
+                .build());
+
+        templates.put(SESSIONS, new QueryTemplate.Builder()
+                .table(Tables.SESSIONS_JOIN_BLOCKS_ROOMS)
+                .mapToTable(Sessions._ID, Tables.SESSIONS)
+                .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
+                .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
+                .build());
+        templates.put(SESSIONS_STARRED, new QueryTemplate.Builder()
+                .table(Tables.SESSIONS_JOIN_BLOCKS_ROOMS)
+                .mapToTable(Sessions._ID, Tables.SESSIONS)
+                .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
+                .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
+                .where(Sessions.SESSION_STARRED + "=1")
+                .build());
+        templates.put(SESSIONS_SEARCH, new QueryTemplate.Builder()
+                .table(Tables.SESSIONS_SEARCH_JOIN_SESSIONS_BLOCKS_ROOMS)
+                .map(Sessions.SEARCH_SNIPPET, Subquery.SESSIONS_SNIPPET)
+                .mapToTable(Sessions._ID, Tables.SESSIONS)
+                .mapToTable(Sessions.SESSION_ID, Tables.SESSIONS)
+                .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
+                .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
+                .where(SessionsSearchColumns.BODY + " MATCH ?", 2)
+                .build());
+        templates.put(SESSIONS_AT, new QueryTemplate.Builder()
+                .table(Tables.BLOCKS_JOIN_SESSIONS_ROOMS)
+                .mapToTable(Sessions._ID, Tables.SESSIONS)
+                .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
+                .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
+                .where(Qualified.BLOCKS_BLOCK_START + "<=?", 2)
+                .where(Qualified.BLOCKS_BLOCK_END + ">=?", 2)
+                .build());
+        templates.put(SESSIONS_ID, new QueryTemplate.Builder()
+                .table(Tables.SESSIONS_JOIN_BLOCKS_ROOMS)
+                .mapToTable(Sessions._ID, Tables.SESSIONS)
+                .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
+                .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
+                .where(Qualified.SESSIONS_SESSION_ID + "=?", 1)
+                .build());
+        templates.put(SESSIONS_ID_SPEAKERS, new QueryTemplate.Builder()
+                .table(Tables.SESSIONS_SPEAKERS_JOIN_SPEAKERS)
+                .mapToTable(Speakers._ID, Tables.SPEAKERS)
+                .mapToTable(Speakers.SPEAKER_ID, Tables.SPEAKERS)
+                .where(Qualified.SESSIONS_SPEAKERS_SESSION_ID + "=?", 1)
+                .build());
+        templates.put(SESSIONS_ID_TRACKS, new QueryTemplate.Builder()
+                .table(Tables.SESSIONS_TRACKS_JOIN_TRACKS)
+                .mapToTable(Tracks._ID, Tables.TRACKS)
+                .mapToTable(Tracks.TRACK_ID, Tables.TRACKS)
+                .where(Qualified.SESSIONS_TRACKS_SESSION_ID + "=?", 1)
+                .build());
+        templates.put(SESSIONS_ID_DETAIL, new QueryTemplate.Builder()
+                .table(SessionDetail.SESSIONS_JOIN_BLOCKS_ROOMS_TRACK_SPEAKERS, 3)
+                .mapToTable(Sessions._ID, Tables.SESSIONS)
+                .mapToTable(Sessions.SESSION_ID, Tables.SESSIONS)
+                .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
+                .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
+                .mapToTable(Tracks.TRACK_ID, Tables.TRACKS)
+                .mapToTable(Speakers.SPEAKER_ID, Tables.SPEAKERS)
+                .where(Qualified.SESSIONS_SESSION_ID + "=?", 1)
+                .build());
+
+        templates.put(SPEAKERS, new QueryTemplate.Builder()
+                .table(Tables.SPEAKERS)
+                .build());
+        templates.put(SPEAKERS_ID, new QueryTemplate.Builder()
+                .table(Tables.SPEAKERS)
+                .where(Speakers.SPEAKER_ID + "=?", 1)
+                .build());
+        templates.put(SPEAKERS_ID_SESSIONS, new QueryTemplate.Builder()
+                .table(Tables.SESSIONS_SPEAKERS_JOIN_SESSIONS_BLOCKS_ROOMS)
+                .mapToTable(Sessions._ID, Tables.SESSIONS)
+                .mapToTable(Sessions.SESSION_ID, Tables.SESSIONS)
+                .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
+                .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
+                .where(Qualified.SESSIONS_SPEAKERS_SPEAKER_ID + "=?", 1)
+                .build());
+
+        templates.put(VENDORS, new QueryTemplate.Builder()
+                .table(Tables.VENDORS_JOIN_TRACKS)
+                .mapToTable(Vendors._ID, Tables.VENDORS)
+                .mapToTable(Vendors.TRACK_ID, Tables.VENDORS)
+                .build());
+        templates.put(VENDORS_STARRED, new QueryTemplate.Builder()
+                .table(Tables.VENDORS_JOIN_TRACKS)
+                .mapToTable(Vendors._ID, Tables.VENDORS)
+                .mapToTable(Vendors.TRACK_ID, Tables.VENDORS)
+                .where(Vendors.VENDOR_STARRED + "=1")
+                .build());
+        templates.put(VENDORS_SEARCH, new QueryTemplate.Builder()
+                .table(Tables.VENDORS_SEARCH_JOIN_VENDORS_TRACKS)
+                .map(Vendors.SEARCH_SNIPPET, Subquery.VENDORS_SNIPPET)
+                .mapToTable(Vendors._ID, Tables.VENDORS)
+                .mapToTable(Vendors.VENDOR_ID, Tables.VENDORS)
+                .mapToTable(Vendors.TRACK_ID, Tables.VENDORS)
+                .where(VendorsSearchColumns.BODY + " MATCH ?", 2)
+                .build());
+        templates.put(VENDORS_ID, new QueryTemplate.Builder()
+                .table(Tables.VENDORS_JOIN_TRACKS)
+                .mapToTable(Vendors._ID, Tables.VENDORS)
+                .mapToTable(Vendors.TRACK_ID, Tables.VENDORS)
+                .where(Vendors.VENDOR_ID + "=?", 1)
+                .build());
+
+        return templates;
+    }
+
+    /**
+     * Build the {@link QueryTemplate} for full-text search codes when the
+     * database uses the FTS4 layout. Search results are matched inside a
+     * {@link ContentSearch} subquery, which keeps indexed columns from
+     * clashing with their source columns.
+     */
+    private static SparseArray<QueryTemplate> buildContentSearchTemplates() {
+        final SparseArray<QueryTemplate> templates = new SparseArray<QueryTemplate>();
+
+        templates.put(SESSIONS_SEARCH, new QueryTemplate.Builder()
+                .table(ContentSearch.SESSIONS_JOIN_SESSIONS_BLOCKS_ROOMS, 2)
+                .mapToTable(Sessions._ID, Tables.SESSIONS)
+                .mapToTable(Sessions.SESSION_ID, Tables.SESSIONS)
+                .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
+                .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
+                .build());
+        templates.put(VENDORS_SEARCH, new QueryTemplate.Builder()
+                .table(ContentSearch.VENDORS_JOIN_VENDORS_TRACKS, 2)
+                .mapToTable(Vendors._ID, Tables.VENDORS)
+                .mapToTable(Vendors.VENDOR_ID, Tables.VENDORS)
+                .mapToTable(Vendors.TRACK_ID, Tables.VENDORS)
+                .build());
+
+        return templates;
+    }
+
+    /**
+     * Run a full-text search query against either search layout. When using
+     * the FTS4 layout and the caller asks for {@link Sessions#SEARCH_SORT},
+     * rows are ranked by relevance using {@code matchinfo()}, otherwise they
+     * fall back to the default sort.
+     */
+    static Cursor querySearch(SQLiteDatabase db, boolean contentSearch, Uri uri,
+            String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        final int match = sUriMatcher.match(uri);
+        final boolean sessions = (match == SESSIONS_SEARCH);
+        final boolean relevance = sessions ? Sessions.SEARCH_SORT.equals(sortOrder)
+                : Vendors.SEARCH_SORT.equals(sortOrder);
+        if (relevance) {
+            sortOrder = sessions ? Sessions.DEFAULT_SORT : Vendors.DEFAULT_SORT;
+        }
+
+        if (!contentSearch) {
+            return getQueryTemplate(uri, match).query(db, uri, projection, selection,
+                    selectionArgs, sortOrder);
+        }
+
+        final QueryTemplate template = sContentSearchTemplates.get(match);
+        if (!relevance) {
+            return template.query(db, uri, projection, selection, selectionArgs, sortOrder);
+        }
+
+        // Read matchinfo() alongside requested columns, then rank in memory
+        final String[] rankedProjection;
+        if (projection == null) {
+            rankedProjection = new String[] { "*" };
+        } else {
+            rankedProjection = new String[projection.length + 1];
+            System.arraycopy(projection, 0, rankedProjection, 0, projection.length);
+            rankedProjection[projection.length] = ContentSearch.MATCHINFO;
+        }
+
+        final Cursor cursor = template.query(db, uri, rankedProjection, selection,
+                selectionArgs, sortOrder);
+        return new RankedSearchCursor(cursor,
+                cursor.getColumnIndexOrThrow(ContentSearch.MATCHINFO),
+                sessions ? SESSIONS_SEARCH_WEIGHTS : VENDORS_SEARCH_WEIGHTS);
+    }
+
+    /**
+     * Run a single full-text query across sessions, vendors and speakers for
+     * a {@link Search} {@link Uri}. Without a sort order, rows are ranked by
+     * relevance when using the FTS4 layout, otherwise they're sorted by
+     * {@link Search#DEFAULT_SORT}. Any limit is applied after ranking.
+     */
+    static Cursor queryCombinedSearch(SQLiteDatabase db, boolean contentSearch, Uri uri,
+            String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        final String query = Search.getSearchQuery(uri);
+        final int limit = parseLimit(uri.getQueryParameter(Search.QUERY_PARAMETER_LIMIT));
+        final boolean ranked = contentSearch && sortOrder == null;
+
+        final StringBuilder sql = new StringBuilder("SELECT ");
+        if (projection == null) {
+            sql.append("*");
+        } else {
+            sql.append(TextUtils.join(",", projection));
+            if (ranked) sql.append(",").append(ContentSearch.MATCHINFO);
+        }
+        sql.append(" FROM (").append(contentSearch ? CombinedSearch.CONTENT_QUERY
+                : CombinedSearch.QUERY).append(")");
+        if (!TextUtils.isEmpty(selection)) {
+            sql.append(" WHERE (").append(selection).append(")");
+        }
+        if (!ranked) {
+            sql.append(" ORDER BY ").append(sortOrder != null ? sortOrder : Search.DEFAULT_SORT);
+            if (limit != Integer.MAX_VALUE) sql.append(" LIMIT ").append(limit);
+        }
+
+        // Each search table takes the query as its MATCH argument
+        final int extraArgs = selectionArgs != null ? selectionArgs.length : 0;
+        final String[] args = new String[CombinedSearch.TABLE_COUNT + extraArgs];
+        Arrays.fill(args, 0, CombinedSearch.TABLE_COUNT, query);
+        if (extraArgs > 0) {
+            System.arraycopy(selectionArgs, 0, args, CombinedSearch.TABLE_COUNT, extraArgs);
+        }
+
+        final Cursor cursor = db.rawQuery(sql.toString(), args);
+        if (!ranked) {
+            return cursor;
+        }
+        return new RankedSearchCursor(cursor,
+                cursor.getColumnIndexOrThrow(ContentSearch.MATCHINFO), COMBINED_SEARCH_WEIGHTS,
+                limit);
+    }
+
+    /**
+     * Build a {@code UNION ALL} over every search table, returning the
+     * {@link Search} columns. Each search table is matched in its own
+     * subquery, and {@link BaseColumns#_ID} values are interleaved so they
+     * stay unique across entity types.
+     */
+    private static String buildCombinedSearchQuery(boolean contentSearch) {
+        return buildCombinedSearchSelect(contentSearch, 0, Search.TYPE_SESSION,
+                Tables.SESSIONS, Sessions.SESSION_ID, Sessions.SESSION_TITLE,
+                Tables.SESSIONS_SEARCH, SessionsSearchColumns.SESSION_ID)
+                + " UNION ALL " + buildCombinedSearchSelect(contentSearch, 1, Search.TYPE_VENDOR,
+                Tables.VENDORS, Vendors.VENDOR_ID, Vendors.VENDOR_NAME,
+                Tables.VENDORS_SEARCH, VendorsSearchColumns.VENDOR_ID)
+                + " UNION ALL " + buildCombinedSearchSelect(contentSearch, 2, Search.TYPE_SPEAKER,
+                Tables.SPEAKERS, Speakers.SPEAKER_ID, Speakers.SPEAKER_NAME,
+                Tables.SPEAKERS_SEARCH, SpeakersSearchColumns.SPEAKER_ID);
+    }
+
+    private static String buildCombinedSearchSelect(boolean contentSearch, int typeIndex,
+            String type, String table, String idColumn, String titleColumn, String searchTable,
+            String searchIdColumn) {
+        final String snippet = "snippet(" + searchTable + ",'{','}','\u2026')";
+        final StringBuilder sql = new StringBuilder("SELECT ");
+        sql.append(table).append("._id*").append(CombinedSearch.TABLE_COUNT).append("+")
+                .append(typeIndex).append(" AS ").append(BaseColumns._ID).append(",");
+        sql.append("'").append(type).append("' AS ").append(Search.SEARCH_TYPE).append(",");
+        sql.append(table).append(".").append(idColumn).append(" AS ")
+                .append(Search.SEARCH_ENTITY_ID).append(",");
+        sql.append(table).append(".").append(titleColumn).append(" AS ")
+                .append(Search.SEARCH_TITLE).append(",");
+        sql.append(Search.SEARCH_SNIPPET);
+
+        if (contentSearch) {
+            // FTS4 tables share the _id of their source rows as docid
+            sql.append(",").append(ContentSearch.MATCHINFO);
+            sql.append(" FROM (SELECT docid AS ").append(ContentSearch.DOCID).append(",");
+            sql.append(snippet).append(" AS ").append(Search.SEARCH_SNIPPET).append(",");
+            sql.append("matchinfo(").append(searchTable).append(",'pcx') AS ")
+                    .append(ContentSearch.MATCHINFO);
+            sql.append(" FROM ").append(searchTable).append(" WHERE ").append(searchTable)
+                    .append(" MATCH ?)");
+            sql.append(" INNER JOIN ").append(table).append(" ON ").append(ContentSearch.DOCID)
+                    .append("=").append(table).append("._id");
+        } else {
+            sql.append(" FROM (SELECT ").append(searchIdColumn).append(" AS ")
+                    .append(CombinedSearch.SEARCH_ID).append(",");
+            sql.append(snippet).append(" AS ").append(Search.SEARCH_SNIPPET);
+            sql.append(" FROM ").append(searchTable).append(" WHERE ").append(searchTable)
+                    .append(" MATCH ?)");
+            sql.append(" INNER JOIN ").append(table).append(" ON ")
+                    .append(CombinedSearch.SEARCH_ID).append("=").append(table).append(".")
+                    .append(idColumn);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Return the precomputed {@link QueryTemplate} for the requested
+     * {@link Uri}.
+     */
+    static QueryTemplate getQueryTemplate(Uri uri) {
+        return getQueryTemplate(uri, sUriMatcher.match(uri));
+    }
+
+    private static QueryTemplate getQueryTemplate(Uri uri, int match) {
+        final QueryTemplate template = sQueryTemplates.get(match);
+        if (template == null) {
+            throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+        return template;
+    }
+
+    /**
+     * Return the set of {@link Tables} read when building results for the
+     * requested {@link UriMatcher} code, when those results are stable enough
+     * to keep in {@link #mQueryCache}. Returns {@code null} for anything that
+     * shouldn't be cached.
+     */
+    private static String[] getCacheableTables(int match) {
         switch (match) {
-            case BLOCKS: {
-                return builder.table(Tables.BLOCKS);
-            }
-            case BLOCKS_BETWEEN: {
-                final List<String> segments = uri.getPathSegments();
-                final String startTime = segments.get(2);
-                final String endTime = segments.get(3);
-                return builder.table(Tables.BLOCKS)
-                        .map(Blocks.SESSIONS_COUNT, Subquery.BLOCK_SESSIONS_COUNT)
-                        .map(Blocks.CONTAINS_STARRED, Subquery.BLOCK_CONTAINS_STARRED)
-                        .where(Blocks.BLOCK_START + ">=?", startTime)
-                        .where(Blocks.BLOCK_START + "<=?", endTime);
-            }
-            case BLOCKS_ID: {
-                final String blockId = Blocks.getBlockId(uri);
-                return builder.table(Tables.BLOCKS)
-                        .map(Blocks.SESSIONS_COUNT, Subquery.BLOCK_SESSIONS_COUNT)
-                        .map(Blocks.CONTAINS_STARRED, Subquery.BLOCK_CONTAINS_STARRED)
-                        .where(Blocks.BLOCK_ID + "=?", blockId);
-            }
-            case BLOCKS_ID_SESSIONS: {
-                final String blockId = Blocks.getBlockId(uri);
-                return builder.table(Tables.SESSIONS_JOIN_BLOCKS_ROOMS)
-                        .map(Blocks.SESSIONS_COUNT, Subquery.BLOCK_SESSIONS_COUNT)
-                        .map(Blocks.CONTAINS_STARRED, Subquery.BLOCK_CONTAINS_STARRED)
-                        .mapToTable(Sessions._ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.SESSION_ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
-                        .where(Qualified.SESSIONS_BLOCK_ID + "=?", blockId);
-            }
-            case TRACKS: {
-                return builder.table(Tables.TRACKS)
-                        .map(Tracks.SESSIONS_COUNT, Subquery.TRACK_SESSIONS_COUNT)
-                        .map(Tracks.VENDORS_COUNT, Subquery.TRACK_VENDORS_COUNT);
-            }
-            case TRACKS_ID: {
-                final String trackId = Tracks.getTrackId(uri);
-                return builder.table(Tables.TRACKS)
-                        .where(Tracks.TRACK_ID + "=?", trackId);
-            }
-            case TRACKS_ID_SESSIONS: {
-                final String trackId = Tracks.getTrackId(uri);
-                return builder.table(Tables.SESSIONS_TRACKS_JOIN_SESSIONS_BLOCKS_ROOMS)
-                        .mapToTable(Sessions._ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.SESSION_ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
-                        .where(Qualified.SESSIONS_TRACKS_TRACK_ID + "=?", trackId);
-            }
-            case TRACKS_ID_VENDORS: {
-                final String trackId = Tracks.getTrackId(uri);
-                return builder.table(Tables.VENDORS_JOIN_TRACKS)
-                        .mapToTable(Vendors._ID, Tables.VENDORS)
-                        .mapToTable(Vendors.TRACK_ID, Tables.VENDORS)
-                        .where(Qualified.VENDORS_TRACK_ID + "=?", trackId);
-            }
-            case ROOMS: {
-                return builder.table(Tables.ROOMS);
-            }
-            case ROOMS_ID: {
-                final String roomId = Rooms.getRoomId(uri);
-                return builder.table(Tables.ROOMS)
-                        .where(Rooms.ROOM_ID + "=?", roomId);
-            }
-            case ROOMS_ID_SESSIONS: {
-                final String roomId = Rooms.getRoomId(uri);
-                return builder.table(Tables.SESSIONS_JOIN_BLOCKS_ROOMS)
-                        .mapToTable(Sessions._ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
-                        .where(Qualified.SESSIONS_ROOM_ID + "=?", roomId);
-            }
-            case SESSIONS: {
-                return builder.table(Tables.SESSIONS_JOIN_BLOCKS_ROOMS)
-                        .mapToTable(Sessions._ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS);
-            }
-            case SESSIONS_STARRED: {
-                return builder.table(Tables.SESSIONS_JOIN_BLOCKS_ROOMS)
-                        .mapToTable(Sessions._ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
-                        .where(Sessions.SESSION_STARRED + "=1");
-            }
-            case SESSIONS_SEARCH: {
-                final String query = Sessions.getSearchQuery(uri);
-                return builder.table(Tables.SESSIONS_SEARCH_JOIN_SESSIONS_BLOCKS_ROOMS)
-                        .map(Sessions.SEARCH_SNIPPET, Subquery.SESSIONS_SNIPPET)
-                        .mapToTable(Sessions._ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.SESSION_ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
-                        .where(SessionsSearchColumns.BODY + " MATCH ?", query);
-            }
-            case SESSIONS_AT: {
-                final List<String> segments = uri.getPathSegments();
-                final String time = segments.get(2);
-                return builder.table(Tables.SESSIONS_JOIN_BLOCKS_ROOMS)
-                        .mapToTable(Sessions._ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
-                        .where(Sessions.BLOCK_START + "<=?", time)
-                        .where(Sessions.BLOCK_END + ">=?", time);
-            }
-            case SESSIONS_ID: {
-                final String sessionId = Sessions.getSessionId(uri);
-                return builder.table(Tables.SESSIONS_JOIN_BLOCKS_ROOMS)
-                        .mapToTable(Sessions._ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
-                        .where(Qualified.SESSIONS_SESSION_ID + "=?", sessionId);
-            }
-            case SESSIONS_ID_SPEAKERS: {
-                final String sessionId = Sessions.getSessionId(uri);
-                return builder.table(Tables.SESSIONS_SPEAKERS_JOIN_SPEAKERS)
-                        .mapToTable(Speakers._ID, Tables.SPEAKERS)
-                        .mapToTable(Speakers.SPEAKER_ID, Tables.SPEAKERS)
-                        .where(Qualified.SESSIONS_SPEAKERS_SESSION_ID + "=?", sessionId);
-            }
-            case SESSIONS_ID_TRACKS: {
-                final String sessionId = Sessions.getSessionId(uri);
-                return builder.table(Tables.SESSIONS_TRACKS_JOIN_TRACKS)
-                        .mapToTable(Tracks._ID, Tables.TRACKS)
-                        .mapToTable(Tracks.TRACK_ID, Tables.TRACKS)
-                        .where(Qualified.SESSIONS_TRACKS_SESSION_ID + "=?", sessionId);
-            }
-            case SPEAKERS: {
-                return builder.table(Tables.SPEAKERS);
-            }
-            case SPEAKERS_ID: {
-                final String speakerId = Speakers.getSpeakerId(uri);
-                return builder.table(Tables.SPEAKERS)
-                        .where(Speakers.SPEAKER_ID + "=?", speakerId);
-            }
-            case SPEAKERS_ID_SESSIONS: {
-                final String speakerId = Speakers.getSpeakerId(uri);
-                return builder.table(Tables.SESSIONS_SPEAKERS_JOIN_SESSIONS_BLOCKS_ROOMS)
-                        .mapToTable(Sessions._ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.SESSION_ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
-                        .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
-                        .where(Qualified.SESSIONS_SPEAKERS_SPEAKER_ID + "=?", speakerId);
-            }
-            case VENDORS: {
-                return builder.table(Tables.VENDORS_JOIN_TRACKS)
-                        .mapToTable(Vendors._ID, Tables.VENDORS)
-                        .mapToTable(Vendors.TRACK_ID, Tables.VENDORS);
-            }
-            case VENDORS_STARRED: {
-                return builder.table(Tables.VENDORS_JOIN_TRACKS)
-                        .mapToTable(Vendors._ID, Tables.VENDORS)
-                        .mapToTable(Vendors.TRACK_ID, Tables.VENDORS)
-                        .where(Vendors.VENDOR_STARRED + "=1");
-            }
-            case VENDORS_SEARCH: {
-                final String query = Vendors.getSearchQuery(uri);
-                return builder.table(Tables.VENDORS_SEARCH_JOIN_VENDORS_TRACKS)
-                        .map(Vendors.SEARCH_SNIPPET, Subquery.VENDORS_SNIPPET)
-                        .mapToTable(Vendors._ID, Tables.VENDORS)
-                        .mapToTable(Vendors.VENDOR_ID, Tables.VENDORS)
-                        .mapToTable(Vendors.TRACK_ID, Tables.VENDORS)
-                        .where(VendorsSearchColumns.BODY + " MATCH ?", query);
-            }
-            case VENDORS_ID: {
-                final String vendorId = Vendors.getVendorId(uri);
-                return builder.table(Tables.VENDORS_JOIN_TRACKS)
-                        .mapToTable(Vendors._ID, Tables.VENDORS)
-                        .mapToTable(Vendors.TRACK_ID, Tables.VENDORS)
-                        .where(Vendors.VENDOR_ID + "=?", vendorId);
-            }
-            default: {
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
-            }
+            case BLOCKS:
+            case BLOCKS_RANGE:
+                return CacheTables.BLOCKS;
+            case BLOCKS_BETWEEN:
+                return CacheTables.BLOCKS_BETWEEN;
+            case TRACKS:
+                return CacheTables.TRACKS;
+            case TRACKS_ID:
+                return CacheTables.TRACKS_ID;
+            case ROOMS:
+            case ROOMS_ID:
+                return CacheTables.ROOMS;
+            case SESSIONS_ID_DETAIL:
+                return CacheTables.SESSION_DETAIL;
+            default:
+                return null;
         }
     }
 
+    /**
+     * Return a {@link QueryCache.Requery} that runs the given query through
+     * {@link #query} again. The requested projection is copied, since running
+     * a query maps it in place.
+     */
+    private QueryCache.Requery newRequery(final Uri uri, String[] projection,
+            final String selection, final String[] selectionArgs, final String sortOrder) {
+        final String[] requested = (projection != null) ? projection.clone() : null;
+        return new QueryCache.Requery() {
+            public Cursor query() {
+                return ScheduleProvider.this.query(uri,
+                        (requested != null) ? requested.clone() : null, selection,
+                        selectionArgs, sortOrder);
+            }
+        };
+    }
+
     @Override
     public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
         final int match = sUriMatcher.match(uri);
@@ -618,6 +1075,20 @@ public class ScheduleProvider extends ContentProvider {
         }
     }
 
+    /**
+     * {@link Tables} that cached results depend on, including any tables read
+     * by {@link Subquery} columns.
+     */
+    private interface CacheTables {
+        String[] BLOCKS = { Tables.BLOCKS };
+        String[] BLOCKS_BETWEEN = { Tables.BLOCKS, Tables.SESSIONS };
+        String[] TRACKS = { Tables.TRACKS, Tables.SESSIONS_TRACKS, Tables.VENDORS };
+        String[] TRACKS_ID = { Tables.TRACKS };
+        String[] ROOMS = { Tables.ROOMS };
+        String[] SESSION_DETAIL = { Tables.SESSIONS, Tables.BLOCKS, Tables.ROOMS, Tables.TRACKS,
+                Tables.SESSIONS_TRACKS, Tables.SESSIONS_SPEAKERS, Tables.SPEAKERS };
+    }
+
     private interface Subquery {
         String BLOCK_SESSIONS_COUNT = "(SELECT COUNT(" + Qualified.SESSIONS_SESSION_ID + ") FROM "
                 + Tables.SESSIONS + " WHERE " + Qualified.SESSIONS_BLOCK_ID + "="
@@ -639,6 +1110,84 @@ public class ScheduleProvider extends ContentProvider {
         String VENDORS_SNIPPET = "snippet(" + Tables.VENDORS_SEARCH + ",'{','}','\u2026')";
     }
 
+    /**
+     * Table clauses used to search the FTS4 layout, where search tables share
+     * the {@link BaseColumns#_ID} of their source rows as {@code docid}.
+     * Search functions are evaluated next to {@code MATCH} in a subquery, and
+     * the single argument is the search query.
+     */
+    private interface ContentSearch {
+        String DOCID = "search_docid";
+        String MATCHINFO = "search_matchinfo";
+
+        String SESSIONS_JOIN_SESSIONS_BLOCKS_ROOMS = "(SELECT docid AS " + DOCID + ","
+                + Subquery.SESSIONS_SNIPPET + " AS " + Sessions.SEARCH_SNIPPET + ","
+                + "matchinfo(" + Tables.SESSIONS_SEARCH + ",'pcx') AS " + MATCHINFO
+                + " FROM " + Tables.SESSIONS_SEARCH
+                + " WHERE " + Tables.SESSIONS_SEARCH + " MATCH ?) "
+                + "INNER JOIN sessions ON " + DOCID + "=sessions._id "
+                + "LEFT OUTER JOIN blocks ON sessions.block_id=blocks.block_id "
+                + "LEFT OUTER JOIN rooms ON sessions.room_id=rooms.room_id";
+
+        String VENDORS_JOIN_VENDORS_TRACKS = "(SELECT docid AS " + DOCID + ","
+                + Subquery.VENDORS_SNIPPET + " AS " + Vendors.SEARCH_SNIPPET + ","
+                + "matchinfo(" + Tables.VENDORS_SEARCH + ",'pcx') AS " + MATCHINFO
+                + " FROM " + Tables.VENDORS_SEARCH
+                + " WHERE " + Tables.VENDORS_SEARCH + " MATCH ?) "
+                + "INNER JOIN vendors ON " + DOCID + "=vendors._id "
+                + "LEFT OUTER JOIN tracks ON vendors.track_id=tracks.track_id";
+    }
+
+    /**
+     * Query behind {@link Sessions#buildSessionDetailUri(String, String)},
+     * joining a session with a single track, preferring the one bound to the
+     * {@code ?}, and with each of its speakers.
+     */
+    private interface SessionDetail {
+        String SESSIONS_JOIN_BLOCKS_ROOMS_TRACK_SPEAKERS = "sessions "
+                + "LEFT OUTER JOIN blocks ON sessions.block_id=blocks.block_id "
+                + "LEFT OUTER JOIN rooms ON sessions.room_id=rooms.room_id "
+                + "LEFT OUTER JOIN tracks ON tracks.track_id=(SELECT track_id FROM sessions_tracks"
+                + " WHERE sessions_tracks.session_id=sessions.session_id"
+                + " ORDER BY track_id=? DESC, track_id LIMIT 1) "
+                + "LEFT OUTER JOIN sessions_speakers"
+                + " ON sessions.session_id=sessions_speakers.session_id "
+                + "LEFT OUTER JOIN speakers ON sessions_speakers.speaker_id=speakers.speaker_id";
+    }
+
+    /**
+     * Table clause finding the next time after the {@code ?} time when a
+     * block starts, and the first time a block ends at or after the second
+     * {@code ?}, each with a single index lookup. {@link #TIME} picks the
+     * earlier transition, where a block stops matching
+     * {@link Sessions#buildSessionsAtDirUri} a millisecond after its end.
+     */
+    private interface BlockTransition {
+        String NEXT_START = "next_start";
+        String NEXT_END = "next_end";
+
+        String NEXT_START_END = "(SELECT MIN(" + Blocks.BLOCK_START + ") AS " + NEXT_START
+                + " FROM " + Tables.BLOCKS + " WHERE " + Blocks.BLOCK_START + ">?),"
+                + "(SELECT MIN(" + Blocks.BLOCK_END + ") AS " + NEXT_END
+                + " FROM " + Tables.BLOCKS + " WHERE " + Blocks.BLOCK_END + ">=?)";
+
+        String TIME = "CASE WHEN " + NEXT_END + " IS NULL OR " + NEXT_START + "<=" + NEXT_END
+                + " THEN " + NEXT_START + " ELSE " + NEXT_END + "+1 END";
+    }
+
+    /**
+     * Queries behind {@link Search} results, for both search layouts.
+     */
+    private interface CombinedSearch {
+        /** Number of search tables, each taking the query as an argument. */
+        int TABLE_COUNT = 3;
+
+        String SEARCH_ID = "search_id";
+
+        String QUERY = buildCombinedSearchQuery(false);
+        String CONTENT_QUERY = buildCombinedSearchQuery(true);
+    }
+
     /**
      * {@link ScheduleContract} fields that are fully qualified with a specific
      * parent {@link Tables}. Used when needed to work around SQL ambiguity.
@@ -666,5 +1215,7 @@ public class ScheduleProvider extends ContentProvider {
 
         String TRACKS_TRACK_ID = Tables.TRACKS + "." + Tracks.TRACK_ID;
         String BLOCKS_BLOCK_ID = Tables.BLOCKS + "." + Blocks.BLOCK_ID;
+        String BLOCKS_BLOCK_START = Tables.BLOCKS + "." + Blocks.BLOCK_START;
+        String BLOCKS_BLOCK_END = Tables.BLOCKS + "." + Blocks.BLOCK_END;
     }
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.iosched.provider;
+
+import com.google.android.apps.iosched.provider.ScheduleContract.Sessions;
+import com.google.android.apps.iosched.provider.ScheduleContract.Speakers;
+import com.google.android.apps.iosched.provider.ScheduleContract.Tracks;
+import com.google.android.apps.iosched.provider.ScheduleDatabase.Tables;
+
+import android.app.SearchManager;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.TreeSet;
+
+/**
+ * Immutable in-memory index of search suggestions, answering prefix lookups
+ * with a binary search over sorted keys instead of a {@code LIKE} scan. Every
+ * word of a suggestion is indexed, so typing a speaker's last name also
+ * suggests their full name.
+ */
+class SuggestionIndex {
+    /** Tables that suggestions are read from, paired with {@link #SOURCE_COLUMNS}. */
+    static final String[] SOURCE_TABLES = {
+            Tables.SEARCH_SUGGEST,
+            Tables.SESSIONS,
+            Tables.SPEAKERS,
+            Tables.TRACKS,
+    };
+
+    private static final String[] SOURCE_COLUMNS = {
+            SearchManager.SUGGEST_COLUMN_TEXT_1,
+            Sessions.SESSION_TITLE,
+            Speakers.SPEAKER_NAME,
+            Tracks.TRACK_NAME,
+    };
+
+    private static final String[] COLUMNS = {
+            BaseColumns._ID,
+            SearchManager.SUGGEST_COLUMN_TEXT_1,
+            SearchManager.SUGGEST_COLUMN_QUERY,
+    };
+
+    /** Distinct suggestions, sorted case-insensitively. */
+    private final String[] mTexts;
+
+    /** Lower-case suffix of a suggestion starting at each word, sorted. */
+    private final String[] mKeys;
+
+    /** Position in {@link #mTexts} of the suggestion each key came from. */
+    private final int[] mKeyTexts;
+
+    private final int mVersion;
+
+    private SuggestionIndex(String[] texts, String[] keys, int[] keyTexts, int version) {
+        mTexts = texts;
+        mKeys = keys;
+        mKeyTexts = keyTexts;
+        mVersion = version;
+    }
+
+    /**
+     * Load all suggestions from {@link #SOURCE_TABLES}. The given version
+     * should be captured from {@link QueryCache#getVersion()} before calling,
+     * so that writes made while loading are noticed later.
+     */
+    public static SuggestionIndex build(SQLiteDatabase db, int version) {
+        final TreeSet<String> texts = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < SOURCE_TABLES.length; i++) {
+            final Cursor cursor = db.query(true, SOURCE_TABLES[i],
+                    new String[] { SOURCE_COLUMNS[i] }, null, null, null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    final String text = cursor.getString(0);
+                    if (text != null && text.trim().length() > 0) {
+                        texts.add(text.trim());
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        final String[] sortedTexts = texts.toArray(new String[texts.size()]);
+        final ArrayList<String> keys = new ArrayList<String>();
+        final ArrayList<Integer> keyTexts = new ArrayList<Integer>();
+        for (int i = 0; i < sortedTexts.length; i++) {
+            final String text = sortedTexts[i];
+            for (int j = 0; j < text.length(); j++) {
+                if (!Character.isWhitespace(text.charAt(j))
+                        && (j == 0 || Character.isWhitespace(text.charAt(j - 1)))) {
+                    keys.add(normalize(text.substring(j)));
+                    keyTexts.add(i);
+                }
+            }
+        }
+
+        final Integer[] order = new Integer[keys.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer lhs, Integer rhs) {
+                return keys.get(lhs).compareTo(keys.get(rhs));
+            }
+        });
+
+        final String[] sortedKeys = new String[order.length];
+        final int[] sortedKeyTexts = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedKeys[i] = keys.get(order[i]);
+            sortedKeyTexts[i] = keyTexts.get(order[i]);
+        }
+        return new SuggestionIndex(sortedTexts, sortedKeys, sortedKeyTexts, version);
+    }
+
+    /** Return the {@link QueryCache} version this index was loaded at. */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Return suggestions with any word starting with the given prefix,
+     * ignoring case, sorted alphabetically and holding at most {@code limit}
+     * rows. The returned {@link Cursor} has the columns expected by
+     * {@link SearchManager}.
+     */
+    public Cursor query(String prefix, int limit) {
+        final String key = normalize(prefix);
+
+        // Collect each matching suggestion once, in alphabetical order
+        int[] matches = new int[16];
+        int matchCount = 0;
+        for (int i = lowerBound(key); i < mKeys.length && mKeys[i].startsWith(key); i++) {
+            if (matchCount == matches.length) {
+                final int[] grown = new int[matchCount * 2];
+                System.arraycopy(matches, 0, grown, 0, matchCount);
+                matches = grown;
+            }
+            matches[matchCount++] = mKeyTexts[i];
+        }
+        Arrays.sort(matches, 0, matchCount);
+
+        final MatrixCursor cursor = new MatrixCursor(COLUMNS, Math.min(matchCount, limit));
+        int previous = -1;
+        for (int i = 0; i < matchCount && cursor.getCount() < limit; i++) {
+            final int text = matches[i];
+            if (text != previous) {
+                cursor.addRow(new Object[] { text, mTexts[text], mTexts[text] });
+                previous = text;
+            }
+        }
+        return cursor;
+    }
+
+    /** Return the position of the first key not less than the given key. */
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = mKeys.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mKeys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.US);
+    }
+}
@@ -29,6 +29,7 @@ import com.google.android.apps.iosched.io.RemoteSpeakersHandler;
 import com.google.android.apps.iosched.io.RemoteVendorsHandler;
 import com.google.android.apps.iosched.io.RemoteWorksheetsHandler;
 import com.google.android.apps.iosched.provider.ScheduleProvider;
+import com.google.android.apps.iosched.util.TrackCatalog;
 
 import org.apache.http.Header;
 import org.apache.http.HeaderElement;
@@ -122,6 +123,10 @@ public class SyncService extends IntentService {
                 Context.MODE_PRIVATE);
         final int localVersion = prefs.getInt(Prefs.LOCAL_VERSION, VERSION_NONE);
 
+        // Reload tracks once after the sync, rather than after every batch
+        final TrackCatalog trackCatalog = TrackCatalog.getInstance(context);
+        trackCatalog.holdReloads();
+
         try {
             // Bulk of sync work, performed by executing several fetches from
             // local and online sources.
@@ -164,6 +169,8 @@ public class SyncService extends IntentService {
                 bundle.putString(Intent.EXTRA_TEXT, e.toString());
                 receiver.send(STATUS_ERROR, bundle);
             }
+        } finally {
+            trackCatalog.releaseReloads();
         }
 
         // Announce success to any surface listener
@@ -18,12 +18,14 @@ package com.google.android.apps.iosched.ui;
 
 import com.google.android.apps.iosched.R;
 import com.google.android.apps.iosched.util.AnalyticsUtils;
+import com.google.android.apps.iosched.util.WebContentCache;
 
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
+import android.text.format.DateUtils;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -36,20 +38,29 @@ import android.webkit.WebViewClient;
 import java.util.regex.Pattern;
 
 /**
- * A fragment containing a {@link WebView} pointing to the I/O announcements URL.
+ * A fragment containing a {@link WebView} pointing to the I/O announcements URL. Announcements
+ * are shown from {@link WebContentCache} right away, and refreshed in the background.
  */
 public class BulletinFragment extends Fragment {
 
     private static final Pattern sSiteUrlPattern = Pattern.compile("google\\.com\\/events\\/io");
-    private static final String BULLETIN_URL =
+    public static final String BULLETIN_URL =
             "http://www.google.com/events/io/2011/mobile_announcements.html";
 
+    /** How long cached announcements are shown before checking for new ones. */
+    public static final long MAX_AGE_MILLIS = 15 * DateUtils.MINUTE_IN_MILLIS;
+
     private WebView mWebView;
     private View mLoadingSpinner;
 
+    private WebContentCache mContentCache;
+    private WebContentCache.Binding mContentBinding;
+    private boolean mHasNavigated = false;
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mContentCache = WebContentCache.getInstance(getActivity());
         setHasOptionsMenu(true);
         AnalyticsUtils.getInstance(getActivity()).trackPageView("/Bulletin");
     }
@@ -73,13 +84,21 @@ public class BulletinFragment extends Fragment {
             public void run() {
                 mWebView.getSettings().setJavaScriptEnabled(true);
                 mWebView.getSettings().setJavaScriptCanOpenWindowsAutomatically(false);
-                mWebView.loadUrl(BULLETIN_URL);
+                mContentBinding = mContentCache.bind(mWebView, BULLETIN_URL, MAX_AGE_MILLIS);
             }
         });
 
         return root;
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (mContentBinding != null) {
+            mContentBinding.cancel();
+        }
+    }
+
     @Override
     public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
         super.onCreateOptionsMenu(menu, inflater);
@@ -89,7 +108,11 @@ public class BulletinFragment extends Fragment {
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         if (item.getItemId() == R.id.menu_refresh) {
-            mWebView.reload();
+            if (mHasNavigated) {
+                mWebView.reload();
+            } else if (mContentBinding != null) {
+                mContentBinding.reload();
+            }
             return true;
         }
         return super.onOptionsItemSelected(item);
@@ -113,6 +136,11 @@ public class BulletinFragment extends Fragment {
         @Override
         public boolean shouldOverrideUrlLoading(WebView view, String url) {
             if (sSiteUrlPattern.matcher(url).find()) {
+                // Don't pull the user away from a page they followed a link to.
+                mHasNavigated = true;
+                if (mContentBinding != null) {
+                    mContentBinding.cancel();
+                }
                 return false;
             }
 
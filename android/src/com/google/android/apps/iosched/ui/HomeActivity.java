@@ -21,6 +21,8 @@ import com.google.android.apps.iosched.service.SyncService;
 import com.google.android.apps.iosched.util.AnalyticsUtils;
 import com.google.android.apps.iosched.util.DetachableResultReceiver;
 import com.google.android.apps.iosched.util.EulaHelper;
+import com.google.android.apps.iosched.util.VenueMap;
+import com.google.android.apps.iosched.util.WebContentCache;
 
 import android.app.Activity;
 import android.content.Intent;
@@ -101,6 +103,17 @@ public class HomeActivity extends BaseActivity {
         intent.putExtra(SyncService.EXTRA_STATUS_RECEIVER, mSyncStatusUpdaterFragment.mReceiver);
         startService(intent);
 
+        // Keep pages that are slow to load on the conference network ready for offline use.
+        final WebContentCache contentCache = WebContentCache.getInstance(this);
+        contentCache.prefetch(BulletinFragment.BULLETIN_URL, BulletinFragment.MAX_AGE_MILLIS);
+        VenueMap.load(this, new VenueMap.Callbacks() {
+            public void onVenueMapLoaded(VenueMap venueMap) {
+                if (venueMap == null) {
+                    contentCache.prefetch(MapFragment.MAP_URL, MapFragment.MAX_AGE_MILLIS);
+                }
+            }
+        });
+
         if (mTagStreamFragment != null) {
             mTagStreamFragment.refresh();
         }
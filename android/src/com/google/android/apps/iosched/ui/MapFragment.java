@@ -19,14 +19,19 @@ package com.google.android.apps.iosched.ui;
 import com.google.android.apps.iosched.R;
 import com.google.android.apps.iosched.provider.ScheduleContract;
 import com.google.android.apps.iosched.provider.ScheduleContract.Rooms;
+import com.google.android.apps.iosched.ui.widget.VenueMapView;
 import com.google.android.apps.iosched.util.AnalyticsUtils;
 import com.google.android.apps.iosched.util.ParserUtils;
+import com.google.android.apps.iosched.util.VenueMap;
+import com.google.android.apps.iosched.util.WebContentCache;
 
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
+import android.text.format.DateUtils;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -37,10 +42,14 @@ import android.view.ViewGroup;
 import android.webkit.WebChromeClient;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
+import android.widget.FrameLayout;
 import android.widget.Toast;
 
 /**
- * Shows a {@link WebView} with a map of the conference venue.
+ * Shows a map of the conference venue. When the floor plans are bundled as a {@link VenueMap},
+ * they are read in the background and drawn natively by a {@link VenueMapView}. Otherwise the
+ * map is a {@link WebView} page, shown from {@link WebContentCache} so that it also works
+ * offline.
  */
 public class MapFragment extends Fragment {
     private static final String TAG = "MapFragment";
@@ -51,17 +60,31 @@ public class MapFragment extends Fragment {
     public static final String EXTRA_ROOM = "com.google.android.iosched.extra.ROOM";
 
     private static final String MAP_JSI_NAME = "MAP_CONTAINER";
-    private static final String MAP_URL = "http://www.google.com/events/io/2011/embed.html";
-    private static boolean CLEAR_CACHE_ON_LOAD = false;
+    public static final String MAP_URL = "http://www.google.com/events/io/2011/embed.html";
+
+    /** How long the cached map page is shown before checking for a new one. */
+    public static final long MAX_AGE_MILLIS = DateUtils.DAY_IN_MILLIS;
+
+    private static final int MENU_GROUP_FLOORS = 1;
+
+    private VenueMap mVenueMap;
+    private boolean mVenueMapLoaded = false;
+    private VenueMapView mMapView;
+
+    private FrameLayout mRoot;
 
     private WebView mWebView;
     private View mLoadingSpinner;
     private boolean mMapInitialized = false;
 
+    private WebContentCache mContentCache;
+    private WebContentCache.Binding mContentBinding;
+    private AsyncTask<?, ?, ?> mVenueMapTask;
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        setHasOptionsMenu(true);
+        mContentCache = WebContentCache.getInstance(getActivity());
         AnalyticsUtils.getInstance(getActivity()).trackPageView("/Map");
     }
 
@@ -69,13 +92,35 @@ public class MapFragment extends Fragment {
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
             Bundle savedInstanceState) {
 
-        ViewGroup root = (ViewGroup) inflater.inflate(R.layout.fragment_webview_with_spinner, null);
+        mRoot = new FrameLayout(getActivity());
 
         // For some reason, if we omit this, NoSaveStateFrameLayout thinks we are
         // FILL_PARENT / WRAP_CONTENT, making the progress bar stick to the top of the activity.
-        root.setLayoutParams(new ViewGroup.LayoutParams(ViewGroup.LayoutParams.FILL_PARENT,
+        mRoot.setLayoutParams(new ViewGroup.LayoutParams(ViewGroup.LayoutParams.FILL_PARENT,
                 ViewGroup.LayoutParams.FILL_PARENT));
 
+        if (mVenueMapLoaded) {
+            showMap();
+        } else {
+            // The native map is only shown once its assets are read
+            mVenueMapTask = VenueMap.load(getActivity(), mVenueMapCallbacks);
+        }
+        return mRoot;
+    }
+
+    /**
+     * Show the native map when floor plans are bundled, or the web map
+     * otherwise. Each comes with its own options menu.
+     */
+    private void showMap() {
+        mRoot.addView(mVenueMap != null ? createVenueMapView() : createWebView());
+        setHasOptionsMenu(true);
+    }
+
+    private View createWebView() {
+        ViewGroup root = (ViewGroup) LayoutInflater.from(getActivity()).inflate(
+                R.layout.fragment_webview_with_spinner, mRoot, false);
+
         mLoadingSpinner = root.findViewById(R.id.loading_spinner);
         mWebView = (WebView) root.findViewById(R.id.webview);
         mWebView.setWebChromeClient(mWebChromeClient);
@@ -84,31 +129,69 @@ public class MapFragment extends Fragment {
         mWebView.post(new Runnable() {
             public void run() {
                 // Initialize web view
-                if (CLEAR_CACHE_ON_LOAD) {
-                    mWebView.clearCache(true);
-                }
-
                 mWebView.getSettings().setJavaScriptEnabled(true);
                 mWebView.getSettings().setJavaScriptCanOpenWindowsAutomatically(false);
-                mWebView.loadUrl(MAP_URL);
                 mWebView.addJavascriptInterface(mMapJsiImpl, MAP_JSI_NAME);
+                mContentBinding = mContentCache.bind(mWebView, MAP_URL, MAX_AGE_MILLIS);
             }
         });
 
         return root;
     }
 
+    private View createVenueMapView() {
+        mMapView = new VenueMapView(getActivity());
+        mMapView.setLayoutParams(new ViewGroup.LayoutParams(ViewGroup.LayoutParams.FILL_PARENT,
+                ViewGroup.LayoutParams.FILL_PARENT));
+        mMapView.setVenueMap(mVenueMap);
+        mMapView.setOnRoomClickListener(new VenueMapView.OnRoomClickListener() {
+            public void onRoomClick(String roomId) {
+                openRoom(roomId);
+            }
+        });
+
+        final Intent intent = BaseActivity.fragmentArgumentsToIntent(getArguments());
+        if (intent.hasExtra(EXTRA_ROOM)) {
+            mMapView.showRoom(intent.getStringExtra(EXTRA_ROOM));
+        }
+        mMapInitialized = true;
+        return mMapView;
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (mVenueMapTask != null) {
+            mVenueMapTask.cancel(false);
+            mVenueMapTask = null;
+        }
+        if (mContentBinding != null) {
+            mContentBinding.cancel();
+        }
+        mMapView = null;
+        mRoot = null;
+    }
 
     @Override
     public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
         super.onCreateOptionsMenu(menu, inflater);
+        if (mVenueMap != null) {
+            // Bundled floor plans never need refreshing, but have several floors
+            for (int floor = 0; floor < mVenueMap.getFloorCount(); floor++) {
+                menu.add(MENU_GROUP_FLOORS, floor, floor, mVenueMap.getFloorName(floor));
+            }
+            return;
+        }
         inflater.inflate(R.menu.refresh_menu_items, menu);
     }
 
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
-        if (item.getItemId() == R.id.menu_refresh) {
-            mWebView.reload();
+        if (item.getGroupId() == MENU_GROUP_FLOORS && mMapView != null) {
+            mMapView.setFloor(item.getItemId());
+            return true;
+        } else if (item.getItemId() == R.id.menu_refresh && mContentBinding != null) {
+            mContentBinding.reload();
             return true;
         }
         return super.onOptionsItemSelected(item);
@@ -134,7 +217,30 @@ public class MapFragment extends Fragment {
     }
 
     public void panLeft(float screenFraction) {
-        runJs("IoMap.panLeft('" + screenFraction + "');");
+        if (mMapView != null) {
+            mMapView.panLeft(screenFraction);
+        } else {
+            runJs("IoMap.panLeft('" + screenFraction + "');");
+        }
+    }
+
+    /**
+     * Open the sessions in the given room, or the sandbox when the room is
+     * a track's sandbox area.
+     */
+    private void openRoom(String roomId) {
+        final String possibleTrackId = ParserUtils.translateTrackIdAlias(roomId);
+        final Intent intent;
+        if (ParserUtils.LOCAL_TRACK_IDS.contains(possibleTrackId)) {
+            // This is a track; open up the sandbox for the track, since room IDs that are
+            // track IDs are sandbox areas in the map.
+            Uri trackVendorsUri = ScheduleContract.Tracks.buildVendorsUri(possibleTrackId);
+            intent = new Intent(Intent.ACTION_VIEW, trackVendorsUri);
+        } else {
+            Uri roomUri = Rooms.buildSessionsDirUri(roomId);
+            intent = new Intent(Intent.ACTION_VIEW, roomUri);
+        }
+        ((BaseActivity) getActivity()).openActivityOrFragment(intent);
     }
 
     /**
@@ -176,22 +282,19 @@ public class MapFragment extends Fragment {
         }
     };
 
+    private VenueMap.Callbacks mVenueMapCallbacks = new VenueMap.Callbacks() {
+        public void onVenueMapLoaded(VenueMap venueMap) {
+            mVenueMap = venueMap;
+            mVenueMapLoaded = true;
+            showMap();
+        }
+    };
+
     private MapJsi mMapJsiImpl = new MapJsi() {
-        public void openContentInfo(String roomId) {
-            final String possibleTrackId = ParserUtils.translateTrackIdAlias(roomId);
-            final Intent intent;
-            if (ParserUtils.LOCAL_TRACK_IDS.contains(possibleTrackId)) {
-                // This is a track; open up the sandbox for the track, since room IDs that are
-                // track IDs are sandbox areas in the map.
-                Uri trackVendorsUri = ScheduleContract.Tracks.buildVendorsUri(possibleTrackId);
-                intent = new Intent(Intent.ACTION_VIEW, trackVendorsUri);
-            } else {
-                Uri roomUri = Rooms.buildSessionsDirUri(roomId);
-                intent = new Intent(Intent.ACTION_VIEW, roomUri);
-            }
+        public void openContentInfo(final String roomId) {
             getActivity().runOnUiThread(new Runnable() {
                 public void run() {
-                    ((BaseActivity) getActivity()).openActivityOrFragment(intent);
+                    openRoom(roomId);
                 }
             });
         }
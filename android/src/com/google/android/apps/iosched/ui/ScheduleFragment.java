@@ -21,8 +21,11 @@ import com.google.android.apps.iosched.provider.ScheduleContract;
 import com.google.android.apps.iosched.ui.widget.BlockView;
 import com.google.android.apps.iosched.ui.widget.BlocksLayout;
 import com.google.android.apps.iosched.ui.widget.ObservableScrollView;
+import com.google.android.apps.iosched.ui.widget.TimeRulerView;
 import com.google.android.apps.iosched.ui.widget.Workspace;
 import com.google.android.apps.iosched.util.AnalyticsUtils;
+import com.google.android.apps.iosched.util.FrameStats;
+import com.google.android.apps.iosched.util.Lists;
 import com.google.android.apps.iosched.util.Maps;
 import com.google.android.apps.iosched.util.MotionEventUtils;
 import com.google.android.apps.iosched.util.NotifyingAsyncQueryHandler;
@@ -36,13 +39,13 @@ import android.content.IntentFilter;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.graphics.Rect;
-import android.graphics.drawable.LayerDrawable;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.provider.BaseColumns;
 import android.support.v4.app.Fragment;
 import android.text.format.DateUtils;
+import android.text.format.Time;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -51,6 +54,7 @@ import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.FrameLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -62,8 +66,9 @@ import java.util.TimeZone;
 /**
  * Shows a horizontally-pageable calendar of conference days. Horizontaly paging is achieved using
  * {@link Workspace}, and the primary UI classes for rendering the calendar are
- * {@link com.google.android.apps.iosched.ui.widget.TimeRulerView},
- * {@link BlocksLayout}, and {@link BlockView}.
+ * {@link TimeRulerView},
+ * {@link BlocksLayout}, and {@link BlockView}. One page is shown for each day covered by
+ * {@link ScheduleContract.Blocks}, and only pages near the current one keep their views.
  */
 public class ScheduleFragment extends Fragment implements
         NotifyingAsyncQueryHandler.AsyncQueryListener,
@@ -78,10 +83,11 @@ public class ScheduleFragment extends Fragment implements
     private static final int TIME_FLAGS = DateUtils.FORMAT_SHOW_DATE
             | DateUtils.FORMAT_SHOW_WEEKDAY | DateUtils.FORMAT_ABBREV_WEEKDAY;
 
-    private static final long TUE_START = ParserUtils.parseTime("2011-05-10T00:00:00.000-07:00");
-    private static final long WED_START = ParserUtils.parseTime("2011-05-11T00:00:00.000-07:00");
-
-    private static final int DISABLED_BLOCK_ALPHA = 100;
+    /**
+     * Number of days on either side of the current one that keep their views
+     * and blocks loaded. Days further away are released until scrolled to.
+     */
+    private static final int LOADED_DAY_RADIUS = 1;
 
     private static final HashMap<String, Integer> sTypeColumnMap = buildTypeColumnMap();
 
@@ -97,9 +103,13 @@ public class ScheduleFragment extends Fragment implements
     private int mTitleCurrentDayIndex = -1;
     private View mLeftIndicator;
     private View mRightIndicator;
+    private int mScrollY = 0;
+
+    private final FrameStats mScrollSyncStats = FrameStats.get(TAG + ".scrollSync");
 
     /**
      * A helper class containing object references related to a particular day in the schedule.
+     * The views other than {@link #rootView} are only set while the day is loaded.
      */
     private class Day {
         private ViewGroup rootView;
@@ -138,6 +148,7 @@ public class ScheduleFragment extends Fragment implements
         ViewGroup root = (ViewGroup) inflater.inflate(R.layout.fragment_schedule, null);
 
         mWorkspace = (Workspace) root.findViewById(R.id.workspace);
+        mWorkspace.setUseHardwareLayers(true);
 
         mTitle = (TextView) root.findViewById(R.id.block_title);
 
@@ -175,9 +186,9 @@ public class ScheduleFragment extends Fragment implements
             }
         });
 
-        setupDay(inflater, TUE_START);
-        setupDay(inflater, WED_START);
-
+        // Days are added once the range of blocks has been read
+        mDays.clear();
+        mTitleCurrentDayIndex = -1;
         updateWorkspaceHeader(0);
         mWorkspace.setOnScrollListener(new Workspace.OnScrollListener() {
             public void onScroll(float screenFraction) {
@@ -194,6 +205,13 @@ public class ScheduleFragment extends Fragment implements
         }
 
         mTitleCurrentDayIndex = dayIndex;
+        if (dayIndex >= mDays.size()) {
+            mTitle.setText(null);
+            mLeftIndicator.setVisibility(View.INVISIBLE);
+            mRightIndicator.setVisibility(View.INVISIBLE);
+            return;
+        }
+
         Day day = mDays.get(dayIndex);
         mTitle.setText(day.label);
 
@@ -201,29 +219,70 @@ public class ScheduleFragment extends Fragment implements
                 .setVisibility((dayIndex != 0) ? View.VISIBLE : View.INVISIBLE);
         mRightIndicator
                 .setVisibility((dayIndex < mDays.size() - 1) ? View.VISIBLE : View.INVISIBLE);
+
+        updateLoadedDays(dayIndex);
+    }
+
+    /**
+     * Rebuild the list of days to cover the given range of blocks, one page
+     * per calendar day in {@link UIUtils#CONFERENCE_TIME_ZONE}. Returns
+     * {@code false} when the existing days already match.
+     */
+    private boolean setupDays(long rangeStart, long rangeEnd) {
+        final ArrayList<Long> dayStarts = Lists.newArrayList();
+        final Time time = new Time(UIUtils.CONFERENCE_TIME_ZONE.getID());
+        time.set(rangeStart);
+        time.hour = 0;
+        time.minute = 0;
+        time.second = 0;
+        long dayStart = time.normalize(true);
+        do {
+            dayStarts.add(dayStart);
+            time.monthDay++;
+            dayStart = time.normalize(true);
+        } while (dayStart < rangeEnd);
+
+        if (dayStarts.size() == mDays.size()) {
+            boolean matches = true;
+            for (int i = 0; i < dayStarts.size(); i++) {
+                matches &= (mDays.get(i).timeStart == dayStarts.get(i));
+            }
+            if (matches) {
+                return false;
+            }
+        }
+
+        for (Day day : mDays) {
+            releaseDay(day);
+        }
+        mDays.clear();
+        mWorkspace.removeAllViews();
+
+        for (int i = 0; i < dayStarts.size(); i++) {
+            final long timeEnd = (i < dayStarts.size() - 1) ? dayStarts.get(i + 1)
+                    : dayStarts.get(i) + DateUtils.DAY_IN_MILLIS;
+            setupDay(dayStarts.get(i), timeEnd);
+        }
+
+        final int dayIndex = Math.max(0, Math.min(mTitleCurrentDayIndex, mDays.size() - 1));
+        mWorkspace.setCurrentScreenNow(dayIndex, false);
+        mTitleCurrentDayIndex = -1;
+        updateWorkspaceHeader(dayIndex);
+        return true;
     }
 
-    private void setupDay(LayoutInflater inflater, long startMillis) {
+    private void setupDay(long startMillis, long endMillis) {
         Day day = new Day();
 
         // Setup data
         day.index = mDays.size();
         day.timeStart = startMillis;
-        day.timeEnd = startMillis + DateUtils.DAY_IN_MILLIS;
+        day.timeEnd = endMillis;
         day.blocksUri = ScheduleContract.Blocks.buildBlocksBetweenDirUri(
                 day.timeStart, day.timeEnd);
 
-        // Setup views
-        day.rootView = (ViewGroup) inflater.inflate(R.layout.blocks_content, null);
-
-        day.scrollView = (ObservableScrollView) day.rootView.findViewById(R.id.blocks_scroll);
-        day.scrollView.setOnScrollListener(this);
-
-        day.blocksView = (BlocksLayout) day.rootView.findViewById(R.id.blocks);
-        day.nowView = day.rootView.findViewById(R.id.blocks_now);
-
-        day.blocksView.setDrawingCacheEnabled(true);
-        day.blocksView.setAlwaysDrawnWithCacheEnabled(true);
+        // Setup an empty page, filled in by loadDay() once scrolled near
+        day.rootView = new FrameLayout(getActivity());
 
         TimeZone.setDefault(UIUtils.CONFERENCE_TIME_ZONE);
         day.label = DateUtils.formatDateTime(getActivity(), startMillis, TIME_FLAGS);
@@ -232,6 +291,73 @@ public class ScheduleFragment extends Fragment implements
         mDays.add(day);
     }
 
+    /**
+     * Load days within {@link #LOADED_DAY_RADIUS} of the given day, and
+     * release the views and blocks of all others.
+     */
+    private void updateLoadedDays(int dayIndex) {
+        for (Day day : mDays) {
+            if (Math.abs(day.index - dayIndex) <= LOADED_DAY_RADIUS) {
+                loadDay(day);
+            } else {
+                releaseDay(day);
+            }
+        }
+    }
+
+    /**
+     * Inflate the views for the given day if needed, and start loading its
+     * blocks.
+     */
+    private void loadDay(final Day day) {
+        if (day.blocksView != null) {
+            return;
+        }
+
+        final View contentView = getActivity().getLayoutInflater().inflate(
+                R.layout.blocks_content, day.rootView, false);
+        day.rootView.addView(contentView);
+
+        day.scrollView = (ObservableScrollView) contentView.findViewById(R.id.blocks_scroll);
+        day.scrollView.setOnScrollListener(this);
+
+        day.blocksView = (BlocksLayout) contentView.findViewById(R.id.blocks);
+        day.nowView = contentView.findViewById(R.id.blocks_now);
+
+        day.blocksView.setOnBlockClickListener(this);
+
+        final long now = UIUtils.getCurrentTime(getActivity());
+        day.nowView.setVisibility((now >= day.timeStart && now <= day.timeEnd)
+                ? View.VISIBLE : View.GONE);
+
+        // Match the vertical offset of other days once laid out
+        day.scrollView.post(new Runnable() {
+            public void run() {
+                if (day.scrollView != null) {
+                    day.scrollView.scrollTo(0, mScrollY);
+                }
+            }
+        });
+
+        startBlocksQuery(day);
+    }
+
+    /**
+     * Drop the views of the given day, leaving its empty page in place.
+     */
+    private void releaseDay(Day day) {
+        if (day.blocksView == null) {
+            return;
+        }
+
+        mHandler.cancelOperationsByCookie(day);
+
+        day.rootView.removeAllViews();
+        day.scrollView = null;
+        day.blocksView = null;
+        day.nowView = null;
+    }
+
     @Override
     public void onResume() {
         super.onResume();
@@ -252,21 +378,19 @@ public class ScheduleFragment extends Fragment implements
         getActivity().registerReceiver(mReceiver, filter, null, new Handler());
     }
 
+    /**
+     * Read the range of blocks again, which rebuilds the days if needed and
+     * then reloads the blocks of each loaded day.
+     */
     private void requery() {
-        for (Day day : mDays) {
-            mHandler.startQuery(0, day, day.blocksUri, BlocksQuery.PROJECTION,
-                    null, null, ScheduleContract.Blocks.DEFAULT_SORT);
-        }
+        mHandler.startQuery(RangeQuery._TOKEN, null,
+                ScheduleContract.Blocks.buildBlocksRangeUri(), RangeQuery.PROJECTION,
+                null, null, null);
     }
 
-    @Override
-    public void onActivityCreated(Bundle savedInstanceState) {
-        super.onActivityCreated(savedInstanceState);
-        getActivity().runOnUiThread(new Runnable() {
-            public void run() {
-                updateNowView(true);
-            }
-        });
+    private void startBlocksQuery(Day day) {
+        mHandler.startQuery(BlocksQuery._TOKEN, day, day.blocksUri, BlocksQuery.PROJECTION,
+                null, null, ScheduleContract.Blocks.DEFAULT_SORT);
     }
 
     @Override
@@ -274,6 +398,7 @@ public class ScheduleFragment extends Fragment implements
         super.onPause();
         getActivity().unregisterReceiver(mReceiver);
         getActivity().getContentResolver().unregisterContentObserver(mSessionChangesObserver);
+        FrameStats.dump(getActivity());
     }
 
     /**
@@ -281,14 +406,23 @@ public class ScheduleFragment extends Fragment implements
      */
     public void onQueryComplete(int token, Object cookie, Cursor cursor) {
         if (getActivity() == null) {
+            cursor.close();
             return;
         }
 
-        Day day = (Day) cookie;
+        if (token == RangeQuery._TOKEN) {
+            onRangeQueryComplete(cursor);
+            return;
+        }
 
-        // Clear out any existing sessions before inserting again
-        day.blocksView.removeAllBlocks();
+        Day day = (Day) cookie;
+        if (day.blocksView == null) {
+            // Day was released while its blocks were loading
+            cursor.close();
+            return;
+        }
 
+        final ArrayList<BlocksLayout.Block> blocks = Lists.newArrayList();
         try {
             while (cursor.moveToNext()) {
                 final String type = cursor.getString(BlocksQuery.BLOCK_TYPE);
@@ -303,26 +437,42 @@ public class ScheduleFragment extends Fragment implements
                 final long start = cursor.getLong(BlocksQuery.BLOCK_START);
                 final long end = cursor.getLong(BlocksQuery.BLOCK_END);
                 final boolean containsStarred = cursor.getInt(BlocksQuery.CONTAINS_STARRED) != 0;
+                final boolean enabled = cursor.getInt(BlocksQuery.SESSIONS_COUNT) > 0;
 
-                final BlockView blockView = new BlockView(getActivity(), blockId, title, start, end,
-                        containsStarred, column);
-
-                final int sessionsCount = cursor.getInt(BlocksQuery.SESSIONS_COUNT);
-                if (sessionsCount > 0) {
-                    blockView.setOnClickListener(this);
-                } else {
-                    blockView.setFocusable(false);
-                    blockView.setEnabled(false);
-                    LayerDrawable buttonDrawable = (LayerDrawable) blockView.getBackground();
-                    buttonDrawable.getDrawable(0).setAlpha(DISABLED_BLOCK_ALPHA);
-                    buttonDrawable.getDrawable(2).setAlpha(DISABLED_BLOCK_ALPHA);
-                }
+                blocks.add(new BlocksLayout.Block(blockId, title, start, end, containsStarred,
+                        column, enabled));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // Only blocks that changed since the last query touch their views
+        day.blocksView.setBlocks(blocks);
+    }
 
-                day.blocksView.addBlock(blockView);
+    private void onRangeQueryComplete(Cursor cursor) {
+        final boolean hadDays = !mDays.isEmpty();
+        try {
+            if (!cursor.moveToFirst() || cursor.isNull(RangeQuery.BLOCK_START)) {
+                return;
+            }
+
+            if (!setupDays(cursor.getLong(RangeQuery.BLOCK_START),
+                    cursor.getLong(RangeQuery.BLOCK_END))) {
+                // Same days as before, so only reload their blocks
+                for (Day day : mDays) {
+                    if (day.blocksView != null) {
+                        startBlocksQuery(day);
+                    }
+                }
             }
         } finally {
             cursor.close();
         }
+
+        if (!hadDays) {
+            updateNowView(true);
+        }
     }
 
     /** {@inheritDoc} */
@@ -349,20 +499,32 @@ public class ScheduleFragment extends Fragment implements
 
         Day nowDay = null; // effectively Day corresponding to today
         for (Day day : mDays) {
-            if (now >= day.timeStart && now <= day.timeEnd) {
+            final boolean isNowDay = (now >= day.timeStart && now <= day.timeEnd);
+            if (isNowDay) {
                 nowDay = day;
-                day.nowView.setVisibility(View.VISIBLE);
-            } else {
-                day.nowView.setVisibility(View.GONE);
+            }
+            if (day.nowView != null) {
+                day.nowView.setVisibility(isNowDay ? View.VISIBLE : View.GONE);
             }
         }
 
         if (nowDay != null && forceScroll) {
             // Scroll to show "now" in center
             mWorkspace.setCurrentScreen(nowDay.index);
-            final int offset = nowDay.scrollView.getHeight() / 2;
-            nowDay.nowView.requestRectangleOnScreen(new Rect(0, offset, 0, offset), true);
-            nowDay.blocksView.requestLayout();
+            loadDay(nowDay);
+
+            // Wait for a freshly loaded day to be laid out
+            final Day day = nowDay;
+            day.scrollView.post(new Runnable() {
+                public void run() {
+                    if (day.scrollView != null) {
+                        final int offset = day.scrollView.getHeight() / 2;
+                        day.nowView.requestRectangleOnScreen(
+                                new Rect(0, offset, 0, offset), true);
+                        day.blocksView.requestLayout();
+                    }
+                }
+            });
             return true;
         }
 
@@ -370,12 +532,24 @@ public class ScheduleFragment extends Fragment implements
     }
 
     public void onScrollChanged(ObservableScrollView view) {
+        final long startNanos = FrameStats.start();
+
         // Keep each day view at the same vertical scroll offset.
         final int scrollY = view.getScrollY();
+        mScrollY = scrollY;
         for (Day day : mDays) {
+            if (day.scrollView == null) {
+                continue;
+            }
             if (day.scrollView != view) {
                 day.scrollView.scrollTo(0, scrollY);
             }
+            day.blocksView.updateVisibleWindow();
+        }
+
+        if (mScrollSyncStats != null) {
+            // Recorded as layout time, since syncing only moves views around
+            mScrollSyncStats.recordLayout(startNanos);
         }
     }
 
@@ -408,11 +582,35 @@ public class ScheduleFragment extends Fragment implements
         @Override
         public void onReceive(Context context, Intent intent) {
             Log.d(TAG, "onReceive time update");
+            if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
+                // Block positions are cached against the old time zone rules
+                for (Day day : mDays) {
+                    if (day.blocksView != null) {
+                        ((TimeRulerView) day.blocksView.findViewById(R.id.blocks_ruler))
+                                .invalidateTimeMapping();
+                    }
+                }
+                requery();
+            }
             updateNowView(false);
         }
     };
 
+    private interface RangeQuery {
+        int _TOKEN = 0x1;
+
+        String[] PROJECTION = {
+                ScheduleContract.Blocks.BLOCK_START,
+                ScheduleContract.Blocks.BLOCK_END,
+        };
+
+        int BLOCK_START = 0;
+        int BLOCK_END = 1;
+    }
+
     private interface BlocksQuery {
+        int _TOKEN = 0x2;
+
         String[] PROJECTION = {
                 BaseColumns._ID,
                 ScheduleContract.Blocks.BLOCK_ID,
@@ -17,6 +17,7 @@
 package com.google.android.apps.iosched.ui;
 
 import com.google.android.apps.iosched.R;
+import com.google.android.apps.iosched.provider.ScheduleContract.Search;
 import com.google.android.apps.iosched.provider.ScheduleContract.Sessions;
 import com.google.android.apps.iosched.provider.ScheduleContract.Vendors;
 import com.google.android.apps.iosched.ui.phone.SessionDetailActivity;
@@ -25,30 +26,68 @@ import com.google.android.apps.iosched.ui.phone.VendorDetailActivity;
 import android.app.SearchManager;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.v4.app.FragmentManager;
+import android.text.Editable;
+import android.text.TextUtils;
+import android.text.TextWatcher;
+import android.view.KeyEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.inputmethod.EditorInfo;
+import android.widget.EditText;
 import android.widget.FrameLayout;
 import android.widget.TabHost;
+import android.widget.TabHost.OnTabChangeListener;
 import android.widget.TabWidget;
 import android.widget.TextView;
 
 /**
- * An activity that shows session and sandbox search results. This activity can be either single
- * or multi-pane, depending on the device configuration. We want the multi-pane support that
- * {@link BaseMultiPaneActivity} offers, so we inherit from it instead of
+ * An activity that shows combined, session and sandbox search results. This activity can be
+ * either single or multi-pane, depending on the device configuration. We want the multi-pane
+ * support that {@link BaseMultiPaneActivity} offers, so we inherit from it instead of
  * {@link BaseSinglePaneActivity}.
  */
 public class SearchActivity extends BaseMultiPaneActivity {
 
+    public static final String TAG_ALL = "all";
     public static final String TAG_SESSIONS = "sessions";
     public static final String TAG_VENDORS = "vendors";
 
+    /**
+     * Delay after the last keystroke before searching, so that a burst of
+     * typing only results in a single query.
+     */
+    private static final long SEARCH_DEBOUNCE_MILLIS = 300;
+
+    /** Maximum number of combined results shown in the "all" tab. */
+    private static final int SEARCH_RESULT_LIMIT = 100;
+
     private String mQuery;
 
+    /** Full-text query behind the current results. */
+    private String mSearchQuery;
+
+    /**
+     * Queries last loaded into the sessions and vendors tabs, which are only
+     * loaded once selected.
+     */
+    private String mSessionsQuery;
+    private String mVendorsQuery;
+
+    /**
+     * Text of the last search sent to the fragments while typing, or
+     * {@code null} when showing a submitted search.
+     */
+    private String mTypedQuery;
+
+    private EditText mSearchText;
+    private Handler mHandler = new Handler();
+
     private TabHost mTabHost;
     private TabWidget mTabWidget;
 
+    private SearchFragment mSearchFragment;
     private SessionsFragment mSessionsFragment;
     private VendorsFragment mVendorsFragment;
 
@@ -58,6 +97,7 @@ public class SearchActivity extends BaseMultiPaneActivity {
 
         Intent intent = getIntent();        
         mQuery = intent.getStringExtra(SearchManager.QUERY);
+        mSearchQuery = mQuery;
 
         setContentView(R.layout.activity_search);
 
@@ -65,12 +105,20 @@ public class SearchActivity extends BaseMultiPaneActivity {
         final CharSequence title = getString(R.string.title_search_query, mQuery);
         getActivityHelper().setActionBarTitle(title);
 
+        mSearchText = (EditText) findViewById(R.id.search_query);
+        mSearchText.setText(mQuery);
+        mSearchText.addTextChangedListener(mSearchTextWatcher);
+        mSearchText.setOnEditorActionListener(mSearchActionListener);
+
         mTabHost = (TabHost) findViewById(android.R.id.tabhost);
         mTabWidget = (TabWidget) findViewById(android.R.id.tabs);
         mTabHost.setup();
 
+        setupAllTab();
         setupSessionsTab();
         setupVendorsTab();
+        mTabHost.setOnTabChangedListener(mTabChangeListener);
+        updateTabVisibility();
     }
 
     @Override
@@ -84,6 +132,12 @@ public class SearchActivity extends BaseMultiPaneActivity {
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mHandler.removeCallbacks(mSearchRunnable);
+    }
+
     @Override
     public void onNewIntent(Intent intent) {
         mQuery = intent.getStringExtra(SearchManager.QUERY);
@@ -91,10 +145,46 @@ public class SearchActivity extends BaseMultiPaneActivity {
         final CharSequence title = getString(R.string.title_search_query, mQuery);
         getActivityHelper().setActionBarTitle(title);
 
+        // Submitted searches run in full, replacing anything typed so far. Their
+        // terms aren't prefixes, so they can't be narrowed by further typing.
+        mTypedQuery = null;
+        mSearchText.setText(mQuery);
+        mHandler.removeCallbacks(mSearchRunnable);
+
+        mSearchQuery = mQuery;
+        mSessionsQuery = null;
+        mVendorsQuery = null;
         mTabHost.setCurrentTab(0);
 
-        mSessionsFragment.reloadFromArguments(getSessionsFragmentArguments());
-        mVendorsFragment.reloadFromArguments(getVendorsFragmentArguments());
+        mSearchFragment.reloadFromArguments(getSearchFragmentArguments());
+        loadCurrentTab();
+    }
+
+    /**
+     * Build and add "all" tab, which shows combined results from a single
+     * query and is the only tab loaded up front.
+     */
+    private void setupAllTab() {
+        FrameLayout fragmentContainer = new FrameLayout(this);
+        fragmentContainer.setId(R.id.fragment_search);
+        fragmentContainer.setLayoutParams(
+                new ViewGroup.LayoutParams(ViewGroup.LayoutParams.FILL_PARENT,
+                        ViewGroup.LayoutParams.FILL_PARENT));
+        ((ViewGroup) findViewById(android.R.id.tabcontent)).addView(fragmentContainer);
+
+        final FragmentManager fm = getSupportFragmentManager();
+        mSearchFragment = (SearchFragment) fm.findFragmentByTag("all");
+        if (mSearchFragment == null) {
+            mSearchFragment = new SearchFragment();
+            mSearchFragment.setArguments(getSearchFragmentArguments());
+            fm.beginTransaction()
+                    .add(R.id.fragment_search, mSearchFragment, "all")
+                    .commit();
+        }
+
+        mTabHost.addTab(mTabHost.newTabSpec(TAG_ALL)
+                .setIndicator(buildIndicator(R.string.search_all))
+                .setContent(R.id.fragment_search));
     }
 
     /**
@@ -112,8 +202,8 @@ public class SearchActivity extends BaseMultiPaneActivity {
         final FragmentManager fm = getSupportFragmentManager();
         mSessionsFragment = (SessionsFragment) fm.findFragmentByTag("sessions");
         if (mSessionsFragment == null) {
+            // Loaded once the tab is selected
             mSessionsFragment = new SessionsFragment();
-            mSessionsFragment.setArguments(getSessionsFragmentArguments());
             fm.beginTransaction()
                     .add(R.id.fragment_sessions, mSessionsFragment, "sessions")
                     .commit();
@@ -140,8 +230,8 @@ public class SearchActivity extends BaseMultiPaneActivity {
         final FragmentManager fm = getSupportFragmentManager();
         mVendorsFragment = (VendorsFragment) fm.findFragmentByTag("vendors");
         if (mVendorsFragment == null) {
+            // Loaded once the tab is selected
             mVendorsFragment = new VendorsFragment();
-            mVendorsFragment.setArguments(getVendorsFragmentArguments());
             fm.beginTransaction()
                     .add(R.id.fragment_vendors, mVendorsFragment, "vendors")
                     .commit();
@@ -153,14 +243,147 @@ public class SearchActivity extends BaseMultiPaneActivity {
                 .setContent(R.id.fragment_vendors));
     }
 
+    private OnTabChangeListener mTabChangeListener = new OnTabChangeListener() {
+        public void onTabChanged(String tabId) {
+            updateTabVisibility();
+            loadCurrentTab();
+        }
+    };
+
+    /**
+     * Let only fragments in the current tab reload their results when
+     * content changes.
+     */
+    private void updateTabVisibility() {
+        final String tag = mTabHost.getCurrentTabTag();
+        mSearchFragment.setTabVisible(TAG_ALL.equals(tag));
+        mSessionsFragment.setTabVisible(TAG_SESSIONS.equals(tag));
+        mVendorsFragment.setTabVisible(TAG_VENDORS.equals(tag));
+    }
+
+    /**
+     * Load results for the current search into the selected tab, unless it
+     * already shows them.
+     */
+    private void loadCurrentTab() {
+        final String tag = mTabHost.getCurrentTabTag();
+        if (TAG_SESSIONS.equals(tag) && !TextUtils.equals(mSessionsQuery, mSearchQuery)) {
+            mSessionsQuery = mSearchQuery;
+            mSessionsFragment.reloadFromArguments(getSessionsFragmentArguments());
+        } else if (TAG_VENDORS.equals(tag) && !TextUtils.equals(mVendorsQuery, mSearchQuery)) {
+            mVendorsQuery = mSearchQuery;
+            mVendorsFragment.reloadFromArguments(getVendorsFragmentArguments());
+        }
+    }
+
+    private TextWatcher mSearchTextWatcher = new TextWatcher() {
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        }
+
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+        }
+
+        public void afterTextChanged(Editable s) {
+            mHandler.removeCallbacks(mSearchRunnable);
+            mHandler.postDelayed(mSearchRunnable, SEARCH_DEBOUNCE_MILLIS);
+        }
+    };
+
+    private TextView.OnEditorActionListener mSearchActionListener =
+            new TextView.OnEditorActionListener() {
+        public boolean onEditorAction(TextView v, int actionId, KeyEvent event) {
+            if (actionId == EditorInfo.IME_ACTION_SEARCH) {
+                // Skip the remaining debounce delay
+                mHandler.removeCallbacks(mSearchRunnable);
+                mSearchRunnable.run();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private Runnable mSearchRunnable = new Runnable() {
+        public void run() {
+            final String typedQuery = mSearchText.getText().toString();
+            final String query = buildTypeAheadQuery(typedQuery);
+            if (query == null || typedQuery.equals(mTypedQuery)) {
+                return;
+            }
+
+            final boolean narrowsPrevious = narrowsQuery(mTypedQuery, typedQuery);
+            mTypedQuery = typedQuery;
+            mQuery = typedQuery.trim();
+
+            final CharSequence title = getString(R.string.title_search_query, mQuery);
+            getActivityHelper().setActionBarTitle(title);
+
+            mSearchQuery = query;
+            mSearchFragment.updateSearch(Search.buildSearchUri(query, SEARCH_RESULT_LIMIT),
+                    narrowsPrevious);
+
+            // Only the selected tab follows along, others reload when selected
+            final String tag = mTabHost.getCurrentTabTag();
+            if (TAG_SESSIONS.equals(tag)) {
+                mSessionsQuery = query;
+                mSessionsFragment.updateSearch(Sessions.buildSearchUri(query), narrowsPrevious);
+            } else if (TAG_VENDORS.equals(tag)) {
+                mVendorsQuery = query;
+                mVendorsFragment.updateSearch(Vendors.buildSearchUri(query), narrowsPrevious);
+            }
+        }
+    };
+
+    /**
+     * Build a full-text query from partially typed text, treating the last
+     * word as a prefix. Characters with special meaning to the query syntax
+     * are dropped, since a half-typed expression would otherwise fail to
+     * parse. Returns {@code null} when there is nothing to search for.
+     */
+    static String buildTypeAheadQuery(String typedQuery) {
+        if (typedQuery == null) return null;
+        final String query = typedQuery.replaceAll("[\"*():^-]", " ").trim();
+        if (TextUtils.isEmpty(query)) return null;
+
+        final char last = typedQuery.charAt(typedQuery.length() - 1);
+        return Character.isLetterOrDigit(last) ? query + "*" : query;
+    }
+
+    /**
+     * Return whether every match for {@code current} must also match
+     * {@code previous}, which holds when only letters or digits were added
+     * to the end of the text, extending the last prefix or adding a term.
+     */
+    static boolean narrowsQuery(String previous, String current) {
+        if (previous == null || current.length() <= previous.length()
+                || !current.startsWith(previous)) {
+            return false;
+        }
+        if (previous.length() == 0
+                || !Character.isLetterOrDigit(previous.charAt(previous.length() - 1))) {
+            // A new term is starting, which could be an OR
+            return false;
+        }
+        for (int i = previous.length(); i < current.length(); i++) {
+            if (!Character.isLetterOrDigit(current.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Bundle getSearchFragmentArguments() {
+        return intentToFragmentArguments(new Intent(Intent.ACTION_VIEW,
+                Search.buildSearchUri(mSearchQuery, SEARCH_RESULT_LIMIT)));
+    }
+
     private Bundle getSessionsFragmentArguments() {
         return intentToFragmentArguments(
-                new Intent(Intent.ACTION_VIEW, Sessions.buildSearchUri(mQuery)));
+                new Intent(Intent.ACTION_VIEW, Sessions.buildSearchUri(mSearchQuery)));
     }
 
     private Bundle getVendorsFragmentArguments() {
         return intentToFragmentArguments(
-                new Intent(Intent.ACTION_VIEW, Vendors.buildSearchUri(mQuery)));
+                new Intent(Intent.ACTION_VIEW, Vendors.buildSearchUri(mSearchQuery)));
     }
 
     /**
@@ -198,6 +421,9 @@ public class SearchActivity extends BaseMultiPaneActivity {
     }
 
     private void clearSelectedItems() {
+        if (mSearchFragment != null) {
+            mSearchFragment.clearCheckedPosition();
+        }
         if (mSessionsFragment != null) {
             mSessionsFragment.clearCheckedPosition();
         }
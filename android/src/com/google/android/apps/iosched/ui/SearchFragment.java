@@ -0,0 +1,315 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.iosched.ui;
+
+import com.google.android.apps.iosched.R;
+import com.google.android.apps.iosched.provider.ScheduleContract;
+import com.google.android.apps.iosched.util.ManagedQuery;
+import com.google.android.apps.iosched.util.NotifyingAsyncQueryHandler;
+import com.google.android.apps.iosched.util.RowTextCache;
+
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.BaseColumns;
+import android.support.v4.app.ListFragment;
+import android.text.SpannableStringBuilder;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.CursorAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import static com.google.android.apps.iosched.util.UIUtils.buildStyledSnippet;
+
+/**
+ * A {@link ListFragment} showing combined search results across sessions,
+ * sandbox companies and speakers, read with a single
+ * {@link ScheduleContract.Search} query.
+ */
+public class SearchFragment extends ListFragment implements
+        NotifyingAsyncQueryHandler.AsyncQueryListener {
+
+    private static final String STATE_CHECKED_POSITION = "checkedPosition";
+
+    private Uri mSearchUri;
+    private Uri mCompletedSearchUri;
+    private Cursor mCursor;
+    private CursorAdapter mAdapter;
+    private int mCheckedPosition = -1;
+    private boolean mHasSetEmptyText = false;
+    private boolean mTabVisible = true;
+
+    private ManagedQuery mQuery;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        mQuery = new ManagedQuery(getActivity().getContentResolver(), this);
+        mQuery.setVisible(mTabVisible);
+        mQuery.observe(ScheduleContract.Sessions.CONTENT_URI);
+        mQuery.observe(ScheduleContract.Vendors.CONTENT_URI);
+        mQuery.observe(ScheduleContract.Speakers.CONTENT_URI);
+        reloadFromArguments(getArguments());
+    }
+
+    public void reloadFromArguments(Bundle arguments) {
+        // Teardown from previous arguments
+        if (mAdapter != null) {
+            mAdapter.changeCursor(null);
+        }
+        mCursor = null;
+
+        mCheckedPosition = -1;
+        mCompletedSearchUri = null;
+        setListAdapter(null);
+
+        mQuery.cancel();
+
+        // Load new arguments
+        final Intent intent = BaseActivity.fragmentArgumentsToIntent(arguments);
+        mSearchUri = intent.getData();
+        if (mSearchUri == null) {
+            return;
+        }
+
+        mAdapter = new SearchAdapter(getActivity());
+        setListAdapter(mAdapter);
+
+        // Start background query to load results, ranked by the provider
+        mQuery.setQuery(SearchQuery._TOKEN, mSearchUri, mSearchUri, SearchQuery.PROJECTION,
+                null, null, null);
+        mQuery.forceLoad();
+    }
+
+    /**
+     * Replace the current search with {@code searchUri} while the user is
+     * typing, following the same rules as
+     * {@link SessionsFragment#updateSearch(Uri, boolean)}.
+     */
+    public void updateSearch(Uri searchUri, boolean narrowsPrevious) {
+        if (mSearchUri == null || searchUri.equals(mSearchUri)) {
+            return;
+        }
+
+        final Uri previousUri = mSearchUri;
+        mSearchUri = searchUri;
+        mQuery.setQuery(SearchQuery._TOKEN, searchUri, searchUri, SearchQuery.PROJECTION,
+                null, null, null);
+        if (getView() != null) {
+            clearCheckedPosition();
+        }
+
+        if (narrowsPrevious && previousUri.equals(mCompletedSearchUri) && mCursor != null
+                && mCursor.getCount() == 0) {
+            mCompletedSearchUri = searchUri;
+            return;
+        }
+
+        mQuery.forceLoad();
+    }
+
+    /**
+     * Set whether this fragment is in the current tab. Results aren't
+     * reloaded for hidden fragments until they're shown again.
+     */
+    public void setTabVisible(boolean visible) {
+        mTabVisible = visible;
+        if (mQuery != null) {
+            mQuery.setVisible(visible);
+        }
+    }
+
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+        getListView().setChoiceMode(ListView.CHOICE_MODE_SINGLE);
+
+        if (savedInstanceState != null) {
+            mCheckedPosition = savedInstanceState.getInt(STATE_CHECKED_POSITION, -1);
+        }
+
+        if (!mHasSetEmptyText) {
+            // Could be a bug, but calling this twice makes it become visible when it shouldn't
+            // be visible.
+            setEmptyText(getString(R.string.empty_search));
+            mHasSetEmptyText = true;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void onQueryComplete(int token, Object cookie, Cursor cursor) {
+        if (cursor == null) {
+            return;
+        }
+        if (getActivity() == null) {
+            cursor.close();
+            return;
+        }
+
+        if (token != SearchQuery._TOKEN || !cookie.equals(mSearchUri)) {
+            // Results for a search that has since been replaced
+            cursor.close();
+            return;
+        }
+
+        // Swap in the new cursor, which also closes the previous one
+        mCursor = cursor;
+        mCompletedSearchUri = (Uri) cookie;
+        mAdapter.changeCursor(mCursor);
+        if (mCheckedPosition >= 0 && getView() != null) {
+            getListView().setItemChecked(mCheckedPosition, true);
+        }
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        mQuery.start();
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        mQuery.stop();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mQuery.destroy();
+        if (mAdapter != null) {
+            mAdapter.changeCursor(null);
+        }
+        mCursor = null;
+    }
+
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(STATE_CHECKED_POSITION, mCheckedPosition);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onListItemClick(ListView l, View v, int position, long id) {
+        // Launch viewer for the entity behind this result
+        final Cursor cursor = (Cursor) mAdapter.getItem(position);
+        final Uri entityUri = ScheduleContract.Search.buildEntityUri(
+                cursor.getString(SearchQuery.SEARCH_TYPE),
+                cursor.getString(SearchQuery.SEARCH_ENTITY_ID));
+        ((BaseActivity) getActivity()).openActivityOrFragment(new Intent(Intent.ACTION_VIEW,
+                entityUri));
+
+        getListView().setItemChecked(position, true);
+        mCheckedPosition = position;
+    }
+
+    public void clearCheckedPosition() {
+        if (mCheckedPosition >= 0) {
+            getListView().setItemChecked(mCheckedPosition, false);
+            mCheckedPosition = -1;
+        }
+    }
+
+    /**
+     * {@link CursorAdapter} that renders a {@link SearchQuery}.
+     */
+    private class SearchAdapter extends CursorAdapter {
+        private final RowTextCache mSubtitles = new RowTextCache();
+
+        public SearchAdapter(Context context) {
+            super(context, null, false);
+            registerDataSetObserver(mSubtitles);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public View newView(Context context, Cursor cursor, ViewGroup parent) {
+            final View view = getActivity().getLayoutInflater().inflate(
+                    R.layout.list_item_session, parent, false);
+            view.findViewById(R.id.star_button).setVisibility(View.INVISIBLE);
+            view.setTag(new SearchViewHolder(view));
+            return view;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void bindView(View view, Context context, Cursor cursor) {
+            final SearchViewHolder holder = (SearchViewHolder) view.getTag();
+
+            holder.title.setText(cursor.getString(SearchQuery.SEARCH_TITLE));
+
+            final long id = cursor.getLong(SearchQuery._ID);
+            CharSequence subtitle = mSubtitles.get(id);
+            if (subtitle == null) {
+                // Lead with the kind of result, followed by the matching text
+                final SpannableStringBuilder builder = new SpannableStringBuilder(
+                        getTypeLabel(cursor.getString(SearchQuery.SEARCH_TYPE)));
+                builder.append(": ");
+                builder.append(buildStyledSnippet(cursor.getString(SearchQuery.SEARCH_SNIPPET)));
+                subtitle = builder;
+                mSubtitles.put(id, subtitle);
+            }
+            holder.subtitle.setText(subtitle);
+        }
+
+        private String getTypeLabel(String type) {
+            if (ScheduleContract.Search.TYPE_SESSION.equals(type)) {
+                return getString(R.string.search_type_session);
+            } else if (ScheduleContract.Search.TYPE_VENDOR.equals(type)) {
+                return getString(R.string.search_type_vendor);
+            } else {
+                return getString(R.string.search_type_speaker);
+            }
+        }
+    }
+
+    /**
+     * Views of a {@link R.layout#list_item_session} row, kept as its tag.
+     */
+    private static class SearchViewHolder {
+        private final TextView title;
+        private final TextView subtitle;
+
+        public SearchViewHolder(View view) {
+            title = (TextView) view.findViewById(R.id.session_title);
+            subtitle = (TextView) view.findViewById(R.id.session_subtitle);
+        }
+    }
+
+    /** {@link ScheduleContract.Search} query parameters. */
+    private interface SearchQuery {
+        int _TOKEN = 0x1;
+
+        String[] PROJECTION = {
+                BaseColumns._ID,
+                ScheduleContract.Search.SEARCH_TYPE,
+                ScheduleContract.Search.SEARCH_ENTITY_ID,
+                ScheduleContract.Search.SEARCH_TITLE,
+                ScheduleContract.Search.SEARCH_SNIPPET,
+        };
+
+        int _ID = 0;
+        int SEARCH_TYPE = 1;
+        int SEARCH_ENTITY_ID = 2;
+        int SEARCH_TITLE = 3;
+        int SEARCH_SNIPPET = 4;
+    }
+}
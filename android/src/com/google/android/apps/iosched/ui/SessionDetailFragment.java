@@ -97,8 +97,6 @@ public class SessionDetailFragment extends Fragment implements
 
     private NotifyingAsyncQueryHandler mHandler;
 
-    private boolean mSessionCursor = false;
-    private boolean mSpeakersCursor = false;
     private boolean mHasSummaryContent = false;
 
     @Override
@@ -107,7 +105,7 @@ public class SessionDetailFragment extends Fragment implements
 
         final Intent intent = BaseActivity.fragmentArgumentsToIntent(getArguments());
         mSessionUri = intent.getData();
-        mTrackUri = resolveTrackUri(intent);
+        mTrackUri = intent.getParcelableExtra(EXTRA_TRACK);
 
         if (mSessionUri == null) {
             return;
@@ -147,13 +145,16 @@ public class SessionDetailFragment extends Fragment implements
             return;
         }
 
-        // Start background queries to load session and track details
-        final Uri speakersUri = ScheduleContract.Sessions.buildSpeakersDirUri(mSessionId);
+        // Start background query to load session, track and speaker details together
+        final String trackId = (mTrackUri != null)
+                ? ScheduleContract.Tracks.getTrackId(mTrackUri)
+                : ScheduleContract.Tracks.ALL_TRACK_ID;
+        final Uri detailUri = ScheduleContract.Sessions.buildSessionDetailUri(mSessionId,
+                trackId);
 
         mHandler = new NotifyingAsyncQueryHandler(getActivity().getContentResolver(), this);
-        mHandler.startQuery(SessionsQuery._TOKEN, mSessionUri, SessionsQuery.PROJECTION);
-        mHandler.startQuery(TracksQuery._TOKEN, mTrackUri, TracksQuery.PROJECTION);
-        mHandler.startQuery(SpeakersQuery._TOKEN, speakersUri, SpeakersQuery.PROJECTION);
+        mHandler.setPriority(NotifyingAsyncQueryHandler.PRIORITY_HIGH);
+        mHandler.startQuery(SessionDetailQuery._TOKEN, detailUri, SessionDetailQuery.PROJECTION);
     }
 
     @Override
@@ -210,225 +211,195 @@ public class SessionDetailFragment extends Fragment implements
         return indicator;
     }
 
-    /**
-     * Derive {@link com.google.android.apps.iosched.provider.ScheduleContract.Tracks#CONTENT_ITEM_TYPE}
-     * {@link Uri} based on incoming {@link Intent}, using
-     * {@link #EXTRA_TRACK} when set.
-     * @param intent
-     * @return Uri
-     */
-    private Uri resolveTrackUri(Intent intent) {
-        final Uri trackUri = intent.getParcelableExtra(EXTRA_TRACK);
-        if (trackUri != null) {
-            return trackUri;
-        } else {
-            return ScheduleContract.Sessions.buildTracksDirUri(mSessionId);
-        }
-    }
-
     /**
      * {@inheritDoc}
      */
     public void onQueryComplete(int token, Object cookie, Cursor cursor) {
-        if (getActivity() == null) {
+        if (cursor == null) {
             return;
         }
-
-        if (token == SessionsQuery._TOKEN) {
-            onSessionQueryComplete(cursor);
-        } else if (token == TracksQuery._TOKEN) {
-            onTrackQueryComplete(cursor);
-        } else if (token == SpeakersQuery._TOKEN) {
-            onSpeakersQueryComplete(cursor);
-        } else {
+        if (getActivity() == null || token != SessionDetailQuery._TOKEN) {
             cursor.close();
+            return;
         }
-    }
 
-    /**
-     * Handle {@link SessionsQuery} {@link Cursor}.
-     */
-    private void onSessionQueryComplete(Cursor cursor) {
         try {
-            mSessionCursor = true;
             if (!cursor.moveToFirst()) {
                 return;
             }
 
-            // Format time block this session occupies
-            final long blockStart = cursor.getLong(SessionsQuery.BLOCK_START);
-            final long blockEnd = cursor.getLong(SessionsQuery.BLOCK_END);
-            final String roomName = cursor.getString(SessionsQuery.ROOM_NAME);
-            final String subtitle = UIUtils.formatSessionSubtitle(blockStart,
-                    blockEnd, roomName, getActivity());
-
-            mTitleString = cursor.getString(SessionsQuery.TITLE);
-            mTitle.setText(mTitleString);
-            mSubtitle.setText(subtitle);
-
-            mUrl = cursor.getString(SessionsQuery.URL);
-            if (TextUtils.isEmpty(mUrl)) {
-                mUrl = "";
-            }
-
-            mHashtag = cursor.getString(SessionsQuery.HASHTAG);
-            mTagDisplay = (TextView) mRootView.findViewById(R.id.session_tags_button);
-            if (!TextUtils.isEmpty(mHashtag)) {
-                // Create the button text
-                SpannableStringBuilder sb = new SpannableStringBuilder();
-                sb.append(getString(R.string.tag_stream) + " ");
-                int boldStart = sb.length();
-                sb.append(getHashtagsString());
-                sb.setSpan(sBoldSpan, boldStart, sb.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-
-                mTagDisplay.setText(sb);
-
-                mTagDisplay.setOnClickListener(new View.OnClickListener() {
-                    public void onClick(View v) {
-                        Intent intent = new Intent(getActivity(), TagStreamActivity.class);
-                        intent.putExtra(TagStreamFragment.EXTRA_QUERY, getHashtagsString());
-                        startActivity(intent);
-                    }
-                });
-            } else {
-                mTagDisplay.setVisibility(View.GONE);
-            }
-
-            mRoomId = cursor.getString(SessionsQuery.ROOM_ID);
-
-            // Unregister around setting checked state to avoid triggering
-            // listener since change isn't user generated.
-            mStarred.setOnCheckedChangeListener(null);
-            mStarred.setChecked(cursor.getInt(SessionsQuery.STARRED) != 0);
-            mStarred.setOnCheckedChangeListener(this);
-
-            final String sessionAbstract = cursor.getString(SessionsQuery.ABSTRACT);
-            if (!TextUtils.isEmpty(sessionAbstract)) {
-                UIUtils.setTextMaybeHtml(mAbstract, sessionAbstract);
-                mAbstract.setVisibility(View.VISIBLE);
-                mHasSummaryContent = true;
-            } else {
-                mAbstract.setVisibility(View.GONE);
-            }
-
-            final View requirementsBlock = mRootView.findViewById(R.id.session_requirements_block);
-            final String sessionRequirements = cursor.getString(SessionsQuery.REQUIREMENTS);
-            if (!TextUtils.isEmpty(sessionRequirements)) {
-                UIUtils.setTextMaybeHtml(mRequirements, sessionRequirements);
-                requirementsBlock.setVisibility(View.VISIBLE);
-                mHasSummaryContent = true;
-            } else {
-                requirementsBlock.setVisibility(View.GONE);
-            }
+            // Every row repeats the session and track, followed by one speaker
+            bindTrack(cursor);
+            bindSession(cursor);
+            bindSpeakers(cursor);
 
             // Show empty message when all data is loaded, and nothing to show
-            if (mSpeakersCursor && !mHasSummaryContent) {
+            if (!mHasSummaryContent) {
                 mRootView.findViewById(android.R.id.empty).setVisibility(View.VISIBLE);
             }
-
-            AnalyticsUtils.getInstance(getActivity()).trackPageView("/Sessions/" + mTitleString);
-
-            updateLinksTab(cursor);
-            updateNotesTab();
-
         } finally {
             cursor.close();
         }
     }
 
     /**
-     * Handle {@link TracksQuery} {@link Cursor}.
+     * Show session details from the current {@link SessionDetailQuery} row.
      */
-    private void onTrackQueryComplete(Cursor cursor) {
-        try {
-            if (!cursor.moveToFirst()) {
-                return;
-            }
-
-            // Use found track to build title-bar
-            ActivityHelper activityHelper = ((BaseActivity) getActivity()).getActivityHelper();
-            activityHelper.setActionBarTitle(cursor.getString(TracksQuery.TRACK_NAME));
-            activityHelper.setActionBarColor(cursor.getInt(TracksQuery.TRACK_COLOR));
-        } finally {
-            cursor.close();
+    private void bindSession(Cursor cursor) {
+        // Format time block this session occupies
+        final long blockStart = cursor.getLong(SessionDetailQuery.BLOCK_START);
+        final long blockEnd = cursor.getLong(SessionDetailQuery.BLOCK_END);
+        final String roomName = cursor.getString(SessionDetailQuery.ROOM_NAME);
+        final String subtitle = UIUtils.formatSessionSubtitle(blockStart,
+                blockEnd, roomName, getActivity());
+
+        mTitleString = cursor.getString(SessionDetailQuery.TITLE);
+        mTitle.setText(mTitleString);
+        mSubtitle.setText(subtitle);
+
+        mUrl = cursor.getString(SessionDetailQuery.URL);
+        if (TextUtils.isEmpty(mUrl)) {
+            mUrl = "";
         }
-    }
 
-    private void onSpeakersQueryComplete(Cursor cursor) {
-        try {
-            mSpeakersCursor = true;
-            // TODO: remove any existing speakers from layout, since this cursor
-            // might be from a data change notification.
-            final ViewGroup speakersGroup = (ViewGroup)
-                    mRootView.findViewById(R.id.session_speakers_block);
-            final LayoutInflater inflater = getActivity().getLayoutInflater();
-
-            boolean hasSpeakers = false;
-
-            while (cursor.moveToNext()) {
-                final String speakerName = cursor.getString(SpeakersQuery.SPEAKER_NAME);
-                if (TextUtils.isEmpty(speakerName)) {
-                    continue;
+        mHashtag = cursor.getString(SessionDetailQuery.HASHTAG);
+        mTagDisplay = (TextView) mRootView.findViewById(R.id.session_tags_button);
+        if (!TextUtils.isEmpty(mHashtag)) {
+            // Create the button text
+            SpannableStringBuilder sb = new SpannableStringBuilder();
+            sb.append(getString(R.string.tag_stream) + " ");
+            int boldStart = sb.length();
+            sb.append(getHashtagsString());
+            sb.setSpan(sBoldSpan, boldStart, sb.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+
+            mTagDisplay.setText(sb);
+
+            mTagDisplay.setOnClickListener(new View.OnClickListener() {
+                public void onClick(View v) {
+                    Intent intent = new Intent(getActivity(), TagStreamActivity.class);
+                    intent.putExtra(TagStreamFragment.EXTRA_QUERY, getHashtagsString());
+                    startActivity(intent);
                 }
+            });
+        } else {
+            mTagDisplay.setVisibility(View.GONE);
+        }
 
-                final String speakerImageUrl = cursor.getString(SpeakersQuery.SPEAKER_IMAGE_URL);
-                final String speakerCompany = cursor.getString(SpeakersQuery.SPEAKER_COMPANY);
-                final String speakerUrl = cursor.getString(SpeakersQuery.SPEAKER_URL);
-                final String speakerAbstract = cursor.getString(SpeakersQuery.SPEAKER_ABSTRACT);
+        mRoomId = cursor.getString(SessionDetailQuery.ROOM_ID);
 
-                String speakerHeader = speakerName;
-                if (!TextUtils.isEmpty(speakerCompany)) {
-                    speakerHeader += ", " + speakerCompany;
-                }
+        // Unregister around setting checked state to avoid triggering
+        // listener since change isn't user generated.
+        mStarred.setOnCheckedChangeListener(null);
+        mStarred.setChecked(cursor.getInt(SessionDetailQuery.STARRED) != 0);
+        mStarred.setOnCheckedChangeListener(this);
 
-                final View speakerView = inflater
-                        .inflate(R.layout.speaker_detail, speakersGroup, false);
-                final TextView speakerHeaderView = (TextView) speakerView
-                        .findViewById(R.id.speaker_header);
-                final ImageView speakerImgView = (ImageView) speakerView
-                        .findViewById(R.id.speaker_image);
-                final TextView speakerUrlView = (TextView) speakerView
-                        .findViewById(R.id.speaker_url);
-                final TextView speakerAbstractView = (TextView) speakerView
-                        .findViewById(R.id.speaker_abstract);
-
-                if (!TextUtils.isEmpty(speakerImageUrl)) {
-                    BitmapUtils.fetchImage(getActivity(), speakerImageUrl, null, null,
-                            new BitmapUtils.OnFetchCompleteListener() {
-                                public void onFetchComplete(Object cookie, Bitmap result) {
-                                    if (result != null) {
-                                        speakerImgView.setImageBitmap(result);
-                                    }
-                                }
-                            });
-                }
+        final String sessionAbstract = cursor.getString(SessionDetailQuery.ABSTRACT);
+        if (!TextUtils.isEmpty(sessionAbstract)) {
+            UIUtils.setTextMaybeHtml(mAbstract, sessionAbstract);
+            mAbstract.setVisibility(View.VISIBLE);
+            mHasSummaryContent = true;
+        } else {
+            mAbstract.setVisibility(View.GONE);
+        }
+
+        final View requirementsBlock = mRootView.findViewById(R.id.session_requirements_block);
+        final String sessionRequirements = cursor.getString(SessionDetailQuery.REQUIREMENTS);
+        if (!TextUtils.isEmpty(sessionRequirements)) {
+            UIUtils.setTextMaybeHtml(mRequirements, sessionRequirements);
+            requirementsBlock.setVisibility(View.VISIBLE);
+            mHasSummaryContent = true;
+        } else {
+            requirementsBlock.setVisibility(View.GONE);
+        }
 
-                speakerHeaderView.setText(speakerHeader);
-                UIUtils.setTextMaybeHtml(speakerAbstractView, speakerAbstract);
+        AnalyticsUtils.getInstance(getActivity()).trackPageView("/Sessions/" + mTitleString);
 
-                if (!TextUtils.isEmpty(speakerUrl)) {
-                    UIUtils.setTextMaybeHtml(speakerUrlView, speakerUrl);
-                    speakerUrlView.setVisibility(View.VISIBLE);
-                } else {
-                    speakerUrlView.setVisibility(View.GONE);
-                }
+        updateLinksTab(cursor);
+        updateNotesTab();
+    }
 
-                speakersGroup.addView(speakerView);
-                hasSpeakers = true;
-                mHasSummaryContent = true;
+    /**
+     * Color the title-bar using the track from the current
+     * {@link SessionDetailQuery} row, if the session has one.
+     */
+    private void bindTrack(Cursor cursor) {
+        if (cursor.isNull(SessionDetailQuery.TRACK_NAME)) {
+            return;
+        }
+
+        ActivityHelper activityHelper = ((BaseActivity) getActivity()).getActivityHelper();
+        activityHelper.setActionBarTitle(cursor.getString(SessionDetailQuery.TRACK_NAME));
+        activityHelper.setActionBarColor(cursor.getInt(SessionDetailQuery.TRACK_COLOR));
+    }
+
+    /**
+     * Add a view for the speaker of each {@link SessionDetailQuery} row,
+     * starting from the first.
+     */
+    private void bindSpeakers(Cursor cursor) {
+        // TODO: remove any existing speakers from layout, since this cursor
+        // might be from a data change notification.
+        final ViewGroup speakersGroup = (ViewGroup)
+                mRootView.findViewById(R.id.session_speakers_block);
+        final LayoutInflater inflater = getActivity().getLayoutInflater();
+
+        boolean hasSpeakers = false;
+
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            final String speakerName = cursor.getString(SessionDetailQuery.SPEAKER_NAME);
+            if (TextUtils.isEmpty(speakerName)) {
+                continue;
             }
 
-            speakersGroup.setVisibility(hasSpeakers ? View.VISIBLE : View.GONE);
+            final String speakerImageUrl = cursor.getString(SessionDetailQuery.SPEAKER_IMAGE_URL);
+            final String speakerCompany = cursor.getString(SessionDetailQuery.SPEAKER_COMPANY);
+            final String speakerUrl = cursor.getString(SessionDetailQuery.SPEAKER_URL);
+            final String speakerAbstract = cursor.getString(SessionDetailQuery.SPEAKER_ABSTRACT);
 
-            // Show empty message when all data is loaded, and nothing to show
-            if (mSessionCursor && !mHasSummaryContent) {
-                mRootView.findViewById(android.R.id.empty).setVisibility(View.VISIBLE);
+            String speakerHeader = speakerName;
+            if (!TextUtils.isEmpty(speakerCompany)) {
+                speakerHeader += ", " + speakerCompany;
             }
-        } finally {
-            if (null != cursor) {
-                cursor.close();
+
+            final View speakerView = inflater
+                    .inflate(R.layout.speaker_detail, speakersGroup, false);
+            final TextView speakerHeaderView = (TextView) speakerView
+                    .findViewById(R.id.speaker_header);
+            final ImageView speakerImgView = (ImageView) speakerView
+                    .findViewById(R.id.speaker_image);
+            final TextView speakerUrlView = (TextView) speakerView
+                    .findViewById(R.id.speaker_url);
+            final TextView speakerAbstractView = (TextView) speakerView
+                    .findViewById(R.id.speaker_abstract);
+
+            if (!TextUtils.isEmpty(speakerImageUrl)) {
+                BitmapUtils.fetchImage(getActivity(), speakerImageUrl, null, null,
+                        new BitmapUtils.OnFetchCompleteListener() {
+                            public void onFetchComplete(Object cookie, Bitmap result) {
+                                if (result != null) {
+                                    speakerImgView.setImageBitmap(result);
+                                }
+                            }
+                        });
             }
+
+            speakerHeaderView.setText(speakerHeader);
+            UIUtils.setTextMaybeHtml(speakerAbstractView, speakerAbstract);
+
+            if (!TextUtils.isEmpty(speakerUrl)) {
+                UIUtils.setTextMaybeHtml(speakerUrlView, speakerUrl);
+                speakerUrlView.setVisibility(View.VISIBLE);
+            } else {
+                speakerUrlView.setVisibility(View.GONE);
+            }
+
+            speakersGroup.addView(speakerView);
+            hasSpeakers = true;
+            mHasSummaryContent = true;
         }
+
+        speakersGroup.setVisibility(hasSpeakers ? View.VISIBLE : View.GONE);
     }
 
     @Override
@@ -597,18 +568,18 @@ public class SessionDetailFragment extends Fragment implements
         LayoutInflater inflater = getLayoutInflater(null);
 
         boolean hasLinks = false;
-        for (int i = 0; i < SessionsQuery.LINKS_INDICES.length; i++) {
-            final String url = cursor.getString(SessionsQuery.LINKS_INDICES[i]);
+        for (int i = 0; i < SessionDetailQuery.LINKS_INDICES.length; i++) {
+            final String url = cursor.getString(SessionDetailQuery.LINKS_INDICES[i]);
             if (!TextUtils.isEmpty(url)) {
                 hasLinks = true;
                 ViewGroup linkContainer = (ViewGroup)
                         inflater.inflate(R.layout.list_item_session_link, container, false);
                 ((TextView) linkContainer.findViewById(R.id.link_text)).setText(
-                        SessionsQuery.LINKS_TITLES[i]);
+                        SessionDetailQuery.LINKS_TITLES[i]);
                 final int linkTitleIndex = i;
                 linkContainer.setOnClickListener(new View.OnClickListener() {
                     public void onClick(View view) {
-                        fireLinkEvent(SessionsQuery.LINKS_TITLES[linkTitleIndex]);
+                        fireLinkEvent(SessionDetailQuery.LINKS_TITLES[linkTitleIndex]);
                     	Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
                         intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_WHEN_TASK_RESET);
                         startActivity(intent);
@@ -646,9 +617,10 @@ public class SessionDetailFragment extends Fragment implements
         }
     };
     /**
-     * {@link com.google.android.apps.iosched.provider.ScheduleContract.Sessions} query parameters.
+     * {@link com.google.android.apps.iosched.provider.ScheduleContract.Sessions} detail query
+     * parameters, with one row per speaker.
      */
-    private interface SessionsQuery {
+    interface SessionDetailQuery {
         int _TOKEN = 0x1;
 
         String[] PROJECTION = {
@@ -669,6 +641,13 @@ public class SessionDetailFragment extends Fragment implements
                 ScheduleContract.Sessions.SESSION_NOTES_URL,
                 ScheduleContract.Sessions.ROOM_ID,
                 ScheduleContract.Rooms.ROOM_NAME,
+                ScheduleContract.Tracks.TRACK_NAME,
+                ScheduleContract.Tracks.TRACK_COLOR,
+                ScheduleContract.Speakers.SPEAKER_NAME,
+                ScheduleContract.Speakers.SPEAKER_IMAGE_URL,
+                ScheduleContract.Speakers.SPEAKER_COMPANY,
+                ScheduleContract.Speakers.SPEAKER_ABSTRACT,
+                ScheduleContract.Speakers.SPEAKER_URL,
         };
 
         int BLOCK_START = 0;
@@ -688,6 +667,13 @@ public class SessionDetailFragment extends Fragment implements
         int NOTES_URL = 14;
         int ROOM_ID = 15;
         int ROOM_NAME = 16;
+        int TRACK_NAME = 17;
+        int TRACK_COLOR = 18;
+        int SPEAKER_NAME = 19;
+        int SPEAKER_IMAGE_URL = 20;
+        int SPEAKER_COMPANY = 21;
+        int SPEAKER_ABSTRACT = 22;
+        int SPEAKER_URL = 23;
 
         int[] LINKS_INDICES = {
                 URL,
@@ -707,37 +693,4 @@ public class SessionDetailFragment extends Fragment implements
                 R.string.session_link_notes,
         };
     }
-
-    /**
-     * {@link com.google.android.apps.iosched.provider.ScheduleContract.Tracks} query parameters.
-     */
-    private interface TracksQuery {
-        int _TOKEN = 0x2;
-
-        String[] PROJECTION = {
-                ScheduleContract.Tracks.TRACK_NAME,
-                ScheduleContract.Tracks.TRACK_COLOR,
-        };
-
-        int TRACK_NAME = 0;
-        int TRACK_COLOR = 1;
-    }
-
-    private interface SpeakersQuery {
-        int _TOKEN = 0x3;
-
-        String[] PROJECTION = {
-                ScheduleContract.Speakers.SPEAKER_NAME,
-                ScheduleContract.Speakers.SPEAKER_IMAGE_URL,
-                ScheduleContract.Speakers.SPEAKER_COMPANY,
-                ScheduleContract.Speakers.SPEAKER_ABSTRACT,
-                ScheduleContract.Speakers.SPEAKER_URL,
-        };
-
-        int SPEAKER_NAME = 0;
-        int SPEAKER_IMAGE_URL = 1;
-        int SPEAKER_COMPANY = 2;
-        int SPEAKER_ABSTRACT = 3;
-        int SPEAKER_URL = 4;
-    }
 }
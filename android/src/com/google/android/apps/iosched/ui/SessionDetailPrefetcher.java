@@ -0,0 +1,144 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.iosched.ui;
+
+import com.google.android.apps.iosched.provider.ScheduleContract;
+import com.google.android.apps.iosched.util.BitmapUtils;
+import com.google.android.apps.iosched.util.NotifyingAsyncQueryHandler;
+import com.google.android.apps.iosched.util.Sets;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.net.Uri;
+import android.text.TextUtils;
+
+import java.util.HashSet;
+
+/**
+ * Warms what {@link SessionDetailFragment} loads for sessions visible in a
+ * list, so their details open without waiting on the database or network.
+ * Detail rows are queried at low priority, which leaves them in the provider
+ * query cache, and speaker photos are downloaded one at a time into the
+ * {@link BitmapUtils} disk cache.
+ * <p>
+ * Work is bounded: each call prefetches at most
+ * {@link #MAX_SESSIONS_PER_PASS} sessions, each session only once until
+ * {@link #reset} or {@link #cancel}, and photos are only downloaded over
+ * Wi-Fi, at most {@link #MAX_IMAGES} for each prefetcher.
+ */
+class SessionDetailPrefetcher implements NotifyingAsyncQueryHandler.AsyncQueryListener {
+    private static final int MAX_SESSIONS_PER_PASS = 6;
+    private static final int MAX_IMAGES = 24;
+
+    private static final int TOKEN_DETAIL = 0x1;
+
+    private final Context mContext;
+    private final NotifyingAsyncQueryHandler mHandler;
+    private final HashSet<String> mPrefetched = Sets.newHashSet();
+    private String mTrackId = ScheduleContract.Tracks.ALL_TRACK_ID;
+    private int mImageCount = 0;
+
+    public SessionDetailPrefetcher(Context context) {
+        mContext = context.getApplicationContext();
+        mHandler = new NotifyingAsyncQueryHandler(mContext.getContentResolver(), this);
+        mHandler.setPriority(NotifyingAsyncQueryHandler.PRIORITY_LOW);
+    }
+
+    /**
+     * Forget which sessions were prefetched, such as when the list shows new
+     * data, and prefetch details as shown when opened from the given track,
+     * which may be {@code null}.
+     */
+    public void reset(Uri trackUri) {
+        cancel();
+        mTrackId = (trackUri != null) ? ScheduleContract.Tracks.getTrackId(trackUri)
+                : ScheduleContract.Tracks.ALL_TRACK_ID;
+    }
+
+    /**
+     * Prefetch details for sessions between the given positions of a list
+     * {@link Cursor}, inclusive, reading their ids from the given column.
+     */
+    public void prefetch(Cursor cursor, int sessionIdColumn, int firstPosition,
+            int lastPosition) {
+        if (cursor == null || cursor.isClosed()) {
+            return;
+        }
+
+        int started = 0;
+        for (int i = Math.max(firstPosition, 0); i <= lastPosition
+                && started < MAX_SESSIONS_PER_PASS; i++) {
+            if (!cursor.moveToPosition(i)) {
+                break;
+            }
+
+            final String sessionId = cursor.getString(sessionIdColumn);
+            if (sessionId == null || !mPrefetched.add(sessionId)) {
+                continue;
+            }
+
+            final Uri detailUri = ScheduleContract.Sessions.buildSessionDetailUri(sessionId,
+                    mTrackId);
+            mHandler.startQuery(TOKEN_DETAIL, sessionId, detailUri,
+                    SessionDetailFragment.SessionDetailQuery.PROJECTION, null, null, null);
+            started++;
+        }
+    }
+
+    /**
+     * Cancel any prefetching that hasn't completed yet, and forget which
+     * sessions were prefetched.
+     */
+    public void cancel() {
+        mHandler.cancelOperation(TOKEN_DETAIL);
+        mPrefetched.clear();
+    }
+
+    /** {@inheritDoc} */
+    public void onQueryComplete(int token, Object cookie, Cursor cursor) {
+        if (cursor == null) {
+            return;
+        }
+
+        try {
+            if (!isOnWifi()) {
+                return;
+            }
+
+            while (cursor.moveToNext() && mImageCount < MAX_IMAGES) {
+                final String imageUrl = cursor.getString(
+                        SessionDetailFragment.SessionDetailQuery.SPEAKER_IMAGE_URL);
+                if (!TextUtils.isEmpty(imageUrl)) {
+                    BitmapUtils.prefetchImage(mContext, imageUrl);
+                    mImageCount++;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private boolean isOnWifi() {
+        final ConnectivityManager cm = (ConnectivityManager) mContext.getSystemService(
+                Context.CONNECTIVITY_SERVICE);
+        final NetworkInfo info = cm.getActiveNetworkInfo();
+        return info != null && info.isConnected()
+                && info.getType() == ConnectivityManager.TYPE_WIFI;
+    }
+}
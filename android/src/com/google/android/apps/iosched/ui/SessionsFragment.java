@@ -20,23 +20,24 @@ import com.google.android.apps.iosched.R;
 import com.google.android.apps.iosched.provider.ScheduleContract;
 import com.google.android.apps.iosched.util.ActivityHelper;
 import com.google.android.apps.iosched.util.AnalyticsUtils;
+import com.google.android.apps.iosched.util.ManagedQuery;
 import com.google.android.apps.iosched.util.NotifyingAsyncQueryHandler;
+import com.google.android.apps.iosched.util.RowTextCache;
+import com.google.android.apps.iosched.util.TrackCatalog;
+import com.google.android.apps.iosched.util.TransitionTimer;
 import com.google.android.apps.iosched.util.UIUtils;
 
 import android.content.Context;
 import android.content.Intent;
-import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.SystemClock;
 import android.provider.BaseColumns;
 import android.support.v4.app.ListFragment;
-import android.text.Spannable;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.CursorAdapter;
 import android.widget.ListView;
 import android.widget.TextView;
@@ -46,9 +47,15 @@ import static com.google.android.apps.iosched.util.UIUtils.formatSessionSubtitle
 
 /**
  * A {@link ListFragment} showing a list of sessions.
+ * <p>
+ * Cursors are never requeried on the UI thread. Whenever sessions change,
+ * a {@link ManagedQuery} runs a fresh query in the background, which fills
+ * the cursor window there, and the result replaces the current cursor in a
+ * single {@link CursorAdapter#changeCursor} call.
  */
 public class SessionsFragment extends ListFragment implements
-        NotifyingAsyncQueryHandler.AsyncQueryListener {
+        NotifyingAsyncQueryHandler.AsyncQueryListener, TrackCatalog.Callbacks,
+        AbsListView.OnScrollListener {
 
     public static final String EXTRA_SCHEDULE_TIME_STRING =
             "com.google.android.iosched.extra.SCHEDULE_TIME_STRING";
@@ -56,67 +63,122 @@ public class SessionsFragment extends ListFragment implements
     private static final String STATE_CHECKED_POSITION = "checkedPosition";
 
     private Uri mTrackUri;
+    private Uri mSessionsUri;
+    private Uri mSearchUri;
+    private Uri mCompletedSearchUri;
     private Cursor mCursor;
     private CursorAdapter mAdapter;
     private int mCheckedPosition = -1;
     private boolean mHasSetEmptyText = false;
+    private boolean mTabVisible = true;
+    private boolean mHasTrackedTrackView = false;
 
-    private NotifyingAsyncQueryHandler mHandler;
-    private Handler mMessageQueueHandler = new Handler();
+    private ManagedQuery mQuery;
+    private TrackCatalog mCatalog;
+    private SessionDetailPrefetcher mPrefetcher;
+    private TransitionTimer mTransitionTimer;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        mHandler = new NotifyingAsyncQueryHandler(getActivity().getContentResolver(), this);
+        mCatalog = TrackCatalog.getInstance(getActivity());
+        mQuery = new ManagedQuery(getActivity().getContentResolver(), this);
+        mQuery.setVisible(mTabVisible);
+        mQuery.observe(ScheduleContract.Sessions.CONTENT_URI);
+        mPrefetcher = new SessionDetailPrefetcher(getActivity());
+        mTransitionTimer = new TransitionTimer(getActivity(), mRefreshSessionsRunnable);
         reloadFromArguments(getArguments());
     }
 
     public void reloadFromArguments(Bundle arguments) {
         // Teardown from previous arguments
-        if (mCursor != null) {
-            getActivity().stopManagingCursor(mCursor);
-            mCursor = null;
+        if (mAdapter != null) {
+            mAdapter.changeCursor(null);
         }
+        mCursor = null;
 
         mCheckedPosition = -1;
+        mSessionsUri = null;
+        mSearchUri = null;
+        mCompletedSearchUri = null;
         setListAdapter(null);
 
-        mHandler.cancelOperation(SearchQuery._TOKEN);
-        mHandler.cancelOperation(SessionsQuery._TOKEN);
-        mHandler.cancelOperation(TracksQuery._TOKEN);
+        mQuery.cancel();
+        mHasTrackedTrackView = false;
 
         // Load new arguments
         final Intent intent = BaseActivity.fragmentArgumentsToIntent(arguments);
         final Uri sessionsUri = intent.getData();
-        final int sessionQueryToken;
 
         if (sessionsUri == null) {
             return;
         }
 
-        String[] projection;
         if (!ScheduleContract.Sessions.isSearchUri(sessionsUri)) {
             mAdapter = new SessionsAdapter(getActivity());
-            projection = SessionsQuery.PROJECTION;
-            sessionQueryToken = SessionsQuery._TOKEN;
-
+            mSessionsUri = sessionsUri;
         } else {
             mAdapter = new SearchAdapter(getActivity());
-            projection = SearchQuery.PROJECTION;
-            sessionQueryToken = SearchQuery._TOKEN;
+            mSearchUri = sessionsUri;
         }
 
         setListAdapter(mAdapter);
 
         // Start background query to load sessions
-        mHandler.startQuery(sessionQueryToken, null, sessionsUri, projection, null, null,
-                ScheduleContract.Sessions.DEFAULT_SORT);
+        if (mSearchUri != null) {
+            mQuery.setQuery(SearchQuery._TOKEN, mSearchUri, mSearchUri, SearchQuery.PROJECTION,
+                    null, null, ScheduleContract.Sessions.SEARCH_SORT);
+        } else {
+            mQuery.setQuery(SessionsQuery._TOKEN, null, mSessionsUri, SessionsQuery.PROJECTION,
+                    null, null, ScheduleContract.Sessions.DEFAULT_SORT);
+        }
+        mQuery.forceLoad();
 
         // If caller launched us with specific track hint, pass it along when
-        // launching session details. Also start a query to load the track info.
+        // launching session details. Also show the track info.
         mTrackUri = intent.getParcelableExtra(SessionDetailFragment.EXTRA_TRACK);
-        if (mTrackUri != null) {
-            mHandler.startQuery(TracksQuery._TOKEN, mTrackUri, TracksQuery.PROJECTION);
+        mPrefetcher.reset(mTrackUri);
+        bindTrack();
+    }
+
+    /**
+     * Replace the current search with {@code searchUri} while the user is
+     * typing. Results for the previous search stay visible until the new
+     * query completes, and any query still running for an older search is
+     * cancelled. When {@code narrowsPrevious} is set, the new search can only
+     * match a subset of the previous one, so an empty previous result is
+     * reused without querying again.
+     */
+    public void updateSearch(Uri searchUri, boolean narrowsPrevious) {
+        if (mSearchUri == null || searchUri.equals(mSearchUri)) {
+            return;
+        }
+
+        final Uri previousUri = mSearchUri;
+        mSearchUri = searchUri;
+        mQuery.setQuery(SearchQuery._TOKEN, searchUri, searchUri, SearchQuery.PROJECTION,
+                null, null, ScheduleContract.Sessions.SEARCH_SORT);
+        if (getView() != null) {
+            clearCheckedPosition();
+        }
+
+        if (narrowsPrevious && previousUri.equals(mCompletedSearchUri) && mCursor != null
+                && mCursor.getCount() == 0) {
+            mCompletedSearchUri = searchUri;
+            return;
+        }
+
+        mQuery.forceLoad();
+    }
+
+    /**
+     * Set whether this fragment is in the current tab. Sessions aren't
+     * reloaded for hidden fragments until they're shown again.
+     */
+    public void setTabVisible(boolean visible) {
+        mTabVisible = visible;
+        if (mQuery != null) {
+            mQuery.setVisible(visible);
         }
     }
 
@@ -124,6 +186,7 @@ public class SessionsFragment extends ListFragment implements
     public void onActivityCreated(Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
         getListView().setChoiceMode(ListView.CHOICE_MODE_SINGLE);
+        getListView().setOnScrollListener(this);
 
         if (savedInstanceState != null) {
             mCheckedPosition = savedInstanceState.getInt(STATE_CHECKED_POSITION, -1);
@@ -140,13 +203,16 @@ public class SessionsFragment extends ListFragment implements
     /** {@inheritDoc} */
     public void onQueryComplete(int token, Object cookie, Cursor cursor) {
         if (getActivity() == null) {
+            if (cursor != null) {
+                cursor.close();
+            }
             return;
         }
 
-        if (token == SessionsQuery._TOKEN || token == SearchQuery._TOKEN) {
+        if (token == SessionsQuery._TOKEN) {
             onSessionOrSearchQueryComplete(cursor);
-        } else if (token == TracksQuery._TOKEN) {
-            onTrackQueryComplete(cursor);
+        } else if (token == SearchQuery._TOKEN) {
+            onSearchQueryComplete(cookie, cursor);
         } else {
             Log.d("SessionsFragment/onQueryComplete", "Query complete, Not Actionable: " + token);
             cursor.close();
@@ -157,51 +223,101 @@ public class SessionsFragment extends ListFragment implements
      * Handle {@link SessionsQuery} {@link Cursor}.
      */
     private void onSessionOrSearchQueryComplete(Cursor cursor) {
+        if (cursor == null) {
+            return;
+        }
+
+        // Swap in the new cursor, which also closes the previous one. Not
+        // managed by the activity, since that would requery on this thread.
         mCursor = cursor;
-        getActivity().startManagingCursor(mCursor);
         mAdapter.changeCursor(mCursor);
         if (mCheckedPosition >= 0 && getView() != null) {
             getListView().setItemChecked(mCheckedPosition, true);
         }
+
+        // Details may have changed, so prefetch again once the new rows are laid out
+        mPrefetcher.reset(mTrackUri);
+        if (getView() != null) {
+            getListView().post(mPrefetchRunnable);
+        }
     }
 
     /**
-     * Handle {@link TracksQuery} {@link Cursor}.
+     * Handle {@link SearchQuery} {@link Cursor}, dropping results for any
+     * search that has since been replaced.
      */
-    private void onTrackQueryComplete(Cursor cursor) {
-        try {
-            if (!cursor.moveToFirst()) {
-                return;
-            }
+    private void onSearchQueryComplete(Object cookie, Cursor cursor) {
+        if (cursor == null) {
+            // Query failed, such as on a malformed search; keep current results
+            return;
+        }
+        if (!cookie.equals(mSearchUri)) {
+            cursor.close();
+            return;
+        }
+        mCompletedSearchUri = (Uri) cookie;
+        onSessionOrSearchQueryComplete(cursor);
+    }
+
+    /** {@inheritDoc} */
+    public void onTracksChanged() {
+        bindTrack();
+    }
+
+    /**
+     * Show the track hinted by the caller, if any, as read from the
+     * {@link TrackCatalog}.
+     */
+    private void bindTrack() {
+        if (mTrackUri == null || getActivity() == null) {
+            return;
+        }
+
+        final TrackCatalog.Track track = mCatalog.getTrack(
+                ScheduleContract.Tracks.getTrackId(mTrackUri));
+        if (track == null) {
+            return;
+        }
 
-            // Use found track to build title-bar
-            ActivityHelper activityHelper = ((BaseActivity) getActivity()).getActivityHelper();
-            String trackName = cursor.getString(TracksQuery.TRACK_NAME);
-            activityHelper.setActionBarTitle(trackName);
-            activityHelper.setActionBarColor(cursor.getInt(TracksQuery.TRACK_COLOR));
+        // Use found track to build title-bar
+        ActivityHelper activityHelper = ((BaseActivity) getActivity()).getActivityHelper();
+        String trackName = track.getName();
+        activityHelper.setActionBarTitle(trackName);
+        activityHelper.setActionBarColor(track.getColor());
 
+        if (!mHasTrackedTrackView) {
             AnalyticsUtils.getInstance(getActivity()).trackPageView("/Tracks/" + trackName);
-        } finally {
-            cursor.close();
+            mHasTrackedTrackView = true;
         }
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        mMessageQueueHandler.post(mRefreshSessionsRunnable);
-        getActivity().getContentResolver().registerContentObserver(
-                ScheduleContract.Sessions.CONTENT_URI, true, mSessionChangesObserver);
-        if (mCursor != null) {
-            mCursor.requery();
-        }
+        mTransitionTimer.start();
+        mQuery.start();
+        mCatalog.registerCallbacks(this);
+        bindTrack();
     }
 
     @Override
     public void onPause() {
         super.onPause();
-        mMessageQueueHandler.removeCallbacks(mRefreshSessionsRunnable);
-        getActivity().getContentResolver().unregisterContentObserver(mSessionChangesObserver);
+        mTransitionTimer.stop();
+        mQuery.stop();
+        mCatalog.unregisterCallbacks(this);
+        mPrefetcher.cancel();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mQuery.destroy();
+        mPrefetcher.cancel();
+        if (mAdapter != null) {
+            mAdapter.changeCursor(null);
+        }
+        mCursor = null;
     }
 
     @Override
@@ -227,6 +343,36 @@ public class SessionsFragment extends ListFragment implements
         mCheckedPosition = position;
     }
 
+    /** {@inheritDoc} */
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+        if (scrollState == SCROLL_STATE_IDLE) {
+            prefetchVisibleSessions();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+            int totalItemCount) {
+    }
+
+    /**
+     * Warm details for the sessions currently on screen, so they open
+     * without waiting on queries or speaker photos.
+     */
+    private void prefetchVisibleSessions() {
+        if (mCursor == null || getView() == null) {
+            return;
+        }
+
+        final ListView listView = getListView();
+        final int headerCount = listView.getHeaderViewsCount();
+        final int sessionIdColumn = (mSearchUri != null)
+                ? SearchQuery.SESSION_ID : SessionsQuery.SESSION_ID;
+        mPrefetcher.prefetch(mCursor, sessionIdColumn,
+                listView.getFirstVisiblePosition() - headerCount,
+                listView.getLastVisiblePosition() - headerCount);
+    }
+
     public void clearCheckedPosition() {
         if (mCheckedPosition >= 0) {
             getListView().setItemChecked(mCheckedPosition, false);
@@ -238,39 +384,46 @@ public class SessionsFragment extends ListFragment implements
      * {@link CursorAdapter} that renders a {@link SessionsQuery}.
      */
     private class SessionsAdapter extends CursorAdapter {
+        private final RowTextCache mSubtitles = new RowTextCache();
+
         public SessionsAdapter(Context context) {
-            super(context, null);
+            super(context, null, false);
+            registerDataSetObserver(mSubtitles);
         }
 
         /** {@inheritDoc} */
         @Override
         public View newView(Context context, Cursor cursor, ViewGroup parent) {
-            return getActivity().getLayoutInflater().inflate(R.layout.list_item_session, parent,
-                    false);
+            final View view = getActivity().getLayoutInflater().inflate(
+                    R.layout.list_item_session, parent, false);
+            view.setTag(new SessionViewHolder(view));
+            return view;
         }
 
         /** {@inheritDoc} */
         @Override
         public void bindView(View view, Context context, Cursor cursor) {
-            final TextView titleView = (TextView) view.findViewById(R.id.session_title);
-            final TextView subtitleView = (TextView) view.findViewById(R.id.session_subtitle);
+            final SessionViewHolder holder = (SessionViewHolder) view.getTag();
 
-            titleView.setText(cursor.getString(SessionsQuery.TITLE));
+            holder.title.setText(cursor.getString(SessionsQuery.TITLE));
 
-            // Format time block this session occupies
+            // Format time block this session occupies, once per row
+            final long id = cursor.getLong(SessionsQuery._ID);
             final long blockStart = cursor.getLong(SessionsQuery.BLOCK_START);
             final long blockEnd = cursor.getLong(SessionsQuery.BLOCK_END);
-            final String roomName = cursor.getString(SessionsQuery.ROOM_NAME);
-            final String subtitle = formatSessionSubtitle(blockStart, blockEnd, roomName, context);
-
-            subtitleView.setText(subtitle);
+            CharSequence subtitle = mSubtitles.get(id);
+            if (subtitle == null) {
+                final String roomName = cursor.getString(SessionsQuery.ROOM_NAME);
+                subtitle = formatSessionSubtitle(blockStart, blockEnd, roomName, context);
+                mSubtitles.put(id, subtitle);
+            }
+            holder.subtitle.setText(subtitle);
 
             final boolean starred = cursor.getInt(SessionsQuery.STARRED) != 0;
-            view.findViewById(R.id.star_button).setVisibility(
-                    starred ? View.VISIBLE : View.INVISIBLE);
+            holder.starButton.setVisibility(starred ? View.VISIBLE : View.INVISIBLE);
 
             // Possibly indicate that the session has occurred in the past.
-            UIUtils.setSessionTitleColor(blockStart, blockEnd, titleView, subtitleView);
+            UIUtils.setSessionTitleColor(blockStart, blockEnd, holder.title, holder.subtitle);
         }
     }
 
@@ -278,40 +431,60 @@ public class SessionsFragment extends ListFragment implements
      * {@link CursorAdapter} that renders a {@link SearchQuery}.
      */
     private class SearchAdapter extends CursorAdapter {
+        private final RowTextCache mSnippets = new RowTextCache();
+
         public SearchAdapter(Context context) {
-            super(context, null);
+            super(context, null, false);
+            registerDataSetObserver(mSnippets);
         }
 
         /** {@inheritDoc} */
         @Override
         public View newView(Context context, Cursor cursor, ViewGroup parent) {
-            return getActivity().getLayoutInflater().inflate(R.layout.list_item_session, parent,
-                    false);
+            final View view = getActivity().getLayoutInflater().inflate(
+                    R.layout.list_item_session, parent, false);
+            view.setTag(new SessionViewHolder(view));
+            return view;
         }
 
         /** {@inheritDoc} */
         @Override
         public void bindView(View view, Context context, Cursor cursor) {
-            ((TextView) view.findViewById(R.id.session_title)).setText(cursor
-                    .getString(SearchQuery.TITLE));
+            final SessionViewHolder holder = (SessionViewHolder) view.getTag();
 
-            final String snippet = cursor.getString(SearchQuery.SEARCH_SNIPPET);
+            holder.title.setText(cursor.getString(SearchQuery.TITLE));
 
-            final Spannable styledSnippet = buildStyledSnippet(snippet);
-            ((TextView) view.findViewById(R.id.session_subtitle)).setText(styledSnippet);
+            final long id = cursor.getLong(SearchQuery._ID);
+            CharSequence styledSnippet = mSnippets.get(id);
+            if (styledSnippet == null) {
+                styledSnippet = buildStyledSnippet(cursor.getString(SearchQuery.SEARCH_SNIPPET));
+                mSnippets.put(id, styledSnippet);
+            }
+            holder.subtitle.setText(styledSnippet);
 
             final boolean starred = cursor.getInt(SearchQuery.STARRED) != 0;
-            view.findViewById(R.id.star_button).setVisibility(
-                    starred ? View.VISIBLE : View.INVISIBLE);
+            holder.starButton.setVisibility(starred ? View.VISIBLE : View.INVISIBLE);
         }
     }
 
-    private ContentObserver mSessionChangesObserver = new ContentObserver(new Handler()) {
-        @Override
-        public void onChange(boolean selfChange) {
-            if (mCursor != null) {
-                mCursor.requery();
-            }
+    /**
+     * Views of a {@link R.layout#list_item_session} row, kept as its tag.
+     */
+    private static class SessionViewHolder {
+        private final TextView title;
+        private final TextView subtitle;
+        private final View starButton;
+
+        public SessionViewHolder(View view) {
+            title = (TextView) view.findViewById(R.id.session_title);
+            subtitle = (TextView) view.findViewById(R.id.session_subtitle);
+            starButton = view.findViewById(R.id.star_button);
+        }
+    }
+
+    private Runnable mPrefetchRunnable = new Runnable() {
+        public void run() {
+            prefetchVisibleSessions();
         }
     };
 
@@ -322,10 +495,15 @@ public class SessionsFragment extends ListFragment implements
                 mAdapter.notifyDataSetChanged();
             }
 
-            // Check again on the next quarter hour, with some padding to account for network
-            // time differences.
-            long nextQuarterHour = (SystemClock.uptimeMillis() / 900000 + 1) * 900000 + 5000;
-            mMessageQueueHandler.postAtTime(mRefreshSessionsRunnable, nextQuarterHour);
+            if (mSessionsUri != null && ScheduleContract.Sessions.isSessionsAtUri(mSessionsUri)) {
+                // Follow the sessions happening now, rather than when first opened.
+                mSessionsUri = ScheduleContract.Sessions.buildSessionsAtDirUri(
+                        UIUtils.getCurrentTime(getActivity()));
+                mQuery.setQuery(SessionsQuery._TOKEN, null, mSessionsUri,
+                        SessionsQuery.PROJECTION, null, null,
+                        ScheduleContract.Sessions.DEFAULT_SORT);
+                mQuery.forceLoad();
+            }
         }
     };
 
@@ -354,21 +532,6 @@ public class SessionsFragment extends ListFragment implements
         int ROOM_NAME = 6;
     }
 
-    /**
-     * {@link com.google.android.apps.iosched.provider.ScheduleContract.Tracks} query parameters.
-     */
-    private interface TracksQuery {
-        int _TOKEN = 0x2;
-
-        String[] PROJECTION = {
-                ScheduleContract.Tracks.TRACK_NAME,
-                ScheduleContract.Tracks.TRACK_COLOR,
-        };
-
-        int TRACK_NAME = 0;
-        int TRACK_COLOR = 1;
-    }
-
     /** {@link com.google.android.apps.iosched.provider.ScheduleContract.Sessions} search query
      * parameters. */
     private interface SearchQuery {
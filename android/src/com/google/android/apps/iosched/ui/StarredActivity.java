@@ -29,6 +29,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.FrameLayout;
 import android.widget.TabHost;
+import android.widget.TabHost.OnTabChangeListener;
 import android.widget.TabWidget;
 import android.widget.TextView;
 
@@ -61,6 +62,8 @@ public class StarredActivity extends BaseMultiPaneActivity {
 
         setupSessionsTab();
         setupVendorsTab();
+        mTabHost.setOnTabChangedListener(mTabChangeListener);
+        updateTabVisibility();
     }
 
     @Override
@@ -135,6 +138,22 @@ public class StarredActivity extends BaseMultiPaneActivity {
                 .setContent(R.id.fragment_vendors));
     }
 
+    private OnTabChangeListener mTabChangeListener = new OnTabChangeListener() {
+        public void onTabChanged(String tabId) {
+            updateTabVisibility();
+        }
+    };
+
+    /**
+     * Let only fragments in the current tab reload their items when content
+     * changes.
+     */
+    private void updateTabVisibility() {
+        final String tag = mTabHost.getCurrentTabTag();
+        mSessionsFragment.setTabVisible(TAG_SESSIONS.equals(tag));
+        mVendorsFragment.setTabVisible(TAG_VENDORS.equals(tag));
+    }
+
     /**
      * Build a {@link View} to be used as a tab indicator, setting the requested string resource as
      * its label.
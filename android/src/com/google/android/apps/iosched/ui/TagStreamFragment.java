@@ -17,6 +17,7 @@
 package com.google.android.apps.iosched.ui;
 
 import com.google.android.apps.iosched.R;
+import com.google.android.apps.iosched.util.WebContentCache;
 
 import android.content.Intent;
 import android.graphics.Bitmap;
@@ -24,6 +25,7 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.text.TextUtils;
+import android.text.format.DateUtils;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -37,7 +39,8 @@ import java.net.URLEncoder;
 /**
  * A {@link WebView}-based fragment that shows Google Realtime Search results for a given query,
  * provided as the {@link TagStreamFragment#EXTRA_QUERY} extra in the fragment arguments. If no
- * search query is provided, the conference hashtag is used as the default query.
+ * search query is provided, the conference hashtag is used as the default query. The last results
+ * are shown from {@link WebContentCache} right away, and refreshed in the background.
  */
 public class TagStreamFragment extends Fragment {
 
@@ -47,10 +50,17 @@ public class TagStreamFragment extends Fragment {
 
     public static final String CONFERENCE_HASHTAG = "#io2011";
 
+    /** How long cached results are shown before checking for new ones. */
+    private static final long MAX_AGE_MILLIS = DateUtils.MINUTE_IN_MILLIS;
+
     private String mSearchString;
+    private String mSearchUrl;
     private WebView mWebView;
     private View mLoadingSpinner;
 
+    private WebContentCache mContentCache;
+    private WebContentCache.Binding mContentBinding;
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -63,6 +73,17 @@ public class TagStreamFragment extends Fragment {
         if (!mSearchString.startsWith("#")) {
             mSearchString = "#" + mSearchString;
         }
+
+        try {
+            mSearchUrl = "http://www.google.com/search?tbs="
+                    + "mbl%3A1&hl=en&source=hp&biw=1170&bih=668&q="
+                    + URLEncoder.encode(mSearchString, "UTF-8")
+                    + "&btnG=Search";
+        } catch (UnsupportedEncodingException e) {
+            Log.e(TAG, "Could not construct the realtime search URL", e);
+        }
+
+        mContentCache = WebContentCache.getInstance(getActivity());
     }
 
     @Override
@@ -84,14 +105,8 @@ public class TagStreamFragment extends Fragment {
             public void run() {
                 mWebView.getSettings().setJavaScriptEnabled(true);
                 mWebView.getSettings().setJavaScriptCanOpenWindowsAutomatically(false);
-                try {
-                    mWebView.loadUrl(
-                            "http://www.google.com/search?tbs="
-                            + "mbl%3A1&hl=en&source=hp&biw=1170&bih=668&q="
-                            + URLEncoder.encode(mSearchString, "UTF-8")
-                            + "&btnG=Search");
-                } catch (UnsupportedEncodingException e) {
-                    Log.e(TAG, "Could not construct the realtime search URL", e);
+                if (mSearchUrl != null) {
+                    mContentBinding = mContentCache.bind(mWebView, mSearchUrl, MAX_AGE_MILLIS);
                 }
             }
         });
@@ -99,8 +114,18 @@ public class TagStreamFragment extends Fragment {
         return root;
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (mContentBinding != null) {
+            mContentBinding.cancel();
+        }
+    }
+
     public void refresh() {
-        mWebView.reload();
+        if (mContentBinding != null) {
+            mContentBinding.reload();
+        }
     }
 
     private WebViewClient mWebViewClient = new WebViewClient() {
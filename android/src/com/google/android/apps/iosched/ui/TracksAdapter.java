@@ -17,32 +17,36 @@
 package com.google.android.apps.iosched.ui;
 
 import com.google.android.apps.iosched.R;
-import com.google.android.apps.iosched.provider.ScheduleContract;
+import com.google.android.apps.iosched.util.TrackCatalog;
 
 import android.app.Activity;
-import android.content.Context;
-import android.database.Cursor;
 import android.graphics.drawable.ColorDrawable;
-import android.provider.BaseColumns;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.CursorAdapter;
+import android.widget.BaseAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
- * A {@link android.widget.CursorAdapter} that renders a {@link TracksQuery}.
+ * A {@link BaseAdapter} that renders {@link TrackCatalog.Track} entries,
+ * optionally led by an item for all tracks.
  */
-public class TracksAdapter extends CursorAdapter {
+public class TracksAdapter extends BaseAdapter {
     private static final int ALL_ITEM_ID = Integer.MAX_VALUE;
 
+    private static final int VIEW_TYPE_TRACK = 0;
+    private static final int VIEW_TYPE_ALL = 1;
+
     private Activity mActivity;
+    private List<TrackCatalog.Track> mTracks = Collections.emptyList();
     private boolean mHasAllItem;
     private int mPositionDisplacement;
     private boolean mIsSessions = true;
 
     public TracksAdapter(Activity activity) {
-        super(activity, null);
         mActivity = activity;
     }
 
@@ -55,122 +59,90 @@ public class TracksAdapter extends CursorAdapter {
         mIsSessions = isSessions;
     }
 
-    @Override
+    /**
+     * Replace the tracks shown, which are read from a {@link TrackCatalog}
+     * and never modified.
+     */
+    public void setTracks(List<TrackCatalog.Track> tracks) {
+        if (tracks == null) {
+            tracks = Collections.emptyList();
+        }
+        if (tracks != mTracks) {
+            mTracks = tracks;
+            notifyDataSetChanged();
+        }
+    }
+
+    /** {@inheritDoc} */
     public int getCount() {
-        return super.getCount() + mPositionDisplacement;
+        return mTracks.size() + mPositionDisplacement;
     }
 
-    @Override
+    /** {@inheritDoc} */
     public View getView(int position, View convertView, ViewGroup parent) {
-        if (mHasAllItem && position == 0) {
-            if (convertView == null) {
-                convertView = mActivity.getLayoutInflater().inflate(
-                        R.layout.list_item_track, parent, false);
-            }
+        if (convertView == null) {
+            convertView = mActivity.getLayoutInflater().inflate(
+                    R.layout.list_item_track, parent, false);
+        }
+
+        final TextView textView = (TextView) convertView.findViewById(android.R.id.text1);
+        final ImageView iconView = (ImageView) convertView.findViewById(android.R.id.icon1);
 
+        if (mHasAllItem && position == 0) {
             // Custom binding for the first item
-            ((TextView) convertView.findViewById(android.R.id.text1)).setText(
+            textView.setText(
                     "(" + mActivity.getResources().getString(mIsSessions
                             ? R.string.all_sessions_title
                             : R.string.all_sandbox_title)
                             + ")");
-            convertView.findViewById(android.R.id.icon1).setVisibility(View.INVISIBLE);
+            iconView.setVisibility(View.INVISIBLE);
 
             return convertView;
         }
-        return super.getView(position - mPositionDisplacement, convertView, parent);
+
+        final TrackCatalog.Track track = getItem(position);
+        textView.setText(track.getName());
+
+        // Assign track color to visible block
+        iconView.setImageDrawable(new ColorDrawable(track.getColor()));
+        return convertView;
     }
 
-    @Override
-    public Object getItem(int position) {
+    /**
+     * Returns the {@link TrackCatalog.Track} at the given position, or
+     * {@code null} for the item for all tracks.
+     */
+    public TrackCatalog.Track getItem(int position) {
         if (mHasAllItem && position == 0) {
             return null;
         }
-        return super.getItem(position - mPositionDisplacement);
+        return mTracks.get(position - mPositionDisplacement);
     }
 
-    @Override
+    /** {@inheritDoc} */
     public long getItemId(int position) {
         if (mHasAllItem && position == 0) {
             return ALL_ITEM_ID;
         }
-        return super.getItemId(position - mPositionDisplacement);
+        return mTracks.get(position - mPositionDisplacement).getId();
     }
 
     @Override
-    public boolean isEnabled(int position) {
-        if (mHasAllItem && position == 0) {
-            return true;
-        }
-        return super.isEnabled(position - mPositionDisplacement);
+    public boolean hasStableIds() {
+        return true;
     }
 
     @Override
     public int getViewTypeCount() {
         // Add an item type for the "All" view.
-        return super.getViewTypeCount() + 1;
+        return 2;
     }
 
     @Override
     public int getItemViewType(int position) {
         if (mHasAllItem && position == 0) {
-            return getViewTypeCount() - 1;
+            return VIEW_TYPE_ALL;
         }
-        return super.getItemViewType(position - mPositionDisplacement);
-    }
-
-    /** {@inheritDoc} */
-    @Override
-    public View newView(Context context, Cursor cursor, ViewGroup parent) {
-        return mActivity.getLayoutInflater().inflate(R.layout.list_item_track, parent,
-                false);
-    }
-
-    /** {@inheritDoc} */
-    @Override
-    public void bindView(View view, Context context, Cursor cursor) {
-        final TextView textView = (TextView) view.findViewById(android.R.id.text1);
-        textView.setText(cursor.getString(TracksQuery.TRACK_NAME));
-
-        // Assign track color to visible block
-        final ImageView iconView = (ImageView) view.findViewById(android.R.id.icon1);
-        iconView.setImageDrawable(new ColorDrawable(cursor.getInt(TracksQuery.TRACK_COLOR)));
-    }
-
-    /** {@link com.google.android.apps.iosched.provider.ScheduleContract.Tracks} query parameters. */
-    public interface TracksQuery {
-        int _TOKEN = 0x1;
-
-        String[] PROJECTION = {
-                BaseColumns._ID,
-                ScheduleContract.Tracks.TRACK_ID,
-                ScheduleContract.Tracks.TRACK_NAME,
-                ScheduleContract.Tracks.TRACK_ABSTRACT,
-                ScheduleContract.Tracks.TRACK_COLOR,
-        };
-
-        String[] PROJECTION_WITH_SESSIONS_COUNT = {
-                BaseColumns._ID,
-                ScheduleContract.Tracks.TRACK_ID,
-                ScheduleContract.Tracks.TRACK_NAME,
-                ScheduleContract.Tracks.TRACK_ABSTRACT,
-                ScheduleContract.Tracks.TRACK_COLOR,
-                ScheduleContract.Tracks.SESSIONS_COUNT,
-        };
-
-        String[] PROJECTION_WITH_VENDORS_COUNT = {
-                BaseColumns._ID,
-                ScheduleContract.Tracks.TRACK_ID,
-                ScheduleContract.Tracks.TRACK_NAME,
-                ScheduleContract.Tracks.TRACK_ABSTRACT,
-                ScheduleContract.Tracks.TRACK_COLOR,
-                ScheduleContract.Tracks.VENDORS_COUNT,
-        };
-
-        int _ID = 0;
-        int TRACK_ID = 1;
-        int TRACK_NAME = 2;
-        int TRACK_ABSTRACT = 3;
-        int TRACK_COLOR = 4;
+        return VIEW_TYPE_TRACK;
     }
 }
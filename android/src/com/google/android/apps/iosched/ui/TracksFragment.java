@@ -19,10 +19,9 @@ package com.google.android.apps.iosched.ui;
 import com.google.android.apps.iosched.R;
 import com.google.android.apps.iosched.provider.ScheduleContract;
 import com.google.android.apps.iosched.util.AnalyticsUtils;
-import com.google.android.apps.iosched.util.NotifyingAsyncQueryHandler;
+import com.google.android.apps.iosched.util.TrackCatalog;
 
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.ListFragment;
@@ -31,12 +30,14 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ListView;
 
+import java.util.List;
+
 /**
  * A simple {@link ListFragment} that renders a list of tracks with available sessions or vendors
- * (depending on {@link TracksFragment#EXTRA_NEXT_TYPE}) using a {@link TracksAdapter}.
+ * (depending on {@link TracksFragment#EXTRA_NEXT_TYPE}) using a {@link TracksAdapter}. Tracks
+ * are read from the shared {@link TrackCatalog}.
  */
-public class TracksFragment extends ListFragment implements
-        NotifyingAsyncQueryHandler.AsyncQueryListener {
+public class TracksFragment extends ListFragment implements TrackCatalog.Callbacks {
 
     public static final String EXTRA_NEXT_TYPE = "com.google.android.iosched.extra.NEXT_TYPE";
 
@@ -44,7 +45,7 @@ public class TracksFragment extends ListFragment implements
     public static final String NEXT_TYPE_VENDORS = "vendors";
 
     private TracksAdapter mAdapter;
-    private NotifyingAsyncQueryHandler mHandler;
+    private TrackCatalog mCatalog;
     private String mNextType;
 
     @Override
@@ -52,32 +53,19 @@ public class TracksFragment extends ListFragment implements
         super.onCreate(savedInstanceState);
 
         final Intent intent = BaseActivity.fragmentArgumentsToIntent(getArguments());
-        final Uri tracksUri = intent.getData();
         mNextType = intent.getStringExtra(EXTRA_NEXT_TYPE);
 
         mAdapter = new TracksAdapter(getActivity());
         setListAdapter(mAdapter);
 
-        // Filter our tracks query to only include those with valid results
-        String[] projection = TracksAdapter.TracksQuery.PROJECTION;
-        String selection = null;
         if (NEXT_TYPE_SESSIONS.equals(mNextType)) {
-            // Only show tracks with at least one session
-            projection = TracksAdapter.TracksQuery.PROJECTION_WITH_SESSIONS_COUNT;
-            selection = ScheduleContract.Tracks.SESSIONS_COUNT + ">0";
             AnalyticsUtils.getInstance(getActivity()).trackPageView("/Tracks");
-
         } else if (NEXT_TYPE_VENDORS.equals(mNextType)) {
-            // Only show tracks with at least one vendor
-            projection = TracksAdapter.TracksQuery.PROJECTION_WITH_VENDORS_COUNT;
-            selection = ScheduleContract.Tracks.VENDORS_COUNT + ">0";
             AnalyticsUtils.getInstance(getActivity()).trackPageView("/Sandbox");
         }
 
-        // Start background query to load tracks
-        mHandler = new NotifyingAsyncQueryHandler(getActivity().getContentResolver(), this);
-        mHandler.startQuery(tracksUri, projection, selection, null,
-                ScheduleContract.Tracks.DEFAULT_SORT);
+        mCatalog = TrackCatalog.getInstance(getActivity());
+        bindTracks();
     }
 
     @Override
@@ -99,26 +87,56 @@ public class TracksFragment extends ListFragment implements
         getListView().setChoiceMode(ListView.CHOICE_MODE_SINGLE);
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+        mCatalog.registerCallbacks(this);
+        bindTracks();
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        mCatalog.unregisterCallbacks(this);
+    }
+
     /** {@inheritDoc} */
-    public void onQueryComplete(int token, Object cookie, Cursor cursor) {
-        if (getActivity() == null) {
+    public void onTracksChanged() {
+        bindTracks();
+    }
+
+    /**
+     * Show tracks from the catalog, only including those with valid results.
+     */
+    private void bindTracks() {
+        if (!mCatalog.isLoaded()) {
             return;
         }
 
-        getActivity().startManagingCursor(cursor);
+        final List<TrackCatalog.Track> tracks;
+        if (NEXT_TYPE_SESSIONS.equals(mNextType)) {
+            // Only show tracks with at least one session
+            tracks = mCatalog.getTracksWithSessions();
+        } else if (NEXT_TYPE_VENDORS.equals(mNextType)) {
+            // Only show tracks with at least one vendor
+            tracks = mCatalog.getTracksWithVendors();
+        } else {
+            tracks = mCatalog.getTracks();
+        }
+
         mAdapter.setHasAllItem(true);
         mAdapter.setIsSessions(TracksFragment.NEXT_TYPE_SESSIONS.equals(mNextType));
-        mAdapter.changeCursor(cursor);
+        mAdapter.setTracks(tracks);
     }
 
     /** {@inheritDoc} */
     @Override
     public void onListItemClick(ListView l, View v, int position, long id) {
-        final Cursor cursor = (Cursor) mAdapter.getItem(position);
+        final TrackCatalog.Track track = mAdapter.getItem(position);
         final String trackId;
 
-        if (cursor != null) {
-            trackId = cursor.getString(TracksAdapter.TracksQuery.TRACK_ID);
+        if (track != null) {
+            trackId = track.getTrackId();
         } else {
             trackId = ScheduleContract.Tracks.ALL_TRACK_ID;
         }
@@ -128,13 +146,13 @@ public class TracksFragment extends ListFragment implements
         intent.putExtra(SessionDetailFragment.EXTRA_TRACK, trackUri);
 
         if (NEXT_TYPE_SESSIONS.equals(mNextType)) {
-            if (cursor == null) {
+            if (track == null) {
                 intent.setData(ScheduleContract.Sessions.CONTENT_URI);
             } else {
                 intent.setData(ScheduleContract.Tracks.buildSessionsUri(trackId));
             }
         } else if (NEXT_TYPE_VENDORS.equals(mNextType)) {
-            if (cursor == null) {
+            if (track == null) {
                 intent.setData(ScheduleContract.Vendors.CONTENT_URI);
             } else {
                 intent.setData(ScheduleContract.Tracks.buildVendorsUri(trackId));
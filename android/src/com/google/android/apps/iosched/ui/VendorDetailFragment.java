@@ -94,6 +94,7 @@ public class VendorDetailFragment extends Fragment implements
 
         // Start background query to load vendor details
         mHandler = new NotifyingAsyncQueryHandler(getActivity().getContentResolver(), this);
+        mHandler.setPriority(NotifyingAsyncQueryHandler.PRIORITY_HIGH);
         mHandler.startQuery(mVendorUri, VendorsQuery.PROJECTION);
     }
 
@@ -20,18 +20,18 @@ import com.google.android.apps.iosched.R;
 import com.google.android.apps.iosched.provider.ScheduleContract;
 import com.google.android.apps.iosched.util.ActivityHelper;
 import com.google.android.apps.iosched.util.AnalyticsUtils;
+import com.google.android.apps.iosched.util.ManagedQuery;
 import com.google.android.apps.iosched.util.NotifyingAsyncQueryHandler;
+import com.google.android.apps.iosched.util.RowTextCache;
+import com.google.android.apps.iosched.util.TrackCatalog;
 
 import android.content.Context;
 import android.content.Intent;
-import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
 import android.provider.BaseColumns;
 import android.support.v4.app.ListFragment;
-import android.text.Spannable;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
@@ -45,71 +45,118 @@ import static com.google.android.apps.iosched.util.UIUtils.buildStyledSnippet;
  * A {@link ListFragment} showing a list of sandbox comapnies.
  */
 public class VendorsFragment extends ListFragment implements
-        NotifyingAsyncQueryHandler.AsyncQueryListener {
+        NotifyingAsyncQueryHandler.AsyncQueryListener, TrackCatalog.Callbacks {
 
     private static final String STATE_CHECKED_POSITION = "checkedPosition";
 
     private Uri mTrackUri;
+    private Uri mSearchUri;
+    private Uri mCompletedSearchUri;
     private Cursor mCursor;
     private CursorAdapter mAdapter;
     private int mCheckedPosition = -1;
     private boolean mHasSetEmptyText = false;
+    private boolean mTabVisible = true;
+    private boolean mHasTrackedTrackView = false;
 
-    private NotifyingAsyncQueryHandler mHandler;
+    private ManagedQuery mQuery;
+    private TrackCatalog mCatalog;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        mHandler = new NotifyingAsyncQueryHandler(getActivity().getContentResolver(), this);
+        mCatalog = TrackCatalog.getInstance(getActivity());
+        mQuery = new ManagedQuery(getActivity().getContentResolver(), this);
+        mQuery.setVisible(mTabVisible);
+        mQuery.observe(ScheduleContract.Vendors.CONTENT_URI);
         reloadFromArguments(getArguments());
     }
 
     public void reloadFromArguments(Bundle arguments) {
         // Teardown from previous arguments
-        if (mCursor != null) {
-            getActivity().stopManagingCursor(mCursor);
-            mCursor = null;
+        if (mAdapter != null) {
+            mAdapter.changeCursor(null);
         }
+        mCursor = null;
 
         mCheckedPosition = -1;
+        mSearchUri = null;
+        mCompletedSearchUri = null;
         setListAdapter(null);
 
-        mHandler.cancelOperation(SearchQuery._TOKEN);
-        mHandler.cancelOperation(VendorsQuery._TOKEN);
+        mQuery.cancel();
+        mHasTrackedTrackView = false;
 
         // Load new arguments
         final Intent intent = BaseActivity.fragmentArgumentsToIntent(arguments);
         final Uri vendorsUri = intent.getData();
-        final int vendorQueryToken;
 
         if (vendorsUri == null) {
             return;
         }
 
-        String[] projection;
         if (!ScheduleContract.Vendors.isSearchUri(vendorsUri)) {
             mAdapter = new VendorsAdapter(getActivity());
-            projection = VendorsQuery.PROJECTION;
-            vendorQueryToken = VendorsQuery._TOKEN;
+            mQuery.setQuery(VendorsQuery._TOKEN, null, vendorsUri, VendorsQuery.PROJECTION,
+                    null, null, ScheduleContract.Vendors.DEFAULT_SORT);
 
         } else {
             Log.d("VendorsFragment/reloadFromArguments", "A search URL definitely gets passed in.");
             mAdapter = new SearchAdapter(getActivity());
-            projection = SearchQuery.PROJECTION;
-            vendorQueryToken = SearchQuery._TOKEN;
+            mSearchUri = vendorsUri;
+            mQuery.setQuery(SearchQuery._TOKEN, mSearchUri, mSearchUri, SearchQuery.PROJECTION,
+                    null, null, ScheduleContract.Vendors.SEARCH_SORT);
         }
 
         setListAdapter(mAdapter);
 
         // Start background query to load vendors
-        mHandler.startQuery(vendorQueryToken, null, vendorsUri, projection, null, null,
-                ScheduleContract.Vendors.DEFAULT_SORT);
+        mQuery.forceLoad();
 
         // If caller launched us with specific track hint, pass it along when
-        // launching vendor details. Also start a query to load the track info.
+        // launching vendor details. Also show the track info.
         mTrackUri = intent.getParcelableExtra(SessionDetailFragment.EXTRA_TRACK);
-        if (mTrackUri != null) {
-            mHandler.startQuery(TracksQuery._TOKEN, mTrackUri, TracksQuery.PROJECTION);
+        bindTrack();
+    }
+
+    /**
+     * Replace the current search with {@code searchUri} while the user is
+     * typing. Results for the previous search stay visible until the new
+     * query completes, and any query still running for an older search is
+     * cancelled. When {@code narrowsPrevious} is set, the new search can only
+     * match a subset of the previous one, so an empty previous result is
+     * reused without querying again.
+     */
+    public void updateSearch(Uri searchUri, boolean narrowsPrevious) {
+        if (mSearchUri == null || searchUri.equals(mSearchUri)) {
+            return;
+        }
+
+        final Uri previousUri = mSearchUri;
+        mSearchUri = searchUri;
+        mQuery.setQuery(SearchQuery._TOKEN, searchUri, searchUri, SearchQuery.PROJECTION,
+                null, null, ScheduleContract.Vendors.SEARCH_SORT);
+        if (getView() != null) {
+            clearCheckedPosition();
+        }
+
+        if (narrowsPrevious && previousUri.equals(mCompletedSearchUri) && mCursor != null
+                && mCursor.getCount() == 0) {
+            mCompletedSearchUri = searchUri;
+            return;
+        }
+
+        mQuery.forceLoad();
+    }
+
+    /**
+     * Set whether this fragment is in the current tab. Vendors aren't
+     * reloaded for hidden fragments until they're shown again.
+     */
+    public void setTabVisible(boolean visible) {
+        mTabVisible = visible;
+        if (mQuery != null) {
+            mQuery.setVisible(visible);
         }
     }
 
@@ -134,13 +181,16 @@ public class VendorsFragment extends ListFragment implements
     /** {@inheritDoc} */
     public void onQueryComplete(int token, Object cookie, Cursor cursor) {
         if (getActivity() == null) {
+            if (cursor != null) {
+                cursor.close();
+            }
             return;
         }
 
-        if (token == VendorsQuery._TOKEN || token == SearchQuery._TOKEN) {
+        if (token == VendorsQuery._TOKEN) {
             onVendorsOrSearchQueryComplete(cursor);
-        } else if (token == TracksQuery._TOKEN) {
-            onTrackQueryComplete(cursor);
+        } else if (token == SearchQuery._TOKEN) {
+            onSearchQueryComplete(cookie, cursor);
         } else {
             cursor.close();
         }
@@ -150,9 +200,12 @@ public class VendorsFragment extends ListFragment implements
      * Handle {@link VendorsQuery} {@link Cursor}.
      */
     private void onVendorsOrSearchQueryComplete(Cursor cursor) {
-        // TODO(romannurik): stopManagingCursor on detach (throughout app)
+        if (cursor == null) {
+            return;
+        }
+
+        // Swap in the new cursor, which also closes the previous one
         mCursor = cursor;
-        getActivity().startManagingCursor(mCursor);
         mAdapter.changeCursor(mCursor);
         if (mCheckedPosition >= 0 && getView() != null) {
             getListView().setItemChecked(mCheckedPosition, true);
@@ -160,41 +213,77 @@ public class VendorsFragment extends ListFragment implements
     }
 
     /**
-     * Handle {@link TracksQuery} {@link Cursor}.
+     * Handle {@link SearchQuery} {@link Cursor}, dropping results for any
+     * search that has since been replaced.
      */
-    private void onTrackQueryComplete(Cursor cursor) {
-        try {
-            if (!cursor.moveToFirst()) {
-                return;
-            }
+    private void onSearchQueryComplete(Object cookie, Cursor cursor) {
+        if (cursor == null) {
+            // Query failed, such as on a malformed search; keep current results
+            return;
+        }
+        if (!cookie.equals(mSearchUri)) {
+            cursor.close();
+            return;
+        }
+        mCompletedSearchUri = (Uri) cookie;
+        onVendorsOrSearchQueryComplete(cursor);
+    }
 
-            // Use found track to build title-bar
-            ActivityHelper activityHelper = ((BaseActivity) getActivity()).getActivityHelper();
-            String trackName = cursor.getString(TracksQuery.TRACK_NAME);
-            activityHelper.setActionBarTitle(trackName);
-            activityHelper.setActionBarColor(cursor.getInt(TracksQuery.TRACK_COLOR));
+    /** {@inheritDoc} */
+    public void onTracksChanged() {
+        bindTrack();
+    }
 
-            AnalyticsUtils.getInstance(getActivity()).trackPageView("/Sandbox/Track/" + trackName);
+    /**
+     * Show the track hinted by the caller, if any, as read from the
+     * {@link TrackCatalog}.
+     */
+    private void bindTrack() {
+        if (mTrackUri == null || getActivity() == null) {
+            return;
+        }
 
-        } finally {
-            cursor.close();
+        final TrackCatalog.Track track = mCatalog.getTrack(
+                ScheduleContract.Tracks.getTrackId(mTrackUri));
+        if (track == null) {
+            return;
+        }
+
+        // Use found track to build title-bar
+        ActivityHelper activityHelper = ((BaseActivity) getActivity()).getActivityHelper();
+        String trackName = track.getName();
+        activityHelper.setActionBarTitle(trackName);
+        activityHelper.setActionBarColor(track.getColor());
+
+        if (!mHasTrackedTrackView) {
+            AnalyticsUtils.getInstance(getActivity()).trackPageView("/Sandbox/Track/" + trackName);
+            mHasTrackedTrackView = true;
         }
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        getActivity().getContentResolver().registerContentObserver(
-                ScheduleContract.Vendors.CONTENT_URI, true, mVendorChangesObserver);
-        if (mCursor != null) {
-            mCursor.requery();
-        }
+        mQuery.start();
+        mCatalog.registerCallbacks(this);
+        bindTrack();
     }
 
     @Override
     public void onPause() {
         super.onPause();
-        getActivity().getContentResolver().unregisterContentObserver(mVendorChangesObserver);
+        mQuery.stop();
+        mCatalog.unregisterCallbacks(this);
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mQuery.destroy();
+        if (mAdapter != null) {
+            mAdapter.changeCursor(null);
+        }
+        mCursor = null;
     }
 
     @Override
@@ -229,25 +318,27 @@ public class VendorsFragment extends ListFragment implements
      */
     private class VendorsAdapter extends CursorAdapter {
         public VendorsAdapter(Context context) {
-            super(context, null);
+            super(context, null, false);
         }
 
         /** {@inheritDoc} */
         @Override
         public View newView(Context context, Cursor cursor, ViewGroup parent) {
-            return getActivity().getLayoutInflater().inflate(R.layout.list_item_vendor_oneline,
-                    parent, false);
+            final View view = getActivity().getLayoutInflater().inflate(
+                    R.layout.list_item_vendor_oneline, parent, false);
+            view.setTag(new VendorViewHolder(view));
+            return view;
         }
 
         /** {@inheritDoc} */
         @Override
         public void bindView(View view, Context context, Cursor cursor) {
-            ((TextView) view.findViewById(R.id.vendor_name)).setText(
-                    cursor.getString(VendorsQuery.NAME));
+            final VendorViewHolder holder = (VendorViewHolder) view.getTag();
+
+            holder.name.setText(cursor.getString(VendorsQuery.NAME));
 
             final boolean starred = cursor.getInt(VendorsQuery.STARRED) != 0;
-            view.findViewById(R.id.star_button).setVisibility(
-                    starred ? View.VISIBLE : View.INVISIBLE);
+            holder.starButton.setVisibility(starred ? View.VISIBLE : View.INVISIBLE);
         }
     }
 
@@ -255,41 +346,57 @@ public class VendorsFragment extends ListFragment implements
      * {@link CursorAdapter} that renders a {@link SearchQuery}.
      */
     private class SearchAdapter extends CursorAdapter {
+        private final RowTextCache mSnippets = new RowTextCache();
+
         public SearchAdapter(Context context) {
-            super(context, null);
+            super(context, null, false);
+            registerDataSetObserver(mSnippets);
         }
 
         /** {@inheritDoc} */
         @Override
         public View newView(Context context, Cursor cursor, ViewGroup parent) {
-            return getActivity().getLayoutInflater().inflate(R.layout.list_item_vendor, parent,
-                    false);
+            final View view = getActivity().getLayoutInflater().inflate(
+                    R.layout.list_item_vendor, parent, false);
+            view.setTag(new VendorViewHolder(view));
+            return view;
         }
 
-        /** {@inheritDoc} */ 
+        /** {@inheritDoc} */
         @Override
         public void bindView(View view, Context context, Cursor cursor) {
-            ((TextView) view.findViewById(R.id.vendor_name)).setText(cursor
-                    .getString(SearchQuery.NAME));
+            final VendorViewHolder holder = (VendorViewHolder) view.getTag();
 
-            final String snippet = cursor.getString(SearchQuery.SEARCH_SNIPPET);
-            final Spannable styledSnippet = buildStyledSnippet(snippet);
-            ((TextView) view.findViewById(R.id.vendor_location)).setText(styledSnippet);
+            holder.name.setText(cursor.getString(SearchQuery.NAME));
 
-            final boolean starred = cursor.getInt(VendorsQuery.STARRED) != 0;
-            view.findViewById(R.id.star_button).setVisibility(
-                    starred ? View.VISIBLE : View.INVISIBLE);
+            final long id = cursor.getLong(SearchQuery._ID);
+            CharSequence styledSnippet = mSnippets.get(id);
+            if (styledSnippet == null) {
+                styledSnippet = buildStyledSnippet(cursor.getString(SearchQuery.SEARCH_SNIPPET));
+                mSnippets.put(id, styledSnippet);
+            }
+            holder.location.setText(styledSnippet);
+
+            final boolean starred = cursor.getInt(SearchQuery.STARRED) != 0;
+            holder.starButton.setVisibility(starred ? View.VISIBLE : View.INVISIBLE);
         }
     }
 
-    private ContentObserver mVendorChangesObserver = new ContentObserver(new Handler()) {
-        @Override
-        public void onChange(boolean selfChange) {
-            if (mCursor != null) {
-                mCursor.requery();
-            }
+    /**
+     * Views of a vendor list row, kept as its tag. The location is only
+     * present in {@link R.layout#list_item_vendor}.
+     */
+    private static class VendorViewHolder {
+        private final TextView name;
+        private final TextView location;
+        private final View starButton;
+
+        public VendorViewHolder(View view) {
+            name = (TextView) view.findViewById(R.id.vendor_name);
+            location = (TextView) view.findViewById(R.id.vendor_location);
+            starButton = view.findViewById(R.id.star_button);
         }
-    };
+    }
 
     /**
      * {@link com.google.android.apps.iosched.provider.ScheduleContract.Vendors} query parameters.
@@ -312,21 +419,6 @@ public class VendorsFragment extends ListFragment implements
         int STARRED = 4;
     }
 
-    /**
-     * {@link com.google.android.apps.iosched.provider.ScheduleContract.Tracks} query parameters.
-     */
-    private interface TracksQuery {
-        int _TOKEN = 0x2;
-
-        String[] PROJECTION = {
-                ScheduleContract.Tracks.TRACK_NAME,
-                ScheduleContract.Tracks.TRACK_COLOR,
-        };
-
-        int TRACK_NAME = 0;
-        int TRACK_COLOR = 1;
-    }
-
     /** {@link com.google.android.apps.iosched.provider.ScheduleContract.Vendors} search query
      * parameters. */
     private interface SearchQuery {
@@ -63,10 +63,12 @@ public class WhatsOnFragment extends Fragment {
     public void onDetach() {
         super.onDetach();
         mMessageHandler.removeCallbacks(mCountdownRunnable);
+        mMessageHandler.removeCallbacks(mRefreshRunnable);
     }
 
     private void refresh() {
         mMessageHandler.removeCallbacks(mCountdownRunnable);
+        mMessageHandler.removeCallbacks(mRefreshRunnable);
         mRootView.removeAllViews();
 
         final long currentTimeMillis = UIUtils.getCurrentTime(getActivity());
@@ -78,6 +80,10 @@ public class WhatsOnFragment extends Fragment {
             setupAfter();
         } else {
             setupDuring();
+
+            // Switch to 'thank you' text once the conference ends.
+            mMessageHandler.postDelayed(mRefreshRunnable,
+                    UIUtils.CONFERENCE_END_MILLIS - currentTimeMillis + 1);
         }
 
         if (!UIUtils.isHoneycombTablet(getActivity())) {
@@ -126,7 +132,7 @@ public class WhatsOnFragment extends Fragment {
                 } else {
                     Intent intent = new Intent(Intent.ACTION_VIEW);
                     intent.setData(ScheduleContract.Sessions
-                            .buildSessionsAtDirUri(System.currentTimeMillis()));
+                            .buildSessionsAtDirUri(UIUtils.getCurrentTime(getActivity())));
                     intent.putExtra(Intent.EXTRA_TITLE, getString(R.string.title_now_playing));
                     startActivity(intent);
                 }
@@ -135,6 +141,12 @@ public class WhatsOnFragment extends Fragment {
         mRootView.addView(view);
     }
 
+    private Runnable mRefreshRunnable = new Runnable() {
+        public void run() {
+            refresh();
+        }
+    };
+
     /**
      * Event that updates countdown timer. Posts itself again to {@link #mMessageHandler} to
      * continue updating time.
@@ -148,11 +160,7 @@ public class WhatsOnFragment extends Fragment {
             if (conferenceStarted) {
                 // Conference started while in countdown mode, switch modes and
                 // bail on future countdown updates.
-                mMessageHandler.postDelayed(new Runnable() {
-                    public void run() {
-                        refresh();
-                    }
-                }, 100);
+                mMessageHandler.postDelayed(mRefreshRunnable, 100);
                 return;
             }
 
@@ -22,12 +22,11 @@ import com.google.android.apps.iosched.ui.BaseActivity;
 import com.google.android.apps.iosched.ui.SessionDetailFragment;
 import com.google.android.apps.iosched.ui.TracksAdapter;
 import com.google.android.apps.iosched.ui.TracksFragment;
-import com.google.android.apps.iosched.util.NotifyingAsyncQueryHandler;
+import com.google.android.apps.iosched.util.TrackCatalog;
 import com.google.android.apps.iosched.util.UIUtils;
 
 import android.content.Intent;
 import android.content.res.Resources;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
@@ -39,14 +38,17 @@ import android.widget.ListPopupWindow;
 import android.widget.PopupWindow;
 import android.widget.TextView;
 
+import java.util.List;
+
 /**
  * A tablet-specific fragment that is a giant {@link android.widget.Spinner}-like widget. It shows
- * a {@link ListPopupWindow} containing a list of tracks, using {@link TracksAdapter}.
+ * a {@link ListPopupWindow} containing a list of tracks, using {@link TracksAdapter}. Tracks are
+ * read from the shared {@link TrackCatalog}.
  *
  * Requires API level 11 or later since {@link ListPopupWindow} is API level 11+.
  */
 public class TracksDropdownFragment extends Fragment implements
-        NotifyingAsyncQueryHandler.AsyncQueryListener,
+        TrackCatalog.Callbacks,
         AdapterView.OnItemClickListener,
         PopupWindow.OnDismissListener {
 
@@ -56,7 +58,9 @@ public class TracksDropdownFragment extends Fragment implements
     public static final String NEXT_TYPE_VENDORS = "vendors";
 
     private boolean mAutoloadTarget = true;
-    private Cursor mCursor;
+    private boolean mHasLoadedTrack = false;
+    private String mTrackId;
+    private Uri mTracksUri;
     private TracksAdapter mAdapter;
     private String mNextType;
 
@@ -65,12 +69,12 @@ public class TracksDropdownFragment extends Fragment implements
     private TextView mTitle;
     private TextView mAbstract;
 
-    private NotifyingAsyncQueryHandler mHandler;
+    private TrackCatalog mCatalog;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        mHandler = new NotifyingAsyncQueryHandler(getActivity().getContentResolver(), this);
+        mCatalog = TrackCatalog.getInstance(getActivity());
         mAdapter = new TracksAdapter(getActivity());
 
         if (savedInstanceState != null) {
@@ -86,38 +90,21 @@ public class TracksDropdownFragment extends Fragment implements
         if (mListPopupWindow != null) {
             mListPopupWindow.setAdapter(null);
         }
-        if (mCursor != null) {
-            getActivity().stopManagingCursor(mCursor);
-            mCursor = null;
-        }
-        mHandler.cancelOperation(TracksAdapter.TracksQuery._TOKEN);
+        mAdapter.setTracks(null);
+        mHasLoadedTrack = false;
+        mTrackId = null;
 
         // Load new arguments
         final Intent intent = BaseActivity.fragmentArgumentsToIntent(arguments);
-        final Uri tracksUri = intent.getData();
-        if (tracksUri == null) {
+        mTracksUri = intent.getData();
+        if (mTracksUri == null) {
             return;
         }
 
         mNextType = intent.getStringExtra(EXTRA_NEXT_TYPE);
-
-        // Filter our tracks query to only include those with valid results
-        String[] projection = TracksAdapter.TracksQuery.PROJECTION;
-        String selection = null;
-        if (TracksFragment.NEXT_TYPE_SESSIONS.equals(mNextType)) {
-            // Only show tracks with at least one session
-            projection = TracksAdapter.TracksQuery.PROJECTION_WITH_SESSIONS_COUNT;
-            selection = ScheduleContract.Tracks.SESSIONS_COUNT + ">0";
-
-        } else if (TracksFragment.NEXT_TYPE_VENDORS.equals(mNextType)) {
-            // Only show tracks with at least one vendor
-            projection = TracksAdapter.TracksQuery.PROJECTION_WITH_VENDORS_COUNT;
-            selection = ScheduleContract.Tracks.VENDORS_COUNT + ">0";
+        if (mRootView != null) {
+            bindTracks();
         }
-
-        // Start background query to load tracks
-        mHandler.startQuery(TracksAdapter.TracksQuery._TOKEN, null, tracksUri, projection,
-                selection, null, ScheduleContract.Tracks.DEFAULT_SORT);
     }
 
     @Override
@@ -147,48 +134,79 @@ public class TracksDropdownFragment extends Fragment implements
         super.onActivityCreated(savedInstanceState);
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+        mCatalog.registerCallbacks(this);
+        bindTracks();
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        mCatalog.unregisterCallbacks(this);
+    }
+
     /** {@inheritDoc} */
-    public void onQueryComplete(int token, Object cookie, Cursor cursor) {
-        if (getActivity() == null || cursor == null) {
+    public void onTracksChanged() {
+        bindTracks();
+    }
+
+    /**
+     * Show tracks from the catalog, only including those with valid results.
+     * The first time, also load the last-opened track, and otherwise refresh
+     * the current one.
+     */
+    private void bindTracks() {
+        if (mTracksUri == null || !mCatalog.isLoaded()) {
             return;
         }
 
-        mCursor = cursor;
-        getActivity().startManagingCursor(mCursor);
-
-        // If there was a last-opened track, load it. Otherwise load the first track.
-        cursor.moveToFirst();
-        String lastTrackID = UIUtils.getLastUsedTrackID(getActivity());
-        if (lastTrackID != null) {
-            while (!cursor.isAfterLast()) {
-                if (lastTrackID.equals(cursor.getString(TracksAdapter.TracksQuery.TRACK_ID))) {
-                    break;
-                }
-                cursor.moveToNext();
-            }
+        final List<TrackCatalog.Track> tracks;
+        if (TracksFragment.NEXT_TYPE_SESSIONS.equals(mNextType)) {
+            // Only show tracks with at least one session
+            tracks = mCatalog.getTracksWithSessions();
+        } else if (TracksFragment.NEXT_TYPE_VENDORS.equals(mNextType)) {
+            // Only show tracks with at least one vendor
+            tracks = mCatalog.getTracksWithVendors();
+        } else {
+            tracks = mCatalog.getTracks();
+        }
 
-            if (cursor.isAfterLast()) {
-                loadTrack(null, mAutoloadTarget);
-            } else {
-                loadTrack(cursor, mAutoloadTarget);
-            }
+        if (!mHasLoadedTrack) {
+            // If there was a last-opened track, load it. Otherwise load the first track.
+            final String lastTrackID = UIUtils.getLastUsedTrackID(getActivity());
+            loadTrack(findTrack(tracks, lastTrackID), mAutoloadTarget);
+            mHasLoadedTrack = true;
         } else {
-            loadTrack(null, mAutoloadTarget);
+            loadTrack(findTrack(tracks, mTrackId), false);
         }
 
         mAdapter.setHasAllItem(true);
         mAdapter.setIsSessions(TracksFragment.NEXT_TYPE_SESSIONS.equals(mNextType));
-        mAdapter.changeCursor(mCursor);
+        mAdapter.setTracks(tracks);
+    }
+
+    private static TrackCatalog.Track findTrack(List<TrackCatalog.Track> tracks,
+            String trackId) {
+        if (trackId == null) {
+            return null;
+        }
+        for (TrackCatalog.Track track : tracks) {
+            if (trackId.equals(track.getTrackId())) {
+                return track;
+            }
+        }
+        return null;
     }
 
     /** {@inheritDoc} */
     public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-        final Cursor cursor = (Cursor) mAdapter.getItem(position);
-        loadTrack(cursor, true);
+        final TrackCatalog.Track track = mAdapter.getItem(position);
+        loadTrack(track, true);
 
-        if (cursor != null) {
-            UIUtils.setLastUsedTrackID(getActivity(), cursor.getString(
-                    TracksAdapter.TracksQuery.TRACK_ID));
+        if (track != null) {
+            UIUtils.setLastUsedTrackID(getActivity(), track.getTrackId());
         } else {
             UIUtils.setLastUsedTrackID(getActivity(), ScheduleContract.Tracks.ALL_TRACK_ID);
         }
@@ -198,17 +216,17 @@ public class TracksDropdownFragment extends Fragment implements
         }
     }
 
-    public void loadTrack(Cursor cursor, boolean loadTargetFragment) {
+    public void loadTrack(TrackCatalog.Track track, boolean loadTargetFragment) {
         final String trackId;
         final int trackColor;
         final Resources res = getResources();
 
-        if (cursor != null) {
-            trackColor = cursor.getInt(TracksAdapter.TracksQuery.TRACK_COLOR);
-            trackId = cursor.getString(TracksAdapter.TracksQuery.TRACK_ID);
+        if (track != null) {
+            trackColor = track.getColor();
+            trackId = track.getTrackId();
 
-            mTitle.setText(cursor.getString(TracksAdapter.TracksQuery.TRACK_NAME));
-            mAbstract.setText(cursor.getString(TracksAdapter.TracksQuery.TRACK_ABSTRACT));
+            mTitle.setText(track.getName());
+            mAbstract.setText(track.getAbstract());
 
         } else {
             trackColor = res.getColor(R.color.all_track_color);
@@ -222,6 +240,8 @@ public class TracksDropdownFragment extends Fragment implements
                     : R.string.all_sandbox_subtitle);
         }
 
+        mTrackId = trackId;
+
         boolean isDark = UIUtils.isColorDark(trackColor);
         mRootView.setBackgroundColor(trackColor);
 
@@ -243,13 +263,13 @@ public class TracksDropdownFragment extends Fragment implements
             intent.putExtra(SessionDetailFragment.EXTRA_TRACK, trackUri);
 
             if (NEXT_TYPE_SESSIONS.equals(mNextType)) {
-                if (cursor == null) {
+                if (track == null) {
                     intent.setData(ScheduleContract.Sessions.CONTENT_URI);
                 } else {
                     intent.setData(ScheduleContract.Tracks.buildSessionsUri(trackId));
                 }
             } else if (NEXT_TYPE_VENDORS.equals(mNextType)) {
-                if (cursor == null) {
+                if (track == null) {
                     intent.setData(ScheduleContract.Vendors.CONTENT_URI);
                 } else {
                     intent.setData(ScheduleContract.Tracks.buildVendorsUri(trackId));
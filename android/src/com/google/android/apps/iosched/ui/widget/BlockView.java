@@ -21,9 +21,11 @@ import com.google.android.apps.iosched.provider.ScheduleContract.Blocks;
 import com.google.android.apps.iosched.util.UIUtils;
 
 import android.content.Context;
+import android.content.res.Resources;
 import android.graphics.Color;
 import android.graphics.PorterDuff;
 import android.graphics.drawable.LayerDrawable;
+import android.text.TextUtils;
 import android.text.format.DateUtils;
 import android.widget.Button;
 
@@ -39,17 +41,41 @@ public class BlockView extends Button {
             | DateUtils.FORMAT_SHOW_WEEKDAY | DateUtils.FORMAT_ABBREV_WEEKDAY |
             DateUtils.FORMAT_SHOW_TIME | DateUtils.FORMAT_ABBREV_TIME;
 
-    private final String mBlockId;
-    private final String mTitle;
-    private final long mStartTime;
-    private final long mEndTime;
-    private final boolean mContainsStarred;
-    private final int mColumn;
+    /** Alpha applied to the accent and border layers of disabled blocks. */
+    static final int DISABLED_BLOCK_ALPHA = 100;
 
-    public BlockView(Context context, String blockId, String title, long startTime,
-            long endTime, boolean containsStarred, int column) {
+    private final LayerDrawable mButtonDrawable;
+
+    private String mBlockId;
+    private String mTitle;
+    private long mStartTime;
+    private long mEndTime;
+    private boolean mContainsStarred;
+    private int mColumn;
+
+    public BlockView(Context context) {
         super(context);
 
+        // Mutate so that each view can tint its own background when recycled
+        mButtonDrawable = (LayerDrawable)
+                context.getResources().getDrawable(R.drawable.btn_block).mutate();
+
+        setTextColor(Color.WHITE);
+        setBackgroundDrawable(mButtonDrawable);
+    }
+
+    /**
+     * Point this view at the given block, replacing anything it showed
+     * before. Used by {@link BlocksLayout} to recycle views while scrolling.
+     */
+    public void bind(String blockId, String title, long startTime, long endTime,
+            boolean containsStarred, int column, boolean enabled) {
+        // Changing text can request a layout, so skip it when only the
+        // starred or enabled state changed.
+        if (mBlockId == null || !TextUtils.equals(mTitle, title)) {
+            setText(title);
+        }
+
         mBlockId = blockId;
         mTitle = title;
         mStartTime = startTime;
@@ -57,30 +83,33 @@ public class BlockView extends Button {
         mContainsStarred = containsStarred;
         mColumn = column;
 
-        setText(mTitle);
+        final int accentColor = getAccentColor(getResources(), mColumn);
+        final LayerDrawable buttonDrawable = mButtonDrawable;
+        buttonDrawable.getDrawable(0).setColorFilter(accentColor, PorterDuff.Mode.SRC_ATOP);
+        buttonDrawable.getDrawable(0).setAlpha(enabled ? 255 : DISABLED_BLOCK_ALPHA);
+        buttonDrawable.getDrawable(1).setAlpha(mContainsStarred ? 255 : 0);
+        buttonDrawable.getDrawable(2).setAlpha(enabled ? 255 : DISABLED_BLOCK_ALPHA);
+
+        setEnabled(enabled);
+        setFocusable(enabled);
+        invalidate();
+    }
 
+    /**
+     * Return the accent color used for blocks in the given column.
+     */
+    static int getAccentColor(Resources res, int column) {
         // TODO: turn into color state list with layers?
-        int textColor = Color.WHITE;
-        int accentColor = -1;
-        switch (mColumn) {
+        switch (column) {
             case 0:
-                accentColor = getResources().getColor(R.color.block_column_1);
-                break;
+                return res.getColor(R.color.block_column_1);
             case 1:
-                accentColor = getResources().getColor(R.color.block_column_2);
-                break;
+                return res.getColor(R.color.block_column_2);
             case 2:
-                accentColor = getResources().getColor(R.color.block_column_3);
-                break;
+                return res.getColor(R.color.block_column_3);
+            default:
+                return -1;
         }
-
-        LayerDrawable buttonDrawable = (LayerDrawable)
-                context.getResources().getDrawable(R.drawable.btn_block);
-        buttonDrawable.getDrawable(0).setColorFilter(accentColor, PorterDuff.Mode.SRC_ATOP);
-        buttonDrawable.getDrawable(1).setAlpha(mContainsStarred ? 255 : 0);
-
-        setTextColor(textColor);
-        setBackgroundDrawable(buttonDrawable);
     }
 
     public String getBlockId() {
@@ -17,25 +17,121 @@
 package com.google.android.apps.iosched.ui.widget;
 
 import com.google.android.apps.iosched.R;
+import com.google.android.apps.iosched.util.FrameStats;
+import com.google.android.apps.iosched.util.Lists;
+import com.google.android.apps.iosched.util.Maps;
+import com.google.android.apps.iosched.util.MotionEventUtils;
 import com.google.android.apps.iosched.util.UIUtils;
 
 import android.content.Context;
+import android.content.res.Resources;
 import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.LayerDrawable;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
 import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.SoundEffectConstants;
 import android.view.View;
 import android.view.ViewGroup;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
 /**
  * Custom layout that contains and organizes a {@link TimeRulerView} and several
  * instances of {@link BlockView}. Also positions current "now" divider using
  * {@link R.id#blocks_now} view when applicable.
+ * <p>
+ * Expected to be placed inside a vertically scrolling parent. Only blocks near
+ * the part of the layout shown by that parent are attached as views, and
+ * views for blocks scrolled away are kept in a pool for reuse.
+ * <p>
+ * When {@code drawBlocks} is set, blocks are never attached as views. They are
+ * drawn directly from their {@link Block} records instead, which keeps the
+ * whole day in a single view at the cost of keyboard focus on blocks. The
+ * schedule layout sets it on tablets through {@code R.bool.schedule_draw_blocks}.
  */
 public class BlocksLayout extends ViewGroup {
+    private static final String TAG = "BlocksLayout";
+
     private int mColumns = 3;
+    private boolean mDrawBlocks = false;
 
     private TimeRulerView mRulerView;
     private View mNowView;
 
+    private final ArrayList<Block> mBlocks = Lists.newArrayList();
+    private final ArrayList<BlockView> mRecycledViews = Lists.newArrayList();
+    private OnClickListener mBlockClickListener;
+
+    /** Vertical range, in pixels, that currently has block views attached. */
+    private int mWindowTop = 0;
+    private int mWindowBottom = -1;
+
+    // State used only when drawing blocks directly
+    private LayerDrawable mBlockDrawable;
+    private ColorFilter[] mAccentFilters;
+    private final Rect mBlockPadding = new Rect();
+    private final Rect mClipBounds = new Rect();
+    private TextPaint mBlockTextPaint;
+    private int mTextLayoutWidth = -1;
+    private Block mPressedBlock;
+    private BlockView mClickView;
+
+    private final FrameStats mFrameStats = FrameStats.get(TAG);
+
+    /**
+     * Description of a single block shown by this layout, which is bound to
+     * a {@link BlockView} only while it's near the visible window.
+     */
+    public static class Block {
+        public final String blockId;
+        public final String title;
+        public final long startTime;
+        public final long endTime;
+        public final boolean containsStarred;
+        public final int column;
+        public final boolean enabled;
+
+        private int top;
+        private int bottom;
+        private BlockView view;
+        private StaticLayout textLayout;
+
+        public Block(String blockId, String title, long startTime, long endTime,
+                boolean containsStarred, int column, boolean enabled) {
+            this.blockId = blockId;
+            this.title = title;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.containsStarred = containsStarred;
+            this.column = column;
+            this.enabled = enabled;
+        }
+
+        private boolean hasSameContent(Block other) {
+            return TextUtils.equals(title, other.title)
+                    && containsStarred == other.containsStarred
+                    && enabled == other.enabled;
+        }
+
+        private boolean hasSameGeometry(Block other) {
+            return startTime == other.startTime && endTime == other.endTime
+                    && column == other.column;
+        }
+    }
+
     public BlocksLayout(Context context) {
         this(context, null);
     }
@@ -51,38 +147,365 @@ public class BlocksLayout extends ViewGroup {
                 R.styleable.BlocksLayout, defStyle, 0);
 
         mColumns = a.getInt(R.styleable.TimeRulerView_headerWidth, mColumns);
+        mDrawBlocks = a.getBoolean(R.styleable.BlocksLayout_drawBlocks, mDrawBlocks);
 
         a.recycle();
     }
 
+    /**
+     * Choose between attaching a {@link BlockView} for each visible block,
+     * and drawing all blocks directly from their {@link Block} records.
+     */
+    public void setDrawBlocks(boolean drawBlocks) {
+        if (mDrawBlocks == drawBlocks) {
+            return;
+        }
+
+        mDrawBlocks = drawBlocks;
+        for (Block block : mBlocks) {
+            detachBlock(block);
+        }
+        mRecycledViews.clear();
+        mPressedBlock = null;
+        mWindowBottom = -1;
+        updateVisibleWindow();
+        invalidate();
+    }
+
     private void ensureChildren() {
         mRulerView = (TimeRulerView) findViewById(R.id.blocks_ruler);
         if (mRulerView == null) {
             throw new IllegalStateException("Must include a R.id.blocks_ruler view.");
         }
-        mRulerView.setDrawingCacheEnabled(true);
 
         mNowView = findViewById(R.id.blocks_now);
         if (mNowView == null) {
             throw new IllegalStateException("Must include a R.id.blocks_now view.");
         }
-        mNowView.setDrawingCacheEnabled(true);
     }
 
     /**
-     * Remove any {@link BlockView} instances, leaving only
-     * {@link TimeRulerView} remaining.
+     * Set the listener notified when any enabled {@link BlockView} is clicked.
+     */
+    public void setOnBlockClickListener(OnClickListener listener) {
+        mBlockClickListener = listener;
+    }
+
+    /**
+     * Replace all blocks shown by this layout, matching them against the
+     * current blocks by {@link Block#blockId}. Views of unchanged blocks are
+     * left alone, changed blocks are rebound in place, and only blocks
+     * inside the visible window are bound for the first time.
      */
-    public void removeAllBlocks() {
+    public void setBlocks(List<Block> blocks) {
         ensureChildren();
-        removeAllViews();
-        addView(mRulerView);
-        addView(mNowView);
+
+        final HashMap<String, Block> previousBlocks = Maps.newHashMap();
+        for (Block block : mBlocks) {
+            previousBlocks.put(block.blockId, block);
+        }
+        mBlocks.clear();
+
+        final TimeRulerView rulerView = mRulerView;
+        final int headerWidth = rulerView.getHeaderWidth();
+        final int columnWidth = (getWidth() - headerWidth) / mColumns;
+
+        boolean changed = false;
+        for (Block block : blocks) {
+            block.top = rulerView.getTimeVerticalOffset(block.startTime);
+            block.bottom = rulerView.getTimeVerticalOffset(block.endTime);
+            mBlocks.add(block);
+
+            final Block previous = previousBlocks.remove(block.blockId);
+            if (previous == null) {
+                block.view = null;
+                changed = true;
+                continue;
+            }
+
+            block.view = previous.view;
+            if (block.hasSameContent(previous) && block.hasSameGeometry(previous)) {
+                continue;
+            }
+
+            changed = true;
+            if (block.view != null) {
+                block.view.bind(block.blockId, block.title, block.startTime, block.endTime,
+                        block.containsStarred, block.column, block.enabled);
+                if (!block.hasSameGeometry(previous) && getWidth() > 0) {
+                    layoutBlock(block, headerWidth, columnWidth);
+                }
+            }
+        }
+
+        mPressedBlock = null;
+        for (Block previous : previousBlocks.values()) {
+            detachBlock(previous);
+            changed = true;
+        }
+
+        if (changed) {
+            // Bind any blocks that appeared inside the window, and recycle
+            // those that moved out of it.
+            mWindowBottom = -1;
+            updateVisibleWindow();
+            invalidate();
+        }
+    }
+
+    /**
+     * Attach views for blocks overlapping the part of this layout shown by
+     * its scrolling parent, and detach the rest. Should be called whenever
+     * the parent scrolls; does nothing while the visible part stays inside
+     * the window attached last time.
+     */
+    public void updateVisibleWindow() {
+        if (mDrawBlocks || !(getParent() instanceof View) || getWidth() == 0) {
+            // Wait for the first layout pass
+            return;
+        }
+
+        final View parent = (View) getParent();
+        final int visibleTop = parent.getScrollY() - getTop();
+        final int visibleBottom = visibleTop + parent.getHeight();
+        if (visibleTop >= mWindowTop && visibleBottom <= mWindowBottom) {
+            return;
+        }
+
+        // Keep half a screen attached on either side, so that short scrolls
+        // don't bind or recycle anything.
+        final int margin = parent.getHeight() / 2;
+        mWindowTop = visibleTop - margin;
+        mWindowBottom = visibleBottom + margin;
+
+        final int headerWidth = mRulerView.getHeaderWidth();
+        final int columnWidth = (getWidth() - headerWidth) / mColumns;
+
+        // Detach first so that newly visible blocks can reuse those views
+        for (Block block : mBlocks) {
+            if (block.view != null && !isInWindow(block)) {
+                detachBlock(block);
+            }
+        }
+        for (Block block : mBlocks) {
+            if (block.view == null && isInWindow(block)) {
+                attachBlock(block);
+                layoutBlock(block, headerWidth, columnWidth);
+            }
+        }
+        invalidate();
+    }
+
+    private boolean isInWindow(Block block) {
+        return block.bottom > mWindowTop && block.top < mWindowBottom;
+    }
+
+    private void attachBlock(Block block) {
+        final int size = mRecycledViews.size();
+        final BlockView blockView = (size > 0) ? mRecycledViews.remove(size - 1)
+                : new BlockView(getContext());
+        blockView.bind(block.blockId, block.title, block.startTime, block.endTime,
+                block.containsStarred, block.column, block.enabled);
+        blockView.setOnClickListener(mBlockClickListener);
+
+        // Keep blocks below the "now" view, and avoid requesting a full layout
+        addViewInLayout(blockView, indexOfChild(mNowView), generateDefaultLayoutParams(), true);
+        block.view = blockView;
     }
 
-    public void addBlock(BlockView blockView) {
-        blockView.setDrawingCacheEnabled(true);
-        addView(blockView, 1);
+    private void detachBlock(Block block) {
+        if (block.view == null) {
+            return;
+        }
+        removeViewInLayout(block.view);
+        mRecycledViews.add(block.view);
+        block.view = null;
+    }
+
+    private void layoutBlock(Block block, int headerWidth, int columnWidth) {
+        final int left = headerWidth + (block.column * columnWidth);
+        block.view.measure(MeasureSpec.makeMeasureSpec(columnWidth, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(block.bottom - block.top, MeasureSpec.EXACTLY));
+        block.view.layout(left, block.top, left + columnWidth, block.bottom);
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        final long startNanos = FrameStats.start();
+
+        if (!mDrawBlocks) {
+            super.dispatchDraw(canvas);
+        } else {
+            final long drawingTime = getDrawingTime();
+            drawChild(canvas, mRulerView, drawingTime);
+            drawBlocks(canvas);
+            if (mNowView.getVisibility() == VISIBLE) {
+                drawChild(canvas, mNowView, drawingTime);
+            }
+        }
+
+        if (mFrameStats != null) {
+            mFrameStats.recordDraw(startNanos);
+        }
+    }
+
+    /**
+     * Draw every {@link Block} overlapping the current clip, reusing a
+     * single background drawable and caching text layouts on each block.
+     */
+    private void drawBlocks(Canvas canvas) {
+        ensureBlockDrawing();
+
+        final int headerWidth = mRulerView.getHeaderWidth();
+        final int columnWidth = (getWidth() - headerWidth) / mColumns;
+        final Rect padding = mBlockPadding;
+        final int textWidth = Math.max(0, columnWidth - padding.left - padding.right);
+        if (textWidth != mTextLayoutWidth) {
+            mTextLayoutWidth = textWidth;
+            for (Block block : mBlocks) {
+                block.textLayout = null;
+            }
+        }
+
+        final LayerDrawable drawable = mBlockDrawable;
+        final Drawable accent = drawable.getDrawable(0);
+        final Drawable star = drawable.getDrawable(1);
+        final Drawable border = drawable.getDrawable(2);
+
+        canvas.getClipBounds(mClipBounds);
+        for (Block block : mBlocks) {
+            if (block.bottom <= mClipBounds.top || block.top >= mClipBounds.bottom) {
+                continue;
+            }
+
+            final int left = headerWidth + (block.column * columnWidth);
+            final int right = left + columnWidth;
+
+            if (block.column >= 0 && block.column < mAccentFilters.length) {
+                accent.setColorFilter(mAccentFilters[block.column]);
+            }
+            accent.setAlpha(block.enabled ? 255 : BlockView.DISABLED_BLOCK_ALPHA);
+            star.setAlpha(block.containsStarred ? 255 : 0);
+            border.setAlpha(block.enabled ? 255 : BlockView.DISABLED_BLOCK_ALPHA);
+            drawable.setState(!block.enabled ? EMPTY_STATE_SET
+                    : (block == mPressedBlock) ? PRESSED_ENABLED_STATE_SET : ENABLED_STATE_SET);
+            drawable.setBounds(left, block.top, right, block.bottom);
+            drawable.draw(canvas);
+
+            if (block.textLayout == null) {
+                block.textLayout = new StaticLayout(block.title != null ? block.title : "",
+                        mBlockTextPaint, textWidth, Layout.Alignment.ALIGN_CENTER, 1, 0, false);
+            }
+
+            // Center text within the padded block, like a Button would
+            final int innerTop = block.top + padding.top;
+            final int innerBottom = block.bottom - padding.bottom;
+            final int textTop = innerTop
+                    + Math.max(0, (innerBottom - innerTop - block.textLayout.getHeight()) / 2);
+            canvas.save();
+            canvas.clipRect(left + padding.left, innerTop, right - padding.right, innerBottom);
+            canvas.translate(left + padding.left, textTop);
+            block.textLayout.draw(canvas);
+            canvas.restore();
+        }
+    }
+
+    private void ensureBlockDrawing() {
+        if (mBlockDrawable != null) {
+            return;
+        }
+
+        final Resources res = getResources();
+        mBlockDrawable = (LayerDrawable) res.getDrawable(R.drawable.btn_block).mutate();
+        mBlockDrawable.getPadding(mBlockPadding);
+
+        mAccentFilters = new ColorFilter[mColumns];
+        for (int i = 0; i < mColumns; i++) {
+            mAccentFilters[i] = new PorterDuffColorFilter(BlockView.getAccentColor(res, i),
+                    PorterDuff.Mode.SRC_ATOP);
+        }
+
+        // Match the text style of a regular BlockView
+        mBlockTextPaint = new TextPaint(new BlockView(getContext()).getPaint());
+        mBlockTextPaint.setColor(Color.WHITE);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (!mDrawBlocks) {
+            return super.onTouchEvent(event);
+        }
+
+        final Block block = findBlockAt((int) event.getX(), (int) event.getY());
+        switch (event.getAction() & MotionEventUtils.ACTION_MASK) {
+            case MotionEvent.ACTION_DOWN:
+                setPressedBlock(block);
+                return block != null;
+            case MotionEvent.ACTION_MOVE:
+                if (block != mPressedBlock) {
+                    setPressedBlock(null);
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+                if (block != null && block == mPressedBlock) {
+                    performBlockClick(block);
+                }
+                setPressedBlock(null);
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                setPressedBlock(null);
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Return the enabled {@link Block} drawn at the given point, if any.
+     */
+    private Block findBlockAt(int x, int y) {
+        final int headerWidth = mRulerView.getHeaderWidth();
+        final int columnWidth = (getWidth() - headerWidth) / mColumns;
+        if (x < headerWidth || columnWidth <= 0) {
+            return null;
+        }
+
+        final int column = (x - headerWidth) / columnWidth;
+        for (Block block : mBlocks) {
+            if (block.enabled && block.column == column && y >= block.top && y < block.bottom) {
+                return block;
+            }
+        }
+        return null;
+    }
+
+    private void setPressedBlock(Block block) {
+        if (mPressedBlock == block) {
+            return;
+        }
+        if (mPressedBlock != null) {
+            invalidate(0, mPressedBlock.top, getWidth(), mPressedBlock.bottom);
+        }
+        mPressedBlock = block;
+        if (block != null) {
+            invalidate(0, block.top, getWidth(), block.bottom);
+        }
+    }
+
+    /**
+     * Notify the block click listener, passing a detached {@link BlockView}
+     * bound to the clicked block so listeners work the same in both modes.
+     */
+    private void performBlockClick(Block block) {
+        if (mBlockClickListener == null) {
+            return;
+        }
+        if (mClickView == null) {
+            mClickView = new BlockView(getContext());
+        }
+        mClickView.bind(block.blockId, block.title, block.startTime, block.endTime,
+                block.containsStarred, block.column, block.enabled);
+        playSoundEffect(SoundEffectConstants.CLICK);
+        mBlockClickListener.onClick(mClickView);
     }
 
     @Override
@@ -101,6 +524,7 @@ public class BlocksLayout extends ViewGroup {
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        final long startNanos = FrameStats.start();
         ensureChildren();
 
         final TimeRulerView rulerView = mRulerView;
@@ -109,20 +533,12 @@ public class BlocksLayout extends ViewGroup {
 
         rulerView.layout(0, 0, getWidth(), getHeight());
 
-        final int count = getChildCount();
-        for (int i = 0; i < count; i++) {
-            final View child = getChildAt(i);
-            if (child.getVisibility() == GONE) continue;
-
-            if (child instanceof BlockView) {
-                final BlockView blockView = (BlockView) child;
-                final int top = rulerView.getTimeVerticalOffset(blockView.getStartTime());
-                final int bottom = rulerView.getTimeVerticalOffset(blockView.getEndTime());
-                final int left = headerWidth + (blockView.getColumn() * columnWidth);
-                final int right = left + columnWidth;
-                child.layout(left, top, right, bottom);
+        for (Block block : mBlocks) {
+            if (block.view != null) {
+                layoutBlock(block, headerWidth, columnWidth);
             }
         }
+        updateVisibleWindow();
 
         // Align now view to match current time
         final View nowView = mNowView;
@@ -134,5 +550,9 @@ public class BlocksLayout extends ViewGroup {
         final int right = getWidth();
 
         nowView.layout(left, top, right, bottom);
+
+        if (mFrameStats != null) {
+            mFrameStats.recordLayout(startNanos);
+        }
     }
 }
@@ -16,7 +16,10 @@
 
 package com.google.android.apps.iosched.ui.widget;
 
+import com.google.android.apps.iosched.util.FrameStats;
+
 import android.content.Context;
+import android.graphics.Canvas;
 import android.util.AttributeSet;
 import android.widget.ScrollView;
 
@@ -24,8 +27,13 @@ import android.widget.ScrollView;
  * A custom ScrollView that can notify a scroll listener when scrolled.
  */
 public class ObservableScrollView extends ScrollView {
+    private static final String TAG = "ObservableScrollView";
+
     private OnScrollListener mScrollListener;
 
+    private final FrameStats mFrameStats = FrameStats.get(TAG);
+    private boolean mScrolledSinceDraw = false;
+
     public ObservableScrollView(Context context, AttributeSet attrs) {
         super(context, attrs);
     }
@@ -33,11 +41,26 @@ public class ObservableScrollView extends ScrollView {
     @Override
     protected void onScrollChanged(int l, int t, int oldl, int oldt) {
         super.onScrollChanged(l, t, oldl, oldt);
+        mScrolledSinceDraw = true;
         if (mScrollListener != null) {
             mScrollListener.onScrollChanged(this);
         }
     }
 
+    @Override
+    public void draw(Canvas canvas) {
+        if (mFrameStats == null) {
+            super.draw(canvas);
+            return;
+        }
+
+        final long startNanos = FrameStats.start();
+        super.draw(canvas);
+        mFrameStats.recordDraw(startNanos);
+        mFrameStats.recordFrame(mScrolledSinceDraw);
+        mScrolledSinceDraw = false;
+    }
+
     public boolean isScrollPossible() {
         return computeVerticalScrollRange() > getHeight();
     }
@@ -27,6 +27,7 @@ import android.graphics.Paint;
 import android.graphics.Paint.FontMetricsInt;
 import android.graphics.Paint.Style;
 import android.graphics.Typeface;
+import android.text.format.DateUtils;
 import android.text.format.Time;
 import android.util.AttributeSet;
 import android.view.View;
@@ -48,6 +49,16 @@ public class TimeRulerView extends View {
     private int mStartHour = 0;
     private int mEndHour = 23;
 
+    /**
+     * Reused to find the day containing a requested time, so that mapping
+     * times to offsets doesn't allocate.
+     */
+    private final Time mTime = new Time(UIUtils.CONFERENCE_TIME_ZONE.getID());
+
+    /** Bounds of the day that {@link #getTimeVerticalOffset} last resolved. */
+    private long mDayStartMillis = 0;
+    private long mDayEndMillis = 0;
+
     public TimeRulerView(Context context) {
         this(context, null);
     }
@@ -85,13 +96,56 @@ public class TimeRulerView extends View {
      * milliseconds since epoch).
      */
     public int getTimeVerticalOffset(long timeMillis) {
-        Time time = new Time(UIUtils.CONFERENCE_TIME_ZONE.getID());
-        time.set(timeMillis);
+        if (timeMillis < mDayStartMillis || timeMillis >= mDayEndMillis) {
+            resolveDay(timeMillis);
+        }
 
-        final int minutes = ((time.hour - mStartHour) * 60) + time.minute;
+        final int minutes;
+        if (mDayEndMillis - mDayStartMillis == DateUtils.DAY_IN_MILLIS) {
+            // Wall clock time is elapsed time since midnight
+            minutes = (int) ((timeMillis - mDayStartMillis) / DateUtils.MINUTE_IN_MILLIS)
+                    - (mStartHour * 60);
+        } else {
+            // Daylight saving changes during this day
+            final Time time = mTime;
+            time.set(timeMillis);
+            minutes = ((time.hour - mStartHour) * 60) + time.minute;
+        }
         return (minutes * mHourHeight) / 60;
     }
 
+    /**
+     * Find the midnight boundaries in {@link UIUtils#CONFERENCE_TIME_ZONE}
+     * of the day containing the given time.
+     */
+    private void resolveDay(long timeMillis) {
+        final Time time = mTime;
+        time.set(timeMillis);
+        time.hour = 0;
+        time.minute = 0;
+        time.second = 0;
+        mDayStartMillis = time.normalize(true);
+        time.monthDay++;
+        mDayEndMillis = time.normalize(true);
+    }
+
+    /**
+     * Forget the day resolved by {@link #getTimeVerticalOffset}, forcing it
+     * to be found again on the next call. Should be called when time zone
+     * rules may have changed, such as on
+     * {@link android.content.Intent#ACTION_TIMEZONE_CHANGED}.
+     */
+    public void invalidateTimeMapping() {
+        mDayStartMillis = 0;
+        mDayEndMillis = 0;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        invalidateTimeMapping();
+    }
+
     @Override
     protected synchronized void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         final int hours = mEndHour - mStartHour;
@@ -0,0 +1,476 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.iosched.ui.widget;
+
+import com.google.android.apps.iosched.util.Sets;
+import com.google.android.apps.iosched.util.VenueMap;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.SoundEffectConstants;
+import android.view.View;
+import android.widget.Scroller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Custom view that draws one floor of a {@link VenueMap} from its bundled
+ * tiles, with dragging, flinging and double-tap zoom, and reports taps on
+ * rooms to an {@link OnRoomClickListener}.
+ * <p>
+ * Only tiles in view are decoded, on a background thread, and at most
+ * {@link #MAX_CACHED_TILES} are kept in memory. While a tile is decoding,
+ * the matching part of the previous zoom level is scaled up in its place.
+ */
+public class VenueMapView extends View {
+    private static final String TAG = "VenueMapView";
+
+    /** Decoded tiles kept in memory, enough to cover a tablet screen twice. */
+    private static final int MAX_CACHED_TILES = 48;
+
+    private static final int SELECTED_ROOM_COLOR = 0x4033b5e5;
+
+    private static final int MSG_DECODE_TILE = 1;
+
+    private static final BitmapFactory.Options sDecodeOptions = new BitmapFactory.Options();
+
+    static {
+        sDecodeOptions.inPreferredConfig = Bitmap.Config.RGB_565;
+    }
+
+    private VenueMap mMap;
+    private int mFloor = 0;
+    private int mLevel = 0;
+    private VenueMap.Room mSelectedRoom;
+    private boolean mCenterOnSelectedRoom = false;
+    private OnRoomClickListener mRoomClickListener;
+
+    /** Top-left corner of the view, in pixels of the current zoom level. */
+    private float mOffsetX;
+    private float mOffsetY;
+
+    private final GestureDetector mGestureDetector;
+    private final Scroller mScroller;
+    private final Paint mTilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint mRoomPaint = new Paint();
+    private final Rect mSrcRect = new Rect();
+    private final RectF mDstRect = new RectF();
+
+    private final Handler mHandler = new Handler();
+    private HandlerThread mDecodeThread;
+    private Handler mDecodeHandler;
+
+    /** Bumped when pending decodes should be dropped, such as when detached. */
+    private volatile int mGeneration = 0;
+
+    private final HashSet<String> mPendingTiles = Sets.newHashSet();
+    private final HashSet<String> mMissingTiles = Sets.newHashSet();
+    private final LinkedHashMap<String, Bitmap> mTileCache =
+            new LinkedHashMap<String, Bitmap>(MAX_CACHED_TILES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Bitmap> eldest) {
+            if (size() > MAX_CACHED_TILES) {
+                // Tiles are only drawn from the UI thread, which is also evicting.
+                eldest.getValue().recycle();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    public interface OnRoomClickListener {
+        void onRoomClick(String roomId);
+    }
+
+    public VenueMapView(Context context) {
+        this(context, null);
+    }
+
+    public VenueMapView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mGestureDetector = new GestureDetector(context, mGestureListener);
+        mScroller = new Scroller(context);
+        mRoomPaint.setColor(SELECTED_ROOM_COLOR);
+        setBackgroundColor(Color.WHITE);
+    }
+
+    public void setVenueMap(VenueMap map) {
+        mMap = map;
+        mFloor = 0;
+        mLevel = 0;
+        mSelectedRoom = null;
+        clearTiles();
+        if (getWidth() > 0) {
+            fitToView();
+        }
+        invalidate();
+    }
+
+    public void setOnRoomClickListener(OnRoomClickListener listener) {
+        mRoomClickListener = listener;
+    }
+
+    public int getFloor() {
+        return mFloor;
+    }
+
+    public void setFloor(int floor) {
+        if (mMap == null || floor == mFloor || floor < 0 || floor >= mMap.getFloorCount()) {
+            return;
+        }
+        mFloor = floor;
+        invalidate();
+    }
+
+    /**
+     * Select the room with the given {@link VenueMap.Room#getRoomId()}, and
+     * show it zoomed in on its floor. Returns whether the room is on the map.
+     */
+    public boolean showRoom(String roomId) {
+        final VenueMap.Room room = (mMap != null) ? mMap.getRoom(roomId) : null;
+        if (room == null) {
+            return false;
+        }
+
+        mSelectedRoom = room;
+        mFloor = room.getFloor();
+        if (getWidth() > 0) {
+            centerOnSelectedRoom();
+        } else {
+            mCenterOnSelectedRoom = true;
+        }
+        return true;
+    }
+
+    /** Smoothly pan the map to the left by the given fraction of the view width. */
+    public void panLeft(float screenFraction) {
+        mScroller.forceFinished(true);
+        mScroller.startScroll((int) mOffsetX, (int) mOffsetY,
+                (int) (screenFraction * getWidth()), 0);
+        invalidate();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mDecodeThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mDecodeThread.start();
+        mDecodeHandler = new DecodeHandler(mDecodeThread.getLooper());
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mDecodeThread.quit();
+        mDecodeThread = null;
+        mDecodeHandler = null;
+        clearTiles();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (mMap == null) {
+            return;
+        }
+
+        if (mCenterOnSelectedRoom) {
+            centerOnSelectedRoom();
+        } else if (oldw == 0 || oldh == 0) {
+            fitToView();
+        } else {
+            setOffset(mOffsetX + (oldw - w) / 2f, mOffsetY + (oldh - h) / 2f);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        return mGestureDetector.onTouchEvent(event) || super.onTouchEvent(event);
+    }
+
+    @Override
+    public void computeScroll() {
+        if (mScroller.computeScrollOffset()) {
+            setOffset(mScroller.getCurrX(), mScroller.getCurrY());
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mMap == null) {
+            return;
+        }
+
+        final int tileSize = mMap.getTileSize();
+        final int lastCol = Math.min((getLevelWidth() - 1) / tileSize,
+                (int) (mOffsetX + getWidth()) / tileSize);
+        final int lastRow = Math.min((getLevelHeight() - 1) / tileSize,
+                (int) (mOffsetY + getHeight()) / tileSize);
+
+        for (int row = Math.max(0, (int) mOffsetY / tileSize); row <= lastRow; row++) {
+            for (int col = Math.max(0, (int) mOffsetX / tileSize); col <= lastCol; col++) {
+                final float left = col * tileSize - mOffsetX;
+                final float top = row * tileSize - mOffsetY;
+
+                final Bitmap tile = getTile(mLevel, col, row);
+                if (tile != null) {
+                    canvas.drawBitmap(tile, left, top, mTilePaint);
+                    continue;
+                }
+
+                // Scale up the previous zoom level while this tile is decoding
+                final Bitmap parent = (mLevel > 0) ? getTile(mLevel - 1, col / 2, row / 2) : null;
+                if (parent != null && parent.getWidth() == tileSize
+                        && parent.getHeight() == tileSize) {
+                    final int half = tileSize / 2;
+                    mSrcRect.set((col % 2) * half, (row % 2) * half,
+                            (col % 2 + 1) * half, (row % 2 + 1) * half);
+                    mDstRect.set(left, top, left + tileSize, top + tileSize);
+                    canvas.drawBitmap(parent, mSrcRect, mDstRect, mTilePaint);
+                }
+            }
+        }
+
+        if (mSelectedRoom != null && mSelectedRoom.getFloor() == mFloor) {
+            final float scale = mMap.getScale(mLevel);
+            final RectF bounds = mSelectedRoom.getBounds();
+            mDstRect.set(bounds.left * scale - mOffsetX, bounds.top * scale - mOffsetY,
+                    bounds.right * scale - mOffsetX, bounds.bottom * scale - mOffsetY);
+            canvas.drawRect(mDstRect, mRoomPaint);
+        }
+    }
+
+    private int getLevelWidth() {
+        return (int) Math.ceil(mMap.getWidth() * mMap.getScale(mLevel));
+    }
+
+    private int getLevelHeight() {
+        return (int) Math.ceil(mMap.getHeight() * mMap.getScale(mLevel));
+    }
+
+    private void setOffset(float x, float y) {
+        mOffsetX = clampOffset(x, getLevelWidth(), getWidth());
+        mOffsetY = clampOffset(y, getLevelHeight(), getHeight());
+        invalidate();
+    }
+
+    /** Keep the map filling the view, or centered when smaller than it. */
+    private static float clampOffset(float offset, int levelSize, int viewSize) {
+        if (levelSize <= viewSize) {
+            return (levelSize - viewSize) / 2f;
+        }
+        return Math.max(0, Math.min(offset, levelSize - viewSize));
+    }
+
+    /** Show the whole floor at the largest zoom level that still fits. */
+    private void fitToView() {
+        mLevel = 0;
+        while (mLevel < mMap.getLevels() - 1) {
+            final float nextScale = mMap.getScale(mLevel + 1);
+            if (mMap.getWidth() * nextScale > getWidth()
+                    || mMap.getHeight() * nextScale > getHeight()) {
+                break;
+            }
+            mLevel++;
+        }
+        setOffset(0, 0);
+    }
+
+    /** Zoom in as far as the selected room still fits, and center on it. */
+    private void centerOnSelectedRoom() {
+        mCenterOnSelectedRoom = false;
+        final RectF bounds = mSelectedRoom.getBounds();
+        mLevel = mMap.getLevels() - 1;
+        while (mLevel > 0 && (bounds.width() * mMap.getScale(mLevel) > getWidth()
+                || bounds.height() * mMap.getScale(mLevel) > getHeight())) {
+            mLevel--;
+        }
+
+        final float scale = mMap.getScale(mLevel);
+        mScroller.forceFinished(true);
+        setOffset(bounds.centerX() * scale - getWidth() / 2f,
+                bounds.centerY() * scale - getHeight() / 2f);
+    }
+
+    /** Change zoom level, keeping the map under the given view point in place. */
+    private void zoomTo(int level, float focusX, float focusY) {
+        if (level == mLevel) {
+            return;
+        }
+
+        final float factor = mMap.getScale(level) / mMap.getScale(mLevel);
+        final float x = (mOffsetX + focusX) * factor - focusX;
+        final float y = (mOffsetY + focusY) * factor - focusY;
+        mLevel = level;
+        mScroller.forceFinished(true);
+        setOffset(x, y);
+    }
+
+    /**
+     * Return the decoded tile at the given zoom level of the current floor,
+     * or {@code null} after requesting it to be decoded.
+     */
+    private Bitmap getTile(int level, int col, int row) {
+        final String path = mMap.getTilePath(mFloor, level, col, row);
+        final Bitmap tile = mTileCache.get(path);
+        if (tile == null && mDecodeHandler != null && !mMissingTiles.contains(path)
+                && mPendingTiles.add(path)) {
+            mDecodeHandler.obtainMessage(MSG_DECODE_TILE, mGeneration, 0, path).sendToTarget();
+        }
+        return tile;
+    }
+
+    private void onTileDecoded(int generation, String path, Bitmap tile) {
+        if (generation != mGeneration) {
+            if (tile != null) {
+                tile.recycle();
+            }
+            return;
+        }
+
+        mPendingTiles.remove(path);
+        if (tile != null) {
+            mTileCache.put(path, tile);
+            invalidate();
+        } else {
+            mMissingTiles.add(path);
+        }
+    }
+
+    private void clearTiles() {
+        mGeneration++;
+        for (Bitmap tile : mTileCache.values()) {
+            tile.recycle();
+        }
+        mTileCache.clear();
+        mPendingTiles.clear();
+        mMissingTiles.clear();
+    }
+
+    /** Decodes tiles from assets, posting them back to the UI thread. */
+    private class DecodeHandler extends Handler {
+        public DecodeHandler(Looper looper) {
+            super(looper);
+        }
+
+        @Override
+        public void handleMessage(Message msg) {
+            final int generation = msg.arg1;
+            final String path = (String) msg.obj;
+            if (generation != mGeneration) {
+                return;
+            }
+
+            Bitmap tile = null;
+            InputStream input = null;
+            try {
+                input = getContext().getAssets().open(path);
+                tile = BitmapFactory.decodeStream(input, null, sDecodeOptions);
+            } catch (IOException e) {
+                // Missing tiles are left blank
+            } finally {
+                if (input != null) {
+                    try {
+                        input.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+
+            final Bitmap result = tile;
+            mHandler.post(new Runnable() {
+                public void run() {
+                    onTileDecoded(generation, path, result);
+                }
+            });
+        }
+    }
+
+    private GestureDetector.SimpleOnGestureListener mGestureListener =
+            new GestureDetector.SimpleOnGestureListener() {
+        @Override
+        public boolean onDown(MotionEvent e) {
+            mScroller.forceFinished(true);
+            return mMap != null;
+        }
+
+        @Override
+        public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX,
+                float distanceY) {
+            setOffset(mOffsetX + distanceX, mOffsetY + distanceY);
+            return true;
+        }
+
+        @Override
+        public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX,
+                float velocityY) {
+            mScroller.fling((int) mOffsetX, (int) mOffsetY, (int) -velocityX, (int) -velocityY,
+                    0, Math.max(0, getLevelWidth() - getWidth()),
+                    0, Math.max(0, getLevelHeight() - getHeight()));
+            invalidate();
+            return true;
+        }
+
+        @Override
+        public boolean onDoubleTap(MotionEvent e) {
+            // Zoom in one level at a time, then back out to the whole floor
+            if (mLevel < mMap.getLevels() - 1) {
+                zoomTo(mLevel + 1, e.getX(), e.getY());
+            } else {
+                fitToView();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean onSingleTapConfirmed(MotionEvent e) {
+            final float scale = mMap.getScale(mLevel);
+            final VenueMap.Room room = mMap.findRoom(mFloor, (mOffsetX + e.getX()) / scale,
+                    (mOffsetY + e.getY()) / scale);
+            if (room == null) {
+                return false;
+            }
+
+            mSelectedRoom = room;
+            invalidate();
+            playSoundEffect(SoundEffectConstants.CLICK);
+            if (mRoomClickListener != null) {
+                mRoomClickListener.onRoomClick(room.getRoomId());
+            }
+            return true;
+        }
+    };
+}
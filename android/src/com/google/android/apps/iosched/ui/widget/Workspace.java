@@ -16,11 +16,13 @@
 
 package com.google.android.apps.iosched.ui.widget;
 
+import com.google.android.apps.iosched.util.FrameStats;
 import com.google.android.apps.iosched.util.MotionEventUtils;
 import com.google.android.apps.iosched.util.ReflectionUtils;
 
 import android.content.Context;
 import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.os.Parcel;
@@ -99,6 +101,10 @@ public class Workspace extends ViewGroup {
 
     private static final int INVALID_POINTER = -1;
 
+    /** Values of View.LAYER_TYPE_NONE and LAYER_TYPE_HARDWARE, added in Honeycomb. */
+    private static final int LAYER_TYPE_NONE = 0;
+    private static final int LAYER_TYPE_HARDWARE = 2;
+
     private int mActivePointerId = INVALID_POINTER;
 
     private Drawable mSeparatorDrawable;
@@ -114,8 +120,13 @@ public class Workspace extends ViewGroup {
 
     private boolean mIgnoreChildFocusRequests;
 
+    private boolean mUseHardwareLayers = false;
+    private boolean mScreenLayersEnabled = false;
+
     private boolean mIsVerbose = false;
 
+    private final FrameStats mFrameStats = FrameStats.get(TAG);
+
     public interface OnScreenChangeListener {
         void onScreenChanged(View newScreen, int newScreenIndex);
         void onScreenChanging(View newScreen, int newScreenIndex);
@@ -194,6 +205,7 @@ public class Workspace extends ViewGroup {
 
     void handleScreenChangeCompletion(int currentScreen) {
         mCurrentScreen = currentScreen;
+        setScreenLayersEnabled(false);
         View screen = getScreenAt(mCurrentScreen);
         //screen.requestFocus();
         try {
@@ -247,8 +259,35 @@ public class Workspace extends ViewGroup {
         }
     }
 
+    /**
+     * Render each screen into a hardware layer while paging, so that frames
+     * during a swipe only composite the screens instead of redrawing them.
+     * Has no effect before Honeycomb.
+     */
+    public void setUseHardwareLayers(boolean useHardwareLayers) {
+        if (!useHardwareLayers) {
+            setScreenLayersEnabled(false);
+        }
+        mUseHardwareLayers = useHardwareLayers;
+    }
+
+    private void setScreenLayersEnabled(boolean enabled) {
+        if ((enabled && !mUseHardwareLayers) || mScreenLayersEnabled == enabled) {
+            return;
+        }
+
+        mScreenLayersEnabled = enabled;
+        final int layerType = enabled ? LAYER_TYPE_HARDWARE : LAYER_TYPE_NONE;
+        final int count = getScreenCount();
+        for (int i = 0; i < count; i++) {
+            ReflectionUtils.tryInvoke(getScreenAt(i), "setLayerType",
+                    new Class[]{int.class, Paint.class}, layerType, null);
+        }
+    }
+
     @Override
     protected void dispatchDraw(Canvas canvas) {
+        final long startNanos = FrameStats.start();
         boolean restore = false;
         int restoreCount = 0;
 
@@ -282,6 +321,11 @@ public class Workspace extends ViewGroup {
         if (restore) {
             canvas.restoreToCount(restoreCount);
         }
+
+        if (mFrameStats != null) {
+            mFrameStats.recordDraw(startNanos);
+            mFrameStats.recordFrame(!fastDraw);
+        }
     }
 
     @Override
@@ -313,6 +357,7 @@ public class Workspace extends ViewGroup {
 
     @Override
     protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        final long startNanos = FrameStats.start();
         int childLeft = 0;
 
         final int count = getChildCount();
@@ -325,6 +370,10 @@ public class Workspace extends ViewGroup {
             }
         }
 
+        if (mFrameStats != null) {
+            mFrameStats.recordLayout(startNanos);
+        }
+
         mHasLaidOut = true;
         if (mDeferredScreenChange >= 0) {
             snapToScreen(mDeferredScreenChange, mDeferredScreenChangeFast, mDeferredNotify);
@@ -484,6 +533,7 @@ public class Workspace extends ViewGroup {
                     if (xPaged) {
                         // Scroll if the user moved far enough along the X axis
                         mTouchState = TOUCH_STATE_SCROLLING;
+                        setScreenLayersEnabled(true);
                     }
                     // Either way, cancel any pending longpress
                     if (mAllowLongPress) {
@@ -650,6 +700,7 @@ public class Workspace extends ViewGroup {
                         if (xPaged) {
                             // Scroll if the user moved far enough along the X axis
                             mTouchState = TOUCH_STATE_SCROLLING;
+                            setScreenLayersEnabled(true);
                         }
                         // Either way, cancel any pending longpress
                         if (mAllowLongPress) {
@@ -821,6 +872,9 @@ public class Workspace extends ViewGroup {
         if (!mScroller.isFinished()) {
             mScroller.abortAnimation();
         }
+        if (!fast) {
+            setScreenLayersEnabled(true);
+        }
         mScroller.startScroll(sX, 0, delta, 0, duration);
         if (screenChanging && notify) {
             notifyScreenChangeListener(mNextScreen, false);
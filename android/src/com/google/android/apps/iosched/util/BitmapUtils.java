@@ -30,6 +30,7 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.AsyncTask;
 import android.os.Environment;
+import android.os.Process;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -37,8 +38,9 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Helper class for fetching and disk-caching images from the web.
@@ -49,6 +51,9 @@ public class BitmapUtils {
     // TODO: for concurrent connections, DefaultHttpClient isn't great, consider other options
     // that still allow for sharing resources across bitmap fetches.
 
+    /** Runs {@link #prefetchImage} downloads one at a time, at the lowest priority. */
+    private static ExecutorService sPrefetchExecutor;
+
     public static interface OnFetchCompleteListener {
         public void onFetchComplete(Object cookie, Bitmap result);
     }
@@ -79,25 +84,8 @@ public class BitmapUtils {
                     return null;
                 }
 
-                // First compute the cache key and cache file path for this URL
-                File cacheFile = null;
-                try {
-                    MessageDigest mDigest = MessageDigest.getInstance("SHA-1");
-                    mDigest.update(url.getBytes());
-                    final String cacheKey = bytesToHexString(mDigest.digest());
-                    if (Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())) {
-                        cacheFile = new File(
-                                Environment.getExternalStorageDirectory()
-                                        + File.separator + "Android"
-                                        + File.separator + "data"
-                                        + File.separator + context.getPackageName()
-                                        + File.separator + "cache"
-                                        + File.separator + "bitmap_" + cacheKey + ".tmp");
-                    }
-                } catch (NoSuchAlgorithmException e) {
-                    // Oh well, SHA-1 not available (weird), don't cache bitmaps.
-                }
-
+                // First compute the cache file path for this URL
+                final File cacheFile = getCacheFile(context, url);
                 if (cacheFile != null && cacheFile.exists()) {
                     Bitmap cachedBitmap = BitmapFactory.decodeFile(
                             cacheFile.toString(), decodeOptions);
@@ -106,42 +94,14 @@ public class BitmapUtils {
                     }
                 }
 
-                try {
-                    // TODO: check for HTTP caching headers
-                    final HttpClient httpClient = SyncService.getHttpClient(
-                            context.getApplicationContext());
-                    final HttpResponse resp = httpClient.execute(new HttpGet(url));
-                    final HttpEntity entity = resp.getEntity();
-
-                    final int statusCode = resp.getStatusLine().getStatusCode();
-                    if (statusCode != HttpStatus.SC_OK || entity == null) {
-                        return null;
-                    }
-
-                    final byte[] respBytes = EntityUtils.toByteArray(entity);
-
-                    // Write response bytes to cache.
-                    if (cacheFile != null) {
-                        try {
-                            cacheFile.getParentFile().mkdirs();
-                            cacheFile.createNewFile();
-                            FileOutputStream fos = new FileOutputStream(cacheFile);
-                            fos.write(respBytes);
-                            fos.close();
-                        } catch (FileNotFoundException e) {
-                            Log.w(TAG, "Error writing to bitmap cache: " + cacheFile.toString(), e);
-                        } catch (IOException e) {
-                            Log.w(TAG, "Error writing to bitmap cache: " + cacheFile.toString(), e);
-                        }
-                    }
-
-                    // Decode the bytes and return the bitmap.
-                    return BitmapFactory.decodeByteArray(respBytes, 0, respBytes.length,
-                            decodeOptions);
-                } catch (Exception e) {
-                    Log.w(TAG, "Problem while loading image: " + e.toString(), e);
+                final byte[] respBytes = download(context, url, cacheFile);
+                if (respBytes == null) {
+                    return null;
                 }
-                return null;
+
+                // Decode the bytes and return the bitmap.
+                return BitmapFactory.decodeByteArray(respBytes, 0, respBytes.length,
+                        decodeOptions);
             }
 
             @Override
@@ -151,16 +111,105 @@ public class BitmapUtils {
         }.execute(url);
     }
 
-    private static String bytesToHexString(byte[] bytes) {
-        // http://stackoverflow.com/questions/332079
-        StringBuffer sb = new StringBuffer();
-        for (int i = 0; i < bytes.length; i++) {
-            String hex = Integer.toHexString(0xFF & bytes[i]);
-            if (hex.length() == 1) {
-                sb.append('0');
+    /**
+     * Download the image at the given URL into the disk cache unless already
+     * there, without decoding it, so a later {@link #fetchImage} is served
+     * from disk. Prefetches run on their own low priority thread, so they
+     * never wait in line ahead of {@link #fetchImage} for a visible image.
+     */
+    public static void prefetchImage(final Context context, final String url) {
+        if (TextUtils.isEmpty(url)) {
+            return;
+        }
+
+        getPrefetchExecutor().execute(new Runnable() {
+            public void run() {
+                final File cacheFile = getCacheFile(context, url);
+                if (cacheFile != null && !cacheFile.exists()) {
+                    download(context, url, cacheFile);
+                }
+            }
+        });
+    }
+
+    private static synchronized ExecutorService getPrefetchExecutor() {
+        if (sPrefetchExecutor == null) {
+            sPrefetchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(TAG + " prefetch") {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                            runnable.run();
+                        }
+                    };
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sPrefetchExecutor;
+    }
+
+    /**
+     * Return the disk cache file for the given URL, or {@code null} when
+     * images can't be cached.
+     */
+    private static File getCacheFile(Context context, String url) {
+        final String cacheKey = WebContentCache.getCacheKey(url);
+        if (cacheKey != null
+                && Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())) {
+            return new File(
+                    Environment.getExternalStorageDirectory()
+                            + File.separator + "Android"
+                            + File.separator + "data"
+                            + File.separator + context.getPackageName()
+                            + File.separator + "cache"
+                            + File.separator + "bitmap_" + cacheKey + ".tmp");
+        }
+        return null;
+    }
+
+    /**
+     * Download the given URL, writing it to the given cache file when not
+     * {@code null}. Returns the response bytes, or {@code null} on failure.
+     * Must not be called from the main (UI) thread.
+     */
+    private static byte[] download(Context context, String url, File cacheFile) {
+        try {
+            // TODO: check for HTTP caching headers
+            final HttpClient httpClient = SyncService.getHttpClient(
+                    context.getApplicationContext());
+            final HttpResponse resp = httpClient.execute(new HttpGet(url));
+            final HttpEntity entity = resp.getEntity();
+
+            final int statusCode = resp.getStatusLine().getStatusCode();
+            if (statusCode != HttpStatus.SC_OK || entity == null) {
+                return null;
+            }
+
+            final byte[] respBytes = EntityUtils.toByteArray(entity);
+
+            // Write response bytes to cache, renaming into place so that a
+            // concurrent fetch never decodes a partial file.
+            if (cacheFile != null) {
+                try {
+                    cacheFile.getParentFile().mkdirs();
+                    final File partFile = new File(cacheFile.getPath() + ".part");
+                    FileOutputStream fos = new FileOutputStream(partFile);
+                    fos.write(respBytes);
+                    fos.close();
+                    partFile.renameTo(cacheFile);
+                } catch (FileNotFoundException e) {
+                    Log.w(TAG, "Error writing to bitmap cache: " + cacheFile.toString(), e);
+                } catch (IOException e) {
+                    Log.w(TAG, "Error writing to bitmap cache: " + cacheFile.toString(), e);
+                }
             }
-            sb.append(hex);
+            return respBytes;
+        } catch (Exception e) {
+            Log.w(TAG, "Problem while loading image: " + e.toString(), e);
         }
-        return sb.toString();
+        return null;
     }
 }
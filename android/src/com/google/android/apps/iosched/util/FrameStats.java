@@ -0,0 +1,221 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.iosched.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Opt-in recorder of draw and layout times, and of frames missed while
+ * animating, for custom widgets. Disabled unless enabled with
+ * {@code adb shell setprop log.tag.FrameStats VERBOSE} before the process
+ * starts, in which case every call returns immediately.
+ * <p>
+ * Histograms are kept per widget name and written out by {@link #dump}.
+ * Only meant to be used from the UI thread.
+ */
+public class FrameStats {
+    private static final String TAG = "FrameStats";
+
+    private static final boolean ENABLED = Log.isLoggable(TAG, Log.VERBOSE);
+
+    private static final String DUMP_FILE = "frame-stats.txt";
+
+    /** Expected time between frames at 60fps. */
+    private static final long FRAME_INTERVAL_NANOS = 16666667;
+
+    /** Upper bounds, in milliseconds, of each histogram bucket but the last. */
+    private static final int[] BUCKET_LIMITS_MILLIS = { 1, 2, 4, 8, 16, 33, 66, 133 };
+
+    private static final TreeMap<String, FrameStats> sStats = new TreeMap<String, FrameStats>();
+
+    private final Histogram mDrawTimes = new Histogram();
+    private final Histogram mLayoutTimes = new Histogram();
+    private final Histogram mFrameIntervals = new Histogram();
+    private int mAnimatedFrames = 0;
+    private int mDroppedFrames = 0;
+    private long mLastFrameNanos = 0;
+
+    private FrameStats() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Return the stats recorded under the given widget name, or {@code null}
+     * when recording is disabled.
+     */
+    public static FrameStats get(String name) {
+        if (!ENABLED) {
+            return null;
+        }
+
+        FrameStats stats = sStats.get(name);
+        if (stats == null) {
+            stats = new FrameStats();
+            sStats.put(name, stats);
+        }
+        return stats;
+    }
+
+    /** Return a start time to pass to the record methods, or 0 when disabled. */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /** Record a draw pass that began at the given {@link #start()} time. */
+    public void recordDraw(long startNanos) {
+        mDrawTimes.add(System.nanoTime() - startNanos);
+    }
+
+    /** Record a layout pass that began at the given {@link #start()} time. */
+    public void recordLayout(long startNanos) {
+        mLayoutTimes.add(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Record that a frame was drawn. While {@code animating}, the gap since
+     * the previous animated frame is recorded, and every frame interval
+     * beyond the first in that gap counts as a dropped frame.
+     */
+    public void recordFrame(boolean animating) {
+        final long now = System.nanoTime();
+        if (!animating) {
+            mLastFrameNanos = 0;
+            return;
+        }
+
+        mAnimatedFrames++;
+        if (mLastFrameNanos != 0) {
+            final long interval = now - mLastFrameNanos;
+            mFrameIntervals.add(interval);
+            mDroppedFrames += (int) (Math.max(0,
+                    (interval + FRAME_INTERVAL_NANOS / 2) / FRAME_INTERVAL_NANOS - 1));
+        }
+        mLastFrameNanos = now;
+    }
+
+    private void reset() {
+        mDrawTimes.clear();
+        mLayoutTimes.clear();
+        mFrameIntervals.clear();
+        mAnimatedFrames = 0;
+        mDroppedFrames = 0;
+        mLastFrameNanos = 0;
+    }
+
+    /**
+     * Write histograms for every widget to a file in the application files
+     * directory, then clear them. Returns the file written, or {@code null}
+     * when recording is disabled or the file couldn't be written.
+     */
+    public static File dump(Context context) {
+        if (!ENABLED) {
+            return null;
+        }
+
+        final File file = context.getFileStreamPath(DUMP_FILE);
+        PrintWriter writer = null;
+        try {
+            writer = new PrintWriter(new FileWriter(file, true));
+            writer.println("# " + new Date());
+            for (Map.Entry<String, FrameStats> entry : sStats.entrySet()) {
+                final FrameStats stats = entry.getValue();
+                writer.println(entry.getKey() + ": animatedFrames=" + stats.mAnimatedFrames
+                        + " droppedFrames=" + stats.mDroppedFrames);
+                stats.mDrawTimes.print(writer, "  draw");
+                stats.mLayoutTimes.print(writer, "  layout");
+                stats.mFrameIntervals.print(writer, "  frameInterval");
+            }
+            writer.println();
+        } catch (IOException e) {
+            Log.w(TAG, "Problem writing frame stats", e);
+            return null;
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+
+        Log.d(TAG, "Wrote frame stats to " + file);
+
+        // Widgets keep their instances, so reset rather than remove them
+        for (FrameStats stats : sStats.values()) {
+            stats.reset();
+        }
+        return file;
+    }
+
+    /**
+     * Count of durations falling into each of {@link #BUCKET_LIMITS_MILLIS}.
+     */
+    private static class Histogram {
+        private final int[] mCounts = new int[BUCKET_LIMITS_MILLIS.length + 1];
+        private int mCount = 0;
+        private long mTotalNanos = 0;
+        private long mMaxNanos = 0;
+
+        public void add(long nanos) {
+            final long millis = nanos / 1000000;
+            int bucket = 0;
+            while (bucket < BUCKET_LIMITS_MILLIS.length && millis >= BUCKET_LIMITS_MILLIS[bucket]) {
+                bucket++;
+            }
+            mCounts[bucket]++;
+            mCount++;
+            mTotalNanos += nanos;
+            mMaxNanos = Math.max(mMaxNanos, nanos);
+        }
+
+        public void clear() {
+            Arrays.fill(mCounts, 0);
+            mCount = 0;
+            mTotalNanos = 0;
+            mMaxNanos = 0;
+        }
+
+        public void print(PrintWriter writer, String label) {
+            if (mCount == 0) {
+                return;
+            }
+
+            writer.print(label + ": count=" + mCount + " avg=" + (mTotalNanos / mCount / 1000)
+                    + "us max=" + (mMaxNanos / 1000) + "us");
+            for (int i = 0; i < mCounts.length; i++) {
+                if (mCounts[i] == 0) {
+                    continue;
+                }
+                final String range = (i < BUCKET_LIMITS_MILLIS.length)
+                        ? "<" + BUCKET_LIMITS_MILLIS[i] + "ms"
+                        : ">=" + BUCKET_LIMITS_MILLIS[i - 1] + "ms";
+                writer.print(" " + range + "=" + mCounts[i]);
+            }
+            writer.println();
+        }
+    }
+}
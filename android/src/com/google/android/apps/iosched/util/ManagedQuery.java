@@ -0,0 +1,252 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.iosched.util;
+
+import com.google.android.apps.iosched.util.NotifyingAsyncQueryHandler.AsyncQueryListener;
+
+import android.app.Activity;
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+
+import java.util.ArrayList;
+
+/**
+ * Background query that reloads itself when observed content changes,
+ * replacing {@link Activity#startManagingCursor(Cursor)} and
+ * {@link Cursor#requery()}, which both run queries on the UI thread.
+ * <p>
+ * Queries only run while the query is both started, following
+ * {@code onResume()} and {@code onPause()} of its owner, and visible, such
+ * as when its owner is in the current tab. Change notifications are
+ * debounced, and changes seen while inactive cause one reload once active
+ * again. Results are delivered on the UI thread to the given
+ * {@link AsyncQueryListener}, and only while active; the listener then owns
+ * the {@link Cursor}.
+ */
+public class ManagedQuery implements AsyncQueryListener {
+    /** Delay after the last change notification before reloading. */
+    private static final long RELOAD_DELAY_MILLIS = 300;
+
+    private static final int TOKEN_QUERY = 0x1;
+
+    private final ContentResolver mResolver;
+    private final NotifyingAsyncQueryHandler mHandler;
+    private final AsyncQueryListener mListener;
+    private final Handler mMessageQueueHandler = new Handler();
+    private final ArrayList<Uri> mObservedUris = Lists.newArrayList();
+
+    private int mToken;
+    private Object mCookie;
+    private Uri mUri;
+    private String[] mProjection;
+    private String mSelection;
+    private String[] mSelectionArgs;
+    private String mOrderBy;
+
+    /** Incremented for every query started, to drop results that lost a race. */
+    private int mGeneration = 0;
+
+    private boolean mStarted = false;
+    private boolean mVisible = true;
+    private boolean mObserving = false;
+    private boolean mDirty = false;
+    private boolean mReloadScheduled = false;
+
+    /** Results that completed while inactive, for the current arguments. */
+    private Cursor mPendingCursor;
+
+    public ManagedQuery(ContentResolver resolver, AsyncQueryListener listener) {
+        mResolver = resolver;
+        mHandler = new NotifyingAsyncQueryHandler(resolver, this);
+        mListener = listener;
+    }
+
+    /**
+     * Reload whenever content under the given {@link Uri} changes, including
+     * its descendants. Takes effect on the next {@link #start()}.
+     */
+    public void observe(Uri uri) {
+        mObservedUris.add(uri);
+    }
+
+    /**
+     * Set the query to run, with arguments as passed to
+     * {@link NotifyingAsyncQueryHandler#startQuery}, cancelling any query
+     * still running for previous arguments. Nothing is loaded until
+     * {@link #forceLoad()}.
+     */
+    public void setQuery(int token, Object cookie, Uri uri, String[] projection,
+            String selection, String[] selectionArgs, String orderBy) {
+        cancel();
+        mToken = token;
+        mCookie = cookie;
+        mUri = uri;
+        mProjection = projection;
+        mSelection = selection;
+        mSelectionArgs = selectionArgs;
+        mOrderBy = orderBy;
+    }
+
+    /**
+     * Load the current query in the background now if active, or as soon as
+     * it becomes active otherwise.
+     */
+    public void forceLoad() {
+        if (mUri == null) {
+            return;
+        }
+
+        cancelScheduledReload();
+        if (!isActive()) {
+            mDirty = true;
+            return;
+        }
+
+        mDirty = false;
+        mHandler.cancelOperation(TOKEN_QUERY);
+        mHandler.startQuery(TOKEN_QUERY, ++mGeneration, mUri, mProjection, mSelection,
+                mSelectionArgs, mOrderBy);
+    }
+
+    /** Forget the current query, cancelling it and dropping undelivered results. */
+    public void cancel() {
+        mGeneration++;
+        mHandler.cancelOperation(TOKEN_QUERY);
+        cancelScheduledReload();
+        mDirty = false;
+        closePendingCursor();
+        mUri = null;
+    }
+
+    /** Call from {@code onResume()} of the owner. */
+    public void start() {
+        if (!mObserving) {
+            for (Uri uri : mObservedUris) {
+                mResolver.registerContentObserver(uri, true, mObserver);
+            }
+            mObserving = true;
+        }
+        mStarted = true;
+        onActiveChanged();
+    }
+
+    /** Call from {@code onPause()} of the owner. */
+    public void stop() {
+        mStarted = false;
+        onActiveChanged();
+    }
+
+    /**
+     * Set whether the owner is visible, such as when it's in the current tab.
+     * Defaults to visible.
+     */
+    public void setVisible(boolean visible) {
+        mVisible = visible;
+        onActiveChanged();
+    }
+
+    /** Call from {@code onDestroy()} of the owner. */
+    public void destroy() {
+        cancel();
+        mStarted = false;
+        if (mObserving) {
+            mResolver.unregisterContentObserver(mObserver);
+            mObserving = false;
+        }
+    }
+
+    public boolean isActive() {
+        return mStarted && mVisible;
+    }
+
+    private void onActiveChanged() {
+        if (!isActive()) {
+            // Hold any scheduled reload until active again
+            if (mReloadScheduled) {
+                cancelScheduledReload();
+                mDirty = true;
+            }
+            return;
+        }
+
+        if (mPendingCursor != null) {
+            final Cursor cursor = mPendingCursor;
+            mPendingCursor = null;
+            mListener.onQueryComplete(mToken, mCookie, cursor);
+        }
+        if (mDirty) {
+            forceLoad();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void onQueryComplete(int token, Object cookie, Cursor cursor) {
+        if (!((Integer) cookie).equals(mGeneration)) {
+            // Results for arguments that have since been replaced
+            if (cursor != null) {
+                cursor.close();
+            }
+            return;
+        }
+
+        if (isActive()) {
+            mListener.onQueryComplete(mToken, mCookie, cursor);
+        } else {
+            closePendingCursor();
+            mPendingCursor = cursor;
+        }
+    }
+
+    private void cancelScheduledReload() {
+        mMessageQueueHandler.removeCallbacks(mReloadRunnable);
+        mReloadScheduled = false;
+    }
+
+    private void closePendingCursor() {
+        if (mPendingCursor != null) {
+            mPendingCursor.close();
+            mPendingCursor = null;
+        }
+    }
+
+    private ContentObserver mObserver = new ContentObserver(mMessageQueueHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            if (mUri == null) {
+                return;
+            }
+
+            if (isActive()) {
+                // Restart the delay, so a burst of changes reloads only once
+                mMessageQueueHandler.removeCallbacks(mReloadRunnable);
+                mMessageQueueHandler.postDelayed(mReloadRunnable, RELOAD_DELAY_MILLIS);
+                mReloadScheduled = true;
+            } else {
+                mDirty = true;
+            }
+        }
+    };
+
+    private Runnable mReloadRunnable = new Runnable() {
+        public void run() {
+            forceLoad();
+        }
+    };
+}
@@ -22,8 +22,14 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.PriorityQueue;
 
 /**
  * Slightly more abstract {@link AsyncQueryHandler} that helps keep a
@@ -32,11 +38,33 @@ import java.lang.ref.WeakReference;
  * <p>
  * This pattern can be used to perform background queries without leaking
  * {@link Context} objects.
+ * <p>
+ * Unlike {@link AsyncQueryHandler}, which runs every operation in arrival
+ * order, queries run on a shared worker in order of {@link #setPriority}, so
+ * queries for visible UI jump ahead of prefetching. A query identical to one
+ * still pending from the same handler replaces it, keeping its place in line.
+ * Set {@code log.tag.AsyncQuery} to {@code VERBOSE} to log how long each
+ * query waited and ran.
  *
  * @hide pending API council review
  */
 public class NotifyingAsyncQueryHandler extends AsyncQueryHandler {
+    private static final String TAG = "AsyncQuery";
+
+    /** Priority for queries backing visible UI. */
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    /** Priority for speculative queries, such as prefetching. */
+    public static final int PRIORITY_LOW = 2;
+
+    private static QueryWorker sWorker;
+
+    private final ContentResolver mResolver;
     private WeakReference<AsyncQueryListener> mListener;
+    private int mPriority = PRIORITY_NORMAL;
+
+    /** Queries started but not yet delivered. Only touched on the UI thread. */
+    private final ArrayList<QueryRequest> mOutstanding = Lists.newArrayList();
 
     /**
      * Interface to listen for completed query operations.
@@ -47,9 +75,19 @@ public class NotifyingAsyncQueryHandler extends AsyncQueryHandler {
 
     public NotifyingAsyncQueryHandler(ContentResolver resolver, AsyncQueryListener listener) {
         super(resolver);
+        mResolver = resolver;
         setQueryListener(listener);
     }
 
+    /**
+     * Set the priority of queries started from now on, one of
+     * {@link #PRIORITY_HIGH}, {@link #PRIORITY_NORMAL} or
+     * {@link #PRIORITY_LOW}. Defaults to {@link #PRIORITY_NORMAL}.
+     */
+    public void setPriority(int priority) {
+        mPriority = priority;
+    }
+
     /**
      * Assign the given {@link AsyncQueryListener} to receive query events from
      * asynchronous calls. Will replace any existing listener.
@@ -106,6 +144,62 @@ public class NotifyingAsyncQueryHandler extends AsyncQueryHandler {
         startQuery(-1, null, uri, projection, selection, selectionArgs, orderBy);
     }
 
+    /**
+     * Queue an asynchronous query on the shared worker at the current
+     * priority. When finished,
+     * {@link AsyncQueryListener#onQueryComplete(int, Object, Cursor)} is called
+     * if a valid {@link AsyncQueryListener} is present.
+     */
+    @Override
+    public void startQuery(int token, Object cookie, Uri uri, String[] projection,
+            String selection, String[] selectionArgs, String orderBy) {
+        final QueryRequest request = new QueryRequest(this, mPriority, token, cookie, uri,
+                projection, selection, selectionArgs, orderBy);
+        final QueryRequest replaced = getWorker().enqueue(request);
+        if (replaced != null) {
+            mOutstanding.remove(replaced);
+        }
+        mOutstanding.add(request);
+    }
+
+    /**
+     * Cancel operations with the given token that haven't completed yet.
+     * Results of a query already running are dropped once it finishes.
+     */
+    @Override
+    public void cancelOperation(int token) {
+        super.cancelOperation(token);
+        cancelOutstanding(token, null);
+    }
+
+    /**
+     * Cancel queries started with the given cookie that haven't completed
+     * yet, whatever their token.
+     */
+    public void cancelOperationsByCookie(Object cookie) {
+        cancelOutstanding(0, cookie);
+    }
+
+    private void cancelOutstanding(int token, Object cookie) {
+        getWorker().cancel(this, token, cookie);
+        final Iterator<QueryRequest> iterator = mOutstanding.iterator();
+        while (iterator.hasNext()) {
+            final QueryRequest request = iterator.next();
+            if (request.matches(this, token, cookie)) {
+                request.mCancelled = true;
+                iterator.remove();
+            }
+        }
+    }
+
+    private static synchronized QueryWorker getWorker() {
+        if (sWorker == null) {
+            sWorker = new QueryWorker();
+            sWorker.start();
+        }
+        return sWorker;
+    }
+
     /**
      * Begin an asynchronous update with the given arguments.
      */
@@ -131,4 +225,177 @@ public class NotifyingAsyncQueryHandler extends AsyncQueryHandler {
             cursor.close();
         }
     }
+
+    /**
+     * Query waiting on, or running on, the {@link QueryWorker}.
+     */
+    private static class QueryRequest implements Comparable<QueryRequest> {
+        private final NotifyingAsyncQueryHandler mHandler;
+        private final int mToken;
+        private final Object mCookie;
+        private final Uri mUri;
+        private final String[] mProjection;
+        private final String mSelection;
+        private final String[] mSelectionArgs;
+        private final String mOrderBy;
+
+        private int mPriority;
+        private long mSequence;
+        private long mQueuedTime;
+
+        /** Only touched on the UI thread. */
+        private boolean mCancelled = false;
+
+        public QueryRequest(NotifyingAsyncQueryHandler handler, int priority, int token,
+                Object cookie, Uri uri, String[] projection, String selection,
+                String[] selectionArgs, String orderBy) {
+            mHandler = handler;
+            mPriority = priority;
+            mToken = token;
+            mCookie = cookie;
+            mUri = uri;
+            mProjection = projection;
+            mSelection = selection;
+            mSelectionArgs = selectionArgs;
+            mOrderBy = orderBy;
+        }
+
+        public boolean isSameQuery(QueryRequest other) {
+            return mHandler == other.mHandler && mToken == other.mToken
+                    && mUri.equals(other.mUri) && Arrays.equals(mProjection, other.mProjection)
+                    && equals(mSelection, other.mSelection)
+                    && Arrays.equals(mSelectionArgs, other.mSelectionArgs)
+                    && equals(mOrderBy, other.mOrderBy);
+        }
+
+        public boolean matches(NotifyingAsyncQueryHandler handler, int token, Object cookie) {
+            if (mHandler != handler) {
+                return false;
+            }
+            return (cookie != null) ? cookie.equals(mCookie) : mToken == token;
+        }
+
+        public int compareTo(QueryRequest another) {
+            if (mPriority != another.mPriority) {
+                return mPriority < another.mPriority ? -1 : 1;
+            }
+            return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+        }
+
+        /** Run this query on the worker, then deliver its results on the UI thread. */
+        public void execute() {
+            final long startTime = SystemClock.uptimeMillis();
+            Cursor cursor = null;
+            try {
+                cursor = mHandler.mResolver.query(mUri, mProjection, mSelection, mSelectionArgs,
+                        mOrderBy);
+                if (cursor != null) {
+                    // Fill the cursor window here rather than on the UI thread
+                    cursor.getCount();
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Exception thrown during handling query", e);
+                if (cursor != null) {
+                    cursor.close();
+                }
+                cursor = null;
+            }
+
+            if (Log.isLoggable(TAG, Log.VERBOSE)) {
+                final long endTime = SystemClock.uptimeMillis();
+                Log.v(TAG, "Query " + mUri + " at priority " + mPriority + " waited "
+                        + (startTime - mQueuedTime) + "ms, ran " + (endTime - startTime) + "ms");
+            }
+
+            final Cursor result = cursor;
+            mHandler.post(new Runnable() {
+                public void run() {
+                    mHandler.mOutstanding.remove(QueryRequest.this);
+                    if (mCancelled) {
+                        if (result != null) {
+                            result.close();
+                        }
+                        return;
+                    }
+                    mHandler.onQueryComplete(mToken, mCookie, result);
+                }
+            });
+        }
+
+        private static boolean equals(String a, String b) {
+            return (a == null) ? (b == null) : a.equals(b);
+        }
+    }
+
+    /**
+     * Single thread shared by all handlers, running queued queries in order
+     * of priority, then of arrival.
+     */
+    private static class QueryWorker extends Thread {
+        private final PriorityQueue<QueryRequest> mQueue = new PriorityQueue<QueryRequest>();
+        private long mNextSequence = 0;
+
+        public QueryWorker() {
+            super(TAG);
+            setDaemon(true);
+        }
+
+        /**
+         * Queue the given query, returning any identical query it replaced.
+         */
+        public synchronized QueryRequest enqueue(QueryRequest request) {
+            request.mSequence = mNextSequence++;
+            request.mQueuedTime = SystemClock.uptimeMillis();
+
+            // Replace an identical query still waiting, keeping its place in line
+            QueryRequest replaced = null;
+            final Iterator<QueryRequest> iterator = mQueue.iterator();
+            while (iterator.hasNext()) {
+                final QueryRequest pending = iterator.next();
+                if (pending.isSameQuery(request)) {
+                    iterator.remove();
+                    request.mPriority = Math.min(request.mPriority, pending.mPriority);
+                    request.mSequence = pending.mSequence;
+                    request.mQueuedTime = pending.mQueuedTime;
+                    replaced = pending;
+                    break;
+                }
+            }
+
+            mQueue.add(request);
+            notify();
+            return replaced;
+        }
+
+        /**
+         * Drop waiting queries matching the given cookie, or the given token
+         * when the cookie is {@code null}.
+         */
+        public synchronized void cancel(NotifyingAsyncQueryHandler handler, int token,
+                Object cookie) {
+            final Iterator<QueryRequest> iterator = mQueue.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().matches(handler, token, cookie)) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final QueryRequest request;
+                synchronized (this) {
+                    while (mQueue.isEmpty()) {
+                        try {
+                            wait();
+                        } catch (InterruptedException ignored) {
+                        }
+                    }
+                    request = mQueue.poll();
+                }
+                request.execute();
+            }
+        }
+    }
 }
@@ -33,7 +33,9 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.text.format.Time;
 
+import java.io.BufferedInputStream;
 import java.io.InputStream;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Set;
 import java.util.regex.Pattern;
@@ -64,8 +66,29 @@ public class ParserUtils {
     /** Used to split a comma-separated string. */
     private static final Pattern sCommaPattern = Pattern.compile("\\s*,\\s*");
 
+    /** Buffer size used when reading local assets, which are already in memory or on disk. */
+    public static final int BUFFER_SIZE_LOCAL = 8 * 1024;
+    /** Buffer size used when reading remote responses, which arrive in larger bursts. */
+    public static final int BUFFER_SIZE_REMOTE = 16 * 1024;
+
+    /**
+     * Maximum number of idle {@link XmlPullParser} kept for reuse by each
+     * thread. Handlers may nest, so more than one parser can be active.
+     */
+    private static final int MAX_POOLED_PARSERS = 2;
+
     private static Time sTime = new Time();
-    private static XmlPullParserFactory sFactory;
+
+    /**
+     * {@link XmlPullParserFactory} isn't thread safe, so each thread keeps its
+     * own factory along with any idle parsers ready for reuse.
+     */
+    private static final ThreadLocal<ParserPool> sParserPool = new ThreadLocal<ParserPool>() {
+        @Override
+        protected ParserPool initialValue() {
+            return new ParserPool();
+        }
+    };
 
     /**
      * Sanitize the given string to be {@link Uri} safe for building
@@ -101,14 +124,34 @@ public class ParserUtils {
      * {@link InputStream} assigned to it.
      */
     public static XmlPullParser newPullParser(InputStream input) throws XmlPullParserException {
-        if (sFactory == null) {
-            sFactory = XmlPullParserFactory.newInstance();
-        }
-        final XmlPullParser parser = sFactory.newPullParser();
+        final XmlPullParser parser = sParserPool.get().newPullParser();
         parser.setInput(input, null);
         return parser;
     }
 
+    /**
+     * Return a {@link XmlPullParser} with the given {@link InputStream}
+     * assigned to it through a buffer of the requested size, reusing an idle
+     * parser owned by the calling thread when available. Callers must pass
+     * the parser to {@link #recyclePullParser(XmlPullParser)} when finished,
+     * and remain responsible for closing the {@link InputStream}.
+     */
+    public static XmlPullParser obtainPullParser(InputStream input, int bufferSize)
+            throws XmlPullParserException {
+        final XmlPullParser parser = sParserPool.get().obtain();
+        parser.setInput(new BufferedInputStream(input, bufferSize), null);
+        return parser;
+    }
+
+    /**
+     * Release a {@link XmlPullParser} returned from
+     * {@link #obtainPullParser(InputStream, int)}, detaching its input so it
+     * can be reused by later documents parsed on the calling thread.
+     */
+    public static void recyclePullParser(XmlPullParser parser) {
+        sParserPool.get().recycle(parser);
+    }
+
     /**
      * Parse the given string as a RFC 3339 timestamp, returning the value as
      * milliseconds since the epoch.
@@ -205,6 +248,44 @@ public class ParserUtils {
         //}
     }
 
+    /**
+     * Per-thread {@link XmlPullParserFactory} and set of idle
+     * {@link XmlPullParser} instances. Only touched by its owning thread.
+     */
+    private static class ParserPool {
+        private XmlPullParserFactory mFactory;
+        private final ArrayList<XmlPullParser> mIdle = new ArrayList<XmlPullParser>(
+                MAX_POOLED_PARSERS);
+
+        public XmlPullParser newPullParser() throws XmlPullParserException {
+            if (mFactory == null) {
+                mFactory = XmlPullParserFactory.newInstance();
+            }
+            return mFactory.newPullParser();
+        }
+
+        public XmlPullParser obtain() throws XmlPullParserException {
+            final int size = mIdle.size();
+            if (size > 0) {
+                return mIdle.remove(size - 1);
+            }
+            return newPullParser();
+        }
+
+        public void recycle(XmlPullParser parser) {
+            try {
+                // Drop reference to finished stream before pooling
+                parser.setInput((Reader) null);
+            } catch (XmlPullParserException e) {
+                // Parser refused to reset, so let it be collected instead
+                return;
+            }
+            if (mIdle.size() < MAX_POOLED_PARSERS && !mIdle.contains(parser)) {
+                mIdle.add(parser);
+            }
+        }
+    }
+
     /** XML tag constants used by the Atom standard. */
     public interface AtomTags {
         String ENTRY = "entry";
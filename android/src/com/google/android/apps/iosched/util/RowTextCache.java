@@ -0,0 +1,55 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.iosched.util;
+
+import android.database.DataSetObserver;
+import android.widget.Adapter;
+
+import java.util.HashMap;
+
+/**
+ * Memoizes text that is expensive to build for list rows, such as formatted
+ * times or styled snippets, keyed by row id. Register with an
+ * {@link Adapter} through {@link Adapter#registerDataSetObserver}, so that
+ * the cache is dropped whenever the underlying data changes.
+ */
+public class RowTextCache extends DataSetObserver {
+    private final HashMap<Long, CharSequence> mTexts = Maps.newHashMap();
+
+    /** Return text cached for the given row, or {@code null} if missing. */
+    public CharSequence get(long id) {
+        return mTexts.get(id);
+    }
+
+    public void put(long id, CharSequence text) {
+        mTexts.put(id, text);
+    }
+
+    public void clear() {
+        mTexts.clear();
+    }
+
+    @Override
+    public void onChanged() {
+        clear();
+    }
+
+    @Override
+    public void onInvalidated() {
+        clear();
+    }
+}
@@ -18,6 +18,7 @@
  * Modifications:
  * -Imported from AOSP frameworks/base/core/java/com/android/internal/content
  * -Changed package name
+ * -Added getTable()
  */
 
 package com.google.android.apps.iosched.util;
@@ -90,6 +91,13 @@ public class SelectionBuilder {
         return this;
     }
 
+    /**
+     * Return the table targeted by the current internal state.
+     */
+    public String getTable() {
+        return mTable;
+    }
+
     private void assertTable() {
         if (mTable == null) {
             throw new IllegalStateException("Table not specified");
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.iosched.util;
+
+import com.google.android.apps.iosched.provider.ScheduleContract;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.BaseColumns;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Process-wide, in-memory copy of every {@link ScheduleContract.Tracks} row
+ * along with its session and vendor counts, so screens showing tracks can
+ * read them synchronously instead of each querying the provider.
+ * <p>
+ * All tracks are loaded with a single background query, and loaded again
+ * only after content changes, once the changes settle and while someone has
+ * registered {@link Callbacks}. Reloads are held while a sync is running, so
+ * a sync causes at most one reload. Except for {@link #holdReloads()} and
+ * {@link #releaseReloads()}, only use from the UI thread.
+ */
+public class TrackCatalog implements NotifyingAsyncQueryHandler.AsyncQueryListener {
+    private static final String TAG = "TrackCatalog";
+
+    /** Delay after the last change notification before reloading. */
+    private static final long RELOAD_DELAY_MILLIS = 300;
+
+    private static TrackCatalog sInstance;
+
+    /** Single {@link ScheduleContract.Tracks} row. */
+    public static class Track {
+        private final long mId;
+        private final String mTrackId;
+        private final String mName;
+        private final String mAbstract;
+        private final int mColor;
+        private final int mSessionsCount;
+        private final int mVendorsCount;
+
+        private Track(Cursor cursor) {
+            mId = cursor.getLong(TracksQuery._ID);
+            mTrackId = cursor.getString(TracksQuery.TRACK_ID);
+            mName = cursor.getString(TracksQuery.TRACK_NAME);
+            mAbstract = cursor.getString(TracksQuery.TRACK_ABSTRACT);
+            mColor = cursor.getInt(TracksQuery.TRACK_COLOR);
+            mSessionsCount = cursor.getInt(TracksQuery.SESSIONS_COUNT);
+            mVendorsCount = cursor.getInt(TracksQuery.VENDORS_COUNT);
+        }
+
+        public long getId() {
+            return mId;
+        }
+
+        public String getTrackId() {
+            return mTrackId;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public String getAbstract() {
+            return mAbstract;
+        }
+
+        public int getColor() {
+            return mColor;
+        }
+
+        public int getSessionsCount() {
+            return mSessionsCount;
+        }
+
+        public int getVendorsCount() {
+            return mVendorsCount;
+        }
+    }
+
+    /** Receives notice of new catalog contents, on the UI thread. */
+    public interface Callbacks {
+        void onTracksChanged();
+    }
+
+    private final ContentResolver mResolver;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ArrayList<Callbacks> mCallbacks = Lists.newArrayList();
+    private NotifyingAsyncQueryHandler mHandler;
+
+    private List<Track> mTracks;
+    private List<Track> mTracksWithSessions;
+    private List<Track> mTracksWithVendors;
+    private HashMap<String, Track> mTracksById = Maps.newHashMap();
+
+    private boolean mStale = true;
+    private boolean mLoading = false;
+    private int mHoldCount = 0;
+
+    /**
+     * Returns the global {@link TrackCatalog}, creating it if necessary. Safe
+     * to call from any thread.
+     */
+    public static synchronized TrackCatalog getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TrackCatalog(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private TrackCatalog(Context context) {
+        mResolver = context.getContentResolver();
+
+        // Track counts also depend on sessions and vendors
+        mResolver.registerContentObserver(ScheduleContract.Tracks.CONTENT_URI, true, mObserver);
+        mResolver.registerContentObserver(ScheduleContract.Sessions.CONTENT_URI, true, mObserver);
+        mResolver.registerContentObserver(ScheduleContract.Vendors.CONTENT_URI, true, mObserver);
+    }
+
+    /** Whether tracks have been loaded at least once. */
+    public boolean isLoaded() {
+        return mTracks != null;
+    }
+
+    /** All tracks, sorted by name, or {@code null} if not yet loaded. */
+    public List<Track> getTracks() {
+        return mTracks;
+    }
+
+    /** Tracks with at least one session, or {@code null} if not yet loaded. */
+    public List<Track> getTracksWithSessions() {
+        return mTracksWithSessions;
+    }
+
+    /** Tracks with at least one vendor, or {@code null} if not yet loaded. */
+    public List<Track> getTracksWithVendors() {
+        return mTracksWithVendors;
+    }
+
+    /** The track with the given id, or {@code null} if unknown or not yet loaded. */
+    public Track getTrack(String trackId) {
+        return mTracksById.get(trackId);
+    }
+
+    /**
+     * Notify the given {@link Callbacks} of new contents until unregistered,
+     * loading tracks now if missing or out of date. Current contents can be
+     * read right away.
+     */
+    public void registerCallbacks(Callbacks callbacks) {
+        if (!mCallbacks.contains(callbacks)) {
+            mCallbacks.add(callbacks);
+        }
+        if (mStale) {
+            mMainHandler.removeCallbacks(mReloadRunnable);
+            load();
+        }
+    }
+
+    public void unregisterCallbacks(Callbacks callbacks) {
+        mCallbacks.remove(callbacks);
+    }
+
+    /**
+     * Hold reloads, such as while a sync is writing to the provider, until
+     * a matching {@link #releaseReloads()}. Safe to call from any thread.
+     */
+    public void holdReloads() {
+        mMainHandler.post(new Runnable() {
+            public void run() {
+                mHoldCount++;
+            }
+        });
+    }
+
+    /**
+     * Release a hold taken by {@link #holdReloads()}, reloading if content
+     * changed meanwhile. Safe to call from any thread.
+     */
+    public void releaseReloads() {
+        mMainHandler.post(new Runnable() {
+            public void run() {
+                mHoldCount--;
+                if (mHoldCount == 0 && mStale && !mCallbacks.isEmpty()) {
+                    load();
+                }
+            }
+        });
+    }
+
+    private void load() {
+        if (mHoldCount > 0 || mLoading) {
+            // Reloaded once the hold is released or the current load completes
+            return;
+        }
+
+        if (mHandler == null) {
+            mHandler = new NotifyingAsyncQueryHandler(mResolver, this);
+            mHandler.setPriority(NotifyingAsyncQueryHandler.PRIORITY_HIGH);
+        }
+
+        mStale = false;
+        mLoading = true;
+        mHandler.startQuery(TracksQuery._TOKEN, null, ScheduleContract.Tracks.CONTENT_URI,
+                TracksQuery.PROJECTION, null, null, ScheduleContract.Tracks.DEFAULT_SORT);
+    }
+
+    /** {@inheritDoc} */
+    public void onQueryComplete(int token, Object cookie, Cursor cursor) {
+        mLoading = false;
+        if (cursor == null) {
+            Log.w(TAG, "Couldn't load tracks");
+            mStale = true;
+            return;
+        }
+
+        final ArrayList<Track> tracks = Lists.newArrayList();
+        final ArrayList<Track> tracksWithSessions = Lists.newArrayList();
+        final ArrayList<Track> tracksWithVendors = Lists.newArrayList();
+        final HashMap<String, Track> tracksById = Maps.newHashMap();
+        try {
+            while (cursor.moveToNext()) {
+                final Track track = new Track(cursor);
+                tracks.add(track);
+                if (track.getSessionsCount() > 0) {
+                    tracksWithSessions.add(track);
+                }
+                if (track.getVendorsCount() > 0) {
+                    tracksWithVendors.add(track);
+                }
+                tracksById.put(track.getTrackId(), track);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        mTracks = Collections.unmodifiableList(tracks);
+        mTracksWithSessions = Collections.unmodifiableList(tracksWithSessions);
+        mTracksWithVendors = Collections.unmodifiableList(tracksWithVendors);
+        mTracksById = tracksById;
+
+        // Iterate over a copy, since callbacks may unregister themselves
+        for (Callbacks callbacks : Lists.newArrayList(mCallbacks)) {
+            callbacks.onTracksChanged();
+        }
+
+        if (mStale && !mCallbacks.isEmpty()) {
+            // Content changed while loading
+            scheduleReload();
+        }
+    }
+
+    private void scheduleReload() {
+        // Restart the delay, so a burst of changes reloads only once
+        mMainHandler.removeCallbacks(mReloadRunnable);
+        mMainHandler.postDelayed(mReloadRunnable, RELOAD_DELAY_MILLIS);
+    }
+
+    private ContentObserver mObserver = new ContentObserver(mMainHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            mStale = true;
+            if (!mCallbacks.isEmpty() && !mLoading) {
+                scheduleReload();
+            }
+        }
+    };
+
+    private Runnable mReloadRunnable = new Runnable() {
+        public void run() {
+            load();
+        }
+    };
+
+    /** {@link ScheduleContract.Tracks} query parameters. */
+    private interface TracksQuery {
+        int _TOKEN = 0x1;
+
+        String[] PROJECTION = {
+                BaseColumns._ID,
+                ScheduleContract.Tracks.TRACK_ID,
+                ScheduleContract.Tracks.TRACK_NAME,
+                ScheduleContract.Tracks.TRACK_ABSTRACT,
+                ScheduleContract.Tracks.TRACK_COLOR,
+                ScheduleContract.Tracks.SESSIONS_COUNT,
+                ScheduleContract.Tracks.VENDORS_COUNT,
+        };
+
+        int _ID = 0;
+        int TRACK_ID = 1;
+        int TRACK_NAME = 2;
+        int TRACK_ABSTRACT = 3;
+        int TRACK_COLOR = 4;
+        int SESSIONS_COUNT = 5;
+        int VENDORS_COUNT = 6;
+    }
+}
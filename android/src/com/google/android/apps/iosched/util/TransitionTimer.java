@@ -0,0 +1,125 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.iosched.util;
+
+import com.google.android.apps.iosched.provider.ScheduleContract;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+
+/**
+ * Runs a callback on the UI thread whenever the sessions happening now
+ * change, as a block starts or ends. Instead of polling, the next
+ * {@link ScheduleContract.Blocks#TRANSITION_TIME} is looked up in the
+ * background, and the callback is posted for that time.
+ */
+public class TransitionTimer implements NotifyingAsyncQueryHandler.AsyncQueryListener {
+    /** Padding after each transition, to account for network time differences. */
+    private static final long PADDING_MILLIS = 5000;
+
+    private final Context mContext;
+    private final Runnable mCallback;
+    private final NotifyingAsyncQueryHandler mQueryHandler;
+    private final Handler mMessageQueueHandler = new Handler();
+    private boolean mStarted = false;
+
+    /** Last transition time looked up, or {@code 0} if none is known. */
+    private long mTransitionTime = 0;
+
+    public TransitionTimer(Context context, Runnable callback) {
+        mContext = context.getApplicationContext();
+        mCallback = callback;
+        mQueryHandler = new NotifyingAsyncQueryHandler(mContext.getContentResolver(), this);
+    }
+
+    /**
+     * Start waiting for the next transition, such as from {@code onResume()}.
+     * Runs the callback right away when a transition passed while stopped.
+     */
+    public void start() {
+        if (mStarted) {
+            return;
+        }
+        mStarted = true;
+        if (mTransitionTime != 0 && UIUtils.getCurrentTime(mContext) >= mTransitionTime) {
+            mTransitionTime = 0;
+            mCallback.run();
+        }
+        scheduleNext();
+    }
+
+    /** Stop waiting for transitions, such as from {@code onPause()}. */
+    public void stop() {
+        mStarted = false;
+        mQueryHandler.cancelOperation(TransitionQuery._TOKEN);
+        mMessageQueueHandler.removeCallbacks(mTransitionRunnable);
+    }
+
+    private void scheduleNext() {
+        mQueryHandler.cancelOperation(TransitionQuery._TOKEN);
+        mQueryHandler.startQuery(TransitionQuery._TOKEN, null,
+                ScheduleContract.Blocks.buildNextTransitionUri(
+                        UIUtils.getCurrentTime(mContext)),
+                TransitionQuery.PROJECTION, null, null, null);
+    }
+
+    /** {@inheritDoc} */
+    public void onQueryComplete(int token, Object cookie, Cursor cursor) {
+        if (cursor == null) {
+            return;
+        }
+
+        try {
+            if (!mStarted || !cursor.moveToFirst()
+                    || cursor.isNull(TransitionQuery.TRANSITION_TIME)) {
+                // No more transitions
+                return;
+            }
+
+            mTransitionTime = cursor.getLong(TransitionQuery.TRANSITION_TIME);
+            final long delay = mTransitionTime - UIUtils.getCurrentTime(mContext);
+            mMessageQueueHandler.removeCallbacks(mTransitionRunnable);
+            mMessageQueueHandler.postDelayed(mTransitionRunnable,
+                    Math.max(delay, 0) + PADDING_MILLIS);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Runnable mTransitionRunnable = new Runnable() {
+        public void run() {
+            if (!mStarted) {
+                return;
+            }
+            mTransitionTime = 0;
+            mCallback.run();
+            scheduleNext();
+        }
+    };
+
+    /** {@link ScheduleContract.Blocks} transition query parameters. */
+    private interface TransitionQuery {
+        int _TOKEN = 0x1;
+
+        String[] PROJECTION = {
+                ScheduleContract.Blocks.TRANSITION_TIME,
+        };
+
+        int TRANSITION_TIME = 0;
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.iosched.util;
+
+import com.google.android.apps.iosched.provider.ScheduleContract;
+import com.google.android.apps.iosched.provider.ScheduleContract.Rooms;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.RectF;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+/**
+ * Venue floor plans bundled as assets, drawn by
+ * {@link com.google.android.apps.iosched.ui.widget.VenueMapView}. The
+ * {@link #ASSET_VENUE} file describes the map size and tiling, and outlines
+ * each room by its {@link ScheduleContract.Rooms#ROOM_ID}:
+ *
+ * <pre>
+ * { "width": 2048, "height": 1536, "tileSize": 256, "levels": 4,
+ *   "floors": [ { "name": "Level 1",
+ *                 "rooms": [ { "id": "room1", "bounds": [ 40, 60, 300, 420 ] } ] } ] }
+ * </pre>
+ *
+ * Outlines are only kept when their id names a room in {@link Rooms}, or a
+ * track whose sandbox area they mark. Room bounds are in pixels of the full
+ * size map. Tiles for each floor and zoom level are PNG files named by
+ * {@link #getTilePath}, where level {@code levels - 1} is the full size map
+ * and each lower level is half the size of the next.
+ * <p>
+ * Builds without these assets show the web map instead.
+ * <p>
+ * Reading the map touches assets, so use {@link #load} from the main thread.
+ */
+public class VenueMap {
+    private static final String TAG = "VenueMap";
+
+    private static final String ASSET_DIR = "map";
+    private static final String ASSET_VENUE = ASSET_DIR + "/venue.json";
+
+    private static VenueMap sInstance;
+    private static boolean sLoaded = false;
+
+    private int mWidth;
+    private int mHeight;
+    private int mTileSize;
+    private int mLevels;
+    private final ArrayList<String> mFloorNames = Lists.newArrayList();
+    private final ArrayList<Room> mRooms = Lists.newArrayList();
+    private final HashMap<String, Room> mRoomsById = Maps.newHashMap();
+
+    /** A room outline on one floor of the map. */
+    public static class Room {
+        private final String mRoomId;
+        private final int mFloor;
+        private final RectF mBounds;
+
+        private Room(String roomId, int floor, RectF bounds) {
+            mRoomId = roomId;
+            mFloor = floor;
+            mBounds = bounds;
+        }
+
+        public String getRoomId() {
+            return mRoomId;
+        }
+
+        public int getFloor() {
+            return mFloor;
+        }
+
+        /** Bounds in pixels of the full size map. */
+        public RectF getBounds() {
+            return mBounds;
+        }
+    }
+
+    /** Receives the map read by {@link VenueMap#load}. */
+    public static interface Callbacks {
+        /**
+         * Called on the main thread with the bundled venue map, or
+         * {@code null} when this build doesn't include one.
+         */
+        void onVenueMapLoaded(VenueMap venueMap);
+    }
+
+    private VenueMap() {
+    }
+
+    /**
+     * Return the bundled venue map, or {@code null} when this build doesn't
+     * include one, in which case the web map should be shown instead. The
+     * first call reads it from assets, so don't call this method from the
+     * main (UI) thread.
+     */
+    public static synchronized VenueMap getInstance(Context context) {
+        if (!sLoaded) {
+            final VenueMap map = read(context);
+            if (map != null) {
+                final HashSet<String> roomIds = queryRoomIds(context);
+                if (roomIds.isEmpty()) {
+                    // Outlines can't be checked before rooms are loaded, so try again later
+                    return null;
+                }
+                map.retainKnownRooms(roomIds);
+            }
+            sInstance = map;
+            sLoaded = true;
+        }
+        return sInstance;
+    }
+
+    private static HashSet<String> queryRoomIds(Context context) {
+        final HashSet<String> roomIds = Sets.newHashSet();
+        final Cursor cursor = context.getContentResolver().query(Rooms.CONTENT_URI,
+                new String[] { Rooms.ROOM_ID }, null, null, null);
+        if (cursor == null) return roomIds;
+        try {
+            while (cursor.moveToNext()) {
+                roomIds.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return roomIds;
+    }
+
+    /**
+     * Drop outlines that don't name a known room or a track sandbox area,
+     * since tapping them would open an empty list.
+     */
+    private void retainKnownRooms(HashSet<String> roomIds) {
+        final Iterator<Room> iter = mRooms.iterator();
+        while (iter.hasNext()) {
+            final String roomId = iter.next().getRoomId();
+            if (roomIds.contains(roomId) || ParserUtils.LOCAL_TRACK_IDS.contains(
+                    ParserUtils.translateTrackIdAlias(roomId))) {
+                continue;
+            }
+            Log.w(TAG, "Ignoring outline of unknown room " + roomId);
+            iter.remove();
+            mRoomsById.remove(roomId);
+        }
+    }
+
+    /**
+     * Read the bundled venue map in the background, unless it was already
+     * read, and deliver it to the given callbacks. Only call this method from
+     * the main (UI) thread; cancel the returned task once the callbacks should
+     * no longer be called.
+     */
+    public static AsyncTask<Void, Void, VenueMap> load(Context context,
+            final Callbacks callbacks) {
+        final Context appContext = context.getApplicationContext();
+        return new AsyncTask<Void, Void, VenueMap>() {
+            @Override
+            protected VenueMap doInBackground(Void... params) {
+                return getInstance(appContext);
+            }
+
+            @Override
+            protected void onPostExecute(VenueMap venueMap) {
+                callbacks.onVenueMapLoaded(venueMap);
+            }
+        }.execute();
+    }
+
+    private static VenueMap read(Context context) {
+        InputStream input = null;
+        try {
+            input = context.getAssets().open(ASSET_VENUE);
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+            }
+
+            final JSONObject venue = new JSONObject(output.toString("UTF-8"));
+            final VenueMap map = new VenueMap();
+            map.mWidth = venue.getInt("width");
+            map.mHeight = venue.getInt("height");
+            map.mTileSize = venue.getInt("tileSize");
+            map.mLevels = venue.getInt("levels");
+
+            final JSONArray floors = venue.getJSONArray("floors");
+            for (int floor = 0; floor < floors.length(); floor++) {
+                final JSONObject floorObject = floors.getJSONObject(floor);
+                map.mFloorNames.add(floorObject.getString("name"));
+
+                final JSONArray rooms = floorObject.optJSONArray("rooms");
+                for (int i = 0; rooms != null && i < rooms.length(); i++) {
+                    final JSONObject roomObject = rooms.getJSONObject(i);
+                    final JSONArray bounds = roomObject.getJSONArray("bounds");
+                    final Room room = new Room(roomObject.getString("id"), floor,
+                            new RectF((float) bounds.getDouble(0), (float) bounds.getDouble(1),
+                                    (float) bounds.getDouble(2), (float) bounds.getDouble(3)));
+                    map.mRooms.add(room);
+                    map.mRoomsById.put(room.getRoomId(), room);
+                }
+            }
+
+            if (map.mFloorNames.isEmpty() || map.mLevels < 1 || map.mTileSize < 1) {
+                Log.w(TAG, "Ignoring venue map without floors or tiles");
+                return null;
+            }
+            return map;
+        } catch (FileNotFoundException e) {
+            // No bundled venue map
+        } catch (IOException e) {
+            Log.w(TAG, "Problem reading venue map", e);
+        } catch (JSONException e) {
+            Log.w(TAG, "Problem parsing venue map", e);
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Width of the full size map, in pixels. */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /** Height of the full size map, in pixels. */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getTileSize() {
+        return mTileSize;
+    }
+
+    /** Number of zoom levels, where the last one is the full size map. */
+    public int getLevels() {
+        return mLevels;
+    }
+
+    public int getFloorCount() {
+        return mFloorNames.size();
+    }
+
+    public String getFloorName(int floor) {
+        return mFloorNames.get(floor);
+    }
+
+    /** Scale of the given zoom level, relative to the full size map. */
+    public float getScale(int level) {
+        return 1f / (1 << (mLevels - 1 - level));
+    }
+
+    /** Asset path of the tile at the given column and row of a floor and zoom level. */
+    public String getTilePath(int floor, int level, int col, int row) {
+        return ASSET_DIR + "/" + floor + "/" + level + "/" + col + "_" + row + ".png";
+    }
+
+    /** Return the room with the given {@link ScheduleContract.Rooms#ROOM_ID}, if any. */
+    public Room getRoom(String roomId) {
+        return mRoomsById.get(roomId);
+    }
+
+    /**
+     * Return the room at the given point of a floor, in pixels of the full
+     * size map, or {@code null} if none.
+     */
+    public Room findRoom(int floor, float x, float y) {
+        for (Room room : mRooms) {
+            if (room.mFloor == floor && room.mBounds.contains(x, y)) {
+                return room;
+            }
+        }
+        return null;
+    }
+}
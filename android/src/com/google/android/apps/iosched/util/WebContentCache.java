@@ -0,0 +1,494 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.iosched.util;
+
+import com.google.android.apps.iosched.service.SyncService;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.AsyncTask;
+import android.util.Log;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Offline-first disk cache for remote pages shown in a {@link WebView}.
+ * Cached pages are handed out right away, even when stale, and pages older
+ * than the requested maximum age are revalidated in the background with a
+ * conditional request. New content is only delivered when it changed.
+ * <p>
+ * Pages are loaded into the {@link WebView} with
+ * {@link WebView#loadDataWithBaseURL}, so relative links and resources still
+ * resolve against the original URL. While offline, those resources come from
+ * the {@link WebView} cache. See {@link #bind}.
+ */
+public class WebContentCache {
+    private static final String TAG = "WebContentCache";
+
+    private static final String CACHE_DIR = "web";
+    private static final String SUFFIX_BODY = ".body";
+    private static final String SUFFIX_META = ".meta";
+    private static final String SUFFIX_PART = ".part";
+
+    private static final String META_URL = "url";
+    private static final String META_MIME_TYPE = "mimeType";
+    private static final String META_ENCODING = "encoding";
+    private static final String META_ETAG = "etag";
+    private static final String META_LAST_MODIFIED = "lastModified";
+    private static final String META_FETCHED = "fetched";
+
+    private static final String HEADER_CONTENT_TYPE = "Content-Type";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final String DEFAULT_MIME_TYPE = "text/html";
+    private static final String DEFAULT_ENCODING = "UTF-8";
+
+    private static WebContentCache sInstance;
+
+    private final Context mContext;
+    private final File mCacheDir;
+
+    /** Receives the content of a page loaded by a {@link Binding}, on the main (UI) thread. */
+    private static interface Callbacks {
+        /**
+         * Called with cached content, and again with downloaded content when
+         * revalidating found it changed.
+         */
+        void onContentAvailable(Entry entry);
+
+        /** Called when nothing is cached and the page couldn't be downloaded. */
+        void onContentUnavailable(String url);
+    }
+
+    /** A cached page, along with what's needed to revalidate it. */
+    public static class Entry {
+        private final String mUrl;
+        private final String mMimeType;
+        private final String mEncoding;
+        private final String mETag;
+        private final String mLastModified;
+        private final long mFetchedTime;
+        private final byte[] mData;
+
+        private Entry(String url, String mimeType, String encoding, String eTag,
+                String lastModified, long fetchedTime, byte[] data) {
+            mUrl = url;
+            mMimeType = mimeType;
+            mEncoding = encoding;
+            mETag = eTag;
+            mLastModified = lastModified;
+            mFetchedTime = fetchedTime;
+            mData = data;
+        }
+
+        public String getUrl() {
+            return mUrl;
+        }
+
+        public long getFetchedTime() {
+            return mFetchedTime;
+        }
+
+        /** Whether this page was fetched more than the given time ago. */
+        public boolean isStale(long maxAgeMillis) {
+            final long age = System.currentTimeMillis() - mFetchedTime;
+            return age < 0 || age > maxAgeMillis;
+        }
+
+        /** Show this page in the given {@link WebView}, as if loaded from its URL. */
+        public void loadInto(WebView webView) {
+            String data;
+            try {
+                data = new String(mData, mEncoding);
+            } catch (UnsupportedEncodingException e) {
+                data = new String(mData);
+            }
+            webView.loadDataWithBaseURL(mUrl, data, mMimeType, mEncoding, mUrl);
+        }
+    }
+
+    private WebContentCache(Context context) {
+        mContext = context.getApplicationContext();
+        mCacheDir = new File(mContext.getCacheDir(), CACHE_DIR);
+    }
+
+    public static synchronized WebContentCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WebContentCache(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Show the cached page at the given URL in the given {@link WebView}, then
+     * download it if nothing is cached or the cached page is older than the
+     * given maximum age. Only call this method from the main (UI) thread, once
+     * the {@link WebView} is set up; use the returned {@link Binding} to
+     * refresh the page, and cancel it once the {@link WebView} goes away.
+     */
+    public Binding bind(WebView webView, String url, long maxAgeMillis) {
+        final Binding binding = new Binding(webView, url, maxAgeMillis);
+        binding.load();
+        return binding;
+    }
+
+    /**
+     * Download the page at the given URL in the background, unless a copy
+     * newer than the given maximum age is already cached. Only call this
+     * method from the main (UI) thread.
+     */
+    public void prefetch(String url, long maxAgeMillis) {
+        new LoadTask(url, maxAgeMillis, false, null).execute();
+    }
+
+    /**
+     * Let the given {@link WebView} load page resources from its own cache
+     * while offline, rather than failing to download them.
+     */
+    private static void updateCacheMode(Context context, WebSettings settings) {
+        final ConnectivityManager cm = (ConnectivityManager) context.getSystemService(
+                Context.CONNECTIVITY_SERVICE);
+        final NetworkInfo info = cm.getActiveNetworkInfo();
+        final boolean online = info != null && info.isConnected();
+        settings.setCacheMode(online ? WebSettings.LOAD_DEFAULT
+                : WebSettings.LOAD_CACHE_ELSE_NETWORK);
+    }
+
+    /**
+     * Keeps a {@link WebView} showing the page at one URL, loading it from
+     * the URL directly when nothing is cached and the page couldn't be
+     * downloaded. At most one load is running at a time.
+     */
+    public class Binding {
+        private final WebView mWebView;
+        private final String mUrl;
+        private final long mMaxAgeMillis;
+        private AsyncTask<?, ?, ?> mLoadTask;
+
+        private Binding(WebView webView, String url, long maxAgeMillis) {
+            mWebView = webView;
+            mUrl = url;
+            mMaxAgeMillis = maxAgeMillis;
+        }
+
+        private void load() {
+            updateCacheMode(mContext, mWebView.getSettings());
+            setLoadTask(new LoadTask(mUrl, mMaxAgeMillis, true, mCallbacks).execute());
+        }
+
+        /**
+         * Download the page again, such as when the user asks to refresh,
+         * only showing it when it changed.
+         */
+        public void reload() {
+            updateCacheMode(mContext, mWebView.getSettings());
+            setLoadTask(new LoadTask(mUrl, 0, false, mCallbacks).execute());
+        }
+
+        /**
+         * Stop any running load from touching the {@link WebView}, such as
+         * when it goes away or the user navigated to another page.
+         */
+        public void cancel() {
+            setLoadTask(null);
+        }
+
+        private void setLoadTask(AsyncTask<?, ?, ?> loadTask) {
+            if (mLoadTask != null) {
+                mLoadTask.cancel(false);
+            }
+            mLoadTask = loadTask;
+        }
+
+        private final Callbacks mCallbacks = new Callbacks() {
+            public void onContentAvailable(Entry entry) {
+                entry.loadInto(mWebView);
+            }
+
+            public void onContentUnavailable(String url) {
+                mWebView.loadUrl(url);
+            }
+        };
+    }
+
+    private class LoadTask extends AsyncTask<Void, Entry, Boolean> {
+        private final String mUrl;
+        private final long mMaxAgeMillis;
+        private final boolean mDeliverCached;
+        private final Callbacks mCallbacks;
+
+        public LoadTask(String url, long maxAgeMillis, boolean deliverCached,
+                Callbacks callbacks) {
+            mUrl = url;
+            mMaxAgeMillis = maxAgeMillis;
+            mDeliverCached = deliverCached;
+            mCallbacks = callbacks;
+        }
+
+        @Override
+        protected Boolean doInBackground(Void... params) {
+            final Entry cached = readEntry(mUrl);
+            if (cached != null && mDeliverCached) {
+                publishProgress(cached);
+            }
+
+            if (cached != null && !cached.isStale(mMaxAgeMillis)) {
+                return true;
+            }
+
+            final Entry downloaded = download(mUrl, cached);
+            if (downloaded != null && downloaded != cached) {
+                publishProgress(downloaded);
+            }
+            return cached != null || downloaded != null;
+        }
+
+        @Override
+        protected void onProgressUpdate(Entry... values) {
+            if (mCallbacks != null && !isCancelled()) {
+                mCallbacks.onContentAvailable(values[0]);
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Boolean available) {
+            // Before Honeycomb, this is still called with null once cancelled
+            if (mCallbacks != null && !isCancelled() && !available) {
+                mCallbacks.onContentUnavailable(mUrl);
+            }
+        }
+    }
+
+    /**
+     * Download the given URL, revalidating the given cached entry when not
+     * {@code null}. Returns the new entry, the cached entry when unchanged,
+     * or {@code null} on failure. Must not be called from the main (UI) thread.
+     */
+    private Entry download(String url, Entry cached) {
+        try {
+            final HttpGet request = new HttpGet(url);
+            if (cached != null && cached.mETag != null) {
+                request.addHeader(HEADER_IF_NONE_MATCH, cached.mETag);
+            }
+            if (cached != null && cached.mLastModified != null) {
+                request.addHeader(HEADER_IF_MODIFIED_SINCE, cached.mLastModified);
+            }
+
+            final HttpClient httpClient = SyncService.getHttpClient(mContext);
+            final HttpResponse resp = httpClient.execute(request);
+            final HttpEntity entity = resp.getEntity();
+            final int statusCode = resp.getStatusLine().getStatusCode();
+            final long now = System.currentTimeMillis();
+
+            if (statusCode == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+                if (entity != null) {
+                    entity.consumeContent();
+                }
+                writeEntry(new Entry(cached.mUrl, cached.mMimeType, cached.mEncoding,
+                        cached.mETag, cached.mLastModified, now, cached.mData), false);
+                return cached;
+            }
+
+            if (statusCode != HttpStatus.SC_OK || entity == null) {
+                if (entity != null) {
+                    entity.consumeContent();
+                }
+                Log.w(TAG, "Unexpected status " + statusCode + " for " + url);
+                return null;
+            }
+
+            String mimeType = DEFAULT_MIME_TYPE;
+            final Header contentType = entity.getContentType();
+            if (contentType != null && contentType.getElements().length > 0) {
+                mimeType = contentType.getElements()[0].getName();
+            }
+            String encoding = EntityUtils.getContentCharSet(entity);
+            if (encoding == null) {
+                encoding = DEFAULT_ENCODING;
+            }
+
+            final byte[] data = EntityUtils.toByteArray(entity);
+            final Entry downloaded = new Entry(url, mimeType, encoding,
+                    getHeaderValue(resp, HEADER_ETAG), getHeaderValue(resp, HEADER_LAST_MODIFIED),
+                    now, data);
+            writeEntry(downloaded, true);
+
+            if (cached != null && Arrays.equals(cached.mData, data)) {
+                return cached;
+            }
+            return downloaded;
+        } catch (Exception e) {
+            Log.w(TAG, "Problem while loading page: " + e.toString(), e);
+        }
+        return null;
+    }
+
+    private static String getHeaderValue(HttpResponse resp, String name) {
+        final Header header = resp.getFirstHeader(name);
+        return (header != null) ? header.getValue() : null;
+    }
+
+    /** Read the cached entry for the given URL, or {@code null} if none. */
+    private synchronized Entry readEntry(String url) {
+        final String cacheKey = getCacheKey(url);
+        if (cacheKey == null) {
+            return null;
+        }
+
+        final File metaFile = new File(mCacheDir, cacheKey + SUFFIX_META);
+        final File bodyFile = new File(mCacheDir, cacheKey + SUFFIX_BODY);
+        if (!metaFile.exists() || !bodyFile.exists()) {
+            return null;
+        }
+
+        try {
+            final Properties meta = new Properties();
+            FileInputStream fis = new FileInputStream(metaFile);
+            try {
+                meta.load(fis);
+            } finally {
+                fis.close();
+            }
+
+            if (!url.equals(meta.getProperty(META_URL))) {
+                return null;
+            }
+
+            final byte[] data = new byte[(int) bodyFile.length()];
+            fis = new FileInputStream(bodyFile);
+            try {
+                int offset = 0;
+                int count;
+                while (offset < data.length
+                        && (count = fis.read(data, offset, data.length - offset)) != -1) {
+                    offset += count;
+                }
+            } finally {
+                fis.close();
+            }
+
+            return new Entry(url,
+                    meta.getProperty(META_MIME_TYPE, DEFAULT_MIME_TYPE),
+                    meta.getProperty(META_ENCODING, DEFAULT_ENCODING),
+                    meta.getProperty(META_ETAG),
+                    meta.getProperty(META_LAST_MODIFIED),
+                    Long.parseLong(meta.getProperty(META_FETCHED, "0")),
+                    data);
+        } catch (IOException e) {
+            Log.w(TAG, "Error reading from page cache: " + url, e);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Error reading from page cache: " + url, e);
+        }
+        return null;
+    }
+
+    /**
+     * Write the given entry to the cache, renaming files into place so that
+     * readers never see a partial file. The body is only written when asked.
+     */
+    private synchronized void writeEntry(Entry entry, boolean writeBody) {
+        final String cacheKey = getCacheKey(entry.mUrl);
+        if (cacheKey == null) {
+            return;
+        }
+
+        final Properties meta = new Properties();
+        meta.setProperty(META_URL, entry.mUrl);
+        meta.setProperty(META_MIME_TYPE, entry.mMimeType);
+        meta.setProperty(META_ENCODING, entry.mEncoding);
+        meta.setProperty(META_FETCHED, String.valueOf(entry.mFetchedTime));
+        if (entry.mETag != null) {
+            meta.setProperty(META_ETAG, entry.mETag);
+        }
+        if (entry.mLastModified != null) {
+            meta.setProperty(META_LAST_MODIFIED, entry.mLastModified);
+        }
+
+        try {
+            mCacheDir.mkdirs();
+            if (writeBody) {
+                final File bodyFile = new File(mCacheDir, cacheKey + SUFFIX_BODY);
+                final File partFile = new File(bodyFile.getPath() + SUFFIX_PART);
+                FileOutputStream fos = new FileOutputStream(partFile);
+                try {
+                    fos.write(entry.mData);
+                } finally {
+                    fos.close();
+                }
+                partFile.renameTo(bodyFile);
+            }
+
+            final File metaFile = new File(mCacheDir, cacheKey + SUFFIX_META);
+            final File partFile = new File(metaFile.getPath() + SUFFIX_PART);
+            FileOutputStream fos = new FileOutputStream(partFile);
+            try {
+                meta.store(fos, null);
+            } finally {
+                fos.close();
+            }
+            partFile.renameTo(metaFile);
+        } catch (IOException e) {
+            Log.w(TAG, "Error writing to page cache: " + entry.mUrl, e);
+        }
+    }
+
+    /**
+     * Return the hex SHA-1 hash of the given URL, which names its cache files
+     * here and in {@link BitmapUtils}, or {@code null} if SHA-1 isn't available.
+     */
+    static String getCacheKey(String url) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(url.getBytes());
+            final byte[] bytes = digest.digest();
+            final StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < bytes.length; i++) {
+                final String hex = Integer.toHexString(0xFF & bytes[i]);
+                if (hex.length() == 1) {
+                    sb.append('0');
+                }
+                sb.append(hex);
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 not available, don't cache.
+            return null;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.iosched.provider;
+
+import com.google.android.apps.iosched.provider.ScheduleContract.Tracks;
+import com.google.android.apps.iosched.provider.ScheduleDatabase.Tables;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+
+public class QueryCacheTest extends AndroidTestCase {
+    private static final String[] COLUMNS = { Tracks.TRACK_ID, Tracks.TRACK_NAME };
+    private static final String[] TABLES = { Tables.TRACKS };
+    private static final String KEY = "tracks";
+
+    private final QueryCache mCache = new QueryCache(64 * 1024);
+    private String mTrackName = "Android";
+
+    private final QueryCache.Requery mRequery = new QueryCache.Requery() {
+        public Cursor query() {
+            final Cursor cached = mCache.get(KEY, this);
+            if (cached != null) return cached;
+            final int version = mCache.getVersion();
+            return mCache.put(KEY, TABLES, version, buildTracks(), this);
+        }
+    };
+
+    public void testRequeryAfterInvalidate() {
+        final Cursor cursor = mRequery.query();
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Android", cursor.getString(1));
+
+        mTrackName = "Chrome";
+        mCache.invalidate(Tables.TRACKS);
+
+        assertTrue(cursor.requery());
+        assertEquals(-1, cursor.getPosition());
+        assertEquals(1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Chrome", cursor.getString(1));
+        cursor.close();
+    }
+
+    public void testRequeryUsesCachedResult() {
+        final Cursor first = mRequery.query();
+        final Cursor second = mRequery.query();
+        assertTrue(second.requery());
+        assertTrue(second.moveToFirst());
+        assertEquals("track", second.getString(0));
+        first.close();
+        second.close();
+    }
+
+    public void testBudget() {
+        final QueryCache cache = new QueryCache(2048);
+        cache.put("small", TABLES, cache.getVersion(), buildTracks(), mRequery).close();
+        assertNotNull(cache.get("small", mRequery));
+
+        // Larger than an eighth of the budget, so never cached
+        final MatrixCursor large = new MatrixCursor(COLUMNS);
+        for (int i = 0; i < 10; i++) {
+            large.addRow(new Object[] { "track" + i, "Track " + i });
+        }
+        cache.put("large", TABLES, cache.getVersion(), large, mRequery).close();
+        assertNull(cache.get("large", mRequery));
+    }
+
+    private Cursor buildTracks() {
+        final MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        cursor.addRow(new Object[] { "track", mTrackName });
+        return cursor;
+    }
+}
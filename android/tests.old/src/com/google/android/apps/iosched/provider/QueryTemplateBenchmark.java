@@ -0,0 +1,248 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.iosched.provider;
+
+import com.google.android.apps.iosched.provider.ScheduleContract.Blocks;
+import com.google.android.apps.iosched.provider.ScheduleContract.Rooms;
+import com.google.android.apps.iosched.provider.ScheduleContract.Sessions;
+import com.google.android.apps.iosched.provider.ScheduleContract.Speakers;
+import com.google.android.apps.iosched.provider.ScheduleContract.Tracks;
+import com.google.android.apps.iosched.provider.ScheduleContract.Vendors;
+import com.google.android.apps.iosched.provider.ScheduleDatabase.Tables;
+import com.google.android.apps.iosched.util.SelectionBuilder;
+
+import android.net.Uri;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * Counts allocations made while binding a query through each
+ * {@link QueryTemplate} in {@link ScheduleProvider}, covering every
+ * {@link Uri} handled by {@link ScheduleProvider#query}. A few representative
+ * queries are also bound through a {@link SelectionBuilder} the way the
+ * provider built them before templates, and both counts are logged side by
+ * side.
+ */
+public class QueryTemplateBenchmark extends AndroidTestCase {
+    private static final String TAG = "QueryTemplateBenchmark";
+
+    private static final int ITERATIONS = 1000;
+
+    /**
+     * Upper bound on allocations for a single bind, which covers the
+     * selection arguments array and caller selection concatenation.
+     */
+    private static final int MAX_ALLOCS_PER_QUERY = 8;
+
+    private static final Uri[] URIS = {
+            Blocks.CONTENT_URI,
+            Blocks.buildBlocksBetweenDirUri(1274270400000L, 1274295600000L),
+            Blocks.buildBlockUri("block"),
+            Blocks.buildSessionsUri("block"),
+            Tracks.CONTENT_URI,
+            Tracks.buildTrackUri("track"),
+            Tracks.buildSessionsUri("track"),
+            Tracks.buildVendorsUri("track"),
+            Rooms.CONTENT_URI,
+            Rooms.buildRoomUri("room"),
+            Rooms.buildSessionsDirUri("room"),
+            Sessions.CONTENT_URI,
+            Sessions.CONTENT_STARRED_URI,
+            Sessions.buildSearchUri("android"),
+            Sessions.buildSessionsAtDirUri(1274270400000L),
+            Sessions.buildSessionUri("session"),
+            Sessions.buildSpeakersDirUri("session"),
+            Sessions.buildTracksDirUri("session"),
+            Speakers.CONTENT_URI,
+            Speakers.buildSpeakerUri("speaker"),
+            Speakers.buildSessionsDirUri("speaker"),
+            Vendors.CONTENT_URI,
+            Vendors.CONTENT_STARRED_URI,
+            Vendors.buildSearchUri("android"),
+            Vendors.buildVendorUri("vendor"),
+    };
+
+    /** Queries also bound through {@link #buildExpandedSelection}. */
+    private static final Uri[] SELECTION_BUILDER_URIS = {
+            Blocks.buildBlocksBetweenDirUri(1274270400000L, 1274295600000L),
+            Blocks.buildSessionsUri("block"),
+            Tracks.CONTENT_URI,
+            Sessions.buildSessionUri("session"),
+    };
+
+    /** Stands in for the subqueries mapped by {@link ScheduleProvider}. */
+    private static final String SUBQUERY = "(SELECT 1)";
+
+    /**
+     * Requested columns, which both binders rewrite in place. Each bind
+     * works on its own copy, and the allocation made by the copy is counted
+     * separately and subtracted.
+     */
+    private static final String[] PROJECTION = {
+            Sessions._ID,
+            Sessions.SESSION_ID,
+            Sessions.BLOCK_ID,
+            Sessions.ROOM_ID,
+    };
+
+    private interface Binder {
+        void bind(Uri uri, String selection, String[] selectionArgs);
+    }
+
+    private static final Binder COPY = new Binder() {
+        public void bind(Uri uri, String selection, String[] selectionArgs) {
+            PROJECTION.clone();
+        }
+    };
+
+    private static final Binder TEMPLATE = new Binder() {
+        public void bind(Uri uri, String selection, String[] selectionArgs) {
+            final QueryTemplate template = ScheduleProvider.getQueryTemplate(uri);
+            template.getSelection(selection);
+            template.getSelectionArgs(uri, selection, selectionArgs);
+            template.mapColumns(PROJECTION.clone());
+        }
+    };
+
+    private static final Binder SELECTION_BUILDER = new Binder() {
+        public void bind(Uri uri, String selection, String[] selectionArgs) {
+            final SelectionBuilder builder = buildExpandedSelection(uri)
+                    .where(selection, selectionArgs);
+            builder.getSelection();
+            builder.getSelectionArgs();
+            // Projection map lookups don't allocate, so only the copy is made
+            PROJECTION.clone();
+        }
+    };
+
+    public void testBindAllocations() throws Exception {
+        // Warm up lazily parsed Uri state before counting
+        for (Uri uri : URIS) {
+            TEMPLATE.bind(uri, null, null);
+        }
+
+        final int copyAllocs = countAllocations(COPY, null, null, null);
+        long total = 0;
+        for (Uri uri : URIS) {
+            final int allocs = countAllocations(TEMPLATE, uri, null, null) - copyAllocs;
+            Log.d(TAG, uri + " allocs/query=" + allocs);
+            assertTrue("too many allocations for " + uri, allocs <= MAX_ALLOCS_PER_QUERY);
+            total += allocs;
+        }
+        Log.d(TAG, "total allocs/query=" + total + " over " + URIS.length
+                + " uris, plus " + copyAllocs + " for each projection copy");
+    }
+
+    public void testBindAllocationsWithSelection() throws Exception {
+        final String selection = Sessions.SESSION_STARRED + "=?";
+        final String[] selectionArgs = { "1" };
+
+        final int copyAllocs = countAllocations(COPY, null, null, null);
+        long total = 0;
+        for (Uri uri : URIS) {
+            final int allocs = countAllocations(TEMPLATE, uri, selection, selectionArgs)
+                    - copyAllocs;
+            Log.d(TAG, uri + " allocs/query=" + allocs + " with selection");
+            assertTrue("too many allocations for " + uri, allocs <= MAX_ALLOCS_PER_QUERY);
+            total += allocs;
+        }
+        Log.d(TAG, "total allocs/query=" + total + " over " + URIS.length
+                + " uris with selection");
+    }
+
+    public void testBindAllocationsAgainstSelectionBuilder() throws Exception {
+        final String selection = Sessions.SESSION_STARRED + "=?";
+        final String[] selectionArgs = { "1" };
+
+        for (Uri uri : SELECTION_BUILDER_URIS) {
+            TEMPLATE.bind(uri, selection, selectionArgs);
+            SELECTION_BUILDER.bind(uri, selection, selectionArgs);
+        }
+
+        final int copyAllocs = countAllocations(COPY, null, null, null);
+        for (Uri uri : SELECTION_BUILDER_URIS) {
+            final int templateAllocs = countAllocations(TEMPLATE, uri, selection,
+                    selectionArgs) - copyAllocs;
+            final int builderAllocs = countAllocations(SELECTION_BUILDER, uri, selection,
+                    selectionArgs) - copyAllocs;
+            Log.d(TAG, uri + " allocs/query template=" + templateAllocs
+                    + " selectionBuilder=" + builderAllocs);
+            assertTrue("template allocates as much as SelectionBuilder for " + uri,
+                    templateAllocs < builderAllocs);
+        }
+    }
+
+    /**
+     * Return the average number of allocations made while binding the given
+     * query over {@link #ITERATIONS} runs.
+     */
+    private static int countAllocations(Binder binder, Uri uri, String selection,
+            String[] selectionArgs) {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            for (int i = 0; i < ITERATIONS; i++) {
+                binder.bind(uri, selection, selectionArgs);
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        return Debug.getThreadAllocCount() / ITERATIONS;
+    }
+
+    /**
+     * Build a {@link SelectionBuilder} for one of
+     * {@link #SELECTION_BUILDER_URIS}, mapping and filtering the same way
+     * {@link ScheduleProvider} did for each query before it used templates.
+     */
+    private static SelectionBuilder buildExpandedSelection(Uri uri) {
+        final SelectionBuilder builder = new SelectionBuilder();
+        if (uri == SELECTION_BUILDER_URIS[0]) {
+            final List<String> segments = uri.getPathSegments();
+            return builder.table(Tables.BLOCKS)
+                    .map(Blocks.SESSIONS_COUNT, SUBQUERY)
+                    .map(Blocks.CONTAINS_STARRED, SUBQUERY)
+                    .where(Blocks.BLOCK_START + ">=?", segments.get(2))
+                    .where(Blocks.BLOCK_START + "<=?", segments.get(3));
+        } else if (uri == SELECTION_BUILDER_URIS[1]) {
+            return builder.table(Tables.SESSIONS_JOIN_BLOCKS_ROOMS)
+                    .map(Blocks.SESSIONS_COUNT, SUBQUERY)
+                    .map(Blocks.CONTAINS_STARRED, SUBQUERY)
+                    .mapToTable(Sessions._ID, Tables.SESSIONS)
+                    .mapToTable(Sessions.SESSION_ID, Tables.SESSIONS)
+                    .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
+                    .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
+                    .where(Tables.SESSIONS + "." + Sessions.BLOCK_ID + "=?",
+                            Blocks.getBlockId(uri));
+        } else if (uri == SELECTION_BUILDER_URIS[2]) {
+            return builder.table(Tables.TRACKS)
+                    .map(Tracks.SESSIONS_COUNT, SUBQUERY)
+                    .map(Tracks.VENDORS_COUNT, SUBQUERY);
+        } else if (uri == SELECTION_BUILDER_URIS[3]) {
+            return builder.table(Tables.SESSIONS_JOIN_BLOCKS_ROOMS)
+                    .mapToTable(Sessions._ID, Tables.SESSIONS)
+                    .mapToTable(Sessions.BLOCK_ID, Tables.SESSIONS)
+                    .mapToTable(Sessions.ROOM_ID, Tables.SESSIONS)
+                    .where(Tables.SESSIONS + "." + Sessions.SESSION_ID + "=?",
+                            Sessions.getSessionId(uri));
+        }
+        throw new UnsupportedOperationException("Unknown uri: " + uri);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.iosched.provider;
+
+import com.google.android.apps.iosched.provider.ScheduleContract.Sessions;
+import com.google.android.apps.iosched.provider.ScheduleContract.Speakers;
+import com.google.android.apps.iosched.provider.ScheduleContract.SyncColumns;
+import com.google.android.apps.iosched.provider.ScheduleDatabase.Indexes;
+import com.google.android.apps.iosched.provider.ScheduleDatabase.Tables;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * Upgrades a database shaped like version 23, with FTS3 session and vendor
+ * search and no speaker search, to the current version. Skipped when the
+ * platform SQLite doesn't support the FTS4 layout.
+ */
+public class ScheduleDatabaseUpgradeTest extends AndroidTestCase {
+    private static final String TAG = "ScheduleDatabaseUpgradeTest";
+
+    private static final int VER_SESSION_NOTES_URL_SLUG = 23;
+    private static final int VER_BLOCK_TIME_INDEXES = 26;
+
+    private File mFile;
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = getContext().getDatabasePath("upgrade-test.db");
+        mFile.getParentFile().mkdirs();
+        mFile.delete();
+        mDb = SQLiteDatabase.openOrCreateDatabase(mFile, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        mFile.delete();
+        super.tearDown();
+    }
+
+    public void testUpgradeFromSessionNotesUrlSlug() {
+        if (!ScheduleDatabase.supportsContentSearch(mDb)) {
+            Log.d(TAG, "FTS4 layout not supported, skipping");
+            return;
+        }
+
+        final ScheduleDatabase helper = new ScheduleDatabase(getContext());
+        createVersion23(helper);
+
+        helper.onUpgrade(mDb, VER_SESSION_NOTES_URL_SLUG, VER_BLOCK_TIME_INDEXES);
+        helper.onOpen(mDb);
+
+        assertTrue(helper.hasContentSearch());
+        assertEquals(1, countMatches(Tables.SESSIONS_SEARCH, "performance"));
+        assertEquals(1, countMatches(Tables.SPEAKERS_SEARCH, "romain"));
+        assertEquals(1, DatabaseUtils.longForQuery(mDb,
+                "SELECT COUNT(*) FROM sqlite_master WHERE type='index' AND name=?",
+                new String[] { Indexes.BLOCKS_START_END }));
+    }
+
+    /**
+     * Create the current schema, then take it back to version 23: FTS3
+     * session and vendor search only, and no block time indexes.
+     */
+    private void createVersion23(ScheduleDatabase helper) {
+        helper.onCreate(mDb);
+        ScheduleDatabase.dropSearchTables(mDb);
+        ScheduleDatabase.createSessionsAndVendorsSearch(mDb, false);
+        mDb.execSQL("DROP INDEX " + Indexes.BLOCKS_START_END);
+        mDb.execSQL("DROP INDEX " + Indexes.BLOCKS_END);
+        mDb.execSQL("DROP INDEX " + Indexes.SESSIONS_BLOCK_ID);
+
+        final ContentValues values = new ContentValues();
+        values.put(SyncColumns.UPDATED, 0);
+        values.put(Sessions.SESSION_ID, "session-1");
+        values.put(Sessions.SESSION_TITLE, "Android performance");
+        mDb.insertOrThrow(Tables.SESSIONS, null, values);
+
+        values.clear();
+        values.put(SyncColumns.UPDATED, 0);
+        values.put(Speakers.SPEAKER_ID, "speaker-1");
+        values.put(Speakers.SPEAKER_NAME, "Romain Guy");
+        mDb.insertOrThrow(Tables.SPEAKERS, null, values);
+
+        mDb.setVersion(VER_SESSION_NOTES_URL_SLUG);
+    }
+
+    private long countMatches(String searchTable, String query) {
+        return DatabaseUtils.longForQuery(mDb, "SELECT COUNT(*) FROM " + searchTable
+                + " WHERE " + searchTable + " MATCH ?", new String[] { query });
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.apps.iosched.provider;
+
+import com.google.android.apps.iosched.provider.ScheduleContract.Sessions;
+import com.google.android.apps.iosched.provider.ScheduleContract.SyncColumns;
+import com.google.android.apps.iosched.provider.ScheduleDatabase.Tables;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Compares database size and query latency of the original FTS3 search
+ * layout against the FTS4 layout, using a synthetic set of {@link Sessions}.
+ * The FTS4 case is skipped when the platform SQLite doesn't support it.
+ */
+public class SearchBenchmark extends AndroidTestCase {
+    private static final String TAG = "SearchBenchmark";
+
+    private static final int SESSION_COUNT = 500;
+    private static final int ITERATIONS = 50;
+
+    private static final String[] WORDS = {
+            "android", "chrome", "cloud", "games", "graphics", "honeycomb", "html5",
+            "javascript", "maps", "performance", "tablet", "fragments", "sync", "testing",
+            "accessibility", "youtube", "commerce", "storage", "design", "native",
+    };
+
+    private static final String[] QUERIES = {
+            "android", "cloud games", "per*", "ta*", "html5 OR javascript",
+    };
+
+    private static final String[] PROJECTION = {
+            Sessions._ID,
+            Sessions.SESSION_ID,
+            Sessions.SESSION_TITLE,
+            Sessions.SEARCH_SNIPPET,
+            Sessions.SESSION_STARRED,
+    };
+
+    public void testFts3() throws Exception {
+        runBenchmark(false);
+    }
+
+    public void testFts4() throws Exception {
+        final SQLiteDatabase probe = SQLiteDatabase.create(null);
+        try {
+            if (!ScheduleDatabase.supportsContentSearch(probe)) {
+                Log.d(TAG, "FTS4 layout not supported, skipping");
+                return;
+            }
+        } finally {
+            probe.close();
+        }
+        runBenchmark(true);
+    }
+
+    private void runBenchmark(boolean contentSearch) {
+        final String label = contentSearch ? "fts4" : "fts3";
+        final File file = getContext().getDatabasePath("search-benchmark-" + label + ".db");
+        file.getParentFile().mkdirs();
+        file.delete();
+
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        try {
+            db.beginTransaction();
+            try {
+                new ScheduleDatabase(getContext()).onCreate(db);
+                ScheduleDatabase.dropSearchTables(db);
+                ScheduleDatabase.createSearchTables(db, contentSearch);
+                insertSessions(db);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            db.close();
+        }
+        Log.d(TAG, label + " database size=" + file.length() + " bytes");
+
+        db = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            for (String query : QUERIES) {
+                long elapsed = 0;
+                int count = 0;
+                for (int i = 0; i < ITERATIONS; i++) {
+                    final long start = SystemClock.uptimeMillis();
+                    final Cursor cursor = ScheduleProvider.querySearch(db, contentSearch,
+                            Sessions.buildSearchUri(query), PROJECTION.clone(), null, null,
+                            Sessions.SEARCH_SORT);
+                    try {
+                        count = cursor.getCount();
+                        while (cursor.moveToNext()) {
+                            cursor.getString(3);
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                    elapsed += SystemClock.uptimeMillis() - start;
+                }
+                Log.d(TAG, label + " query=\"" + query + "\" results=" + count + " avg="
+                        + ((float) elapsed / ITERATIONS) + "ms");
+            }
+        } finally {
+            db.close();
+            file.delete();
+        }
+    }
+
+    private static void insertSessions(SQLiteDatabase db) {
+        final Random random = new Random(42);
+        final ContentValues values = new ContentValues();
+        for (int i = 0; i < SESSION_COUNT; i++) {
+            values.clear();
+            values.put(SyncColumns.UPDATED, 0);
+            values.put(Sessions.SESSION_ID, "session-" + i);
+            values.put(Sessions.SESSION_TITLE, buildText(random, 5));
+            values.put(Sessions.SESSION_ABSTRACT, buildText(random, 80));
+            values.put(Sessions.SESSION_KEYWORDS, buildText(random, 3));
+            db.insertOrThrow(Tables.SESSIONS, null, values);
+        }
+    }
+
+    private static String buildText(Random random, int words) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) builder.append(' ');
+            builder.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return builder.toString();
+    }
+}